@@ -0,0 +1,109 @@
+package com.example.triviumgor.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ida y vuelta por el SQLite del dispositivo: cada letra de Latin-1 con
+ * diacrítico se indexa con los triggers de PacienteDBHelper y se busca con
+ * BusquedaFts.construirMatch, escrita con y sin el diacrítico.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BusquedaFtsSqliteTest {
+
+    private PacienteDBHelper helper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearEsquema() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        helper = new PacienteDBHelper(context);
+        db = SQLiteDatabase.create(null);
+        helper.onCreate(db);
+    }
+
+    @After
+    public void cerrar() {
+        db.close();
+    }
+
+    private long insertar(String nombre, String apellido) {
+        ContentValues values = new ContentValues();
+        values.put(PacienteDBHelper.COLUMN_DNI, String.format("%08dX", nombre.hashCode() & 0xFFFFFF));
+        values.put(PacienteDBHelper.COLUMN_NOMBRE, nombre);
+        values.put(PacienteDBHelper.COLUMN_APELLIDO1, apellido);
+        return db.insertOrThrow(PacienteDBHelper.TABLE_PACIENTES, null, values);
+    }
+
+    private boolean encuentra(long id, String filtro) {
+        String match = BusquedaFts.construirMatch(filtro, null);
+        assertNotNull(filtro, match);
+        Cursor cursor = db.rawQuery(PacienteDataManager.SQL_BUSCAR_PACIENTES, new String[]{match});
+        try {
+            int colId = cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_ID);
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(colId) == id) return true;
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void comprobarTodasLasLetras() {
+        for (String[] par : BusquedaFts.EQUIVALENCIAS) {
+            String letra = par[0];
+            String nombre = "Pa" + letra + "co";
+            long id = insertar(nombre, "Prueba");
+
+            assertTrue("Con diacrítico: " + nombre, encuentra(id, nombre));
+            assertTrue("Sin diacrítico: " + nombre, encuentra(id, "pa" + par[1] + "co"));
+            assertTrue("En mayúsculas: " + nombre, encuentra(id, nombre.toUpperCase()));
+            assertTrue("Prefijo: " + nombre, encuentra(id, "Pa" + letra));
+        }
+    }
+
+    @Test
+    public void cadaLetraLatin1SeEncuentraConYSinDiacritico() {
+        comprobarTodasLasLetras();
+    }
+
+    @Test
+    public void actualizarReindexa() {
+        long id = insertar("Francois", "Muller");
+        ContentValues values = new ContentValues();
+        values.put(PacienteDBHelper.COLUMN_NOMBRE, "François");
+        values.put(PacienteDBHelper.COLUMN_APELLIDO1, "Müller");
+        db.update(PacienteDBHelper.TABLE_PACIENTES, values,
+                PacienteDBHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+
+        assertTrue(encuentra(id, "françois müller"));
+        assertTrue(encuentra(id, "FRANCOIS MULLER"));
+    }
+
+    @Test
+    public void migracionV11ReindexaLosPacientesExistentes() {
+        long id = insertar("Joël", "Gonçalves");
+        // Índice vacío, como si lo hubieran dejado los triggers antiguos
+        db.execSQL("DELETE FROM " + PacienteDBHelper.TABLE_PACIENTES_FTS);
+        assertFalse(encuentra(id, "joel"));
+
+        helper.onUpgrade(db, 10, 11);
+
+        assertTrue(encuentra(id, "joel goncalves"));
+        assertTrue(encuentra(id, "Joël Gonçalves"));
+        comprobarTodasLasLetras();
+    }
+}
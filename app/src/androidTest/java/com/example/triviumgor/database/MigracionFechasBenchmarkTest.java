@@ -0,0 +1,224 @@
+package com.example.triviumgor.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.triviumgor.util.Fechas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark de la migración de fechas v8 → v9 con el onUpgrade real: una
+ * BBDD con el esquema v8 (fechas TEXT "yyyy-MM-dd HH:mm:ss") y un millón de
+ * sesiones se sube a la versión actual. El tiempo va al log (tag
+ * MigracionFechas); se comprueba que no se pierde ninguna fila, que todas
+ * las fechas quedan como INTEGER y que coinciden con Fechas.parsearAntiguo.
+ *
+ * Algunas filas se guardan con dígitos arábigo-índicos, como las escribía
+ * SimpleDateFormat con ciertos Locale: strftime no las entiende y las tiene
+ * que convertir la reparación en Java.
+ *
+ * Usa un fichero propio en la caché de la app, no la BBDD real.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigracionFechasBenchmarkTest {
+
+    private static final String TAG = "MigracionFechas";
+    private static final int PACIENTES = 500;
+    private static final int SESIONES = 1000000;
+    private static final int CADA_NO_LATINA = 10000;   // 100 filas con dígitos no latinos
+    private static final int MINUTOS_POR_DIA = 600;    // 08:00 a 17:59, lejos de los cambios de hora
+
+    // Esquema v8 de las tablas que migra la v9 (fechas TEXT)
+    private static final String SQL_CREATE_SESIONES_V8 =
+            "CREATE TABLE " + PacienteDBHelper.TABLE_SESIONES + " (" +
+                    PacienteDBHelper.COLUMN_SESION_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    PacienteDBHelper.COLUMN_PACIENTE_ID + " INTEGER NOT NULL, " +
+                    PacienteDBHelper.COLUMN_DISPOSITIVO + " TEXT NOT NULL, " +
+                    PacienteDBHelper.COLUMN_FECHA + " TEXT NOT NULL, " +
+                    PacienteDBHelper.COLUMN_INTENSIDAD_SESION + " INTEGER NOT NULL, " +
+                    PacienteDBHelper.COLUMN_TIEMPO_SESION + " INTEGER NOT NULL, " +
+                    "FOREIGN KEY (" + PacienteDBHelper.COLUMN_PACIENTE_ID + ") REFERENCES " +
+                    PacienteDBHelper.TABLE_PACIENTES + "(" + PacienteDBHelper.COLUMN_ID + "))";
+    private static final String SQL_CREATE_USUARIOS_V8 =
+            "CREATE TABLE " + PacienteDBHelper.TABLE_USUARIOS + " (" +
+                    PacienteDBHelper.COLUMN_USUARIO_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    PacienteDBHelper.COLUMN_USERNAME + " TEXT UNIQUE NOT NULL, " +
+                    PacienteDBHelper.COLUMN_PASSWORD_HASH + " TEXT NOT NULL, " +
+                    PacienteDBHelper.COLUMN_NOMBRE_COMPLETO + " TEXT, " +
+                    PacienteDBHelper.COLUMN_ROL + " TEXT DEFAULT 'medico', " +
+                    PacienteDBHelper.COLUMN_ACTIVO + " INTEGER DEFAULT 1, " +
+                    PacienteDBHelper.COLUMN_FECHA_CREACION + " TEXT NOT NULL, " +
+                    PacienteDBHelper.COLUMN_ULTIMO_ACCESO + " TEXT)";
+    private static final String SQL_CREATE_USUARIO_PACIENTE_V8 =
+            "CREATE TABLE " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " (" +
+                    PacienteDBHelper.COLUMN_UP_USUARIO_ID + " INTEGER NOT NULL, " +
+                    PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " INTEGER NOT NULL, " +
+                    PacienteDBHelper.COLUMN_UP_ROL + " TEXT NOT NULL DEFAULT 'asignado', " +
+                    PacienteDBHelper.COLUMN_UP_FECHA + " TEXT NOT NULL, " +
+                    "PRIMARY KEY (" + PacienteDBHelper.COLUMN_UP_USUARIO_ID + ", " +
+                    PacienteDBHelper.COLUMN_UP_PACIENTE_ID + "))";
+
+    private PacienteDBHelper helper;
+    private File fichero;
+    private SQLiteDatabase db;
+    private Calendar primerDia;
+    private SimpleDateFormat formatoV8;
+
+    @Before
+    public void crearBaseV8() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        helper = new PacienteDBHelper(context);
+        fichero = new File(context.getCacheDir(), "migracion_fechas.db");
+        SQLiteDatabase.deleteDatabase(fichero);
+        db = SQLiteDatabase.openOrCreateDatabase(fichero, null);
+
+        // Esquema actual y vuelta atrás de lo que añadieron la v9 y la v10
+        helper.onCreate(db);
+        db.execSQL("DROP TABLE " + PacienteDBHelper.TABLE_SESIONES);
+        db.execSQL("DROP TABLE " + PacienteDBHelper.TABLE_USUARIOS);
+        db.execSQL("DROP TABLE " + PacienteDBHelper.TABLE_USUARIO_PACIENTE);
+        db.execSQL("DROP TABLE " + PacienteDBHelper.TABLE_TELEMETRIA_MINUTO);
+        db.execSQL("DROP TABLE " + PacienteDBHelper.TABLE_TELEMETRIA_DIA);
+        db.execSQL(SQL_CREATE_SESIONES_V8);
+        db.execSQL(SQL_CREATE_USUARIOS_V8);
+        db.execSQL(SQL_CREATE_USUARIO_PACIENTE_V8);
+
+        primerDia = Calendar.getInstance();
+        primerDia.set(2021, Calendar.JANUARY, 4, 8, 0, 0);
+        primerDia.set(Calendar.MILLISECOND, 0);
+        // Como se escribían las fechas antes de la v9, con dígitos latinos;
+        // los no latinos se ponen a mano en fechaV8
+        formatoV8 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+    }
+
+    @After
+    public void borrar() {
+        db.close();
+        SQLiteDatabase.deleteDatabase(fichero);
+    }
+
+    /** Fecha de la sesión i: un minuto distinto cada sesión, en horario diurno */
+    private String fechaLatina(int i) {
+        Calendar c = (Calendar) primerDia.clone();
+        c.add(Calendar.DAY_OF_MONTH, i / MINUTOS_POR_DIA);
+        c.add(Calendar.MINUTE, i % MINUTOS_POR_DIA);
+        return formatoV8.format(c.getTime());
+    }
+
+    /** Fecha v8 guardada para la sesión i; una de cada CADA_NO_LATINA con dígitos arábigo-índicos */
+    private String fechaV8(int i) {
+        String texto = fechaLatina(i);
+        return i % CADA_NO_LATINA == 0 ? aDigitosArabigos(texto) : texto;
+    }
+
+    private static String aDigitosArabigos(String texto) {
+        StringBuilder sb = new StringBuilder(texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            sb.append(c >= '0' && c <= '9' ? (char) ('٠' + (c - '0')) : c);
+        }
+        return sb.toString();
+    }
+
+    private void sembrar() {
+        db.beginTransaction();
+        try {
+            SQLiteStatement paciente = db.compileStatement("INSERT INTO " + PacienteDBHelper.TABLE_PACIENTES +
+                    " (" + PacienteDBHelper.COLUMN_DNI + ", " + PacienteDBHelper.COLUMN_NOMBRE + ", " +
+                    PacienteDBHelper.COLUMN_APELLIDO1 + ") VALUES (?, ?, ?)");
+            for (int i = 0; i < PACIENTES; i++) {
+                paciente.bindString(1, String.format(Locale.ROOT, "%08dX", i));
+                paciente.bindString(2, "Paciente " + i);
+                paciente.bindString(3, "Apellido");
+                paciente.executeInsert();
+            }
+
+            SQLiteStatement sesion = db.compileStatement("INSERT INTO " + PacienteDBHelper.TABLE_SESIONES +
+                    " (" + PacienteDBHelper.COLUMN_PACIENTE_ID + ", " + PacienteDBHelper.COLUMN_DISPOSITIVO + ", " +
+                    PacienteDBHelper.COLUMN_FECHA + ", " + PacienteDBHelper.COLUMN_INTENSIDAD_SESION + ", " +
+                    PacienteDBHelper.COLUMN_TIEMPO_SESION + ") VALUES (?, ?, ?, ?, ?)");
+            for (int i = 0; i < SESIONES; i++) {
+                sesion.bindLong(1, 1 + i % PACIENTES);
+                sesion.bindString(2, i % 2 == 0 ? "1" : "2");
+                sesion.bindString(3, fechaV8(i));
+                sesion.bindLong(4, 10 + i % 5);
+                sesion.bindLong(5, 20);
+                sesion.executeInsert();
+            }
+
+            db.execSQL("INSERT INTO " + PacienteDBHelper.TABLE_USUARIOS + " (" +
+                    PacienteDBHelper.COLUMN_USERNAME + ", " + PacienteDBHelper.COLUMN_PASSWORD_HASH + ", " +
+                    PacienteDBHelper.COLUMN_FECHA_CREACION + ", " + PacienteDBHelper.COLUMN_ULTIMO_ACCESO +
+                    ") VALUES ('nunca', 'x', ?, NULL), ('roto', 'x', 'no es una fecha', ?)",
+                    new Object[]{fechaV8(1), fechaV8(2)});
+            db.execSQL("INSERT INTO " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " (" +
+                    PacienteDBHelper.COLUMN_UP_USUARIO_ID + ", " + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + ", " +
+                    PacienteDBHelper.COLUMN_UP_FECHA + ") VALUES (1, 1, ?)", new Object[]{fechaV8(0)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private long valor(String sql, String... args) {
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void migracionV8DeUnMillonDeSesiones() throws Exception {
+        sembrar();
+        long secuencia = valor("SELECT seq FROM sqlite_sequence WHERE name = ?", PacienteDBHelper.TABLE_SESIONES);
+
+        long inicio = System.nanoTime();
+        helper.onUpgrade(db, 8, PacienteDBHelper.DATABASE_VERSION);
+        long ms = (System.nanoTime() - inicio) / 1000000;
+        Log.i(TAG, SESIONES + " sesiones migradas de v8 en " + ms + " ms");
+
+        // Ninguna fila perdida ni fecha sin convertir
+        assertEquals(SESIONES, valor("SELECT count(*) FROM " + PacienteDBHelper.TABLE_SESIONES));
+        assertEquals(0, valor("SELECT count(*) FROM " + PacienteDBHelper.TABLE_SESIONES +
+                " WHERE typeof(" + PacienteDBHelper.COLUMN_FECHA + ") != 'integer'" +
+                " OR " + PacienteDBHelper.COLUMN_FECHA + " = 0"));
+        assertEquals(secuencia, valor("SELECT seq FROM sqlite_sequence WHERE name = ?",
+                PacienteDBHelper.TABLE_SESIONES));
+
+        // Muestra, incluidas todas las filas con dígitos no latinos
+        for (int i = 0; i < SESIONES; i += CADA_NO_LATINA / 10) {
+            long esperado = Fechas.parsearAntiguo(fechaLatina(i));
+            assertEquals("sesión " + (i + 1), esperado, valor("SELECT " + PacienteDBHelper.COLUMN_FECHA +
+                    " FROM " + PacienteDBHelper.TABLE_SESIONES + " WHERE " + PacienteDBHelper.COLUMN_SESION_ID +
+                    " = ?", String.valueOf(i + 1)));
+        }
+
+        // NULL se mantiene en ultimo_acceso; un texto ilegible queda a 0
+        assertEquals(1, valor("SELECT count(*) FROM " + PacienteDBHelper.TABLE_USUARIOS + " WHERE " +
+                PacienteDBHelper.COLUMN_ULTIMO_ACCESO + " IS NULL"));
+        assertEquals(0, valor("SELECT " + PacienteDBHelper.COLUMN_FECHA_CREACION + " FROM " +
+                PacienteDBHelper.TABLE_USUARIOS + " WHERE " + PacienteDBHelper.COLUMN_USERNAME + " = 'roto'"));
+        assertEquals(Fechas.parsearAntiguo(fechaLatina(0)), valor("SELECT " + PacienteDBHelper.COLUMN_UP_FECHA +
+                " FROM " + PacienteDBHelper.TABLE_USUARIO_PACIENTE));
+    }
+}
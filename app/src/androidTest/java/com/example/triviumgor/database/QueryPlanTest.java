@@ -0,0 +1,216 @@
+package com.example.triviumgor.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Comprueba con EXPLAIN QUERY PLAN que las consultas de PacienteDataManager
+ * usan índices y no recorren tablas completas.
+ *
+ * Las consultas se toman de las constantes SQL que ejecuta el propio
+ * DataManager, no de copias: si alguien cambia un WHERE o un ORDER BY y
+ * pierde el índice, este test falla. Corre sobre una BBDD en memoria con el
+ * esquema de PacienteDBHelper.onCreate(), en el SQLite del dispositivo.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    /**
+     * Consulta a verificar.
+     * permiteRecorrido = true solo para listados que por definición leen
+     * toda la tabla (p. ej. la lista completa de pacientes).
+     */
+    private static final class Consulta {
+        final String nombre;
+        final String sql;
+        final boolean permiteRecorrido;
+
+        Consulta(String nombre, String sql, boolean permiteRecorrido) {
+            this.nombre = nombre;
+            this.sql = sql;
+            this.permiteRecorrido = permiteRecorrido;
+        }
+    }
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearEsquema() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = SQLiteDatabase.create(null);
+        new PacienteDBHelper(context).onCreate(db);
+    }
+
+    @After
+    public void cerrar() {
+        db.close();
+    }
+
+    @Test
+    public void ningunaConsultaRecorreTablasCompletas() {
+        List<String> problemas = new ArrayList<>();
+        for (Consulta consulta : consultasDataManager()) {
+            Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + consulta.sql, parametrosFicticios(consulta.sql));
+            try {
+                // En versiones antiguas de SQLite las columnas son
+                // (selectid, order, from, detail); el detalle siempre va al final.
+                int colDetalle = cursor.getColumnIndex("detail");
+                if (colDetalle < 0) colDetalle = cursor.getColumnCount() - 1;
+
+                while (cursor.moveToNext()) {
+                    String detalle = cursor.getString(colDetalle);
+                    if (esRecorridoCompleto(detalle) && !consulta.permiteRecorrido) {
+                        problemas.add(consulta.nombre + " -> " + detalle);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        assertTrue("Consultas sin índice: " + problemas, problemas.isEmpty());
+    }
+
+    @Test
+    public void detectaRecorridos() {
+        assertTrue(esRecorridoCompleto("SCAN TABLE pacientes"));
+        assertTrue(esRecorridoCompleto("SCAN pacientes"));
+        assertTrue(esRecorridoCompleto("SCAN TABLE pacientes_fts VIRTUAL TABLE INDEX 0:"));
+        assertFalse(esRecorridoCompleto("SCAN TABLE pacientes_fts VIRTUAL TABLE INDEX 2:"));
+        assertFalse(esRecorridoCompleto("SEARCH TABLE pacientes USING INTEGER PRIMARY KEY (rowid=?)"));
+    }
+
+    /** Consultas de PacienteDataManager, con las constantes que ejecuta cada método */
+    private static List<Consulta> consultasDataManager() {
+        List<Consulta> consultas = new ArrayList<>();
+
+        // ======= USUARIOS =======
+        consultas.add(new Consulta("verificarCredenciales", PacienteDataManager.SQL_VERIFICAR_CREDENCIALES, false));
+        consultas.add(new Consulta("obtenerUsuario", PacienteDataManager.SQL_USUARIO_POR_USERNAME, false));
+        consultas.add(new Consulta("obtenerUsuarioPorId", PacienteDataManager.SQL_USUARIO_POR_ID, false));
+        consultas.add(new Consulta("cambiarPassword / actualizarUltimoAcceso",
+                actualizar(PacienteDBHelper.TABLE_USUARIOS, PacienteDataManager.WHERE_USERNAME), false));
+        consultas.add(new Consulta("establecerEstadoUsuario",
+                actualizar(PacienteDBHelper.TABLE_USUARIOS, PacienteDataManager.WHERE_USUARIO_ID), false));
+        consultas.add(new Consulta("obtenerTodosUsuarios", PacienteDataManager.SQL_TODOS_USUARIOS, true));
+
+        // ======= USUARIO_PACIENTE =======
+        consultas.add(new Consulta("tieneAccesoPaciente", PacienteDataManager.SQL_TIENE_ACCESO, false));
+        consultas.add(new Consulta("desvincularUsuarioPaciente",
+                borrar(PacienteDBHelper.TABLE_USUARIO_PACIENTE, PacienteDataManager.WHERE_USUARIO_PACIENTE), false));
+        consultas.add(new Consulta("obtenerPacientesDeUsuario", PacienteDataManager.SQL_PACIENTES_DE_USUARIO, false));
+        consultas.add(new Consulta("obtenerUsuariosDeUnPaciente", PacienteDataManager.SQL_USUARIOS_DE_PACIENTE, false));
+        consultas.add(new Consulta("obtenerCreadorDePaciente", PacienteDataManager.SQL_CREADOR_DE_PACIENTE, false));
+
+        // ======= PACIENTES =======
+        consultas.add(new Consulta("buscarPacientes", PacienteDataManager.SQL_BUSCAR_PACIENTES, false));
+        consultas.add(new Consulta("buscarPacientes (de un usuario)",
+                PacienteDataManager.SQL_BUSCAR_PACIENTES_DE_USUARIO, false));
+        consultas.add(new Consulta("buscarPacientePorDNI", PacienteDataManager.SQL_PACIENTE_POR_DNI, false));
+        consultas.add(new Consulta("existeDNI", PacienteDataManager.SQL_EXISTE_DNI, false));
+        consultas.add(new Consulta("construirFiltroDNI", PacienteDataManager.SQL_TODOS_LOS_DNI, true));
+        consultas.add(new Consulta("obtenerTodosPacientes", PacienteDataManager.SQL_TODOS_PACIENTES, true));
+        consultas.add(new Consulta("obtenerResumenPacientes (todos)", PacienteDataManager.SQL_RESUMEN_PACIENTES, true));
+        consultas.add(new Consulta("obtenerResumenPacientes (de un usuario)",
+                PacienteDataManager.SQL_RESUMEN_PACIENTES_DE_USUARIO, false));
+        // La primera página sin usuario lee el índice de nombre en orden hasta
+        // el LIMIT; el resto arrancan con un rango o con la lista del usuario.
+        consultas.add(new Consulta("obtenerPaginaPacientes (primera página)",
+                PacienteDataManager.SQL_PAGINA_PACIENTES[0][0], true));
+        consultas.add(new Consulta("obtenerPaginaPacientes (primera página de un usuario)",
+                PacienteDataManager.SQL_PAGINA_PACIENTES[0][1], false));
+        consultas.add(new Consulta("obtenerPaginaPacientes (siguientes)",
+                PacienteDataManager.SQL_PAGINA_PACIENTES[1][0], false));
+        consultas.add(new Consulta("obtenerPaginaPacientes (siguientes de un usuario)",
+                PacienteDataManager.SQL_PAGINA_PACIENTES[1][1], false));
+        consultas.add(new Consulta("obtenerPacientePorId", PacienteDataManager.SQL_PACIENTE_POR_ID, false));
+        consultas.add(new Consulta("actualizarPaciente",
+                actualizar(PacienteDBHelper.TABLE_PACIENTES, PacienteDataManager.WHERE_PACIENTE_ID), false));
+        consultas.add(new Consulta("guardarConfiguracion (por DNI)",
+                actualizar(PacienteDBHelper.TABLE_PACIENTES, PacienteDataManager.WHERE_DNI), false));
+        consultas.add(new Consulta("eliminarPaciente (usuario_sesion)",
+                PacienteDataManager.SQL_BORRAR_USUARIO_SESION_DE_PACIENTE, false));
+        consultas.add(new Consulta("eliminarPaciente (sesiones)",
+                borrar(PacienteDBHelper.TABLE_SESIONES, PacienteDataManager.WHERE_SESIONES_PACIENTE), false));
+        consultas.add(new Consulta("eliminarPaciente (usuario_paciente)",
+                borrar(PacienteDBHelper.TABLE_USUARIO_PACIENTE, PacienteDataManager.WHERE_UP_PACIENTE), false));
+        consultas.add(new Consulta("eliminarPaciente (paciente)",
+                borrar(PacienteDBHelper.TABLE_PACIENTES, PacienteDataManager.WHERE_PACIENTE_ID), false));
+
+        // ======= SESIONES =======
+        consultas.add(new Consulta("obtenerSesionesPaciente", PacienteDataManager.SQL_SESIONES_PACIENTE, false));
+        consultas.add(new Consulta("obtenerSesionesPaciente (intervalo)",
+                PacienteDataManager.SQL_SESIONES_PACIENTE_INTERVALO, false));
+        consultas.add(new Consulta("obtenerDiasConSesiones", PacienteDataManager.SQL_DIAS_CON_SESIONES, false));
+        consultas.add(new Consulta("obtenerSesion", PacienteDataManager.SQL_SESION_POR_ID, false));
+        consultas.add(new Consulta("eliminarSesion",
+                borrar(PacienteDBHelper.TABLE_SESIONES, PacienteDataManager.WHERE_SESION_ID), false));
+
+        // ======= USUARIO_SESION =======
+        consultas.add(new Consulta("obtenerSesionesPorUsuario", PacienteDataManager.SQL_SESIONES_DE_USUARIO, false));
+        consultas.add(new Consulta("obtenerUsuariosPorSesion", PacienteDataManager.SQL_USUARIOS_DE_SESION, false));
+        consultas.add(new Consulta("eliminarSesion / eliminarRelacionesPorSesion",
+                borrar(PacienteDBHelper.TABLE_USUARIO_SESION, PacienteDataManager.WHERE_US_SESION), false));
+        consultas.add(new Consulta("eliminarRelacionUsuarioSesion",
+                borrar(PacienteDBHelper.TABLE_USUARIO_SESION, PacienteDataManager.WHERE_USUARIO_SESION), false));
+
+        // ======= TELEMETRÍA =======
+        for (String tabla : new String[]{PacienteDBHelper.TABLE_TELEMETRIA_MINUTO, PacienteDBHelper.TABLE_TELEMETRIA_DIA}) {
+            consultas.add(new Consulta("guardarTelemetria (" + tabla + ")",
+                    String.format(PacienteDataManager.SQL_TELEMETRIA_SUMAR, tabla), false));
+            consultas.add(new Consulta("obtenerTelemetria (" + tabla + ")",
+                    String.format(PacienteDataManager.SQL_TELEMETRIA_RANGO, tabla), false));
+        }
+        consultas.add(new Consulta("guardarTelemetria (retención)",
+                borrar(PacienteDBHelper.TABLE_TELEMETRIA_MINUTO, PacienteDataManager.WHERE_TELEMETRIA_ANTIGUA), false));
+
+        return consultas;
+    }
+
+    // SQL equivalente a database.update(tabla, valores, where, args): el SET no afecta al plan
+    private static String actualizar(String tabla, String where) {
+        return "UPDATE " + tabla + " SET " + PacienteDBHelper.COLUMN_ID + " = " + PacienteDBHelper.COLUMN_ID +
+                " WHERE " + where;
+    }
+
+    // SQL equivalente a database.delete(tabla, where, args)
+    private static String borrar(String tabla, String where) {
+        return "DELETE FROM " + tabla + " WHERE " + where;
+    }
+
+    /**
+     * "SCAN TABLE x" (SQLite antiguo) o "SCAN x" (SQLite >= 3.36) indican
+     * recorrido completo, aunque sea a través de un índice.
+     * Excepción: en tablas FTS, "SCAN ... VIRTUAL TABLE INDEX n:" con n != 0
+     * es una búsqueda MATCH sobre el índice invertido, no un recorrido.
+     */
+    private static boolean esRecorridoCompleto(String detalle) {
+        if (detalle == null || !detalle.startsWith("SCAN ")) return false;
+        return !detalle.contains("VIRTUAL TABLE INDEX") || detalle.contains("VIRTUAL TABLE INDEX 0:");
+    }
+
+    private static String[] parametrosFicticios(String sql) {
+        int n = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') n++;
+        }
+        String[] args = new String[n];
+        for (int i = 0; i < n; i++) {
+            args[i] = "0";
+        }
+        return args;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.triviumgor.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.triviumgor.model.AgregadoTelemetria;
+import com.example.triviumgor.util.Fechas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * guardarTelemetria contra el SQLite del dispositivo: suma de lotes en las
+ * tablas por minuto y por día, y purga de los minutos de más de 30 días.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TelemetriaSqliteTest {
+
+    private static final long MINUTO_MS = 60000;
+    private static final long HORA_MS = 60 * MINUTO_MS;
+    private static final long DIA_MS = 24 * HORA_MS;
+    private static final String MAC = "00:11:22:33:44:55";
+    private static final String OTRA_MAC = "AA:BB:CC:DD:EE:FF";
+
+    private SQLiteDatabase db;
+    private PacienteDataManager dataManager;
+    // Las 10:00 de hace dos días: dentro de la retención y lejos de medianoche
+    private long dia;
+    private long minuto;
+
+    @Before
+    public void crearEsquema() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        PacienteDBHelper helper = new PacienteDBHelper(context);
+        db = SQLiteDatabase.create(null);
+        helper.onCreate(db);
+        dataManager = new PacienteDataManager(helper, db);
+        dia = Fechas.inicioDelDia(Fechas.ahora() - 2 * DIA_MS);
+        minuto = dia + 10 * HORA_MS;
+    }
+
+    @After
+    public void cerrar() {
+        db.close();
+    }
+
+    private static AgregadoTelemetria agregado(String mac, long inicio, long... valores) {
+        AgregadoTelemetria a = new AgregadoTelemetria(mac, Telemetria.TIPO_BATERIA, inicio);
+        for (long v : valores) a.anadir(v);
+        return a;
+    }
+
+    private List<AgregadoTelemetria> minutos(String mac) {
+        return dataManager.obtenerTelemetriaMinutos(mac, Telemetria.TIPO_BATERIA, 0, Long.MAX_VALUE);
+    }
+
+    private List<AgregadoTelemetria> dias(String mac) {
+        return dataManager.obtenerTelemetriaDias(mac, Telemetria.TIPO_BATERIA, 0, Long.MAX_VALUE);
+    }
+
+    private static void comprobar(AgregadoTelemetria a, long inicio, long muestras, long suma, long min, long max) {
+        assertEquals(inicio, a.getInicio());
+        assertEquals(muestras, a.getMuestras());
+        assertEquals(suma, a.getSuma());
+        assertEquals(min, a.getMinimo());
+        assertEquals(max, a.getMaximo());
+    }
+
+    @Test
+    public void dosLotesDelMismoMinutoSeSuman() {
+        assertTrue(dataManager.guardarTelemetria(Arrays.asList(agregado(MAC, minuto, 700, 720))));
+        assertTrue(dataManager.guardarTelemetria(Arrays.asList(agregado(MAC, minuto, 650, 800, 710))));
+
+        List<AgregadoTelemetria> m = minutos(MAC);
+        assertEquals(1, m.size());
+        comprobar(m.get(0), minuto, 5, 700 + 720 + 650 + 800 + 710, 650, 800);
+
+        List<AgregadoTelemetria> d = dias(MAC);
+        assertEquals(1, d.size());
+        comprobar(d.get(0), dia, 5, 700 + 720 + 650 + 800 + 710, 650, 800);
+    }
+
+    @Test
+    public void losMinutosDeUnDiaSeJuntanEnSuFila() {
+        List<AgregadoTelemetria> lote = new ArrayList<>();
+        lote.add(agregado(MAC, minuto, 700));
+        lote.add(agregado(MAC, minuto + MINUTO_MS, 690, 680));
+        lote.add(agregado(MAC, minuto + 5 * HORA_MS, 900));
+        // Otro día y otro dispositivo van a sus filas
+        lote.add(agregado(MAC, minuto + DIA_MS, 600));
+        lote.add(agregado(OTRA_MAC, minuto, 1000));
+        // Un agregado vacío no escribe nada
+        lote.add(agregado(MAC, minuto + 2 * MINUTO_MS));
+        assertTrue(dataManager.guardarTelemetria(lote));
+
+        List<AgregadoTelemetria> m = minutos(MAC);
+        assertEquals(4, m.size());
+        comprobar(m.get(0), minuto, 1, 700, 700, 700);
+        comprobar(m.get(1), minuto + MINUTO_MS, 2, 1370, 680, 690);
+
+        List<AgregadoTelemetria> d = dias(MAC);
+        assertEquals(2, d.size());
+        comprobar(d.get(0), dia, 4, 700 + 690 + 680 + 900, 680, 900);
+        comprobar(d.get(1), Fechas.inicioDelDia(minuto + DIA_MS), 1, 600, 600, 600);
+
+        assertEquals(1, dias(OTRA_MAC).size());
+        comprobar(dias(OTRA_MAC).get(0), dia, 1, 1000, 1000, 1000);
+    }
+
+    @Test
+    public void losMinutosDeMasDe30DiasSePurganYLosDiasNo() {
+        long ahora = Fechas.ahora();
+        long viejo = ahora - PacienteDataManager.RETENCION_TELEMETRIA_MINUTO_MS - HORA_MS;
+        long reciente = ahora - PacienteDataManager.RETENCION_TELEMETRIA_MINUTO_MS + DIA_MS;
+        viejo -= viejo % MINUTO_MS;
+        reciente -= reciente % MINUTO_MS;
+
+        assertTrue(dataManager.guardarTelemetria(Arrays.asList(
+                agregado(OTRA_MAC, viejo, 500))));
+        // El lote que escribe el minuto viejo de MAC ya lo purga en la misma transacción
+        assertTrue(dataManager.guardarTelemetria(Arrays.asList(
+                agregado(MAC, viejo, 600), agregado(MAC, reciente, 610))));
+
+        List<AgregadoTelemetria> m = minutos(MAC);
+        assertEquals(1, m.size());
+        assertEquals(reciente, m.get(0).getInicio());
+        // El resumen diario del minuto purgado se conserva
+        assertEquals(2, dias(MAC).size());
+
+        // Solo se purgan las series del lote: OTRA_MAC sigue con su minuto viejo
+        assertEquals(1, minutos(OTRA_MAC).size());
+        assertTrue(dataManager.guardarTelemetria(Arrays.asList(agregado(OTRA_MAC, minuto, 510))));
+        m = minutos(OTRA_MAC);
+        assertEquals(1, m.size());
+        assertEquals(minuto, m.get(0).getInicio());
+        assertEquals(2, dias(OTRA_MAC).size());
+    }
+}
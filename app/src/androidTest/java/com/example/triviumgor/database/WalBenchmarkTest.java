@@ -0,0 +1,196 @@
+package com.example.triviumgor.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark mínimo de lectura/escritura, antes (rollback journal) y después
+ * (WAL): un hilo inserta sesiones una a una (como registrarSesion) mientras el
+ * hilo del test lee el resumen de pacientes (SQL_RESUMEN_PACIENTES) y mide la
+ * latencia de cada lectura. Las dos bases se configuran con
+ * PacienteDBHelper.onConfigure, como la real.
+ *
+ * Los tiempos de los dos modos van al log (tag WalBenchmark); lo que se
+ * comprueba es que con WAL las lecturas avanzan durante las escrituras y que
+ * volcarWal deja el -wal vacío.
+ *
+ * Usa ficheros propios en la caché de la app, no la BBDD real.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WalBenchmarkTest {
+
+    private static final String TAG = "WalBenchmark";
+    private static final int PACIENTES = 200;
+    private static final int SESIONES = 500;
+
+    /** Resultado de una pasada */
+    private static final class Medida {
+        int escritas;
+        long totalMs;
+        int lecturas;
+        int lecturasDuranteEscritura;
+        long mediaUs;
+        long maxUs;
+
+        @Override
+        public String toString() {
+            return "escrituras: " + escritas + " en " + totalMs + " ms" +
+                    " | lecturas: " + lecturas + " (" + lecturasDuranteEscritura + " durante escrituras)" +
+                    " | media: " + mediaUs + " us" +
+                    " | max: " + maxUs + " us";
+        }
+    }
+
+    private Context context;
+    private PacienteDBHelper helper;
+    private File fichero;
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearHelper() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        helper = new PacienteDBHelper(context);
+    }
+
+    @After
+    public void borrar() {
+        cerrar();
+    }
+
+    private void abrir(boolean wal) {
+        fichero = new File(context.getCacheDir(), wal ? "wal_benchmark.db" : "rollback_benchmark.db");
+        SQLiteDatabase.deleteDatabase(fichero);
+        int flags = SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY
+                | (wal ? SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING : 0);
+        db = SQLiteDatabase.openDatabase(fichero.getPath(), null, flags);
+        // Misma configuración que la BBDD real (wal_autocheckpoint, journal_size_limit)
+        helper.onConfigure(db);
+        helper.onCreate(db);
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < PACIENTES; i++) {
+                ContentValues values = new ContentValues();
+                values.put(PacienteDBHelper.COLUMN_DNI, String.format("%08dX", i));
+                values.put(PacienteDBHelper.COLUMN_NOMBRE, "Paciente " + i);
+                values.put(PacienteDBHelper.COLUMN_APELLIDO1, "Apellido");
+                db.insertOrThrow(PacienteDBHelper.TABLE_PACIENTES, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void cerrar() {
+        if (db != null) {
+            db.close();
+            db = null;
+            SQLiteDatabase.deleteDatabase(fichero);
+        }
+    }
+
+    private long pragma(String nombre) {
+        Cursor cursor = db.rawQuery("PRAGMA " + nombre, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Escrituras en un hilo y lecturas en este hasta que termina el escritor */
+    private Medida medir() throws InterruptedException {
+        final AtomicInteger escritas = new AtomicInteger();
+        Thread escritor = new Thread(() -> {
+            for (int i = 0; i < SESIONES; i++) {
+                ContentValues values = new ContentValues();
+                values.put(PacienteDBHelper.COLUMN_PACIENTE_ID, 1 + i % PACIENTES);
+                values.put(PacienteDBHelper.COLUMN_DISPOSITIVO, "1");
+                values.put(PacienteDBHelper.COLUMN_FECHA, System.currentTimeMillis());
+                values.put(PacienteDBHelper.COLUMN_INTENSIDAD_SESION, 10);
+                values.put(PacienteDBHelper.COLUMN_TIEMPO_SESION, 20);
+                if (db.insert(PacienteDBHelper.TABLE_SESIONES, null, values) != -1) {
+                    escritas.incrementAndGet();
+                }
+            }
+        }, "escritor");
+
+        Medida m = new Medida();
+        long inicio = System.nanoTime();
+        escritor.start();
+
+        long totalNs = 0;
+        long maxNs = 0;
+        while (escritor.isAlive() || m.lecturas < 10) {
+            boolean escribiendo = escritor.isAlive();
+            long t0 = System.nanoTime();
+            Cursor cursor = db.rawQuery(PacienteDataManager.SQL_RESUMEN_PACIENTES, null);
+            try {
+                int filas = 0;
+                while (cursor.moveToNext()) filas++;
+                assertEquals(PACIENTES, filas);
+            } finally {
+                cursor.close();
+            }
+            long ns = System.nanoTime() - t0;
+            m.lecturas++;
+            totalNs += ns;
+            maxNs = Math.max(maxNs, ns);
+            if (escribiendo && escritor.isAlive()) m.lecturasDuranteEscritura++;
+        }
+        escritor.join();
+
+        m.escritas = escritas.get();
+        m.totalMs = (System.nanoTime() - inicio) / 1000000;
+        m.mediaUs = totalNs / m.lecturas / 1000;
+        m.maxUs = maxNs / 1000;
+        return m;
+    }
+
+    @Test
+    public void rollbackFrenteAWal() throws Exception {
+        abrir(false);
+        assertFalse(db.isWriteAheadLoggingEnabled());
+        Medida rollback = medir();
+        cerrar();
+
+        abrir(true);
+        assertTrue(db.isWriteAheadLoggingEnabled());
+        assertEquals(PacienteDBHelper.WAL_AUTOCHECKPOINT_PAGINAS, pragma("wal_autocheckpoint"));
+        assertEquals(PacienteDBHelper.WAL_LIMITE_TAMANO_BYTES, pragma("journal_size_limit"));
+        Medida wal = medir();
+
+        Log.i(TAG, "Rollback journal | " + rollback);
+        Log.i(TAG, "WAL              | " + wal);
+
+        assertEquals(SESIONES, rollback.escritas);
+        assertEquals(SESIONES, wal.escritas);
+        assertTrue("Ninguna lectura avanzó mientras se escribía con WAL", wal.lecturasDuranteEscritura > 0);
+
+        // El checkpoint deja el fichero principal al día y, desde SQLite 3.8.8, el -wal a 0 bytes
+        assertTrue(PacienteDBHelper.volcarWal(db));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            File ficheroWal = new File(fichero.getPath() + "-wal");
+            assertEquals(0, ficheroWal.length());
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.triviumgor.bluetooth;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cola de comandos de escritura de un dispositivo conectado.
+ *
+ * Antes las tramas se escribían en el OutputStream desde el click del botón:
+ * con un enlace RFCOMM lento la UI se quedaba bloqueada y dos pulsaciones
+ * seguidas podían mezclar bytes de dos tramas. Ahora cada conexión tiene su
+ * cola y un único hilo escritor ("BT-TX-<nombre>") que la vacía en orden:
+ * - Los comandos se escriben completos y en el orden en que se encolaron.
+ * - Cada comando devuelve un Future que se completa al terminar de escribirse
+ *   (o con la IOException si falla).
+ * - La cola es acotada: si está llena encolar() lanza
+ *   RejectedExecutionException (como el AbortPolicy de PacienteRepository) o
+ *   espera como mucho el tiempo indicado.
+ *
+ * Se crea al conectar (BluetoothController) y se cierra al desconectar
+ * (DispositivoState.resetConexion).
+ */
+public final class ColaComandos {
+
+    private static final String TAG = "ColaComandos";
+
+    // Una trama de sesión con la pausa del firmware antiguo tarda ~24 ms:
+    // 16 comandos pendientes son varios segundos de retraso, nunca debería llenarse
+    public static final int CAPACIDAD_DEFAULT = 16;
+
+    // Tiempo máximo que se espera a que salgan los comandos pendientes
+    // (p. ej. la parada 'C') antes de cerrar el socket
+    public static final long ESPERA_VACIADO_MS = 500;
+
+    /** Escritura de un comando; se ejecuta en el hilo escritor */
+    public interface Escritura {
+        void escribir(OutputStream os) throws IOException;
+    }
+
+    /**
+     * Fin de un comando, invocado en el hilo escritor.
+     * error es null si se escribió bien, la excepción si falló o
+     * CancellationException si se descartó al cerrar la cola.
+     */
+    public interface OnCompletado {
+        void onCompletado(Throwable error);
+    }
+
+    private final String nombre;
+    private final OutputStream salida;
+    private final ArrayBlockingQueue<Comando> cola;
+    private final Thread escritor;
+    private final Comando fin = new Comando("fin", null, null);
+    private volatile boolean cerrada = false;
+    // cerrar() ya no espera: lo que quede en la cola no se escribe
+    private volatile boolean descartando = false;
+
+    // Estadísticas: latencia desde que se encola hasta que termina de
+    // escribirse (incluye la espera en cola), en microsegundos
+    private final AtomicLong enviados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong rechazados = new AtomicLong();
+    private final AtomicLong latenciaTotalUs = new AtomicLong();
+    private final AtomicLong latenciaMaxUs = new AtomicLong();
+
+    public ColaComandos(String nombre, OutputStream salida) {
+        this(nombre, salida, CAPACIDAD_DEFAULT);
+    }
+
+    public ColaComandos(String nombre, OutputStream salida, int capacidad) {
+        this.nombre = nombre;
+        this.salida = salida;
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.escritor = new Thread(this::bucleEscritor, "BT-TX-" + nombre);
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    // ========================
+    // ENCOLAR
+    // ========================
+
+    /**
+     * Encola un comando sin bloquear al llamante.
+     * @param descripcion nombre del comando para el log ("sesion", "parada"...)
+     * @param callback puede ser null
+     * @return Future que se completa cuando el comando se ha escrito
+     * @throws RejectedExecutionException si la cola está llena o cerrada
+     */
+    public Future<Void> encolar(String descripcion, Escritura escritura, OnCompletado callback) {
+        Comando comando = new Comando(descripcion, escritura, callback);
+        if (cerrada || !cola.offer(comando)) {
+            throw rechazar(descripcion);
+        }
+        return comando;
+    }
+
+    /**
+     * Encola un comando esperando como mucho esperaMaxMs a que haya hueco.
+     * @throws RejectedExecutionException si sigue llena tras la espera o está cerrada
+     */
+    public Future<Void> encolar(String descripcion, Escritura escritura, OnCompletado callback,
+                                long esperaMaxMs) throws InterruptedException {
+        Comando comando = new Comando(descripcion, escritura, callback);
+        if (cerrada || !cola.offer(comando, esperaMaxMs, TimeUnit.MILLISECONDS)) {
+            throw rechazar(descripcion);
+        }
+        return comando;
+    }
+
+    private RejectedExecutionException rechazar(String descripcion) {
+        rechazados.incrementAndGet();
+        return new RejectedExecutionException(cerrada
+                ? "Cola de " + nombre + " cerrada"
+                : "Cola de " + nombre + " llena, descartado: " + descripcion);
+    }
+
+    // ========================
+    // HILO ESCRITOR
+    // ========================
+
+    private void bucleEscritor() {
+        while (true) {
+            Comando comando;
+            try {
+                comando = cola.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (comando == fin) break;
+            if (descartando) {
+                // Interrumpido por cerrar() mientras escribía: el siguiente
+                // ya no debe salir aunque lo haya tomado antes del drainTo
+                comando.cancel(false);
+                break;
+            }
+
+            comando.run();
+
+            if (comando.error == null) {
+                enviados.incrementAndGet();
+                registrarLatencia((System.nanoTime() - comando.encoladoNs) / 1000L);
+            } else {
+                fallidos.incrementAndGet();
+                Log.e(TAG, nombre + ": error al enviar " + comando.descripcion + ": "
+                        + comando.error.getMessage());
+            }
+        }
+        cancelarPendientes();
+    }
+
+    private void registrarLatencia(long us) {
+        latenciaTotalUs.addAndGet(us);
+        long max;
+        do {
+            max = latenciaMaxUs.get();
+        } while (us > max && !latenciaMaxUs.compareAndSet(max, us));
+    }
+
+    private void cancelarPendientes() {
+        List<Comando> pendientes = new ArrayList<>();
+        cola.drainTo(pendientes);
+        for (Comando c : pendientes) {
+            if (c != fin) c.cancel(false);
+        }
+    }
+
+    // ========================
+    // CIERRE
+    // ========================
+
+    /**
+     * Cierra la cola sin esperar: descarta los comandos pendientes.
+     * Para cuando el enlace ya se ha perdido.
+     */
+    public void cerrar() {
+        cerrar(0);
+    }
+
+    /**
+     * Deja de aceptar comandos y espera como mucho esperaMs a que se escriban
+     * los pendientes. Los que no hayan salido se cancelan. Llamar ANTES de
+     * cerrar el socket para que la parada llegue al dispositivo.
+     */
+    public void cerrar(long esperaMs) {
+        cerrada = true;
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMs);
+        try {
+            if (esperaMs > 0 && cola.offer(fin, esperaMs, TimeUnit.MILLISECONDS)) {
+                long restanteMs = TimeUnit.NANOSECONDS.toMillis(limite - System.nanoTime());
+                if (restanteMs > 0) escritor.join(restanteMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        descartando = true;
+        if (escritor.isAlive()) {
+            escritor.interrupt();
+        }
+        cancelarPendientes();
+    }
+
+    public boolean isCerrada() {
+        return cerrada;
+    }
+
+    // ========================
+    // ESTADÍSTICAS
+    // ========================
+
+    /** @return nº de comandos esperando en la cola */
+    public int getPendientes() {
+        int n = cola.size();
+        return cola.contains(fin) ? n - 1 : n;
+    }
+
+    public long getEnviados() {
+        return enviados.get();
+    }
+
+    public long getFallidos() {
+        return fallidos.get();
+    }
+
+    /** @return nº de comandos rechazados por cola llena o cerrada */
+    public long getRechazados() {
+        return rechazados.get();
+    }
+
+    /** @return latencia media encolar → escrito en microsegundos (0 si no hay datos) */
+    public long getLatenciaMediaUs() {
+        long n = enviados.get();
+        return n == 0 ? 0 : latenciaTotalUs.get() / n;
+    }
+
+    /** @return peor latencia encolar → escrito en microsegundos */
+    public long getLatenciaMaxUs() {
+        return latenciaMaxUs.get();
+    }
+
+    public void reiniciarEstadisticas() {
+        enviados.set(0);
+        fallidos.set(0);
+        rechazados.set(0);
+        latenciaTotalUs.set(0);
+        latenciaMaxUs.set(0);
+    }
+
+    /** Vuelca las estadísticas de la cola al log */
+    public void registrarEstadisticas() {
+        Log.d(TAG, nombre + " | enviados: " + getEnviados() +
+                " | fallidos: " + getFallidos() +
+                " | rechazados: " + getRechazados() +
+                " | media: " + getLatenciaMediaUs() + " us" +
+                " | máx: " + getLatenciaMaxUs() + " us" +
+                " | pendientes: " + getPendientes());
+    }
+
+    /**
+     * Comando encolado. Como las tareas de PacienteRepository, es un
+     * FutureTask: el llamante puede esperar o cancelar, y done() avisa al
+     * callback tanto si se escribe como si falla o se cancela.
+     */
+    private final class Comando extends FutureTask<Void> {
+        final String descripcion;
+        final long encoladoNs = System.nanoTime();
+        private final OnCompletado callback;
+        volatile Throwable error;
+
+        Comando(String descripcion, final Escritura escritura, OnCompletado callback) {
+            super(() -> {
+                escritura.escribir(salida);
+                return null;
+            });
+            this.descripcion = descripcion;
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                error = new CancellationException("Descartado al cerrar " + nombre);
+            } else {
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    error = e.getCause();
+                } catch (InterruptedException e) {
+                    // No ocurre: la tarea ya ha terminado
+                }
+            }
+            if (callback != null) {
+                callback.onCompletado(error);
+            }
+        }
+    }
+}
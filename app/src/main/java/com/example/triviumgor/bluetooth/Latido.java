@@ -0,0 +1,191 @@
+package com.example.triviumgor.bluetooth;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latido de aplicación sobre el canal de batería de una conexión.
+ *
+ * Antes un estimulador muerto solo se detectaba con el ACL_DISCONNECTED de
+ * Android (varios segundos) o cuando fallaba una escritura. Ahora, mientras
+ * está activo, cada latir() pide batería ('F') y cuenta como perdido el latido
+ * anterior si no llegó respuesta; con maxPerdidos seguidos (o una escritura
+ * fallida) el enlace se da por muerto y se avisa una sola vez.
+ *
+ * Cada cuánto se llama a latir() lo decide quien lo programa: el Latido no
+ * tiene reloj propio (ver TratamientoController.programarLatido).
+ *
+ * RTT: desde que el hilo escritor escribe la 'F' hasta que el hilo lector
+ * recibe la trama de batería (sin la espera en cola ni el despacho a la UI).
+ * El firmware no numera las respuestas: cada una se atribuye al último
+ * latido enviado. Se guardan los últimos RTT para dar percentiles.
+ *
+ * latir() lo llama el Planificador; onMensaje() el LectorDispositivo en su
+ * hilo (registrado con registrarDirecto).
+ */
+public final class Latido implements LectorDispositivo.Manejador {
+
+    private static final String TAG = "Latido";
+
+    // Últimos RTT guardados para los percentiles
+    private static final int MUESTRAS_RTT = 128;
+
+    /** Se invoca una vez al dar el enlace por muerto, en el hilo que lo detecta */
+    public interface OnEnlacePerdido {
+        void onEnlacePerdido(Latido latido, String motivo);
+    }
+
+    /** Se invoca en el hilo lector con cada RTT medido */
+    public interface OnRtt {
+        void onRtt(long rttUs);
+    }
+
+    private final String nombre;
+    private final ColaComandos cola;
+    private final int maxPerdidos;
+    private final OnEnlacePerdido callback;
+    private volatile OnRtt onRtt;
+
+    private final AtomicBoolean muerto = new AtomicBoolean(false);
+    private volatile boolean pendiente = false;
+    private volatile long enviadoNs = 0;
+    private volatile int perdidosSeguidos = 0;
+    private volatile int respuestasSeguidas = 0;
+
+    private final long[] rttUs = new long[MUESTRAS_RTT];
+    private int numRtt = 0;
+    private int siguienteRtt = 0;
+
+    // Estadísticas
+    private final AtomicLong latidos = new AtomicLong();
+    private final AtomicLong respuestas = new AtomicLong();
+    private final AtomicLong perdidos = new AtomicLong();
+
+    public Latido(String nombre, ColaComandos cola, int maxPerdidos, OnEnlacePerdido callback) {
+        this.nombre = nombre;
+        this.cola = cola;
+        this.maxPerdidos = maxPerdidos;
+        this.callback = callback;
+    }
+
+    /** Recibe cada RTT medido (p. ej. para la telemetría); null para ninguno */
+    public void setOnRtt(OnRtt onRtt) {
+        this.onRtt = onRtt;
+    }
+
+    /**
+     * Un latido: comprueba si llegó la respuesta al anterior y pide otra.
+     * @return false si el enlace está muerto
+     */
+    public boolean latir() {
+        if (muerto.get()) return false;
+
+        if (pendiente) {
+            perdidos.incrementAndGet();
+            respuestasSeguidas = 0;
+            if (++perdidosSeguidos >= maxPerdidos) {
+                declararMuerto(perdidosSeguidos + " latidos sin respuesta");
+                return false;
+            }
+        }
+
+        pendiente = true;
+        latidos.incrementAndGet();
+        try {
+            cola.encolar("latido", os -> {
+                enviadoNs = System.nanoTime();
+                os.write(TramaCodec.CMD_BATERIA);
+                os.flush();
+            }, error -> {
+                if (error != null && !(error instanceof CancellationException)) {
+                    declararMuerto("escritura fallida: " + error.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Cola llena o cerrada: cuenta como latido perdido en la siguiente vuelta
+            Log.w(TAG, nombre + ": latido no encolado: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /** Respuesta de batería (hilo lector) */
+    @Override
+    public void onMensaje(int tipo, int valor) {
+        // Cualquier respuesta demuestra que el enlace vive
+        perdidosSeguidos = 0;
+        respuestasSeguidas++;
+        respuestas.incrementAndGet();
+        if (pendiente) {
+            pendiente = false;
+            long envio = enviadoNs;
+            if (envio != 0) {
+                long rtt = (System.nanoTime() - envio) / 1000L;
+                registrarRtt(rtt);
+                OnRtt destino = onRtt;
+                if (destino != null) destino.onRtt(rtt);
+            }
+        }
+    }
+
+    private void declararMuerto(String motivo) {
+        if (muerto.compareAndSet(false, true)) {
+            Log.w(TAG, nombre + ": enlace muerto (" + motivo + ")");
+            callback.onEnlacePerdido(this, motivo);
+        }
+    }
+
+    private synchronized void registrarRtt(long us) {
+        rttUs[siguienteRtt] = us;
+        siguienteRtt = (siguienteRtt + 1) % MUESTRAS_RTT;
+        if (numRtt < MUESTRAS_RTT) numRtt++;
+    }
+
+    // ========================
+    // ESTADO Y ESTADÍSTICAS
+    // ========================
+
+    public boolean isMuerto() {
+        return muerto.get();
+    }
+
+    /** @return true si el último latido enviado aún no tiene respuesta */
+    public boolean isPendiente() {
+        return pendiente;
+    }
+
+    /** @return respuestas recibidas sin ningún latido perdido entre medias */
+    public int getRespuestasSeguidas() {
+        return respuestasSeguidas;
+    }
+
+    /**
+     * @param percentil 0..100 (50 = mediana)
+     * @return RTT en microsegundos de las últimas respuestas; -1 si no hay datos
+     */
+    public synchronized long getRttPercentilUs(int percentil) {
+        if (numRtt == 0) return -1;
+        long[] copia = Arrays.copyOf(rttUs, numRtt);
+        Arrays.sort(copia);
+        int i = (int) Math.ceil(percentil / 100.0 * numRtt) - 1;
+        return copia[Math.max(0, Math.min(numRtt - 1, i))];
+    }
+
+    public long getLatidos() { return latidos.get(); }
+    public long getRespuestas() { return respuestas.get(); }
+    public long getPerdidos() { return perdidos.get(); }
+
+    /** Vuelca al log latidos, pérdidas y percentiles de RTT */
+    public void registrarEstadisticas() {
+        Log.d(TAG, nombre + " | latidos: " + latidos.get() +
+                " | respuestas: " + respuestas.get() +
+                " | perdidos: " + perdidos.get() +
+                " | RTT p50: " + getRttPercentilUs(50) + " us" +
+                " | p90: " + getRttPercentilUs(90) + " us" +
+                " | p99: " + getRttPercentilUs(99) + " us");
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.triviumgor.bluetooth;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Único lector del InputStream de una conexión.
+ *
+ * Antes solo leía el BatteryReaderThread, que terminaba al recibir una lectura
+ * de batería y se volvía a crear con cada petición: los bytes que llegaban
+ * entre un hilo y el siguiente se perdían y no había forma de leer otras
+ * respuestas. Ahora hay un hilo "BT-RX-<nombre>" que vive lo mismo que la
+ * conexión, separa los mensajes con ParserMensajes y los reparte a los
+ * manejadores registrados por tipo.
+ *
+ * Los mensajes pasan por una cola sin bloqueos (ConcurrentLinkedQueue) y se
+ * entregan en el Executor de despacho: un manejador lento no frena la lectura
+ * y un tipo de mensaje nuevo solo necesita registrar su manejador, no otro hilo.
+ * Si no hay manejador para un tipo, el mensaje se descarta.
+ *
+ * Los manejadores directos (registrarDirecto) se ejecutan en el propio hilo
+ * lector, sin pasar por la cola: sirven para medir tiempos (Latido) y deben
+ * volver enseguida.
+ */
+public final class LectorDispositivo extends Thread implements ParserMensajes.Receptor {
+
+    private static final String TAG = "LectorDispositivo";
+
+    /** Recibe los mensajes de un tipo, en el Executor de despacho */
+    public interface Manejador {
+        void onMensaje(int tipo, int valor);
+    }
+
+    private final String nombre;
+    private final InputStream entrada;
+    private final Executor despacho;
+    private final ParserMensajes parser = new ParserMensajes();
+
+    private final List<List<Manejador>> manejadores;
+    private final List<List<Manejador>> directos;
+    private final ConcurrentLinkedQueue<Mensaje> pendientes = new ConcurrentLinkedQueue<>();
+    // Evita encolar un despacho por mensaje: uno vacía todos los pendientes
+    private final AtomicBoolean despachoProgramado = new AtomicBoolean(false);
+    private final Runnable vaciarPendientes = this::vaciarPendientes;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param despacho donde se ejecutan los manejadores (p. ej. mainHandler::post)
+     */
+    public LectorDispositivo(String nombre, InputStream entrada, Executor despacho) {
+        super("BT-RX-" + nombre);
+        this.nombre = nombre;
+        this.entrada = entrada;
+        this.despacho = despacho;
+        this.manejadores = new ArrayList<>(ParserMensajes.NUM_TIPOS);
+        this.directos = new ArrayList<>(ParserMensajes.NUM_TIPOS);
+        for (int i = 0; i < ParserMensajes.NUM_TIPOS; i++) {
+            manejadores.add(new CopyOnWriteArrayList<Manejador>());
+            directos.add(new CopyOnWriteArrayList<Manejador>());
+        }
+        setDaemon(true);
+    }
+
+    public void registrar(int tipo, Manejador manejador) {
+        List<Manejador> lista = manejadores.get(tipo);
+        if (!lista.contains(manejador)) {
+            lista.add(manejador);
+        }
+    }
+
+    public void quitar(int tipo, Manejador manejador) {
+        manejadores.get(tipo).remove(manejador);
+    }
+
+    /** Registra un manejador que se ejecuta en el hilo lector */
+    public void registrarDirecto(int tipo, Manejador manejador) {
+        List<Manejador> lista = directos.get(tipo);
+        if (!lista.contains(manejador)) {
+            lista.add(manejador);
+        }
+    }
+
+    public void quitarDirecto(int tipo, Manejador manejador) {
+        directos.get(tipo).remove(manejador);
+    }
+
+    /**
+     * Detiene el lector. El read() bloqueado termina al cerrar el socket
+     * (BluetoothController.desconectar) o al perderse el enlace.
+     */
+    public void cerrar() {
+        running = false;
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[64];
+
+        while (running) {
+            try {
+                int bytes = entrada.read(buffer);
+                if (bytes < 0) {
+                    break; // Stream cerrado
+                }
+                parser.alimentar(buffer, 0, bytes, this);
+            } catch (IOException e) {
+                break;
+            }
+        }
+        Log.d(TAG, nombre + " terminado | baterías: "
+                + parser.getMensajes(ParserMensajes.TIPO_BATERIA)
+                + " | bytes descartados: " + parser.getBytesDescartados());
+    }
+
+    /** Llamado por el parser en el hilo lector */
+    @Override
+    public void onMensaje(int tipo, int valor) {
+        for (Manejador directo : directos.get(tipo)) {
+            directo.onMensaje(tipo, valor);
+        }
+        if (manejadores.get(tipo).isEmpty()) return;
+
+        pendientes.offer(new Mensaje(tipo, valor));
+        if (despachoProgramado.compareAndSet(false, true)) {
+            despacho.execute(vaciarPendientes);
+        }
+    }
+
+    private void vaciarPendientes() {
+        // Desmarcar antes de vaciar: un mensaje que llegue durante el bucle
+        // programa otro despacho en vez de quedarse en la cola
+        despachoProgramado.set(false);
+        Mensaje m;
+        while ((m = pendientes.poll()) != null) {
+            for (Manejador manejador : manejadores.get(m.tipo)) {
+                manejador.onMensaje(m.tipo, m.valor);
+            }
+        }
+    }
+
+    private static final class Mensaje {
+        final int tipo;
+        final int valor;
+
+        Mensaje(int tipo, int valor) {
+            this.tipo = tipo;
+            this.valor = valor;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.triviumgor.bluetooth;
+
+import java.util.Arrays;
+
+/**
+ * Parser incremental de los mensajes que envía el estimulador.
+ *
+ * El tipo de mensaje lo da su primer byte (tabla TIPO_POR_CABECERA) y cada
+ * tipo tiene longitud fija. Tipos conocidos:
+ * - TIPO_BATERIA (4 bytes): byteAlto (2 o 3) + byteBajo (0..255) + 2 bytes de
+ *   relleno. Valor = byteAlto * 256 + byteBajo (ADC de 10 bits, 512..1023).
+ * Para un tipo nuevo (confirmaciones, errores...) basta con añadir su
+ * cabecera, su longitud y su decodificación en decodificar().
+ *
+ * Los bytes que llegan del InputStream se copian a un buffer circular y se
+ * consumen con una máquina de estados:
+ * - Un byte que no es cabecera se descarta y se sigue por el siguiente
+ *   (antes se tiraba el buffer entero y se perdían lecturas válidas).
+ * - Un mensaje partido entre dos read() se queda en el buffer hasta que
+ *   llega el resto.
+ * - No crea objetos ni escribe en el log por mensaje: solo cuenta.
+ *
+ * No es thread-safe: lo usa únicamente el hilo lector de la conexión.
+ */
+public final class ParserMensajes {
+
+    public static final int TIPO_BATERIA = 0;
+    public static final int NUM_TIPOS = 1;
+
+    private static final int SIN_TIPO = -1;
+
+    // Tipo de mensaje según el primer byte (SIN_TIPO = no es cabecera)
+    private static final int[] TIPO_POR_CABECERA = new int[256];
+    // Longitud total del mensaje según el tipo
+    private static final int[] LONGITUD_POR_TIPO = {4};
+
+    static {
+        Arrays.fill(TIPO_POR_CABECERA, SIN_TIPO);
+        TIPO_POR_CABECERA[2] = TIPO_BATERIA;
+        TIPO_POR_CABECERA[3] = TIPO_BATERIA;
+    }
+
+    // Potencia de 2 para calcular posiciones con máscara
+    private static final int CAPACIDAD = 64;
+    private static final int MASCARA = CAPACIDAD - 1;
+
+    /** Recibe cada mensaje completo, en el hilo que llama a alimentar() */
+    public interface Receptor {
+        void onMensaje(int tipo, int valor);
+    }
+
+    private final byte[] anillo = new byte[CAPACIDAD];
+    private int inicio = 0;     // siguiente byte a procesar
+    private int disponibles = 0;
+
+    // Estadísticas (solo las escribe el hilo lector)
+    private final long[] mensajesPorTipo = new long[NUM_TIPOS];
+    private volatile long bytesDescartados = 0;
+
+    /**
+     * Procesa los bytes recibidos en un read().
+     * @return nº de mensajes entregados al receptor
+     */
+    public int alimentar(byte[] datos, int offset, int longitud, Receptor receptor) {
+        int mensajes = 0;
+        int fin = offset + longitud;
+        int i = offset;
+        while (i < fin) {
+            // Copiar al anillo lo que quepa y procesar; así nunca se desborda
+            // aunque un read() traiga más bytes que la capacidad
+            while (i < fin && disponibles < CAPACIDAD) {
+                anillo[(inicio + disponibles) & MASCARA] = datos[i++];
+                disponibles++;
+            }
+            mensajes += procesar(receptor);
+        }
+        return mensajes;
+    }
+
+    private int procesar(Receptor receptor) {
+        int mensajes = 0;
+        while (disponibles > 0) {
+            int tipo = TIPO_POR_CABECERA[anillo[inicio] & 0xFF];
+            if (tipo == SIN_TIPO) {
+                // Ruido, byte de un mensaje desconocido o residuo tras reconexión
+                consumir(1);
+                bytesDescartados++;
+                continue;
+            }
+            int longitud = LONGITUD_POR_TIPO[tipo];
+            if (disponibles < longitud) {
+                break; // Mensaje incompleto: esperar al siguiente read()
+            }
+            int valor = decodificar(tipo);
+            consumir(longitud);
+            mensajesPorTipo[tipo]++;
+            mensajes++;
+            receptor.onMensaje(tipo, valor);
+        }
+        return mensajes;
+    }
+
+    /** Valor del mensaje que empieza en inicio (ya completo en el anillo) */
+    private int decodificar(int tipo) {
+        switch (tipo) {
+            case TIPO_BATERIA:
+            default:
+                int alto = anillo[inicio];
+                int bajo = anillo[(inicio + 1) & MASCARA] & 0xFF;
+                return alto * 256 + bajo;
+        }
+    }
+
+    private void consumir(int n) {
+        inicio = (inicio + n) & MASCARA;
+        disponibles -= n;
+    }
+
+    /** Descarta los bytes pendientes (p. ej. al cambiar de conexión) */
+    public void reiniciar() {
+        inicio = 0;
+        disponibles = 0;
+    }
+
+    /** @return nº de mensajes completos de un tipo (solo fiable desde el hilo lector) */
+    public long getMensajes(int tipo) {
+        return mensajesPorTipo[tipo];
+    }
+
+    /** @return nº de bytes descartados al buscar la cabecera */
+    public long getBytesDescartados() {
+        return bytesDescartados;
+    }
+}
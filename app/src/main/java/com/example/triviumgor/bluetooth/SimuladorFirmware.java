@@ -0,0 +1,303 @@
+package com.example.triviumgor.bluetooth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estimulador simulado en memoria, para probar sin hardware.
+ *
+ * Implementa Transporte: lo que se escribe en getSalida() lo interpreta como
+ * el firmware y las respuestas se leen de getEntrada().
+ * - Trama de sesión 'A' + 22 dígitos + 'B' (ver TramaCodec): arranca o
+ *   actualiza la sesión. Una trama mal formada se descarta.
+ * - 'C': para la sesión.
+ * - 'F': responde con una trama de batería (ver ParserMensajes) tras la
+ *   latencia configurada más un jitter aleatorio.
+ * - Con probabilidad de pérdida > 0 se descartan bytes recibidos y
+ *   respuestas, como en un enlace con ruido.
+ *
+ * No usa clases de Android: sirve para medir con muchos dispositivos
+ * simulados a la vez en una JVM normal. Las respuestas de todos los
+ * simuladores salen de un único hilo ("SimFW").
+ */
+public final class SimuladorFirmware implements Transporte {
+
+    private static final int DIGITOS_TRAMA = TramaCodec.LONGITUD_TRAMA_SESION - 2;
+
+    private static final ScheduledThreadPoolExecutor RESPUESTAS = crearProgramador();
+
+    private final String direccion;
+    private final Random random;
+    private final Entrada entrada = new Entrada();
+    private final Salida salida = new Salida();
+
+    // Configuración
+    private volatile long latenciaMs = 20;
+    private volatile long jitterMs = 10;
+    private volatile double probabilidadPerdida = 0;
+    private volatile int carga = 900;
+
+    // Estado del firmware (solo se toca con el monitor de salida)
+    private final byte[] digitos = new byte[DIGITOS_TRAMA];
+    private int digitosLeidos = -1; // -1 = fuera de trama
+    private volatile boolean sesionActiva = false;
+    private volatile int intensidad = 0;
+    private volatile int duracionMin = 0;
+
+    // Estadísticas
+    private final AtomicLong tramasValidas = new AtomicLong();
+    private final AtomicLong tramasInvalidas = new AtomicLong();
+    private final AtomicLong paradas = new AtomicLong();
+    private final AtomicLong peticionesBateria = new AtomicLong();
+    private final AtomicLong perdidos = new AtomicLong();
+
+    private volatile boolean cerrado = false;
+
+    public SimuladorFirmware(String direccion) {
+        this(direccion, direccion.hashCode());
+    }
+
+    /** @param semilla para repetir la misma secuencia de jitter y pérdidas */
+    public SimuladorFirmware(String direccion, long semilla) {
+        this.direccion = direccion;
+        this.random = new Random(semilla);
+    }
+
+    private static ScheduledThreadPoolExecutor crearProgramador() {
+        AtomicInteger n = new AtomicInteger(1);
+        ScheduledThreadPoolExecutor ex = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "SimFW-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        ex.setRemoveOnCancelPolicy(true);
+        return ex;
+    }
+
+    // ========================
+    // CONFIGURACIÓN
+    // ========================
+
+    /** Latencia de las respuestas: latenciaMs + [0, jitterMs) aleatorio */
+    public void setLatencia(long latenciaMs, long jitterMs) {
+        this.latenciaMs = latenciaMs;
+        this.jitterMs = jitterMs;
+    }
+
+    /** Probabilidad (0..1) de perder cada byte recibido y cada respuesta */
+    public void setProbabilidadPerdida(double probabilidad) {
+        this.probabilidadPerdida = probabilidad;
+    }
+
+    /** Valor de batería que se devuelve (ADC, 512..1023) */
+    public void setCarga(int carga) {
+        this.carga = carga;
+    }
+
+    // ========================
+    // TRANSPORTE
+    // ========================
+
+    @Override
+    public String getDireccion() {
+        return direccion;
+    }
+
+    @Override
+    public InputStream getEntrada() {
+        return entrada;
+    }
+
+    @Override
+    public OutputStream getSalida() {
+        return salida;
+    }
+
+    @Override
+    public void cerrar() {
+        cerrado = true;
+        entrada.cerrar();
+    }
+
+    // ========================
+    // FIRMWARE
+    // ========================
+
+    /** Procesa un byte recibido (con el monitor de salida tomado) */
+    private void recibir(byte b) {
+        if (perder()) {
+            perdidos.incrementAndGet();
+            return;
+        }
+
+        if (digitosLeidos >= 0) {
+            if (digitosLeidos < DIGITOS_TRAMA) {
+                if (b >= '0' && b <= '9') {
+                    digitos[digitosLeidos++] = b;
+                    return;
+                }
+            } else if (b == TramaCodec.CMD_FIN) {
+                aplicarTrama();
+                digitosLeidos = -1;
+                return;
+            }
+            // Byte inesperado dentro de la trama: se descarta lo leído y se
+            // interpreta el byte como comando
+            tramasInvalidas.incrementAndGet();
+            digitosLeidos = -1;
+        }
+
+        switch (b) {
+            case TramaCodec.CMD_INICIO:
+                digitosLeidos = 0;
+                break;
+            case TramaCodec.CMD_PARADA:
+                sesionActiva = false;
+                paradas.incrementAndGet();
+                break;
+            case TramaCodec.CMD_BATERIA:
+                peticionesBateria.incrementAndGet();
+                responderBateria();
+                break;
+            default:
+                // Byte suelto desconocido: el firmware lo ignora
+                break;
+        }
+    }
+
+    /** Dígitos: anchoPulso x2 (4), periodo x2 (4), intensidad x2 (2), duración (2) */
+    private void aplicarTrama() {
+        int i1 = numero(16, 2);
+        int i2 = numero(18, 2);
+        if (i1 != i2) {
+            tramasInvalidas.incrementAndGet();
+            return;
+        }
+        intensidad = i1;
+        duracionMin = numero(20, 2);
+        sesionActiva = true;
+        tramasValidas.incrementAndGet();
+    }
+
+    private int numero(int desde, int longitud) {
+        int valor = 0;
+        for (int i = desde; i < desde + longitud; i++) {
+            valor = valor * 10 + (digitos[i] - '0');
+        }
+        return valor;
+    }
+
+    private void responderBateria() {
+        if (perder()) {
+            perdidos.incrementAndGet();
+            return;
+        }
+        long jitter = jitterMs;
+        long retraso = latenciaMs + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+        final int valor = carga;
+        RESPUESTAS.schedule(() -> entrada.escribir(new byte[]{
+                (byte) (valor >> 8), (byte) valor, 0, 0}), retraso, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean perder() {
+        double p = probabilidadPerdida;
+        return p > 0 && random.nextDouble() < p;
+    }
+
+    // ========================
+    // ESTADO Y ESTADÍSTICAS
+    // ========================
+
+    public boolean isSesionActiva() { return sesionActiva; }
+    public int getIntensidad() { return intensidad; }
+    public int getDuracionMin() { return duracionMin; }
+
+    public long getTramasValidas() { return tramasValidas.get(); }
+    public long getTramasInvalidas() { return tramasInvalidas.get(); }
+    public long getParadas() { return paradas.get(); }
+    public long getPeticionesBateria() { return peticionesBateria.get(); }
+    /** @return bytes recibidos y respuestas descartados por la pérdida simulada */
+    public long getPerdidos() { return perdidos.get(); }
+
+    // ========================
+    // STREAMS
+    // ========================
+
+    private final class Salida extends OutputStream {
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (cerrado) throw new IOException("Simulador cerrado");
+            recibir((byte) b);
+        }
+
+        @Override
+        public synchronized void write(byte[] datos, int offset, int longitud) throws IOException {
+            if (cerrado) throw new IOException("Simulador cerrado");
+            for (int i = offset; i < offset + longitud; i++) {
+                recibir(datos[i]);
+            }
+        }
+    }
+
+    /** Bytes pendientes de leer; read() bloquea hasta que hay datos o se cierra */
+    private static final class Entrada extends InputStream {
+        private final byte[] anillo = new byte[256];
+        private int inicio = 0;
+        private int disponibles = 0;
+        private boolean cerrada = false;
+
+        synchronized void escribir(byte[] datos) {
+            for (byte b : datos) {
+                if (disponibles == anillo.length) break; // Lleno: se pierde, como un buffer BT
+                anillo[(inicio + disponibles) % anillo.length] = b;
+                disponibles++;
+            }
+            notifyAll();
+        }
+
+        synchronized void cerrar() {
+            cerrada = true;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            byte[] uno = new byte[1];
+            return read(uno, 0, 1) < 0 ? -1 : uno[0] & 0xFF;
+        }
+
+        @Override
+        public synchronized int read(byte[] destino, int offset, int longitud) throws IOException {
+            if (longitud == 0) return 0;
+            while (disponibles == 0 && !cerrada) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Lectura interrumpida", e);
+                }
+            }
+            if (disponibles == 0) {
+                return -1; // Cerrada y sin datos
+            }
+            int n = Math.min(longitud, disponibles);
+            for (int i = 0; i < n; i++) {
+                destino[offset + i] = anillo[inicio];
+                inicio = (inicio + 1) % anillo.length;
+            }
+            disponibles -= n;
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            return disponibles;
+        }
+    }
+}
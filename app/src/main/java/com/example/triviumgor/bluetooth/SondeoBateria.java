@@ -0,0 +1,157 @@
+package com.example.triviumgor.bluetooth;
+
+import android.util.Log;
+
+/**
+ * Intervalo adaptativo del sondeo de batería de un dispositivo.
+ *
+ * Antes se pedía batería cada 30 s a todos los dispositivos, con sesión o
+ * sin ella: en una jornada de 8 horas son ~1000 peticiones por dispositivo
+ * para lecturas que apenas cambian. Ahora el intervalo sale de la descarga
+ * observada:
+ * - En reposo, si la lectura no cambia (más allá del ruido del ADC), el
+ *   intervalo se duplica hasta INTERVALO_MAX_MS.
+ * - Si se está descargando, se estima la velocidad (media exponencial) y se
+ *   sondea unas PETICIONES_HASTA_BAJA veces antes de llegar al nivel BAJA.
+ * - Con sesión activa el intervalo no pasa de INTERVALO_SESION_MS, y cerca
+ *   del umbral BAJA se usa INTERVALO_MIN_MS.
+ *
+ * Proxy de energía: peticiones 'F' enviadas por hora, del sondeo y del
+ * latido (cada una despierta la radio en los dos extremos).
+ *
+ * Con sesión y latido activos el sondeo no envía nada: las respuestas del
+ * latido ya traen la batería y entran por registrarLectura, y el coste lo
+ * pone el latido (~3600 peticiones/hora con LATIDO_PERIODO_ESTABLE_MS de
+ * 1 s, frente a ~240 del sondeo a INTERVALO_SESION_MS). Es el precio de
+ * detectar un enlace muerto en menos de 2 s; con el latido desactivado
+ * (TratamientoController.setLatido con periodo 0) la sesión se sondea a
+ * INTERVALO_SESION_MS y la caída solo se detecta por ACL_DISCONNECTED o
+ * por una escritura fallida.
+ *
+ * Las lecturas llegan desde el hilo principal y el intervalo se pide desde
+ * el Planificador: los métodos están sincronizados.
+ */
+public final class SondeoBateria {
+
+    private static final String TAG = "SondeoBateria";
+
+    public static final long INTERVALO_MIN_MS = 10000;
+    public static final long INTERVALO_BASE_MS = 30000;
+    public static final long INTERVALO_SESION_MS = 15000;
+    public static final long INTERVALO_MAX_MS = 300000;
+
+    // Por encima del umbral BAJA a menos de este margen se sondea al mínimo
+    public static final int MARGEN_BAJA = 15;
+    // Variación de la lectura que se considera ruido del ADC
+    private static final int VARIACION_ESTABLE = 2;
+    private static final int PETICIONES_HASTA_BAJA = 8;
+    private static final double ALFA = 0.3;
+    private static final long HORA_MS = 3600000L;
+
+    private final String nombre;
+    private final int umbralBaja;
+    private final long inicioMs;
+
+    private long intervaloMs = INTERVALO_BASE_MS;
+    private int cargaAnterior = -1;
+    private long instanteAnterior = 0;
+    private double descargaPorMs = 0;   // media exponencial; > 0 = descargando
+    private boolean hayDescarga = false;
+    private long sondeos = 0;
+    private long latidos = 0;
+
+    /**
+     * @param umbralBaja lectura por debajo de la cual el nivel es BAJA
+     * @param ahoraMs    instante de inicio (Reloj del Planificador)
+     */
+    public SondeoBateria(String nombre, int umbralBaja, long ahoraMs) {
+        this.nombre = nombre;
+        this.umbralBaja = umbralBaja;
+        this.inicioMs = ahoraMs;
+    }
+
+    /**
+     * Registra una lectura válida. Las que llegan muy seguidas (respuestas
+     * del latido) no cambian la estimación: se ignoran hasta pasar medio
+     * intervalo mínimo desde la anterior.
+     */
+    public synchronized void registrarLectura(int carga, boolean enSesion, long ahoraMs) {
+        if (cargaAnterior < 0) {
+            cargaAnterior = carga;
+            instanteAnterior = ahoraMs;
+            return;
+        }
+        long dt = ahoraMs - instanteAnterior;
+        if (dt < INTERVALO_MIN_MS / 2) return;
+
+        double tasa = (cargaAnterior - carga) / (double) dt;
+        descargaPorMs = hayDescarga ? descargaPorMs + ALFA * (tasa - descargaPorMs) : tasa;
+        hayDescarga = true;
+
+        if (!enSesion && Math.abs(carga - cargaAnterior) <= VARIACION_ESTABLE) {
+            intervaloMs = Math.min(intervaloMs * 2, INTERVALO_MAX_MS);
+        } else if (descargaPorMs > 0) {
+            // Tiempo previsto hasta el umbral BAJA, repartido en varias peticiones
+            long hastaBaja = (long) ((carga - umbralBaja) / descargaPorMs);
+            intervaloMs = limitar(hastaBaja / PETICIONES_HASTA_BAJA);
+        } else {
+            intervaloMs = INTERVALO_BASE_MS;
+        }
+
+        cargaAnterior = carga;
+        instanteAnterior = ahoraMs;
+    }
+
+    /** @return espera hasta la siguiente petición */
+    public synchronized long getIntervaloMs(boolean enSesion) {
+        if (cargaAnterior >= 0 && cargaAnterior < umbralBaja + MARGEN_BAJA) {
+            return INTERVALO_MIN_MS;
+        }
+        return enSesion ? Math.min(intervaloMs, INTERVALO_SESION_MS) : intervaloMs;
+    }
+
+    /** Cuenta una petición enviada (para el proxy de energía) */
+    public synchronized void contarSondeo() {
+        sondeos++;
+    }
+
+    /** Cuenta una petición del latido (para el proxy de energía) */
+    public synchronized void contarLatido() {
+        latidos++;
+    }
+
+    private static long limitar(long ms) {
+        return Math.max(INTERVALO_MIN_MS, Math.min(INTERVALO_MAX_MS, ms));
+    }
+
+    // ========================
+    // ESTADÍSTICAS
+    // ========================
+
+    public synchronized long getSondeos() {
+        return sondeos;
+    }
+
+    public synchronized long getLatidos() {
+        return latidos;
+    }
+
+    /** @return peticiones (sondeo + latido) por hora desde el inicio (proxy de energía) */
+    public synchronized double getPeticionesPorHora(long ahoraMs) {
+        long transcurrido = ahoraMs - inicioMs;
+        return transcurrido <= 0 ? 0 : (sondeos + latidos) * (double) HORA_MS / transcurrido;
+    }
+
+    /** @return descarga estimada en unidades del ADC por hora (0 si no hay datos) */
+    public synchronized double getDescargaPorHora() {
+        return hayDescarga ? descargaPorMs * HORA_MS : 0;
+    }
+
+    public synchronized void registrarEstadisticas(long ahoraMs) {
+        Log.d(TAG, nombre + " | intervalo: " + intervaloMs + " ms" +
+                " | sondeos: " + sondeos +
+                " | latidos: " + latidos +
+                " | peticiones/hora: " + String.format("%.1f", getPeticionesPorHora(ahoraMs)) +
+                " | descarga: " + String.format("%.2f", getDescargaPorHora()) + " /h");
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.triviumgor.bluetooth;
+
+/**
+ * Codificación de las tramas que se envían al estimulador.
+ *
+ * Trama de sesión (24 bytes ASCII):
+ *   'A' + anchoPulso(4 díg. x2) + periodo(4 díg. x2) + intensidad(2 díg. x2) + duración(2 díg.) + 'B'
+ *
+ * Cada dispositivo tiene su propio TramaCodec (DispositivoState.getCodec())
+ * y la trama se escribe siempre en el mismo buffer: iniciar o cambiar la
+ * intensidad no crea objetos. No es thread-safe; el buffer solo es válido
+ * hasta la siguiente llamada a codificarSesion(). Por eso la trama se codifica
+ * dentro del comando, en el hilo escritor de ColaComandos.
+ */
+public final class TramaCodec {
+
+    // Comandos de un byte
+    public static final byte CMD_INICIO = 0x41;  // 'A'
+    public static final byte CMD_FIN = 0x42;     // 'B'
+    public static final byte CMD_PARADA = 0x43;  // 'C'
+    public static final byte CMD_BATERIA = 0x46; // 'F'
+
+    public static final int ANCHO_PULSO_DEFAULT = 4;  // ms
+    public static final int PERIODO_MS_DEFAULT = 100; // 100 ms = 10 Hz
+
+    public static final int LONGITUD_TRAMA_SESION = 24;
+
+    // Pausa entre bytes que necesita el firmware antiguo para procesar cada
+    // byte. Con 0 la trama se envía en una sola escritura.
+    public static final int PAUSA_ENTRE_BYTES_LEGACY_MS = 1;
+
+    private final byte[] buffer = new byte[LONGITUD_TRAMA_SESION];
+
+    /**
+     * Codifica la trama de sesión en el buffer interno.
+     * @return nº de bytes escritos en getBuffer()
+     * @throws IllegalArgumentException si un valor no cabe en sus dígitos
+     */
+    public int codificarSesion(int intensidad, int duracionMin) {
+        return codificarSesion(buffer, 0, intensidad, duracionMin);
+    }
+
+    /** Buffer con la última trama codificada */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Comprueba que intensidad y duración caben en la trama sin codificarla.
+     * Permite rechazar los parámetros en el llamante antes de encolar el envío.
+     * @throws IllegalArgumentException si un valor no cabe en sus dígitos
+     */
+    public static void validarSesion(int intensidad, int duracionMin) {
+        if (intensidad < 0 || intensidad > 99) {
+            throw new IllegalArgumentException("Valor fuera de rango para la trama: " + intensidad);
+        }
+        if (duracionMin < 0 || duracionMin > 99) {
+            throw new IllegalArgumentException("Valor fuera de rango para la trama: " + duracionMin);
+        }
+    }
+
+    /**
+     * Codifica la trama de sesión en un array dado.
+     * @return nº de bytes escritos a partir de offset
+     */
+    public static int codificarSesion(byte[] destino, int offset, int intensidad, int duracionMin) {
+        if (destino.length - offset < LONGITUD_TRAMA_SESION) {
+            throw new IllegalArgumentException("Buffer demasiado pequeño para la trama");
+        }
+        int index = offset;
+
+        // Comando inicio
+        destino[index++] = CMD_INICIO;
+
+        // Ancho de pulso y periodo, repetidos 2 veces cada uno
+        index = escribirDigitos(destino, index, ANCHO_PULSO_DEFAULT, 4);
+        index = escribirDigitos(destino, index, ANCHO_PULSO_DEFAULT, 4);
+        index = escribirDigitos(destino, index, PERIODO_MS_DEFAULT, 4);
+        index = escribirDigitos(destino, index, PERIODO_MS_DEFAULT, 4);
+
+        // Intensidad (x2) y duración en minutos
+        index = escribirDigitos(destino, index, intensidad, 2);
+        index = escribirDigitos(destino, index, intensidad, 2);
+        index = escribirDigitos(destino, index, duracionMin, 2);
+
+        // Comando fin
+        destino[index++] = CMD_FIN;
+
+        return index - offset;
+    }
+
+    /**
+     * Escribe un valor en ASCII con un nº fijo de dígitos (con ceros a la izquierda).
+     * Antes un valor fuera de rango generaba caracteres no numéricos en la
+     * trama; ahora se rechaza.
+     */
+    private static int escribirDigitos(byte[] destino, int index, int valor, int digitos) {
+        int maximo = digitos == 4 ? 9999 : 99;
+        if (valor < 0 || valor > maximo) {
+            throw new IllegalArgumentException("Valor fuera de rango para la trama: " + valor);
+        }
+        for (int i = index + digitos - 1; i >= index; i--) {
+            destino[i] = (byte) ('0' + valor % 10);
+            valor /= 10;
+        }
+        return index + digitos;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.triviumgor.bluetooth;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Última trama de sesión pedida para un dispositivo, para agrupar cambios
+ * rápidos de intensidad.
+ *
+ * Con el firmware antiguo cada trama tarda ~24 ms en salir (pausa entre
+ * bytes) y varias pulsaciones seguidas de "Actualizar" se encolaban una
+ * detrás de otra: el dispositivo iba por detrás de la pantalla. Ahora solo
+ * hay como mucho UNA trama de sesión en la ColaComandos; si llegan cambios
+ * mientras espera, se sobrescriben los parámetros y el comando encolado
+ * envía los últimos al ejecutarse.
+ *
+ * Intensidad y duración se guardan juntas en un int para leerlas de forma
+ * atómica sin crear objetos.
+ */
+public final class TramaSesionPendiente {
+
+    private final AtomicInteger parametros = new AtomicInteger();
+    private final AtomicBoolean encolada = new AtomicBoolean(false);
+
+    private final AtomicLong sustituidas = new AtomicLong();
+
+    /**
+     * Guarda los parámetros de la nueva trama.
+     * @return true si el llamante debe encolar un comando; false si ya hay uno
+     *         pendiente, que enviará estos parámetros (la trama anterior queda sustituida)
+     */
+    public boolean actualizar(int intensidad, int duracionMin) {
+        parametros.set((intensidad << 16) | (duracionMin & 0xFFFF));
+        if (encolada.compareAndSet(false, true)) {
+            return true;
+        }
+        sustituidas.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Toma los últimos parámetros. Lo llama el comando al ejecutarse en el
+     * hilo escritor: a partir de aquí un cambio nuevo necesita otro comando.
+     * @return parámetros empaquetados (ver intensidad() y duracion())
+     */
+    public int tomar() {
+        encolada.set(false);
+        return parametros.get();
+    }
+
+    /** Olvida el comando pendiente (cola cerrada o comando rechazado) */
+    public void descartar() {
+        encolada.set(false);
+    }
+
+    public static int intensidad(int empaquetado) {
+        return empaquetado >>> 16;
+    }
+
+    public static int duracion(int empaquetado) {
+        return empaquetado & 0xFFFF;
+    }
+
+    /** @return nº de tramas que no llegaron a enviarse por llegar otra más nueva */
+    public long getSustituidas() {
+        return sustituidas.get();
+    }
+
+    public void reiniciarEstadisticas() {
+        sustituidas.set(0);
+    }
+}
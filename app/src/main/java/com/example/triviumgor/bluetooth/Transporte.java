@@ -0,0 +1,25 @@
+package com.example.triviumgor.bluetooth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Canal de bytes con un estimulador ya conectado.
+ *
+ * El resto de la app (ColaComandos, LectorDispositivo, DispositivoState) solo
+ * usa los streams y cerrar(); no sabe si debajo hay un socket RFCOMM
+ * (TransporteRfcomm) o el firmware simulado en memoria (SimuladorFirmware).
+ */
+public interface Transporte {
+
+    /** Dirección del dispositivo (MAC en Bluetooth) */
+    String getDireccion();
+
+    InputStream getEntrada() throws IOException;
+
+    OutputStream getSalida() throws IOException;
+
+    /** Cierra el canal; desbloquea las lecturas y escrituras en curso */
+    void cerrar() throws IOException;
+}
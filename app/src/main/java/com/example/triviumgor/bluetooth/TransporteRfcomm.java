@@ -0,0 +1,70 @@
+package com.example.triviumgor.bluetooth;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * Transporte sobre un socket Bluetooth RFCOMM (perfil de puerto serie).
+ */
+public final class TransporteRfcomm implements Transporte {
+
+    public static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    private final BluetoothDevice device;
+    private volatile BluetoothSocket socket;
+
+    public TransporteRfcomm(BluetoothDevice device) {
+        this.device = device;
+    }
+
+    /**
+     * Abre el socket. Bloquea hasta conectar o fallar: llamar fuera del hilo principal.
+     */
+    @SuppressLint("MissingPermission")
+    public void conectar() throws IOException {
+        BluetoothSocket nuevo = device.createRfcommSocketToServiceRecord(SPP_UUID);
+        socket = nuevo;
+        nuevo.connect();
+    }
+
+    public BluetoothDevice getDevice() {
+        return device;
+    }
+
+    @Override
+    public String getDireccion() {
+        return device.getAddress();
+    }
+
+    @Override
+    public InputStream getEntrada() throws IOException {
+        return abierto().getInputStream();
+    }
+
+    @Override
+    public OutputStream getSalida() throws IOException {
+        return abierto().getOutputStream();
+    }
+
+    @Override
+    public void cerrar() throws IOException {
+        BluetoothSocket s = socket;
+        if (s != null) {
+            s.close();
+        }
+    }
+
+    private BluetoothSocket abierto() throws IOException {
+        BluetoothSocket s = socket;
+        if (s == null) {
+            throw new IOException("Socket no conectado");
+        }
+        return s;
+    }
+}
@@ -3,7 +3,6 @@ package com.example.triviumgor.controller;
 import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
@@ -16,15 +15,34 @@ import android.widget.ListView;
 import androidx.appcompat.app.AlertDialog;
 
 import com.example.triviumgor.R;
+import com.example.triviumgor.bluetooth.ColaComandos;
+import com.example.triviumgor.bluetooth.Transporte;
+import com.example.triviumgor.bluetooth.TransporteRfcomm;
 import com.example.triviumgor.model.DispositivoState;
+import com.example.triviumgor.model.RegistroDispositivos;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Controlador Bluetooth.
@@ -34,7 +52,6 @@ import java.util.UUID;
 public class BluetoothController {
 
     private static final String TAG = "BluetoothController";
-    private static final UUID BT_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
 
     /**
      * Callback de éxito al conectar.
@@ -50,30 +67,124 @@ public class BluetoothController {
         void onError(String mensaje);
     }
 
+    /**
+     * Resultado de cada dispositivo en conectarTodos(), en el hilo principal.
+     */
+    public interface OnResultadoConexion {
+        void onConectado(DispositivoState dispositivo);
+        void onFallo(DispositivoState dispositivo, String mensaje);
+    }
+
+    /**
+     * Resultado de una reconexión automática, en el hilo principal.
+     */
+    public interface OnReconexion {
+        /** @param recuperacionMs desde la pérdida del enlace hasta volver a conectar */
+        void onReconectado(DispositivoState dispositivo, long recuperacionMs, int intentos);
+        void onReconexionFallida(DispositivoState dispositivo, String mensaje);
+    }
+
+    /**
+     * Donde llegan los callbacks y se programan los reintentos: el hilo
+     * principal (Handler) en la app, uno falso en los tests.
+     */
+    interface HiloPrincipal {
+        void post(Runnable accion);
+        void postDelayed(Runnable accion, long retrasoMs);
+        void quitar(Runnable accion);
+    }
+
+    // Conexiones en paralelo como máximo (el resto espera en cola)
+    private static final int MAX_CONEXIONES_PARALELAS = 4;
+    private static final int CAPACIDAD_COLA_CONEXIONES = 16;
+    public static final long TIMEOUT_CONEXION_DEFAULT_MS = 10000;
+
     private final Context context;
     private BluetoothAdapter btAdapter;
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HiloPrincipal principal;
+
+    // socket.connect() no admite timeout: un dispositivo apagado bloqueaba un
+    // hilo nuevo durante todo el timeout de RFCOMM. Ahora los intentos van a un
+    // pool acotado y un temporizador cierra el socket si se pasa del límite.
+    private final ThreadPoolExecutor executorConexion = crearExecutorConexion();
+    private final ScheduledThreadPoolExecutor temporizador = crearTemporizador();
+    private volatile long timeoutConexionMs = TIMEOUT_CONEXION_DEFAULT_MS;
+
+    // desconectar() espera a que se vacíe la cola de comandos antes de cerrar
+    // el socket: esa espera va en este hilo, no en el de la UI
+    private final ThreadPoolExecutor executorDesconexion = crearExecutorDesconexion();
+
+    // Intento en curso de cada dispositivo, por id
+    private final ConcurrentHashMap<Integer, IntentoConexion> intentos = new ConcurrentHashMap<>();
+
+    // Estadísticas de los intentos de conexión (latencia en ms)
+    private final AtomicLong conexionesOk = new AtomicLong();
+    private final AtomicLong conexionesFallidas = new AtomicLong();
+    private final AtomicLong conexionesTimeout = new AtomicLong();
+    private final AtomicLong conexionesCanceladas = new AtomicLong();
+    private final AtomicLong latenciaTotalMs = new AtomicLong();
+    private final AtomicLong latenciaMaxMs = new AtomicLong();
+
+    // Reconexión automática: espera exponencial con jitter entre intentos
+    // (1 s, 2 s, 4 s... hasta 30 s; se espera entre la mitad y el total)
+    static final long RECONEXION_ESPERA_BASE_MS = 1000;
+    static final long RECONEXION_ESPERA_MAX_MS = 30000;
+    public static final int RECONEXION_MAX_INTENTOS = 8;
+
+    private final ConcurrentHashMap<Integer, Reconexion> reconexiones = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private volatile int maxIntentosReconexion = RECONEXION_MAX_INTENTOS;
+
+    private final AtomicLong reconexionesIniciadas = new AtomicLong();
+    private final AtomicLong reconexionesOk = new AtomicLong();
+    private final AtomicLong reconexionesFallidas = new AtomicLong();
+    private final AtomicLong recuperacionTotalMs = new AtomicLong();
+    private final AtomicLong recuperacionMaxMs = new AtomicLong();
 
     // MACs leídas del archivo
     private final String[] dirMacs = new String[20];
     private int indiceDirMACs = 0;
 
-    // Referencia a los dos dispositivos para filtrar en el diálogo
-    private DispositivoState dispositivo1Ref;
-    private DispositivoState dispositivo2Ref;
+    // Todos los dispositivos, para filtrar en el diálogo los ya conectados
+    private RegistroDispositivos registro;
 
     public BluetoothController(Context context) {
+        this(context, BluetoothAdapter.getDefaultAdapter(), hiloPrincipal());
+    }
+
+    /** Para los tests: adaptador y hilo de callbacks a elegir */
+    BluetoothController(Context context, BluetoothAdapter btAdapter, HiloPrincipal principal) {
         this.context = context;
-        this.btAdapter = BluetoothAdapter.getDefaultAdapter();
+        this.btAdapter = btAdapter;
+        this.principal = principal;
+    }
+
+    private static HiloPrincipal hiloPrincipal() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new HiloPrincipal() {
+            @Override
+            public void post(Runnable accion) {
+                handler.post(accion);
+            }
+
+            @Override
+            public void postDelayed(Runnable accion, long retrasoMs) {
+                handler.postDelayed(accion, retrasoMs);
+            }
+
+            @Override
+            public void quitar(Runnable accion) {
+                handler.removeCallbacks(accion);
+            }
+        };
     }
 
     /**
-     * Guarda referencias a ambos dispositivos para poder filtrar
-     * el ya conectado al mostrar el diálogo del otro.
+     * Guarda el registro de dispositivos para poder filtrar los ya
+     * conectados al mostrar el diálogo de otro.
      */
-    public void setDispositivoRefs(DispositivoState disp1, DispositivoState disp2) {
-        this.dispositivo1Ref = disp1;
-        this.dispositivo2Ref = disp2;
+    public void setRegistro(RegistroDispositivos registro) {
+        this.registro = registro;
     }
 
     // ========================
@@ -113,7 +224,7 @@ public class BluetoothController {
 
     /**
      * Muestra diálogo de dispositivos BT vinculados y conecta al seleccionado.
-     * Filtra el dispositivo ya conectado en el otro slot.
+     * Filtra los dispositivos ya conectados en otro slot.
      */
     @SuppressLint("MissingPermission")
     public void conectarDispositivo(DispositivoState dispositivo,
@@ -145,7 +256,7 @@ public class BluetoothController {
 
         if (pairedDevices != null && pairedDevices.size() > 0) {
             for (BluetoothDevice device : pairedDevices) {
-                // Filtrar el dispositivo que ya está conectado en el otro slot
+                // Filtrar los dispositivos que ya están conectados en otro slot
                 if (estaConectadoEnOtroSlot(device, dispositivo)) {
                     continue;
                 }
@@ -187,77 +298,528 @@ public class BluetoothController {
     }
 
     /**
-     * Comprueba si un BluetoothDevice ya está conectado en el otro slot.
+     * Comprueba si un BluetoothDevice ya está conectado en otro slot del registro.
      */
     @SuppressLint("MissingPermission")
     private boolean estaConectadoEnOtroSlot(BluetoothDevice device, DispositivoState dispositivoActual) {
-        // Determinar cuál es el "otro" slot
-        DispositivoState otro;
-        if (dispositivoActual == dispositivo1Ref) {
-            otro = dispositivo2Ref;
-        } else if (dispositivoActual == dispositivo2Ref) {
-            otro = dispositivo1Ref;
-        } else {
-            return false;
-        }
-
-        // Si el otro slot no existe o no está conectado, no hay conflicto
-        if (otro == null || !otro.isConnected() || otro.getBtDevice() == null) {
-            return false;
-        }
-
-        return otro.getBtDevice().getAddress().equals(device.getAddress());
+        return (registro != null && registro.estaConectadoEnOtro(device.getAddress(), dispositivoActual))
+                || estaConectando(device.getAddress());
     }
 
     /**
-     * Realiza la conexión BT al dispositivo seleccionado EN UN HILO DE FONDO.
-     * Esto evita bloquear el hilo principal (UI) y previene ANR cuando
-     * el dispositivo está apagado o fuera de alcance.
+     * Realiza la conexión BT al dispositivo seleccionado EN UN HILO DE FONDO
+     * del pool de conexiones. Esto evita bloquear el hilo principal (UI) y
+     * previene ANR cuando el dispositivo está apagado o fuera de alcance; si
+     * no conecta en timeoutConexionMs se cierra el socket y se da por fallido.
      * Los callbacks se ejecutan siempre en el hilo principal.
+     * @return el intento, para cancelarlo; null si no se pudo lanzar
      */
     @SuppressLint("MissingPermission")
-    private void realizarConexion(BluetoothDevice device, DispositivoState dispositivo,
+    private Future<Void> realizarConexion(BluetoothDevice device, DispositivoState dispositivo,
+                                          OnConnectedCallback onSuccess, OnErrorCallback onError) {
+        final TransporteRfcomm transporte = new TransporteRfcomm(device);
+        return realizarConexion(transporte, () -> {
+            transporte.conectar();
+            return null;
+        }, device, dispositivo, onSuccess, onError);
+    }
+
+    /**
+     * Lanza un intento con cualquier transporte: conectar bloquea hasta
+     * abrirlo y debe fallar cuando se cierra el transporte (cancel() o
+     * timeout). device es null si no es Bluetooth (tests).
+     */
+    Future<Void> realizarConexion(Transporte transporte, Callable<Void> conectar, BluetoothDevice device,
+                                  DispositivoState dispositivo,
                                   OnConnectedCallback onSuccess, OnErrorCallback onError) {
-        new Thread(() -> {
+        IntentoConexion intento = new IntentoConexion(transporte, conectar, device, dispositivo,
+                onSuccess, onError);
+        if (intentos.putIfAbsent(dispositivo.getId(), intento) != null) {
+            onError.onError("Ya hay una conexión en curso");
+            return null;
+        }
+        try {
+            executorConexion.execute(intento);
+        } catch (RejectedExecutionException e) {
+            intentos.remove(dispositivo.getId(), intento);
+            onError.onError("Demasiadas conexiones pendientes");
+            return null;
+        }
+        return intento;
+    }
+
+    /**
+     * Intento de conexión: conecta el transporte (TransporteRfcomm en la app)
+     * y abre la conexión del DispositivoState. cancel() y el timeout cierran
+     * el socket, lo que hace fallar al connect() bloqueado.
+     */
+    private class IntentoConexion extends FutureTask<Void> {
+        private final DispositivoState dispositivo;
+        private final Transporte transporte;
+        private final BluetoothDevice device;
+        private final OnConnectedCallback onSuccess;
+        private final OnErrorCallback onError;
+        private volatile boolean agotado = false;
+        private long inicioNs;
+
+        IntentoConexion(Transporte transporte, Callable<Void> conectar, BluetoothDevice device,
+                        DispositivoState dispositivo,
+                        OnConnectedCallback onSuccess, OnErrorCallback onError) {
+            super(conectar);
+            this.transporte = transporte;
+            this.device = device;
+            this.dispositivo = dispositivo;
+            this.onSuccess = onSuccess;
+            this.onError = onError;
+        }
+
+        @Override
+        public void run() {
+            inicioNs = System.nanoTime();
+            ScheduledFuture<?> limite = temporizador.schedule(() -> {
+                agotado = true;
+                cerrarTransporte();
+            }, timeoutConexionMs, TimeUnit.MILLISECONDS);
             try {
-                BluetoothSocket socket = device.createRfcommSocketToServiceRecord(BT_UUID);
-                socket.connect();
+                super.run();
+            } finally {
+                limite.cancel(false);
+            }
+        }
 
-                // Guardar estado en DispositivoState
-                dispositivo.setBtDevice(device);
-                dispositivo.setBtSocket(socket);
-                dispositivo.setAddress(device.getAddress());
-                dispositivo.setOutputStream(socket.getOutputStream());
-                dispositivo.setInputStream(socket.getInputStream());
-                dispositivo.setConnected(true);
-                dispositivo.setBattMon(true);
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelado = super.cancel(mayInterruptIfRunning);
+            if (cancelado) cerrarTransporte();
+            return cancelado;
+        }
 
-                Log.d(TAG, "Conectado a: " + device.getName() + " (" + device.getAddress() + ")");
+        @Override
+        @SuppressLint("MissingPermission")
+        protected void done() {
+            intentos.remove(dispositivo.getId(), this);
+            long ms = inicioNs == 0 ? 0 : (System.nanoTime() - inicioNs) / 1000000L;
+
+            String error = null;
+            if (isCancelled()) {
+                conexionesCanceladas.incrementAndGet();
+                error = "Conexión cancelada";
+            } else {
+                try {
+                    get();
+                    if (agotado) {
+                        // El temporizador cerró el socket justo al conectar
+                        throw new IOException("timeout");
+                    }
+                    // Guardar estado en DispositivoState y arrancar cola y lector
+                    dispositivo.abrirConexion(transporte, principal::post);
+                    dispositivo.setBtDevice(device);
+                } catch (Exception e) {
+                    Throwable causa = e instanceof ExecutionException ? e.getCause() : e;
+                    if (agotado) {
+                        conexionesTimeout.incrementAndGet();
+                        error = "Tiempo de conexión agotado (" + timeoutConexionMs + " ms)";
+                    } else {
+                        conexionesFallidas.incrementAndGet();
+                        error = causa.getMessage();
+                    }
+                }
+            }
 
+            if (error == null) {
+                conexionesOk.incrementAndGet();
+                registrarLatencia(ms);
+                Log.d(TAG, "Conectado a: " + (device != null ? device.getName() + " " : "")
+                        + "(" + transporte.getDireccion() + ") en " + ms + " ms");
                 // Callback de éxito en el hilo principal
-                mainHandler.post(onSuccess::onConnected);
+                principal.post(onSuccess::onConnected);
+            } else {
+                Log.e(TAG, "Error de conexión con " + transporte.getDireccion() + " tras " + ms
+                        + " ms: " + error);
+                // abrirConexion no publica nada si falla: basta con cerrar el
+                // transporte de este intento (si el dispositivo ya tenía otra
+                // conexión, sigue intacta)
+                cerrarTransporte();
+                final String mensaje = "Fallo al conectarse: " + error;
+                // Callback de error en el hilo principal
+                principal.post(() -> onError.onError(mensaje));
+            }
+        }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Error de conexión: " + e.getMessage());
-                dispositivo.resetConexion();
+        private void cerrarTransporte() {
+            try {
+                transporte.cerrar();
+            } catch (IOException ignored) {
+            }
+        }
+    }
 
-                // Callback de error en el hilo principal
-                mainHandler.post(() -> onError.onError("Fallo al conectarse: " + e.getMessage()));
+    // ========================
+    // CONECTAR TODOS
+    // ========================
+
+    /**
+     * Conecta en paralelo los estimuladores conocidos (MACs del archivo
+     * dir_macs que estén vinculados) a los slots libres del registro.
+     * Cada slot libre recibe onConectado u onFallo; si no queda dispositivo
+     * conocido para él, onFallo con "Sin dispositivo conocido libre".
+     * @return los intentos lanzados, para poder cancelarlos
+     */
+    @SuppressLint("MissingPermission")
+    public List<Future<Void>> conectarTodos(final OnResultadoConexion resultado) {
+        List<Future<Void>> lanzados = new ArrayList<>();
+        if (registro == null) return lanzados;
+
+        List<DispositivoState> libres = new ArrayList<>();
+        for (DispositivoState d : registro.getTodos()) {
+            if (!d.isConnected() && !intentos.containsKey(d.getId())
+                    && !reconexiones.containsKey(d.getId())) {
+                libres.add(d);
+            }
+        }
+
+        List<BluetoothDevice> conocidos = new ArrayList<>();
+        Set<BluetoothDevice> vinculados = btAdapter != null ? btAdapter.getBondedDevices() : null;
+        if (vinculados != null) {
+            for (BluetoothDevice device : vinculados) {
+                if (esMacConocida(device.getAddress())
+                        && registro.buscarConectado(device.getAddress()) == null
+                        && !estaConectando(device.getAddress())) {
+                    conocidos.add(device);
+                }
+            }
+        }
+
+        for (int i = 0; i < libres.size(); i++) {
+            final DispositivoState slot = libres.get(i);
+            if (i >= conocidos.size()) {
+                resultado.onFallo(slot, "Sin dispositivo conocido libre");
+                continue;
             }
-        }, "BT-Connect-" + device.getAddress()).start();
+            Future<Void> intento = realizarConexion(conocidos.get(i), slot,
+                    () -> resultado.onConectado(slot),
+                    mensaje -> resultado.onFallo(slot, mensaje));
+            if (intento != null) lanzados.add(intento);
+        }
+        return lanzados;
+    }
+
+    private boolean esMacConocida(String mac) {
+        for (int i = 0; i < indiceDirMACs; i++) {
+            if (mac.equalsIgnoreCase(dirMacs[i])) return true;
+        }
+        return false;
     }
 
+    private boolean estaConectando(String mac) {
+        for (IntentoConexion intento : intentos.values()) {
+            if (mac.equals(intento.transporte.getDireccion())) return true;
+        }
+        for (Reconexion reconexion : reconexiones.values()) {
+            if (mac.equals(reconexion.mac)) return true;
+        }
+        return false;
+    }
+
+    /** Cancela todos los intentos de conexión y reconexiones en curso. Llamar desde onDestroy() */
+    public void cancelarConexiones() {
+        for (Reconexion reconexion : reconexiones.values()) {
+            reconexion.cancelar();
+        }
+        for (IntentoConexion intento : intentos.values()) {
+            intento.cancel(true);
+        }
+    }
+
+    /** Límite de cada intento de conexión */
+    public void setTimeoutConexionMs(long timeoutConexionMs) {
+        this.timeoutConexionMs = timeoutConexionMs;
+    }
+
+    // ========================
+    // RECONEXIÓN AUTOMÁTICA
+    // ========================
+
     /**
-     * Desconecta un dispositivo cerrando su socket y reseteando estado.
+     * Reintenta la conexión con la misma MAC tras perder el enlace, con
+     * espera exponencial y jitter entre intentos para no saturar la radio
+     * ni sincronizar los reintentos de varios dispositivos.
+     * Llamar en el hilo principal; el resultado llega también en él.
+     * El DispositivoState conserva paciente y sesión: solo se rehace la conexión.
      */
-    public void desconectar(DispositivoState dispositivo) {
-        try {
-            if (dispositivo.getBtSocket() != null) {
-                dispositivo.getBtSocket().close();
+    @SuppressLint("MissingPermission")
+    public void reconectar(DispositivoState dispositivo, String mac, OnReconexion callback) {
+        if (!isBluetoothDisponible() || mac == null || mac.isEmpty()) {
+            callback.onReconexionFallida(dispositivo, "Bluetooth no disponible");
+            return;
+        }
+        Reconexion reconexion = new Reconexion(dispositivo, mac, callback);
+        if (reconexiones.putIfAbsent(dispositivo.getId(), reconexion) != null) {
+            return; // Ya se está reconectando
+        }
+        reconexionesIniciadas.incrementAndGet();
+        Log.d(TAG, "Reconectando dispositivo " + dispositivo.getId() + " con " + mac);
+        reconexion.programarSiguiente();
+    }
+
+    /** Detiene la reconexión de un dispositivo sin avisar (p. ej. al desconectar a mano) */
+    public void cancelarReconexion(DispositivoState dispositivo) {
+        Reconexion reconexion = reconexiones.get(dispositivo.getId());
+        if (reconexion != null) reconexion.cancelar();
+    }
+
+    public boolean isReconectando(DispositivoState dispositivo) {
+        return reconexiones.containsKey(dispositivo.getId());
+    }
+
+    /** Intentos antes de dar la reconexión por fallida */
+    public void setMaxIntentosReconexion(int maxIntentos) {
+        this.maxIntentosReconexion = maxIntentos;
+    }
+
+    /** Los tests lo sustituyen: no hay adaptador en la JVM */
+    boolean isBluetoothDisponible() {
+        return btAdapter != null;
+    }
+
+    /**
+     * Un intento de reconexión con la MAC. Los tests lo sustituyen por un
+     * transporte simulado.
+     * @throws IllegalArgumentException si la MAC no es válida
+     */
+    @SuppressLint("MissingPermission")
+    Future<Void> conectarMac(String mac, DispositivoState dispositivo,
+                             OnConnectedCallback onSuccess, OnErrorCallback onError) {
+        return realizarConexion(btAdapter.getRemoteDevice(mac), dispositivo, onSuccess, onError);
+    }
+
+    /**
+     * Espera antes del intento n (desde 0): base * 2^n limitado al máximo, y
+     * de eso un valor aleatorio entre la mitad y el total.
+     */
+    static long calcularEspera(int intento, Random random) {
+        long tope = RECONEXION_ESPERA_BASE_MS << Math.min(intento, 16);
+        if (tope > RECONEXION_ESPERA_MAX_MS) tope = RECONEXION_ESPERA_MAX_MS;
+        long mitad = tope / 2;
+        return mitad + (long) (random.nextDouble() * (tope - mitad));
+    }
+
+    /**
+     * Reconexión en curso de un dispositivo. Todo su estado se toca en el
+     * hilo principal: los intentos se programan con principal y los
+     * callbacks de realizarConexion llegan también a él.
+     */
+    private class Reconexion implements Runnable {
+        private final DispositivoState dispositivo;
+        private final String mac;
+        private final OnReconexion callback;
+        private final long inicioNs = System.nanoTime();
+        private int intentosHechos = 0;
+        private Future<Void> actual;
+        private boolean cancelada = false;
+
+        Reconexion(DispositivoState dispositivo, String mac, OnReconexion callback) {
+            this.dispositivo = dispositivo;
+            this.mac = mac;
+            this.callback = callback;
+        }
+
+        void programarSiguiente() {
+            long espera = calcularEspera(intentosHechos, random);
+            Log.d(TAG, "Reintento " + (intentosHechos + 1) + " de " + mac + " en " + espera + " ms");
+            principal.postDelayed(this, espera);
+        }
+
+        @Override
+        public void run() {
+            if (cancelada) return;
+            intentosHechos++;
+            try {
+                actual = conectarMac(mac, dispositivo, this::onConectado, this::onFallo);
+            } catch (IllegalArgumentException e) {
+                terminar("MAC no válida: " + mac);
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Error al cerrar socket: " + e.getMessage());
         }
-        dispositivo.resetCompleto();
+
+        private void onConectado() {
+            if (cancelada) {
+                // Se canceló mientras conectaba: no dejar la conexión abierta
+                desconectar(dispositivo);
+                return;
+            }
+            reconexiones.remove(dispositivo.getId(), this);
+            long ms = (System.nanoTime() - inicioNs) / 1000000L;
+            reconexionesOk.incrementAndGet();
+            recuperacionTotalMs.addAndGet(ms);
+            long max;
+            do {
+                max = recuperacionMaxMs.get();
+            } while (ms > max && !recuperacionMaxMs.compareAndSet(max, ms));
+            Log.d(TAG, "Reconectado " + mac + " en " + ms + " ms tras " + intentosHechos + " intentos");
+            callback.onReconectado(dispositivo, ms, intentosHechos);
+        }
+
+        private void onFallo(String mensaje) {
+            if (cancelada) return;
+            if (intentosHechos >= maxIntentosReconexion) {
+                terminar("No se pudo reconectar tras " + intentosHechos + " intentos: " + mensaje);
+            } else {
+                programarSiguiente();
+            }
+        }
+
+        private void terminar(String mensaje) {
+            reconexiones.remove(dispositivo.getId(), this);
+            reconexionesFallidas.incrementAndGet();
+            Log.e(TAG, mensaje);
+            callback.onReconexionFallida(dispositivo, mensaje);
+        }
+
+        void cancelar() {
+            cancelada = true;
+            principal.quitar(this);
+            reconexiones.remove(dispositivo.getId(), this);
+            if (actual != null) actual.cancel(true);
+        }
+    }
+
+    /** @return % de reconexiones terminadas que lo consiguieron (100 si no hay datos) */
+    public int getTasaExitoReconexion() {
+        long ok = reconexionesOk.get();
+        long total = ok + reconexionesFallidas.get();
+        return total == 0 ? 100 : (int) (ok * 100 / total);
+    }
+
+    /** @return tiempo medio de recuperación en ms de las reconexiones correctas */
+    public long getRecuperacionMediaMs() {
+        long n = reconexionesOk.get();
+        return n == 0 ? 0 : recuperacionTotalMs.get() / n;
+    }
+
+    public long getRecuperacionMaxMs() {
+        return recuperacionMaxMs.get();
+    }
+
+    // ========================
+    // POOL Y ESTADÍSTICAS
+    // ========================
+
+    private static ThreadPoolExecutor crearExecutorConexion() {
+        final AtomicInteger contador = new AtomicInteger(1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAX_CONEXIONES_PARALELAS, MAX_CONEXIONES_PARALELAS,
+                30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(CAPACIDAD_COLA_CONEXIONES),
+                r -> {
+                    Thread t = new Thread(r, "BT-Connect-" + contador.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadPoolExecutor crearExecutorDesconexion() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1, 1,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                r -> {
+                    Thread t = new Thread(r, "BT-Desconexion");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ScheduledThreadPoolExecutor crearTemporizador() {
+        ScheduledThreadPoolExecutor temporizador = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "BT-Timeout");
+            t.setDaemon(true);
+            return t;
+        });
+        temporizador.setRemoveOnCancelPolicy(true);
+        return temporizador;
+    }
+
+    private void registrarLatencia(long ms) {
+        latenciaTotalMs.addAndGet(ms);
+        long max;
+        do {
+            max = latenciaMaxMs.get();
+        } while (ms > max && !latenciaMaxMs.compareAndSet(max, ms));
+    }
+
+    public long getConexionesOk() {
+        return conexionesOk.get();
+    }
+
+    public long getConexionesFallidas() {
+        return conexionesFallidas.get();
+    }
+
+    public long getConexionesTimeout() {
+        return conexionesTimeout.get();
+    }
+
+    public long getConexionesCanceladas() {
+        return conexionesCanceladas.get();
+    }
+
+    /** @return latencia media de las conexiones correctas en ms (0 si no hay datos) */
+    public long getLatenciaMediaConexionMs() {
+        long n = conexionesOk.get();
+        return n == 0 ? 0 : latenciaTotalMs.get() / n;
+    }
+
+    /** @return peor latencia de una conexión correcta en ms */
+    public long getLatenciaMaxConexionMs() {
+        return latenciaMaxMs.get();
+    }
+
+    /** Vuelca las estadísticas de conexión al log */
+    public void registrarEstadisticas() {
+        Log.d(TAG, "Conexiones ok: " + conexionesOk.get() +
+                " | fallidas: " + conexionesFallidas.get() +
+                " | timeout: " + conexionesTimeout.get() +
+                " | canceladas: " + conexionesCanceladas.get() +
+                " | media: " + getLatenciaMediaConexionMs() + " ms" +
+                " | máx: " + getLatenciaMaxConexionMs() + " ms");
+        Log.d(TAG, "Reconexiones: " + reconexionesIniciadas.get() +
+                " | ok: " + reconexionesOk.get() +
+                " | fallidas: " + reconexionesFallidas.get() +
+                " | éxito: " + getTasaExitoReconexion() + "%" +
+                " | recuperación media: " + getRecuperacionMediaMs() + " ms" +
+                " | máx: " + getRecuperacionMaxMs() + " ms");
+    }
+
+    /**
+     * Desconecta un dispositivo cerrando su socket y reseteando estado.
+     * Antes de cerrar el socket espera (como mucho ESPERA_VACIADO_MS) a que
+     * salgan los comandos encolados, p. ej. la parada de finalizarSesion().
+     * No bloquea: la espera y el cierre se hacen en el hilo BT-Desconexion.
+     */
+    public void desconectar(final DispositivoState dispositivo) {
+        final ColaComandos cola = dispositivo.getColaComandos();
+        final Transporte transporte = dispositivo.getTransporte();
+        executorDesconexion.execute(() -> {
+            if (cola != null) {
+                cola.cerrar(ColaComandos.ESPERA_VACIADO_MS);
+            }
+            try {
+                if (transporte != null) {
+                    transporte.cerrar();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error al cerrar socket: " + e.getMessage());
+            }
+            // Si mientras tanto se perdió el enlace y se volvió a conectar,
+            // la conexión nueva no se toca
+            if (dispositivo.getTransporte() == transporte) {
+                dispositivo.resetCompleto();
+            }
+        });
     }
 }
\ No newline at end of file
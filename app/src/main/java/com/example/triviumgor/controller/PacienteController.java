@@ -1,13 +1,22 @@
 package com.example.triviumgor.controller;
 
 import android.database.Cursor;
+import android.util.Log;
 
-import com.example.triviumgor.database.PacienteDBHelper;
+import com.example.triviumgor.database.BusquedaFts;
 import com.example.triviumgor.database.PacienteDataManager;
+import com.example.triviumgor.database.PacienteRepository;
+import com.example.triviumgor.database.RowMapper;
+import com.example.triviumgor.database.RowMappers;
 import com.example.triviumgor.model.Paciente;
+import com.example.triviumgor.model.PacienteResumen;
+import com.example.triviumgor.util.Fechas;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Future;
 
 /**
  * Controlador de Pacientes.
@@ -16,6 +25,8 @@ import java.util.List;
  */
 public class PacienteController {
 
+    private static final String TAG = "PacienteController";
+
     // Resultado de operaciones para comunicar a la Vista
     public static class Resultado {
         public final boolean exito;
@@ -42,9 +53,11 @@ public class PacienteController {
     }
 
     private final PacienteDataManager dataManager;
+    private final PacienteRepository repositorio;
 
     public PacienteController(PacienteDataManager dataManager) {
         this.dataManager = dataManager;
+        this.repositorio = PacienteRepository.getInstance(dataManager);
     }
 
     // ========================
@@ -94,13 +107,7 @@ public class PacienteController {
      * @param excluirId ID del paciente a excluir (para edición), -1 si es nuevo
      */
     public boolean existeDNI(String dni, int excluirId) {
-        List<Paciente> todos = obtenerTodosPacientes();
-        for (Paciente p : todos) {
-            if (p.getDNI().equalsIgnoreCase(dni) && p.getID() != excluirId) {
-                return true;
-            }
-        }
-        return false;
+        return dataManager.existeDNI(dni, excluirId);
     }
 
     // ========================
@@ -391,74 +398,35 @@ public class PacienteController {
     // CONSULTAS
     // ========================
 
+    /**
+     * Obtiene un paciente por su DNI (consulta puntual sobre el índice de DNI).
+     * No distingue mayúsculas, espacios ni guiones.
+     * @return el paciente, o null si no existe
+     */
+    public Paciente obtenerPacientePorDNI(String dni) {
+        return RowMapper.primero(dataManager.buscarPacientePorDNI(dni), RowMappers.PACIENTE);
+    }
+
     /**
      * Obtiene un paciente por su ID.
      * @param opcionDis opción de dispositivo (3 = dos dispositivos)
      */
     public Paciente obtenerPacientePorId(int id, int opcionDis) {
-        Cursor cursor = dataManager.obtenerPacientePorId(id);
-
-        if (cursor != null && cursor.moveToFirst()) {
-            String cic = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_CIC));
-            String dni = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_DNI));
-            String nombre = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_NOMBRE));
-            String ap1 = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_APELLIDO1));
-            String ap2 = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_APELLIDO2));
-            int edad = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_EDAD));
-            Paciente.Genero genero = Paciente.Genero.valueOf((cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_GENERO))));
-            String patologia = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_PATOLOGIA));
-            String medicacion = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_MEDICACIÓN));
-            int intensidad = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD));
-            int tiempo = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO));
-
-            if (opcionDis == 3) {
-                int intensidad2 = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD2));
-                int tiempo2 = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO2));
-                cursor.close();
-                return new Paciente(id, cic, dni, nombre, ap1, ap2, edad, genero, patologia, medicacion,
-                        intensidad, tiempo, intensidad2, tiempo2);
-            }
+        Paciente paciente = RowMapper.primero(dataManager.obtenerPacientePorId(id), RowMappers.PACIENTE);
 
-            cursor.close();
-            return new Paciente(id, cic, dni, nombre, ap1, ap2, edad, genero, patologia, medicacion,
-                    intensidad, tiempo);
+        // Con un solo dispositivo la configuración del segundo no se usa
+        if (paciente != null && opcionDis != 3) {
+            paciente.setIntensidad2(0);
+            paciente.setTiempoM2(0);
         }
-
-        if (cursor != null) cursor.close();
-        return null;
+        return paciente;
     }
 
     /**
      * Obtiene la lista completa de pacientes.
      */
     public List<Paciente> obtenerTodosPacientes() {
-        List<Paciente> lista = new ArrayList<>();
-        Cursor cursor = dataManager.obtenerTodosPacientes();
-
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                int id = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_ID));
-                String cic = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_CIC));
-                String dni = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_DNI));
-                String nombre = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_NOMBRE));
-                String ap1 = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_APELLIDO1));
-                String ap2 = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_APELLIDO2));
-                int edad = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_EDAD));
-                Paciente.Genero genero = Paciente.Genero.valueOf((cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_GENERO))));
-                String patologia = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_PATOLOGIA));
-                String medicacion = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_MEDICACIÓN));
-                int intensidad = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD));
-                int tiempo = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO));
-                int intensidad2 = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD2));
-                int tiempo2 = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO2));
-
-                lista.add(new Paciente(id, cic, dni, nombre, ap1, ap2, edad, genero, patologia, medicacion,
-                        intensidad, tiempo, intensidad2, tiempo2));
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-
-        return lista;
+        return RowMapper.lista(dataManager.obtenerTodosPacientes(), RowMappers.PACIENTE);
     }
 
     /**
@@ -469,21 +437,21 @@ public class PacienteController {
      * @return Lista de pacientes visibles para ese usuario
      */
     public List<Paciente> obtenerPacientesDeUsuario(int idUsuario) {
-        List<Paciente> lista = new ArrayList<>();
-        Cursor cursor = dataManager.obtenerPacientesDeUsuario(idUsuario);
-
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                lista.add(cursorToPaciente(cursor));
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-
-        return lista;
+        return RowMapper.lista(dataManager.obtenerPacientesDeUsuario(idUsuario), RowMappers.PACIENTE);
     }
 
 
 
+    /**
+     * Resumen (ID, DNI y nombre) de todos los pacientes visibles, ordenado
+     * por nombre. Para listas: no lee patología, medicación ni configuración.
+     *
+     * @param idUsuario ID del usuario logueado, o -1 para todos (admin)
+     */
+    public List<PacienteResumen> obtenerResumenPacientes(int idUsuario) {
+        return cursorAResumenes(dataManager.obtenerResumenPacientes(idUsuario));
+    }
+
     /**
      * Versión formateada de obtenerPacientesDeUsuario para mostrar en ListView.
      * Formato: "DNI: XXXXXXXXX - Nombre Apellido1 Apellido2"
@@ -491,9 +459,7 @@ public class PacienteController {
      * @param idUsuario ID del usuario logueado. Pasar -1 para obtener todos (admin).
      */
     public String[] obtenerListaPacientesFormateada(int idUsuario) {
-        List<Paciente> pacientes = (idUsuario == -1)
-                ? obtenerTodosPacientes()
-                : obtenerPacientesDeUsuario(idUsuario);
+        List<PacienteResumen> pacientes = obtenerResumenPacientes(idUsuario);
 
         if (pacientes.isEmpty()) {
             return new String[]{"No hay pacientes registrados"};
@@ -501,11 +467,7 @@ public class PacienteController {
 
         String[] nombres = new String[pacientes.size()];
         for (int i = 0; i < pacientes.size(); i++) {
-            Paciente p = pacientes.get(i);
-            nombres[i] = "DNI: " + p.getDNI() + " - " + p.getNombre() + " " + p.getAp1();
-            if (p.getAp2() != null && !p.getAp2().isEmpty()) {
-                nombres[i] += " " + p.getAp2();
-            }
+            nombres[i] = pacientes.get(i).getTextoLista();
         }
         return nombres;
     }
@@ -516,87 +478,150 @@ public class PacienteController {
     }
 
     /**
-     * Obtiene el ID de un paciente por su posición en la lista del usuario.
+     * Obtiene una página de la lista de pacientes, ordenada por nombre.
+     * La siguiente página se pide pasando el último paciente recibido.
      *
-     * @param posicion   Posición en la lista
-     * @param idUsuario  ID del usuario logueado, o -1 para todos
+     * @param idUsuario ID del usuario logueado, o -1 para todos (admin)
+     * @param ultimo    último paciente de la página anterior, o null para la primera
+     * @param tamano    nº máximo de pacientes de la página
      */
-    public int obtenerIdPorPosicion(int posicion, int idUsuario) {
-        Cursor cursor = (idUsuario == -1)
-                ? dataManager.obtenerTodosPacientes()
-                : dataManager.obtenerPacientesDeUsuario(idUsuario);
-
-        if (cursor != null && cursor.moveToPosition(posicion)) {
-            int id = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_ID));
-            cursor.close();
-            return id;
-        }
-
-        if (cursor != null) cursor.close();
-        return -1;
-    }
-
-    /** Sobrecarga de compatibilidad */
-    public int obtenerIdPorPosicion(int posicion) {
-        return obtenerIdPorPosicion(posicion, -1);
+    public List<PacienteResumen> obtenerPaginaPacientes(int idUsuario, PacienteResumen ultimo, int tamano) {
+        return cursorAResumenes(dataManager.obtenerPaginaPacientes(idUsuario,
+                ultimo != null ? ultimo.getNombre() : null,
+                ultimo != null ? ultimo.getID() : -1,
+                tamano));
     }
 
     // ========================
     // BÚSQUEDA / FILTRADO
     // ========================
 
+    // Tope de resultados de una búsqueda, ya ordenados por relevancia
+    private static final int MAX_RESULTADOS_BUSQUEDA = 500;
+
+    /** Paciente encontrado por la búsqueda FTS, con su puntuación */
+    private static class Coincidencia {
+        final PacienteResumen paciente;
+        final double puntuacion;
+        final int orden; // posición en el resultado de la consulta (desempate)
+
+        Coincidencia(PacienteResumen paciente, double puntuacion, int orden) {
+            this.paciente = paciente;
+            this.puntuacion = puntuacion;
+            this.orden = orden;
+        }
+    }
+
+    // De mejor a peor: más puntuación primero y, a igualdad, la que llegó antes
+    private static int compararRelevancia(Coincidencia a, Coincidencia b) {
+        int c = Double.compare(b.puntuacion, a.puntuacion);
+        return c != 0 ? c : Integer.compare(a.orden, b.orden);
+    }
+
     /**
      * Filtra la lista de pacientes por un campo y texto de búsqueda.
-     * @param filtro texto a buscar (en minúsculas)
+     * Usa el índice FTS (tabla pacientes_fts): cada palabra se busca como
+     * prefijo, sin distinguir mayúsculas ni tildes, y el resultado sale
+     * ordenado por relevancia.
+     * @param filtro texto a buscar
      * @param campo campo por el que filtrar: "Nombre", "Apellidos", "DNI", "CIC", "Patologia"
      * @param idUsuario ID del usuario logueado, o -1 para todos (admin)
      * @return lista filtrada de strings formateados para ListView
      */
     public List<String> filtrarPacientes(String filtro, String campo, int idUsuario) {
         List<String> resultado = new ArrayList<>();
-        List<Paciente> todos = (idUsuario == -1)
-                ? obtenerTodosPacientes()
-                : obtenerPacientesDeUsuario(idUsuario);
-
-
-        String filtroLower = (filtro != null) ? filtro.toLowerCase().trim() : "";
-
-        for (Paciente p : todos) {
-            boolean coincide = false;
-            String textoFormateado = "DNI: " + p.getDNI() + " - " + p.getNombre() + " " + p.getAp1()
-                    + (p.getAp2() != null && !p.getAp2().isEmpty() ? " " + p.getAp2() : "");
-
-            switch (campo) {
-                case "Nombre":
-                    coincide = p.getNombre().toLowerCase().contains(filtroLower);
-                    break;
-                case "DNI":
-                    coincide = p.getDNI().toLowerCase().contains(filtroLower);
-                    break;
-                case "Apellidos":
-                    String apellidos = p.getAp1() + " " + (p.getAp2() != null ? p.getAp2() : "");
-                    coincide = apellidos.toLowerCase().contains(filtroLower);
-                    break;
-                case "CIC":
-                    coincide = p.getCIC() != null && p.getCIC().toLowerCase().contains(filtroLower);
-                    break;
-                case "Patologia":
-                    coincide = p.getPatologia() != null && p.getPatologia().toLowerCase().contains(filtroLower);
-                    break;
-                default:
-                    coincide = textoFormateado.toLowerCase().contains(filtroLower);
-                    break;
-            }
+        String match = BusquedaFts.construirMatch(filtro, BusquedaFts.columnaParaCampo(campo));
 
-            if (coincide || filtroLower.isEmpty()) {
-                resultado.add(textoFormateado);
+        // Sin palabras que buscar: se muestra la lista completa, como antes
+        if (match == null) {
+            for (PacienteResumen p : obtenerResumenPacientes(idUsuario)) {
+                resultado.add(p.getTextoLista());
             }
+            return resultado;
         }
 
-
+        for (Coincidencia c : buscarCoincidencias(match, idUsuario)) {
+            resultado.add(c.paciente.getTextoLista());
+        }
         return resultado;
     }
 
+    /**
+     * Busca pacientes con el índice FTS y devuelve solo sus IDs,
+     * ordenados de más a menos relevante.
+     * @return lista de IDs (vacía si el filtro no contiene palabras)
+     */
+    public List<Integer> buscarIdsPacientes(String filtro, String campo, int idUsuario) {
+        List<Integer> ids = new ArrayList<>();
+        String match = BusquedaFts.construirMatch(filtro, BusquedaFts.columnaParaCampo(campo));
+        if (match == null) return ids;
+
+        for (Coincidencia c : buscarCoincidencias(match, idUsuario)) {
+            ids.add(c.paciente.getID());
+        }
+        return ids;
+    }
+
+    /**
+     * Igual que filtrarPacientes, pero devuelve los pacientes (con su ID) en
+     * lugar de los textos, ordenados por relevancia. Con el filtro vacío
+     * devuelve una lista vacía: la lista completa se pide por páginas.
+     */
+    public List<PacienteResumen> buscarPacientes(String filtro, String campo, int idUsuario) {
+        List<PacienteResumen> pacientes = new ArrayList<>();
+        String match = BusquedaFts.construirMatch(filtro, BusquedaFts.columnaParaCampo(campo));
+        if (match == null) return pacientes;
+
+        for (Coincidencia c : buscarCoincidencias(match, idUsuario)) {
+            pacientes.add(c.paciente);
+        }
+        return pacientes;
+    }
+
+    /**
+     * Las MAX_RESULTADOS_BUSQUEDA coincidencias más relevantes, de mejor a peor.
+     * La puntuación sale del blob de matchinfo() y solo se puede calcular en
+     * Java (el SQLite de Android no admite funciones propias), así que no hay
+     * ORDER BY ni LIMIT en la consulta: se recorre el cursor manteniendo un
+     * montículo con las mejores, y solo se crea el PacienteResumen de las
+     * filas que entran en él.
+     */
+    private List<Coincidencia> buscarCoincidencias(String match, int idUsuario) {
+        // Cabeza = la peor de las guardadas, la primera en salir
+        PriorityQueue<Coincidencia> mejores = new PriorityQueue<>(64,
+                (a, b) -> compararRelevancia(b, a));
+        Cursor cursor = dataManager.buscarPacientes(match, idUsuario);
+        try {
+            if (cursor != null) {
+                RowMapper<PacienteResumen> mapper = RowMappers.PACIENTE_RESUMEN.crear(cursor);
+                int colRelevancia = cursor.getColumnIndexOrThrow("relevancia");
+                int orden = 0;
+                while (cursor.moveToNext()) {
+                    double puntuacion = BusquedaFts.puntuacion(cursor.getBlob(colRelevancia));
+                    // A igual puntuación gana la que llegó antes: la nueva no entra
+                    if (mejores.size() >= MAX_RESULTADOS_BUSQUEDA) {
+                        if (puntuacion <= mejores.peek().puntuacion) {
+                            orden++;
+                            continue;
+                        }
+                        mejores.poll();
+                    }
+                    mejores.add(new Coincidencia(mapper.mapear(cursor), puntuacion, orden++));
+                }
+            }
+        } catch (Exception e) {
+            // Expresión MATCH inválida o tabla FTS ausente: sin resultados.
+            // El texto buscado no va al log (puede ser un DNI, AUDITORIA #15).
+            Log.e(TAG, "Error en la búsqueda de pacientes: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        List<Coincidencia> coincidencias = new ArrayList<>(mejores);
+        Collections.sort(coincidencias, PacienteController::compararRelevancia);
+        return coincidencias;
+    }
+
     /** Sobrecarga de compatibilidad: filtra sobre todos los pacientes */
     public List<String> filtrarPacientes(String filtro, String campo) {
         return filtrarPacientes(filtro, campo, -1);
@@ -640,7 +665,7 @@ public class PacienteController {
      * Obtiene información sobre quién creó un paciente y cuándo.
      *
      * @param idPaciente ID del paciente
-     * @return String formateado, ej: "Dr. García (garcia01) — 2025-06-15 10:30:00"
+     * @return String formateado, ej: "Dr. García (garcia01)\n15/06/2025 10:30:00"
      *         o null si no se encuentra creador
      */
     public String obtenerInfoCreador(int idPaciente) {
@@ -649,11 +674,11 @@ public class PacienteController {
             if (cursor != null && cursor.moveToFirst()) {
                 String nombreCompleto = cursor.getString(cursor.getColumnIndex("nombre_completo"));
                 String username = cursor.getString(cursor.getColumnIndex("username"));
-                String fecha = cursor.getString(cursor.getColumnIndex("fecha_asignacion"));
+                long fecha = cursor.getLong(cursor.getColumnIndex("fecha_asignacion"));
 
                 String info = nombreCompleto + " (" + username + ")";
-                if (fecha != null && !fecha.isEmpty()) {
-                    info += "\n" + fecha;
+                if (fecha > 0) {
+                    info += "\n" + Fechas.formatearFechaHora(fecha);
                 }
                 return info;
             }
@@ -665,28 +690,106 @@ public class PacienteController {
         return null;
     }
 
+    // ========================
+    // VARIANTES ASÍNCRONAS
+    // ========================
+    // Misma lógica que los métodos síncronos, pero ejecutada fuera del hilo
+    // principal. El callback se invoca siempre en el hilo principal.
+
+    /**
+     * Página de pacientes visibles para un usuario (-1 = todos, admin).
+     */
+    public Future<List<PacienteResumen>> obtenerPaginaPacientesAsync(int idUsuario, PacienteResumen ultimo, int tamano,
+                                                                     PacienteRepository.Callback<List<PacienteResumen>> callback) {
+        return repositorio.ejecutar(() -> obtenerPaginaPacientes(idUsuario, ultimo, tamano), callback);
+    }
+
+    public Future<List<PacienteResumen>> buscarPacientesAsync(String filtro, String campo, int idUsuario,
+                                                              PacienteRepository.Callback<List<PacienteResumen>> callback) {
+        return repositorio.ejecutar(() -> buscarPacientes(filtro, campo, idUsuario), callback);
+    }
+
+    public Future<Paciente> obtenerPacientePorDNIAsync(String dni,
+                                                       PacienteRepository.Callback<Paciente> callback) {
+        return repositorio.ejecutar(() -> obtenerPacientePorDNI(dni), callback);
+    }
+
+    public Future<Paciente> obtenerPacientePorIdAsync(int id, int opcionDis,
+                                                      PacienteRepository.Callback<Paciente> callback) {
+        return repositorio.ejecutar(() -> obtenerPacientePorId(id, opcionDis), callback);
+    }
+
+    public Future<Resultado> guardarPacienteAsync(int idUsuarioCreador, String dni, String nombre, String apellido1, String apellido2, String edadStr, String genero,
+                                                  String patologia, String medicacion,
+                                                  String intensidadStr, String tiempoStr, String cic,
+                                                  PacienteRepository.Callback<Resultado> callback) {
+        return repositorio.ejecutarEscritura(() -> guardarPaciente(idUsuarioCreador, dni, nombre, apellido1, apellido2, edadStr, genero,
+                patologia, medicacion, intensidadStr, tiempoStr, cic),
+                callback, e -> callback.onResultado(Resultado.error("Error al guardar el paciente")));
+    }
+
+    public Future<Resultado> guardarPaciente2dispAsync(int idUsuarioCreador,
+                                                       String dni, String nombre, String apellido1, String apellido2, String edadStr, String genero,
+                                                       String patologia, String medicacion,
+                                                       String intensidadStr, String tiempoStr,
+                                                       String intensidadStr2, String tiempoStr2, String cic,
+                                                       PacienteRepository.Callback<Resultado> callback) {
+        return repositorio.ejecutarEscritura(() -> guardarPaciente2disp(idUsuarioCreador, dni, nombre, apellido1, apellido2, edadStr, genero,
+                patologia, medicacion, intensidadStr, tiempoStr, intensidadStr2, tiempoStr2, cic),
+                callback, e -> callback.onResultado(Resultado.error("Error al guardar el paciente")));
+    }
+
+    public Future<Resultado> actualizarPacienteAsync(int id, String dni, String nombre, String apellido1, String apellido2, String edadStr, String genero,
+                                                     String patologia, String medicacion,
+                                                     String intensidadStr, String tiempoStr, String cic,
+                                                     PacienteRepository.Callback<Resultado> callback) {
+        return repositorio.ejecutarEscritura(() -> actualizarPaciente(id, dni, nombre, apellido1, apellido2, edadStr, genero,
+                patologia, medicacion, intensidadStr, tiempoStr, cic),
+                callback, e -> callback.onResultado(Resultado.error("Error al actualizar el paciente")));
+    }
+
+    public Future<Resultado> actualizarPaciente2dispAsync(int id, String dni, String nombre, String apellido1, String apellido2, String edadStr, String genero,
+                                                          String patologia, String medicacion,
+                                                          String intensidadStr, String tiempoStr,
+                                                          String intensidadStr2, String tiempoStr2, String cic,
+                                                          PacienteRepository.Callback<Resultado> callback) {
+        return repositorio.ejecutarEscritura(() -> actualizarPaciente2disp(id, dni, nombre, apellido1, apellido2, edadStr, genero,
+                patologia, medicacion, intensidadStr, tiempoStr, intensidadStr2, tiempoStr2, cic),
+                callback, e -> callback.onResultado(Resultado.error("Error al actualizar el paciente")));
+    }
+
+    public Future<Resultado> eliminarPacienteAsync(int id, PacienteRepository.Callback<Resultado> callback) {
+        return repositorio.ejecutarEscritura(() -> eliminarPaciente(id), callback,
+                e -> callback.onResultado(Resultado.error("Error al borrar el paciente")));
+    }
+
+    public Future<List<String>> filtrarPacientesAsync(String filtro, String campo, int idUsuario,
+                                                      PacienteRepository.Callback<List<String>> callback) {
+        return repositorio.ejecutar(() -> filtrarPacientes(filtro, campo, idUsuario), callback);
+    }
+
+    public Future<Resultado> guardarConfiguracionAsync(String dni, int intensidad, int tiempo,
+                                                       PacienteRepository.Callback<Resultado> callback) {
+        return repositorio.ejecutarEscritura(() -> guardarConfiguracion(dni, intensidad, tiempo), callback);
+    }
+
+    public Future<Resultado> guardarConfiguracion2dispAsync(String dni, int intensidad, int tiempo,
+                                                            int intensidad2, int tiempo2,
+                                                            PacienteRepository.Callback<Resultado> callback) {
+        return repositorio.ejecutarEscritura(() -> guardarConfiguracion2disp(dni, intensidad, tiempo,
+                intensidad2, tiempo2), callback);
+    }
+
+    public Future<String> obtenerInfoCreadorAsync(int idPaciente, PacienteRepository.Callback<String> callback) {
+        return repositorio.ejecutar(() -> obtenerInfoCreador(idPaciente), callback);
+    }
+
     // ========================
     // HELPERS PRIVADOS
     // ========================
 
-    /** Convierte la fila actual de un Cursor en un objeto Paciente */
-    private Paciente cursorToPaciente(Cursor cursor) {
-        int id = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_ID));
-        String cic = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_CIC));
-        String dni = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_DNI));
-        String nombre = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_NOMBRE));
-        String ap1 = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_APELLIDO1));
-        String ap2 = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_APELLIDO2));
-        int edad = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_EDAD));
-        Paciente.Genero genero = Paciente.Genero.valueOf(cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_GENERO)));
-        String patologia = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_PATOLOGIA));
-        String medicacion = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_MEDICACIÓN));
-        int intensidad = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD));
-        int tiempo = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO));
-        int intensidad2 = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD2));
-        int tiempo2 = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO2));
-
-        return new Paciente(id, cic, dni, nombre, ap1, ap2, edad, genero, patologia, medicacion,
-                intensidad, tiempo, intensidad2, tiempo2);
+    /** Recorre y cierra un Cursor de COLUMNAS_RESUMEN */
+    private List<PacienteResumen> cursorAResumenes(Cursor cursor) {
+        return RowMapper.lista(cursor, RowMappers.PACIENTE_RESUMEN);
     }
 }
\ No newline at end of file
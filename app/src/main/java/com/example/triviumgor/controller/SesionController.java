@@ -1,16 +1,18 @@
 package com.example.triviumgor.controller;
 
+import android.database.Cursor;
+
+import com.example.triviumgor.database.PacienteDBHelper;
 import com.example.triviumgor.database.PacienteDataManager;
+import com.example.triviumgor.database.PacienteRepository;
 import com.example.triviumgor.model.Sesion;
+import com.example.triviumgor.util.Fechas;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Controlador de Sesiones.
@@ -19,32 +21,35 @@ import java.util.Map;
  */
 public class SesionController {
 
-    private static final SimpleDateFormat FORMATO_DB =
-            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-    private static final SimpleDateFormat FORMATO_FECHA =
-            new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
-    private static final SimpleDateFormat FORMATO_HORA =
-            new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-
     /**
      * Representa un grupo de sesiones agrupadas por día.
      */
     public static class GrupoDia {
         public final String fechaFormateada; // "dd/MM/yyyy"
+        public final long desde;             // inicio del día (epoch ms, incluido)
+        public final long hasta;             // inicio del día siguiente (epoch ms, excluido)
         public final int indiceInicio;       // índice en la lista original
         public final int indiceFin;          // índice fin (exclusivo) para subList()
 
-        public GrupoDia(String fechaFormateada, int indiceInicio, int indiceFin) {
+        public GrupoDia(String fechaFormateada, long desde, long hasta, int indiceInicio, int indiceFin) {
             this.fechaFormateada = fechaFormateada;
+            this.desde = desde;
+            this.hasta = hasta;
             this.indiceInicio = indiceInicio;
             this.indiceFin = indiceFin;
         }
+
+        public int getNumSesiones() {
+            return indiceFin - indiceInicio;
+        }
     }
 
     private final PacienteDataManager dataManager;
+    private final PacienteRepository repositorio;
 
     public SesionController(PacienteDataManager dataManager) {
         this.dataManager = dataManager;
+        this.repositorio = PacienteRepository.getInstance(dataManager);
     }
 
     // ========================
@@ -80,6 +85,40 @@ public class SesionController {
         return dataManager.obtenerSesionesPaciente(idPaciente);
     }
 
+    /**
+     * Sesiones de un paciente en un intervalo [desde, hasta) en epoch ms,
+     * ordenadas por fecha DESC. Con GrupoDia.desde / hasta da las de un día.
+     */
+    public List<Sesion> obtenerSesionesPaciente(int idPaciente, long desde, long hasta) {
+        return dataManager.obtenerSesionesPaciente(idPaciente, desde, hasta);
+    }
+
+    /**
+     * Días con sesiones de un paciente, más recientes primero, agrupados en
+     * SQL. Los índices de cada GrupoDia corresponden a la lista completa que
+     * devolvería obtenerSesionesPaciente(idPaciente).
+     */
+    public List<GrupoDia> obtenerDiasConSesiones(int idPaciente) {
+        List<GrupoDia> grupos = new ArrayList<>();
+        Cursor cursor = dataManager.obtenerDiasConSesiones(idPaciente);
+        try {
+            if (cursor == null) return grupos;
+            int colTotal = cursor.getColumnIndexOrThrow("total");
+            int colUltima = cursor.getColumnIndexOrThrow("ultima");
+            int indice = 0;
+            while (cursor.moveToNext()) {
+                long ultima = cursor.getLong(colUltima);
+                int total = cursor.getInt(colTotal);
+                grupos.add(new GrupoDia(Fechas.formatearFecha(ultima), Fechas.inicioDelDia(ultima),
+                        Fechas.inicioDelDiaSiguiente(ultima), indice, indice + total));
+                indice += total;
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        return grupos;
+    }
+
     /**
      * Obtiene una sesión por su ID.
      */
@@ -87,6 +126,27 @@ public class SesionController {
         return dataManager.obtenerSesion(idSesion);
     }
 
+    /**
+     * Nombres completos de los usuarios que realizaron una sesión, separados
+     * por comas. Cadena vacía si no hay ninguno asignado.
+     */
+    public String obtenerNombresUsuariosSesion(int idSesion) {
+        StringBuilder nombres = new StringBuilder();
+        for (int idUsuario : dataManager.obtenerUsuariosPorSesion(idSesion)) {
+            Cursor cursor = dataManager.obtenerUsuarioPorId(idUsuario);
+            try {
+                if (cursor != null && cursor.moveToFirst()) {
+                    if (nombres.length() > 0) nombres.append(", ");
+                    nombres.append(cursor.getString(
+                            cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_NOMBRE_COMPLETO)));
+                }
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+        }
+        return nombres.toString();
+    }
+
     // ========================
     // ELIMINACIÓN
     // ========================
@@ -100,6 +160,48 @@ public class SesionController {
         return dataManager.eliminarSesion(idSesion);
     }
 
+    // ========================
+    // VARIANTES ASÍNCRONAS
+    // ========================
+    // Se ejecutan fuera del hilo principal; el callback llega en el hilo principal.
+
+    public Future<Long> registrarSesionAsync(int idPaciente, int idUsuario, String dispositivo,
+                                             int intensidad, int tiempo,
+                                             PacienteRepository.Callback<Long> callback) {
+        return repositorio.ejecutarEscritura(() -> (idUsuario != -1)
+                ? registrarSesion(idPaciente, idUsuario, dispositivo, intensidad, tiempo)
+                : registrarSesion(idPaciente, dispositivo, intensidad, tiempo),
+                callback, e -> callback.onResultado(-1L));
+    }
+
+    public Future<List<Sesion>> obtenerSesionesPacienteAsync(int idPaciente,
+                                                             PacienteRepository.Callback<List<Sesion>> callback,
+                                                             PacienteRepository.ErrorCallback onError) {
+        return repositorio.ejecutar(() -> obtenerSesionesPaciente(idPaciente), callback, onError);
+    }
+
+    public Future<List<Sesion>> obtenerSesionesPacienteAsync(int idPaciente, long desde, long hasta,
+                                                             PacienteRepository.Callback<List<Sesion>> callback,
+                                                             PacienteRepository.ErrorCallback onError) {
+        return repositorio.ejecutar(() -> obtenerSesionesPaciente(idPaciente, desde, hasta), callback, onError);
+    }
+
+    public Future<List<GrupoDia>> obtenerDiasConSesionesAsync(int idPaciente,
+                                                             PacienteRepository.Callback<List<GrupoDia>> callback,
+                                                             PacienteRepository.ErrorCallback onError) {
+        return repositorio.ejecutar(() -> obtenerDiasConSesiones(idPaciente), callback, onError);
+    }
+
+    public Future<Boolean> eliminarSesionAsync(int idSesion, PacienteRepository.Callback<Boolean> callback) {
+        return repositorio.ejecutarEscritura(() -> eliminarSesion(idSesion), callback,
+                e -> callback.onResultado(false));
+    }
+
+    public Future<String> obtenerNombresUsuariosSesionAsync(int idSesion,
+                                                            PacienteRepository.Callback<String> callback) {
+        return repositorio.ejecutar(() -> obtenerNombresUsuariosSesion(idSesion), callback);
+    }
+
     // ========================
     // AGRUPACIÓN POR DÍA
     // ========================
@@ -118,29 +220,27 @@ public class SesionController {
             return grupos;
         }
 
-        if (sesiones.size() == 1) {
-            String fecha = formatearFecha(sesiones.get(0).getFecha());
-            grupos.add(new GrupoDia(fecha, 0, 1));
-            return grupos;
-        }
-
+        // Con la lista ordenada, una sesión sigue en el grupo actual mientras
+        // caiga en [desde, hasta): solo se calcula el día al cambiar de grupo.
         int inicioGrupo = 0;
-        String fechaGrupoActual = formatearFecha(sesiones.get(0).getFecha());
+        long desde = Fechas.inicioDelDia(sesiones.get(0).getFecha());
+        long hasta = Fechas.inicioDelDiaSiguiente(sesiones.get(0).getFecha());
 
         for (int i = 1; i < sesiones.size(); i++) {
-            String fechaActual = formatearFecha(sesiones.get(i).getFecha());
+            long fecha = sesiones.get(i).getFecha();
 
-            if (!fechaActual.equals(fechaGrupoActual)) {
+            if (fecha < desde || fecha >= hasta) {
                 // Cerrar grupo anterior
-                grupos.add(new GrupoDia(fechaGrupoActual, inicioGrupo, i));
+                grupos.add(new GrupoDia(Fechas.formatearFecha(desde), desde, hasta, inicioGrupo, i));
                 // Abrir nuevo grupo
                 inicioGrupo = i;
-                fechaGrupoActual = fechaActual;
+                desde = Fechas.inicioDelDia(fecha);
+                hasta = Fechas.inicioDelDiaSiguiente(fecha);
             }
         }
 
         // Cerrar último grupo
-        grupos.add(new GrupoDia(fechaGrupoActual, inicioGrupo, sesiones.size()));
+        grupos.add(new GrupoDia(Fechas.formatearFecha(desde), desde, hasta, inicioGrupo, sesiones.size()));
 
         return grupos;
     }
@@ -161,26 +261,23 @@ public class SesionController {
     // ========================
 
     /**
-     * Formatea fecha de DB ("yyyy-MM-dd HH:mm:ss") a "dd/MM/yyyy".
+     * Formatea fecha de DB (epoch ms) a "dd/MM/yyyy".
      */
-    public String formatearFecha(String fechaDB) {
-        try {
-            Date fecha = FORMATO_DB.parse(fechaDB);
-            return FORMATO_FECHA.format(fecha);
-        } catch (ParseException e) {
-            return fechaDB;
-        }
+    public String formatearFecha(long fechaDB) {
+        return Fechas.formatearFecha(fechaDB);
     }
 
     /**
-     * Extrae la hora de una fecha DB ("yyyy-MM-dd HH:mm:ss") a "HH:mm:ss".
+     * Extrae la hora de una fecha DB (epoch ms) a "HH:mm:ss".
      */
-    public String formatearHora(String fechaDB) {
-        try {
-            Date fecha = FORMATO_DB.parse(fechaDB);
-            return FORMATO_HORA.format(fecha);
-        } catch (ParseException e) {
-            return "--:--:--";
-        }
+    public String formatearHora(long fechaDB) {
+        return Fechas.formatearHora(fechaDB);
+    }
+
+    /**
+     * Formatea fecha de DB (epoch ms) a "dd/MM/yyyy HH:mm:ss".
+     */
+    public String formatearFechaHora(long fechaDB) {
+        return Fechas.formatearFechaHora(fechaDB);
     }
 }
\ No newline at end of file
@@ -4,65 +4,134 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.example.triviumgor.bluetooth.ColaComandos;
+import com.example.triviumgor.bluetooth.Latido;
+import com.example.triviumgor.bluetooth.LectorDispositivo;
+import com.example.triviumgor.bluetooth.ParserMensajes;
+import com.example.triviumgor.bluetooth.SondeoBateria;
+import com.example.triviumgor.bluetooth.TramaCodec;
+import com.example.triviumgor.bluetooth.TramaSesionPendiente;
+import com.example.triviumgor.database.Telemetria;
 import com.example.triviumgor.model.DispositivoState;
+import com.example.triviumgor.util.CuentaAtras;
+import com.example.triviumgor.util.Planificador;
+import com.example.triviumgor.util.Reloj;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Calendar;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Controlador de Tratamiento.
  * Gestiona: construcción de tramas, envío al hardware, timers de sesión y lectura de batería.
+ * Las escrituras al hardware se encolan en la ColaComandos de cada dispositivo.
  * NO contiene referencias a Views. Comunica eventos a la Activity via TratamientoListener.
  */
 public class TratamientoController {
 
     private static final String TAG = "TratamientoController";
-    private static final int TIMER_INTERVAL_MS = 20000;
+    // Con lecturas iguales, tiempo mínimo entre avisos de batería a la UI
     private static final int BATTERY_POLL_INTERVAL_MS = 30000;
-    private static final int ANCHO_PULSO_DEFAULT = 4;
-    private static final int PERIODO_MS_DEFAULT = 100;
+    // Retraso admisible del sondeo de batería (fracción de su intervalo) para
+    // compartir despertar con otras tareas (el timer de sesión no tiene holgura)
+    private static final int BATTERY_POLL_HOLGURA_DIVISOR = 6;
+
+    // Latido durante la sesión. Mientras llegan respuestas se pide una cada
+    // LATIDO_PERIODO_ESTABLE_MS; cada respuesta se espera LATIDO_PERIODO_MS y
+    // si falta se repite a ese ritmo hasta LATIDO_MAX_PERDIDOS. Un enlace
+    // muerto se detecta en 0,9-1,9 s (el ACL_DISCONNECTED de Android tarda
+    // varios) con ~3600 peticiones/hora, frente a ~12000 latiendo siempre
+    // cada 300 ms.
+    public static final int LATIDO_PERIODO_MS = 300;
+    public static final int LATIDO_PERIODO_ESTABLE_MS = 1000;
+    public static final int LATIDO_MAX_PERDIDOS = 3;
+    private static final int LATIDO_HOLGURA_MS = 50;
 
     // Niveles de batería
     public static final int NIVEL_ALTA = 3;
     public static final int NIVEL_MEDIA = 2;
     public static final int NIVEL_BAJA = 1;
 
+    // Lecturas del ADC: desde CARGA_ALTA es ALTA, desde CARGA_MEDIA es MEDIA;
+    // las de CARGA_MINIMA o menos no son válidas
+    public static final int CARGA_ALTA = 890;
+    public static final int CARGA_MEDIA = 840;
+    private static final int CARGA_MINIMA = 780;
+
     /**
      * Listener para comunicar eventos al Activity (View).
      */
     public interface TratamientoListener {
-        void onTiempoRestanteActualizado(int dispositivoNum, int minutosRestantes);
-        void onSesionFinalizada(int dispositivoNum);
-        void onBateriaActualizada(int dispositivoNum, int valorCarga, int nivel, String textoNivel);
-        void onError(int dispositivoNum, String mensaje);
-        void onSesionIniciada(int dispositivoNum);
-        void onIntensidadActualizada(int dispositivoNum, int intensidad);
+        void onTiempoRestanteActualizado(int dispositivoId, int minutosRestantes);
+        /** Solo con setResolucionSegundos(true); una vez por segundo de sesión */
+        void onSegundosRestantesActualizados(int dispositivoId, int segundosRestantes);
+        void onSesionFinalizada(int dispositivoId);
+        void onBateriaActualizada(int dispositivoId, int valorCarga, int nivel, String textoNivel);
+        void onError(int dispositivoId, String mensaje);
+        void onSesionIniciada(int dispositivoId);
+        void onIntensidadActualizada(int dispositivoId, int intensidad);
+        /** El latido da el enlace por muerto; llega desde un hilo de fondo */
+        void onEnlacePerdido(int dispositivoId, String motivo);
     }
 
     private final TratamientoListener listener;
-    // Handlers anclados al Looper del hilo principal. Usar new Handler() sin
-    // Looper explicito depende del hilo de instanciacion y es fragil ante
-    // refactors (falla si se crea el controller desde un thread sin Looper).
-    private final Handler timeHandler1 = new Handler(Looper.getMainLooper());
-    private final Handler timeHandler2 = new Handler(Looper.getMainLooper());
-
-    // Handlers independientes para el sondeo periódico de batería (cada 30s mientras conectado)
-    private final Handler batteryPollHandler1 = new Handler(Looper.getMainLooper());
-    private final Handler batteryPollHandler2 = new Handler(Looper.getMainLooper());
-
-    private int minutoAnt1 = -1;
-    private int minutoAnt2 = -1;
-
-    // Threads de lectura de batería
-    private BatteryReaderThread batteryThread1;
-    private BatteryReaderThread batteryThread2;
-
-    // Buffer de escritura compartido
-    private final int[] byteArrayWrite = new int[28];
+    // Para devolver al hilo principal los fallos de escritura de ColaComandos
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Si hay varios cambios de intensidad pendientes para un dispositivo solo
+    // se envía el último (ver TramaSesionPendiente)
+    private volatile boolean agruparCambiosIntensidad = true;
+
+    // Timers de sesión y sondeo de batería (cada 30s mientras conectado) de
+    // todos los dispositivos, en un único hilo fuera del hilo principal
+    private final Reloj reloj;
+    private final Planificador planificador;
+    // Con true el timer avisa también cada segundo (onSegundosRestantesActualizados)
+    private volatile boolean resolucionSegundos = false;
+
+    private volatile int latidoPeriodoMs = LATIDO_PERIODO_MS;
+    private volatile int latidoPeriodoEstableMs = LATIDO_PERIODO_ESTABLE_MS;
+    private volatile int latidoMaxPerdidos = LATIDO_MAX_PERDIDOS;
+
+    // Serie temporal de batería y RTT por MAC (null = no se guarda)
+    private volatile Telemetria telemetria;
+
+    // Timer, sondeo y manejador de batería de cada dispositivo, por id
+    private final ConcurrentHashMap<Integer, Recursos> recursos = new ConcurrentHashMap<>();
+
+    /** Trabajo en curso de un dispositivo; coste fijo por dispositivo */
+    private static class Recursos {
+        volatile Planificador.Tarea timer;
+        volatile Planificador.Tarea sondeoBateria;
+        volatile SondeoBateria sondeo;
+        // Cuenta atrás de la sesión en curso y, si se cortó el enlace, lo que
+        // llevaba transcurrido (-1 = no hay sesión suspendida) y cuándo se cortó
+        volatile CuentaAtras cuenta;
+        volatile long suspendidaMs = -1;
+        volatile long perdidaMs;
+        // Manejador de los mensajes de batería (registrado en el LectorDispositivo)
+        ManejadorBateria manejadorBateria;
+        // Latido en curso (null si no hay) y lector en que está registrado
+        volatile Latido latido;
+        volatile LectorDispositivo lectorLatido;
+        volatile Planificador.Tarea tareaLatido;
+        volatile long ultimoLatidoMs;
+    }
 
     public TratamientoController(TratamientoListener listener) {
+        this(listener, Reloj.SISTEMA);
+    }
+
+    /**
+     * @param reloj reloj monótono de la cuenta atrás y de los plazos del
+     *              Planificador (Reloj.SISTEMA en la app)
+     */
+    public TratamientoController(TratamientoListener listener, Reloj reloj) {
         this.listener = listener;
+        this.reloj = reloj;
+        this.planificador = new Planificador(reloj);
     }
 
     // ========================
@@ -71,77 +140,156 @@ public class TratamientoController {
 
     /**
      * Inicia una sesión nueva o actualiza la intensidad si ya hay una activa.
-     * @return true si es sesión nueva, false si es actualización
+     * La trama se encola en la ColaComandos del dispositivo y se escribe en su
+     * hilo escritor: este método no bloquea aunque el enlace vaya lento. Si la
+     * escritura falla después, se avisa con onError y una sesión nueva se
+     * deshace (ver onEnvioSesionFallido). Los cambios que llegan mientras la
+     * trama anterior aún espera en la cola se agrupan en ella.
+     * @return true si es sesión nueva, false si es actualización o no se pudo encolar
      */
     public boolean iniciarOActualizarSesion(DispositivoState dispositivo, int intensidad, int duracionMin) {
-        if (!dispositivo.isConnected()) {
-            listener.onError(dispositivo.getNumero(), "Dispositivo no conectado");
+        ColaComandos cola = dispositivo.getColaComandos();
+        if (!dispositivo.isConnected() || cola == null) {
+            listener.onError(dispositivo.getId(), "Dispositivo no conectado");
             return false;
         }
 
-        boolean esSesionNueva = dispositivo.isClockStopped();
-
-        dispositivo.setIntensidad(intensidad);
-        dispositivo.setDuracionMin(duracionMin);
-
-        // Construir y enviar trama
         try {
-            byte[] trama = construirTrama(intensidad, duracionMin);
-            enviarTrama(dispositivo, trama);
-        } catch (IOException e) {
-            listener.onError(dispositivo.getNumero(), "Error al enviar datos: " + e.getMessage());
+            TramaCodec.validarSesion(intensidad, duracionMin);
+        } catch (IllegalArgumentException e) {
+            listener.onError(dispositivo.getId(), "Parámetros fuera de rango: " + e.getMessage());
             return false;
         }
 
+        final boolean esSesionNueva = dispositivo.isClockStopped();
+        if (!encolarSesion(dispositivo, cola, intensidad, duracionMin, esSesionNueva)) {
+            return false;
+        }
+
+        dispositivo.setIntensidad(intensidad);
+        dispositivo.setDuracionMin(duracionMin);
+
         if (esSesionNueva) {
             // Resetear temporizador
             dispositivo.setMinutoTranscurrido(0);
-            dispositivo.setClockStopped(false);
+            if (!dispositivo.iniciarSesion()) {
+                // Desconectado mientras tanto, u otra llamada ya la inició
+                pararSesionNoIniciada(dispositivo);
+                return false;
+            }
             dispositivo.setBattMon(true);
 
             // Iniciar timer
-            iniciarTimer(dispositivo);
+            iniciarTimer(dispositivo, 0);
 
-            // Iniciar lectura de batería
+            // Iniciar lectura de batería y latido
             iniciarLecturaBateria(dispositivo);
+            iniciarLatido(dispositivo);
 
-            listener.onSesionIniciada(dispositivo.getNumero());
-            Log.d(TAG, "Sesión nueva iniciada en dispositivo " + dispositivo.getNumero());
+            listener.onSesionIniciada(dispositivo.getId());
+            Log.d(TAG, "Sesión nueva iniciada en dispositivo " + dispositivo.getId());
             return true;
         } else {
-            listener.onIntensidadActualizada(dispositivo.getNumero(), intensidad);
-            Log.d(TAG, "Intensidad actualizada a " + intensidad + " en dispositivo " + dispositivo.getNumero());
+            listener.onIntensidadActualizada(dispositivo.getId(), intensidad);
+            Log.d(TAG, "Intensidad actualizada a " + intensidad + " en dispositivo " + dispositivo.getId());
             return false;
         }
     }
 
+    /**
+     * Encola la trama de sesión; con agrupación, si ya hay una esperando en la
+     * cola solo se actualizan sus parámetros y no se encola otra.
+     * @return false si la cola la rechazó (ya avisado con onError)
+     */
+    private boolean encolarSesion(DispositivoState dispositivo, ColaComandos cola,
+                                  int intensidad, int duracionMin, boolean esSesionNueva) {
+        final int pausaMs = dispositivo.getPausaEntreBytesMs();
+        final TramaSesionPendiente pendiente = dispositivo.getSesionPendiente();
+        final boolean agrupar = agruparCambiosIntensidad;
+
+        if (agrupar && !pendiente.actualizar(intensidad, duracionMin)) {
+            return true;
+        }
+        // La trama se codifica en el hilo escritor: el buffer del codec del
+        // dispositivo solo lo usa ese hilo
+        try {
+            cola.encolar("sesion", os -> {
+                int i = intensidad;
+                int d = duracionMin;
+                if (agrupar) {
+                    int ultimos = pendiente.tomar();
+                    i = TramaSesionPendiente.intensidad(ultimos);
+                    d = TramaSesionPendiente.duracion(ultimos);
+                }
+                TramaCodec codec = dispositivo.getCodec();
+                int longitud = codec.codificarSesion(i, d);
+                enviarTrama(os, codec.getBuffer(), longitud, pausaMs);
+            }, error -> {
+                if (error != null) {
+                    mainHandler.post(() -> onEnvioSesionFallido(dispositivo, esSesionNueva, error));
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendiente.descartar();
+            listener.onError(dispositivo.getId(), "Error al enviar datos: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Activa o desactiva la agrupación de cambios de intensidad. Desactivada,
+     * cada pulsación envía su propia trama (comportamiento anterior).
+     */
+    public void setAgruparCambiosIntensidad(boolean agrupar) {
+        this.agruparCambiosIntensidad = agrupar;
+    }
+
+    public boolean isAgruparCambiosIntensidad() {
+        return agruparCambiosIntensidad;
+    }
+
+    /** @return nº de tramas de sesión sustituidas por una más nueva antes de enviarse */
+    public long getTramasSustituidas(DispositivoState dispositivo) {
+        return dispositivo.getSesionPendiente().getSustituidas();
+    }
+
+    /**
+     * La trama de sesión no llegó al dispositivo (hilo principal).
+     * Si era una sesión nueva se para el reloj: el estimulador no ha arrancado.
+     * Si se descartó al cerrar la cola (desconexión) ya lo gestiona quien desconecta.
+     */
+    private void onEnvioSesionFallido(DispositivoState dispositivo, boolean eraSesionNueva, Throwable error) {
+        if (error instanceof CancellationException) return;
+
+        if (eraSesionNueva && dispositivo.detenerSesion()) {
+            detenerTimer(dispositivo);
+            listener.onSesionFinalizada(dispositivo.getId());
+        }
+        listener.onError(dispositivo.getId(), "Error al enviar datos: " + error.getMessage());
+    }
+
     // ========================
     // FINALIZAR SESIÓN
     // ========================
 
     /**
-     * Envía comando de parada (0x43 = 'C') y detiene el timer.
+     * Encola el comando de parada ('C') y detiene el timer.
+     * Para que la parada llegue antes de cerrar el socket, desconectar con
+     * BluetoothController.desconectar(), que vacía la cola primero.
      */
     public void finalizarSesion(DispositivoState dispositivo) {
         if (!dispositivo.isConnected()) return;
 
-        try {
-            OutputStream os = dispositivo.getOutputStream();
-            if (os != null) {
-                os.write(0x43);
-                os.flush();
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error al enviar comando de parada: " + e.getMessage());
-        }
+        encolarComando(dispositivo, "parada", TramaCodec.CMD_PARADA);
 
-        dispositivo.setClockStopped(true);
+        dispositivo.detenerSesion();
         detenerTimer(dispositivo);
 
         // La monitorización de batería sigue activa mientras el dispositivo esté conectado.
         // Se detiene solo al desconectar (detenerMonitorizacionBateria).
 
-        Log.d(TAG, "Sesión finalizada en dispositivo " + dispositivo.getNumero());
+        Log.d(TAG, "Sesión finalizada en dispositivo " + dispositivo.getId());
     }
 
     // ========================
@@ -149,159 +297,246 @@ public class TratamientoController {
     // ========================
 
     /**
-     * Construye la trama de bytes para enviar al hardware.
-     * Formato: 'A' + anchoPulso(x2) + periodo(x2) + intensidad(x2) + duración + 'B'
+     * Construye la trama de bytes para enviar al hardware en un array nuevo.
+     * El envío usa el TramaCodec de cada dispositivo, que no reserva memoria.
+     * Formato: ver TramaCodec.
      */
     public byte[] construirTrama(int intensidad, int duracionMin) {
-        int index = 0;
-        int[] trama = new int[28];
-
-        // Comando inicio
-        trama[index++] = 0x41; // 'A'
-
-        // Ancho de pulso (4ms) - repetido 2 veces
-        index = escribirValor4Digitos(trama, index, ANCHO_PULSO_DEFAULT);
-        index = escribirValor4Digitos(trama, index, ANCHO_PULSO_DEFAULT);
-
-        // Periodo (100ms = 10Hz) - repetido 2 veces
-        index = escribirValor4Digitos(trama, index, PERIODO_MS_DEFAULT);
-        index = escribirValor4Digitos(trama, index, PERIODO_MS_DEFAULT);
-
-        // Intensidad - repetida 2 veces
-        index = escribirValor2Digitos(trama, index, intensidad);
-        index = escribirValor2Digitos(trama, index, intensidad);
+        byte[] trama = new byte[TramaCodec.LONGITUD_TRAMA_SESION];
+        TramaCodec.codificarSesion(trama, 0, intensidad, duracionMin);
+        return trama;
+    }
 
-        // Duración en minutos
-        index = escribirValor2Digitos(trama, index, duracionMin);
+    // ========================
+    // ENVÍO
+    // ========================
 
-        // Comando fin
-        trama[index++] = 0x42; // 'B'
+    /**
+     * Envía una trama al dispositivo (en el hilo escritor de ColaComandos).
+     * Con pausa 0 (firmware que acepta la trama de golpe) se hace una sola
+     * escritura. Con pausa > 0 se envía byte a byte esperando entre bytes
+     * para que el firmware antiguo procese cada uno.
+     */
+    static void enviarTrama(OutputStream os, byte[] trama, int longitud, int pausaMs) throws IOException {
+        if (pausaMs <= 0) {
+            os.write(trama, 0, longitud);
+            os.flush();
+            return;
+        }
 
-        // Convertir a byte[]
-        byte[] resultado = new byte[index];
-        for (int i = 0; i < index; i++) {
-            resultado[i] = (byte) trama[i];
+        for (int i = 0; i < longitud; i++) {
+            os.write(trama[i]);
+            os.flush();
+            // Thread.sleep y no busy-wait: un for vacío podía optimizarse a 0
+            // por el JIT en ARM moderno (ver AUDITORIA #9).
+            try {
+                Thread.sleep(pausaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Envio de trama interrumpido", e);
+            }
         }
-        return resultado;
     }
 
     /**
-     * Escribe un valor de 4 dígitos en formato ASCII en la trama.
+     * Encola un comando de un byte ('C', 'F').
+     * @return false si no hay cola o está llena
      */
-    private int escribirValor4Digitos(int[] trama, int index, int valor) {
-        int aux1, aux2;
-        aux1 = valor / 1000;
-        aux2 = valor % 1000;
-        trama[index++] = aux1 + 0x30;
-
-        aux1 = aux2 / 100;
-        aux2 = aux2 % 100;
-        trama[index++] = aux1 + 0x30;
-
-        aux1 = aux2 / 10;
-        aux2 = aux2 % 10;
-        trama[index++] = aux1 + 0x30;
+    private boolean encolarComando(DispositivoState dispositivo, String descripcion, byte comando) {
+        ColaComandos cola = dispositivo.getColaComandos();
+        if (cola == null) return false;
+        try {
+            cola.encolar(descripcion, os -> {
+                os.write(comando);
+                os.flush();
+            }, null);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Error al enviar comando " + descripcion + ": " + e.getMessage());
+            return false;
+        }
+    }
 
-        trama[index++] = aux2 + 0x30;
+    // ========================
+    // TIMER DE SESIÓN
+    // ========================
 
-        return index;
+    /**
+     * Activa el aviso por segundos de la cuenta atrás. Se aplica a las
+     * sesiones que empiecen a partir de ahora.
+     */
+    public void setResolucionSegundos(boolean resolucionSegundos) {
+        this.resolucionSegundos = resolucionSegundos;
     }
 
     /**
-     * Escribe un valor de 2 dígitos en formato ASCII en la trama.
+     * Programa el timer de la sesión sobre una CuentaAtras que empieza ahora.
+     * Se ejecuta justo al cumplirse cada minuto (o cada segundo) desde el
+     * inicio: los plazos son múltiplos exactos del periodo y no derivan.
      */
-    private int escribirValor2Digitos(int[] trama, int index, int valor) {
-        int aux1 = valor / 10;
-        int aux2 = valor % 10;
-        trama[index++] = aux1 + 0x30;
-        trama[index++] = aux2 + 0x30;
-        return index;
+    private void iniciarTimer(DispositivoState dispositivo, long transcurridoPrevioMs) {
+        detenerTimer(dispositivo);
+        CuentaAtras cuenta = new CuentaAtras(reloj, transcurridoPrevioMs);
+        long periodo = resolucionSegundos ? CuentaAtras.SEGUNDO_MS : CuentaAtras.MINUTO_MS;
+        Recursos r = recursos(dispositivo);
+        r.cuenta = cuenta;
+        r.timer = planificador.programarPeriodica(
+                crearCheckTimer(dispositivo, cuenta), cuenta.msHastaSiguiente(periodo), periodo, 0);
+    }
+
+    private void detenerTimer(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        if (r == null) return;
+        Planificador.Tarea tarea = r.timer;
+        r.timer = null;
+        r.cuenta = null;
+        if (tarea != null) tarea.cancelar();
     }
 
     // ========================
-    // ENVÍO
+    // SESIÓN SUSPENDIDA (RECONEXIÓN)
     // ========================
 
     /**
-     * Envía la trama byte a byte al dispositivo con delay entre bytes.
+     * Se ha perdido el enlace con una sesión en marcha: para el reloj y guarda
+     * lo transcurrido y el instante del corte, sin avisar de fin de sesión. El
+     * paciente, la intensidad y la duración siguen en el DispositivoState.
+     * @return true si había una sesión que reanudar tras reconectar
+     */
+    public boolean suspenderSesion(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        if (r == null) return false;
+        CuentaAtras cuenta = r.cuenta;
+        if (cuenta == null || !dispositivo.detenerSesion()) return false;
+
+        r.perdidaMs = reloj.ahora();
+        r.suspendidaMs = cuenta.getTranscurridoMs();
+        detenerTimer(dispositivo);
+        detenerLatido(dispositivo);
+        Log.d(TAG, "Sesión suspendida en dispositivo " + dispositivo.getId()
+                + " tras " + r.suspendidaMs + " ms");
+        return true;
+    }
+
+    /**
+     * Reanuda la sesión suspendida tras reconectar: reenvía la trama con la
+     * intensidad y los minutos que faltan y sigue la cuenta atrás. El
+     * estimulador no se para al perder el enlace, así que el tiempo del corte
+     * cuenta como transcurrido; si no, el paciente recibiría el corte de más.
+     * La trama solo admite minutos enteros y se redondea hacia arriba; el
+     * exceso no llega a aplicarse porque al agotarse la cuenta atrás se envía
+     * la parada ('C'). Si ya no falta nada, envía la parada y la da por
+     * terminada.
+     * @return true si la sesión sigue en marcha
      */
-    private void enviarTrama(DispositivoState dispositivo, byte[] trama) throws IOException {
-        OutputStream os = dispositivo.getOutputStream();
-        if (os == null) {
-            throw new IOException("OutputStream es null");
+    public boolean reanudarSesion(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        if (r == null) return false;
+        long transcurridoMs = r.suspendidaMs;
+        if (transcurridoMs < 0) return false;
+        transcurridoMs += Math.max(0, reloj.ahora() - r.perdidaMs);
+        r.suspendidaMs = -1;
+
+        ColaComandos cola = dispositivo.getColaComandos();
+        if (!dispositivo.isConnected() || cola == null) return false;
+
+        long restanteMs = dispositivo.getDuracionMin() * CuentaAtras.MINUTO_MS - transcurridoMs;
+        if (restanteMs <= 0) {
+            // Por si el estimulador sigue con minutos redondeados de más
+            encolarComando(dispositivo, "parada", TramaCodec.CMD_PARADA);
+            listener.onSesionFinalizada(dispositivo.getId());
+            return false;
         }
+        int restanteMin = (int) ((restanteMs + CuentaAtras.MINUTO_MS - 1) / CuentaAtras.MINUTO_MS);
 
-        for (byte b : trama) {
-            os.write(b);
-            os.flush();
-            // Pequeño delay entre bytes para que el firmware del dispositivo
-            // procese cada uno. Antes era un busy-wait (for vacío) que en ARM
-            // moderno podía optimizarse a 0 por el JIT; Thread.sleep garantiza
-            // un delay predecible.
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new IOException("Envio de trama interrumpido", e);
+        // Como sesión nueva para el firmware: si la trama no llega, se para el reloj
+        if (!encolarSesion(dispositivo, cola, dispositivo.getIntensidad(), restanteMin, true)) {
+            listener.onSesionFinalizada(dispositivo.getId());
+            return false;
+        }
+        if (!dispositivo.iniciarSesion()) {
+            if (pararSesionNoIniciada(dispositivo)) {
+                listener.onSesionFinalizada(dispositivo.getId());
             }
+            return false;
         }
+        iniciarTimer(dispositivo, transcurridoMs);
+        iniciarLecturaBateria(dispositivo);
+        iniciarLatido(dispositivo);
+
+        listener.onTiempoRestanteActualizado(dispositivo.getId(), restanteMin);
+        Log.d(TAG, "Sesión reanudada en dispositivo " + dispositivo.getId()
+                + ": faltan " + restanteMin + " min");
+        return true;
     }
 
-    // ========================
-    // TIMER DE SESIÓN
-    // ========================
-
-    private void iniciarTimer(DispositivoState dispositivo) {
-        if (dispositivo.getNumero() == 1) {
-            minutoAnt1 = Calendar.getInstance().get(Calendar.MINUTE);
-            timeHandler1.postDelayed(crearCheckTimer(dispositivo, timeHandler1), TIMER_INTERVAL_MS);
-        } else {
-            minutoAnt2 = Calendar.getInstance().get(Calendar.MINUTE);
-            timeHandler2.postDelayed(crearCheckTimer(dispositivo, timeHandler2), TIMER_INTERVAL_MS);
+    /**
+     * La trama de sesión ya está encolada pero la transición a EN_SESION ha
+     * fallado. Si es porque otra llamada ya inició la sesión, la trama solo la
+     * actualiza. Si no (desconectado mientras tanto), se encola la parada por
+     * si la trama llega a salir: el estimulador no debe arrancar sin reloj.
+     * @return true si se ha parado y avisado con onError
+     */
+    private boolean pararSesionNoIniciada(DispositivoState dispositivo) {
+        DispositivoState.Estado estado = dispositivo.getEstado();
+        if (estado == DispositivoState.Estado.EN_SESION) {
+            Log.w(TAG, "Sesión ya iniciada por otra llamada en dispositivo " + dispositivo.getId());
+            return false;
         }
+        encolarComando(dispositivo, "parada", TramaCodec.CMD_PARADA);
+        listener.onError(dispositivo.getId(), "No se pudo iniciar la sesión (" + estado + ")");
+        return true;
     }
 
-    private void detenerTimer(DispositivoState dispositivo) {
-        if (dispositivo.getNumero() == 1) {
-            timeHandler1.removeCallbacksAndMessages(null);
-        } else {
-            timeHandler2.removeCallbacksAndMessages(null);
-        }
+    /** Olvida la sesión suspendida (la reconexión no ha sido posible) */
+    public void descartarSesionSuspendida(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        if (r != null) r.suspendidaMs = -1;
     }
 
-    private Runnable crearCheckTimer(DispositivoState dispositivo, Handler handler) {
-        return new Runnable() {
-            @Override
-            public void run() {
-                Calendar calendar = Calendar.getInstance();
-                int minutoActual = calendar.get(Calendar.MINUTE);
-                int minutoAnterior = (dispositivo.getNumero() == 1) ? minutoAnt1 : minutoAnt2;
-
-                if (minutoActual != minutoAnterior) {
-                    if (!dispositivo.isClockStopped()) {
-                        dispositivo.incrementarMinuto();
-                        int restante = dispositivo.getDuracionMin() - dispositivo.getMinutoTranscurrido();
-                        listener.onTiempoRestanteActualizado(dispositivo.getNumero(), restante);
-
-                        // Batería: ya no se consulta aquí; lo gestiona el polling periódico
-                        // de iniciarMonitorizacionBateria() mientras el dispositivo esté conectado.
-
-                        // Tiempo agotado
-                        if (dispositivo.isTiempoAgotado()) {
-                            dispositivo.setClockStopped(true);
-                            listener.onSesionFinalizada(dispositivo.getNumero());
-                        }
-                    }
-                }
+    /** Recursos del dispositivo, creados la primera vez que se piden */
+    private Recursos recursos(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        if (r == null) {
+            Recursos nuevo = new Recursos();
+            r = recursos.putIfAbsent(dispositivo.getId(), nuevo);
+            if (r == null) r = nuevo;
+        }
+        return r;
+    }
 
-                if (dispositivo.getNumero() == 1) {
-                    minutoAnt1 = minutoActual;
-                } else {
-                    minutoAnt2 = minutoActual;
-                }
+    /**
+     * Se ejecuta en el hilo del Planificador. Los minutos se calculan con la
+     * CuentaAtras, no se suman por ejecución: una ejecución tardía o perdida
+     * no desplaza el final de la sesión.
+     */
+    private Runnable crearCheckTimer(DispositivoState dispositivo, CuentaAtras cuenta) {
+        return () -> {
+            if (dispositivo.isClockStopped()) return;
+
+            int duracion = dispositivo.getDuracionMin();
+            int minutos = cuenta.getMinutosTranscurridos();
+            if (minutos != dispositivo.getMinutoTranscurrido()) {
+                dispositivo.setMinutoTranscurrido(minutos);
+                listener.onTiempoRestanteActualizado(dispositivo.getId(),
+                        cuenta.getMinutosRestantes(duracion));
+            }
+            if (resolucionSegundos) {
+                listener.onSegundosRestantesActualizados(dispositivo.getId(),
+                        cuenta.getSegundosRestantes(duracion));
+            }
 
-                // Reprogramar
-                handler.postDelayed(this, TIMER_INTERVAL_MS);
+            // Batería: ya no se consulta aquí; lo gestiona el polling periódico
+            // de iniciarMonitorizacionBateria() mientras el dispositivo esté conectado.
+
+            // Tiempo agotado (si a la vez se finaliza desde la UI, solo avisa
+            // quien gana la transición EN_SESION → CONECTADO). La parada se
+            // envía aunque el firmware pare solo: tras reanudar, la trama lleva
+            // los minutos redondeados hacia arriba y el estimulador seguiría.
+            if (cuenta.isAgotada(duracion) && dispositivo.detenerSesion()) {
+                encolarComando(dispositivo, "parada", TramaCodec.CMD_PARADA);
+                detenerTimer(dispositivo);
+                listener.onSesionFinalizada(dispositivo.getId());
             }
         };
     }
@@ -311,201 +546,331 @@ public class TratamientoController {
     // ========================
 
     /**
-     * Envía comando de solicitud de batería (0x46 = 'F').
+     * Encola el comando de solicitud de batería ('F').
      * Público para poder solicitar la batería inmediatamente tras conectar.
      */
     public void solicitarBateria(DispositivoState dispositivo) {
-        try {
-            OutputStream os = dispositivo.getOutputStream();
-            if (os != null && dispositivo.isConnected()) {
-                os.write(0x46);
-                os.flush();
-                dispositivo.setBattMon(true);
+        if (!dispositivo.isConnected()) return;
 
-                iniciarLecturaBateria(dispositivo);
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error al solicitar batería: " + e.getMessage());
+        // Registrar el manejador antes de pedir, para no perder la respuesta
+        iniciarLecturaBateria(dispositivo);
+
+        if (encolarComando(dispositivo, "bateria", TramaCodec.CMD_BATERIA)) {
+            dispositivo.setBattMon(true);
         }
     }
 
     /**
-     * Inicia un thread de lectura de batería para un dispositivo.
-     * Si ya hay un thread vivo leyendo, se reutiliza para evitar que dos hilos
-     * lean del mismo InputStream simultáneamente.
+     * Registra el manejador de batería del dispositivo en su LectorDispositivo.
+     * El lector es único por conexión: ya no se crea un hilo por petición.
      */
     private void iniciarLecturaBateria(DispositivoState dispositivo) {
-        if (dispositivo.getNumero() == 1) {
-            if (batteryThread1 != null && batteryThread1.isAlive()) {
-                return;
-            }
-            batteryThread1 = new BatteryReaderThread(dispositivo);
-            batteryThread1.start();
-        } else {
-            if (batteryThread2 != null && batteryThread2.isAlive()) {
-                return;
-            }
-            batteryThread2 = new BatteryReaderThread(dispositivo);
-            batteryThread2.start();
+        LectorDispositivo lector = dispositivo.getLector();
+        if (lector == null) return;
+
+        Recursos r = recursos(dispositivo);
+        if (r.manejadorBateria == null || r.manejadorBateria.lector != lector) {
+            quitarManejador(r.manejadorBateria);
+            r.manejadorBateria = new ManejadorBateria(dispositivo, lector);
+        }
+        lector.registrar(ParserMensajes.TIPO_BATERIA, r.manejadorBateria);
+    }
+
+    private void quitarManejador(ManejadorBateria manejador) {
+        if (manejador != null) {
+            manejador.lector.quitar(ParserMensajes.TIPO_BATERIA, manejador);
         }
     }
 
     /**
      * Arranca la monitorización continua de batería: pide batería inmediatamente
-     * y programa una nueva petición cada 30 segundos mientras el dispositivo esté conectado.
-     * Independiente del estado de sesión.
+     * y programa las siguientes peticiones mientras el dispositivo esté conectado,
+     * con el intervalo adaptativo de SondeoBateria (más largo en reposo con
+     * lecturas estables, más corto con sesión o cerca del nivel BAJA).
      */
     public void iniciarMonitorizacionBateria(final DispositivoState dispositivo) {
-        final Handler handler = (dispositivo.getNumero() == 1) ? batteryPollHandler1 : batteryPollHandler2;
-        handler.removeCallbacksAndMessages(null);
+        detenerSondeoBateria(dispositivo);
 
-        Runnable pollTask = new Runnable() {
-            @Override
-            public void run() {
-                if (!dispositivo.isConnected()) {
-                    return;
-                }
-                solicitarBateria(dispositivo);
-                handler.postDelayed(this, BATTERY_POLL_INTERVAL_MS);
-            }
-        };
-        handler.post(pollTask);
+        // El manejador se registra aquí (hilo principal); el sondeo solo encola 'F'
+        iniciarLecturaBateria(dispositivo);
+
+        SondeoBateria sondeo = new SondeoBateria(dispositivo.getAddress(), CARGA_MEDIA, reloj.ahora());
+        recursos(dispositivo).sondeo = sondeo;
+        programarSondeo(dispositivo, sondeo, 0);
     }
 
     /**
-     * Detiene la monitorización continua de batería y el thread lector.
-     * Llamar al desconectar el dispositivo.
+     * Programa la siguiente petición de batería. Cada una programa la
+     * siguiente con el intervalo que haya calculado el SondeoBateria.
      */
-    public void detenerMonitorizacionBateria(DispositivoState dispositivo) {
-        if (dispositivo.getNumero() == 1) {
-            batteryPollHandler1.removeCallbacksAndMessages(null);
-            if (batteryThread1 != null) {
-                batteryThread1.cancel();
-                batteryThread1 = null;
+    private void programarSondeo(final DispositivoState dispositivo, final SondeoBateria sondeo,
+                                 long retrasoMs) {
+        final Recursos r = recursos(dispositivo);
+        Planificador.Tarea tarea = planificador.programar(() -> {
+            if (r.sondeo != sondeo) return; // detenido o sustituido
+            // Con latido activo las respuestas a sus 'F' ya traen la batería
+            if (r.latido == null && dispositivo.isConnected()
+                    && encolarComando(dispositivo, "bateria", TramaCodec.CMD_BATERIA)) {
+                dispositivo.setBattMon(true);
+                sondeo.contarSondeo();
             }
-        } else {
-            batteryPollHandler2.removeCallbacksAndMessages(null);
-            if (batteryThread2 != null) {
-                batteryThread2.cancel();
-                batteryThread2 = null;
+            if (dispositivo.isConnected()) {
+                programarSondeo(dispositivo, sondeo,
+                        sondeo.getIntervaloMs(!dispositivo.isClockStopped()));
             }
+        }, retrasoMs, retrasoMs / BATTERY_POLL_HOLGURA_DIVISOR);
+
+        r.sondeoBateria = tarea;
+        if (r.sondeo != sondeo) {
+            // Se detuvo mientras se programaba
+            tarea.cancelar();
         }
     }
 
+    private void detenerSondeoBateria(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        if (r == null) return;
+        SondeoBateria sondeo = r.sondeo;
+        Planificador.Tarea tarea = r.sondeoBateria;
+        r.sondeo = null;
+        r.sondeoBateria = null;
+        if (tarea != null) tarea.cancelar();
+        if (sondeo != null) sondeo.registrarEstadisticas(reloj.ahora());
+    }
+
+    /** @return el sondeo de batería del dispositivo (intervalo, peticiones/hora) o null */
+    public SondeoBateria getSondeoBateria(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        return r == null ? null : r.sondeo;
+    }
+
     /**
-     * Thread que lee datos de batería del dispositivo vía InputStream.
-     * Equivalente a ConnectedThread/ConnectedThread2 del original.
+     * Detiene la monitorización continua de batería y quita su manejador.
+     * Llamar al desconectar el dispositivo (el lector lo cierra resetConexion).
      */
-    private class BatteryReaderThread extends Thread {
-        private final DispositivoState dispositivo;
-        private final java.io.InputStream myInputStream; // referencia propia al stream de ESTA conexión
-        private volatile boolean running = true;
+    public void detenerMonitorizacionBateria(DispositivoState dispositivo) {
+        dispositivo.setBattMon(false);
+        detenerSondeoBateria(dispositivo);
+        detenerLatido(dispositivo);
+        Recursos r = recursos.get(dispositivo.getId());
+        if (r != null) {
+            quitarManejador(r.manejadorBateria);
+            r.manejadorBateria = null;
+        }
+    }
 
-        BatteryReaderThread(DispositivoState dispositivo) {
-            this.dispositivo = dispositivo;
-            this.myInputStream = dispositivo.getInputStream(); // capturar en construcción
+    /**
+     * Detiene todo el trabajo de un dispositivo y olvida sus recursos.
+     * Llamar al quitarlo del RegistroDispositivos.
+     */
+    public void liberar(DispositivoState dispositivo) {
+        detenerTimer(dispositivo);
+        detenerMonitorizacionBateria(dispositivo);
+        recursos.remove(dispositivo.getId());
+    }
+
+    // ========================
+    // LATIDO
+    // ========================
+
+    /**
+     * Configura el latido: espera de cada respuesta (y periodo mientras se
+     * confirma el enlace o faltan respuestas), periodo con el enlace estable y
+     * latidos perdidos seguidos para dar el enlace por muerto. Se aplica a
+     * los siguientes. Con periodoEstableMs = periodoMs late siempre al mismo
+     * ritmo; con periodoMs = 0 no hay latido y la batería de la sesión la
+     * pide el sondeo (ver SondeoBateria sobre el coste de cada opción).
+     */
+    public void setLatido(int periodoMs, int periodoEstableMs, int maxPerdidos) {
+        this.latidoPeriodoMs = periodoMs;
+        this.latidoPeriodoEstableMs = Math.max(periodoMs, periodoEstableMs);
+        this.latidoMaxPerdidos = maxPerdidos;
+    }
+
+    /**
+     * Guarda las lecturas de batería y los RTT del latido en la telemetría.
+     * Se aplica a las lecturas y latidos siguientes; null para no guardar.
+     * Su volcado periódico va en el Planificador de este controlador.
+     */
+    public void setTelemetria(Telemetria telemetria) {
+        this.telemetria = telemetria;
+        if (telemetria != null) telemetria.programarVolcado(planificador);
+    }
+
+    /** @return el latido en curso del dispositivo (RTT, pérdidas) o null */
+    public Latido getLatido(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        return r == null ? null : r.latido;
+    }
+
+    /**
+     * Comprueba con el latido si el enlace sigue vivo (p. ej. tras un
+     * ACL_DISCONNECTED, que puede ser un evento espurio de una conexión
+     * anterior). Fuera de sesión el latido se para solo cuando recibe
+     * respuestas seguidas; si el enlace está muerto avisa con onEnlacePerdido.
+     * @return false si no se puede comprobar (no hay conexión o el latido
+     *         está desactivado)
+     */
+    public boolean verificarEnlace(DispositivoState dispositivo) {
+        if (!dispositivo.isConnected() || dispositivo.getColaComandos() == null) return false;
+        if (latidoPeriodoMs <= 0) return false;
+        if (getLatido(dispositivo) == null) {
+            iniciarLatido(dispositivo);
         }
+        return true;
+    }
 
-        public void cancel() {
-            running = false;
-            dispositivo.setBattMon(false);
-            /* Esque cerrar el stream causa que  el socket BT queda en un estado roto: el dispositivo sigue "conectado" según connected = true, pero cualquier intento posterior de leer o escribir lanza IOException.
-                esto es pq  myInputStream es el mismo objeto que está guardado en DispositivoState
-            try {
-                if (myInputStream != null) {
-                    myInputStream.close(); // cierra SOLO el stream de esta conexión
+    private void iniciarLatido(DispositivoState dispositivo) {
+        detenerLatido(dispositivo);
+        ColaComandos cola = dispositivo.getColaComandos();
+        LectorDispositivo lector = dispositivo.getLector();
+        if (cola == null || lector == null || latidoPeriodoMs <= 0) return;
+
+        final int maxPerdidos = latidoMaxPerdidos;
+        final Recursos r = recursos(dispositivo);
+        final Latido latido = new Latido(dispositivo.getAddress(), cola, maxPerdidos,
+                (muerto, motivo) -> onEnlaceMuerto(dispositivo, muerto, motivo));
+        final Telemetria t = telemetria;
+        if (t != null) {
+            final String mac = dispositivo.getAddress();
+            latido.setOnRtt(rttUs -> t.registrar(mac, Telemetria.TIPO_RTT_US, rttUs));
+        }
+
+        // Directo: el RTT se mide en el hilo lector, sin el despacho a la UI
+        lector.registrarDirecto(ParserMensajes.TIPO_BATERIA, latido);
+        r.lectorLatido = lector;
+        r.latido = latido;
+        programarLatido(dispositivo, latido, maxPerdidos, latidoPeriodoMs, latidoPeriodoEstableMs, 0);
+    }
+
+    /**
+     * Programa la siguiente vuelta del latido. Cada vuelta programa la
+     * siguiente: tras pedir se vuelve a los periodoMs para comprobar la
+     * respuesta; si llegó y el enlace ya está confirmado (maxPerdidos
+     * respuestas seguidas), la siguiente petición espera a periodoEstableMs
+     * desde la anterior.
+     */
+    private void programarLatido(final DispositivoState dispositivo, final Latido latido,
+                                 final int maxPerdidos, final int periodoMs,
+                                 final int periodoEstableMs, long retrasoMs) {
+        final Recursos r = recursos(dispositivo);
+        Planificador.Tarea tarea = planificador.programar(() -> {
+            if (r.latido != latido) return; // detenido o sustituido
+            if (!dispositivo.isConnected()) {
+                detenerLatido(dispositivo);
+                return;
+            }
+            long ahora = reloj.ahora();
+            long siguiente = r.ultimoLatidoMs + periodoEstableMs - ahora;
+            boolean confirmado = latido.getRespuestasSeguidas() >= maxPerdidos;
+            if (latido.isPendiente() || !confirmado || siguiente <= 0) {
+                if (!latido.latir()) return;
+                r.ultimoLatidoMs = ahora;
+                SondeoBateria sondeo = r.sondeo;
+                if (sondeo != null) sondeo.contarLatido();
+                // Fuera de sesión solo se estaba verificando el enlace
+                if (dispositivo.isClockStopped() && latido.getRespuestasSeguidas() >= maxPerdidos) {
+                    detenerLatido(dispositivo);
+                    return;
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }*/
+                siguiente = periodoMs;
+            }
+            programarLatido(dispositivo, latido, maxPerdidos, periodoMs, periodoEstableMs, siguiente);
+        }, retrasoMs, LATIDO_HOLGURA_MS);
+
+        r.tareaLatido = tarea;
+        if (r.latido != latido) {
+            // Se detuvo mientras se programaba
+            tarea.cancelar();
+        }
+    }
+
+    private void detenerLatido(DispositivoState dispositivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        if (r == null) return;
+        Planificador.Tarea tarea = r.tareaLatido;
+        Latido latido = r.latido;
+        LectorDispositivo lector = r.lectorLatido;
+        r.tareaLatido = null;
+        r.latido = null;
+        r.lectorLatido = null;
+        if (tarea != null) tarea.cancelar();
+        if (latido != null && lector != null) {
+            lector.quitarDirecto(ParserMensajes.TIPO_BATERIA, latido);
+            latido.registrarEstadisticas();
+        }
+    }
+
+    /** Cualquier hilo: Planificador (perdidos) o escritor (escritura fallida) */
+    private void onEnlaceMuerto(DispositivoState dispositivo, Latido latido, String motivo) {
+        Recursos r = recursos.get(dispositivo.getId());
+        // Un latido de una conexión anterior ya no cuenta
+        if (r == null || r.latido != latido) return;
+        detenerLatido(dispositivo);
+        listener.onEnlacePerdido(dispositivo.getId(), motivo);
+    }
+
+    /**
+     * Procesa las lecturas de batería de un dispositivo.
+     * Equivalente a la parte de batería de ConnectedThread/ConnectedThread2 del
+     * original; se ejecuta en el hilo principal (despacho del LectorDispositivo).
+     */
+    private class ManejadorBateria implements LectorDispositivo.Manejador {
+        private final DispositivoState dispositivo;
+        private final LectorDispositivo lector; // lector de la conexión en que se registró
+        private int valorCargaAnt = 0;
+        // Con latido llegan varias lecturas por segundo: solo se avisa si
+        // cambia el valor o ha pasado un intervalo de sondeo
+        private int cargaNotificada = -1;
+        private long ultimaNotificacion = 0;
+
+        ManejadorBateria(DispositivoState dispositivo, LectorDispositivo lector) {
+            this.dispositivo = dispositivo;
+            this.lector = lector;
         }
 
         @Override
-        public void run() {
-            byte[] buffer = new byte[28];
-            byte[] recBuffer = new byte[28];
-            int nBytes = 0;
-            int indiceRec = 0;
-            int valorCargaAnt = 0;
-
-            while (running && dispositivo.isBattMon()) {
-                try {
-                    int bytes = myInputStream.read(buffer);
-                    for (int i = 0; i < bytes; i++) {
-                        recBuffer[indiceRec] = buffer[i];
-                        indiceRec++;
-                    }
-
-                    nBytes += bytes;
-
-                    while (nBytes >= 4) {
-                        int j = 0;
-                        // Buscar header (valor 2 o 3) sin salirnos del buffer.
-                        // Necesitamos también j+1 válido para leer el siguiente byte.
-                        while (j < recBuffer.length - 1
-                                && (recBuffer[j] < 2 || recBuffer[j] > 3)) {
-                            j++;
-                        }
-
-                        // Si no hay header válido o solo queda el último byte
-                        // sin sucesor, descartamos el buffer y seguimos leyendo.
-                        // Puede ocurrir por ruido BT, respuestas de otros comandos
-                        // o buffer residual tras reconexión.
-                        if (j >= recBuffer.length - 1
-                                || recBuffer[j] < 2 || recBuffer[j] > 3) {
-                            Log.w(TAG, "Header de batería no encontrado, descartando buffer");
-                            java.util.Arrays.fill(recBuffer, (byte) 0);
-                            indiceRec = 0;
-                            nBytes = 0;
-                            break;
-                        }
-
-                        indiceRec = 0;
-                        Log.d(TAG, "Recibidos Total Bytes: " + nBytes);
-                        nBytes = 0;
-
-                        int auxint;
-                        if (recBuffer[j + 1] < 0) {
-                            auxint = recBuffer[j + 1] + 1;
-                            auxint = 255 + auxint;
-                        } else {
-                            auxint = recBuffer[j + 1];
-                        }
-                        auxint = auxint + recBuffer[j] * 256;
-
-                        int valorCarga = auxint;
-                        if (valorCarga != valorCargaAnt && valorCarga > 780) {
-                            valorCargaAnt = valorCarga;
-                            dispositivo.setBattMon(false);
-                        }
-
-                        recBuffer[0] = 0;
-                        recBuffer[1] = 0;
-                        recBuffer[2] = 0;
-                        recBuffer[3] = 0;
-
-                        // Calcular nivel
-                        final int cargaFinal = valorCargaAnt;
-                        int nivel;
-                        String textoNivel;
-                        if (cargaFinal >= 890) {
-                            nivel = NIVEL_ALTA;
-                            textoNivel = "ALTA";
-                        } else if (cargaFinal >= 840) {
-                            nivel = NIVEL_MEDIA;
-                            textoNivel = "MEDIA";
-                        } else {
-                            nivel = NIVEL_BAJA;
-                            textoNivel = "BAJA";
-                        }
-
-                        listener.onBateriaActualizada(dispositivo.getNumero(),
-                                cargaFinal, nivel, textoNivel);
-                    }
-                } catch (IOException e) {
-                    break;
+        public void onMensaje(int tipo, int valorCarga) {
+            if (valorCarga > CARGA_MINIMA) {
+                Recursos r = recursos.get(dispositivo.getId());
+                SondeoBateria sondeo = r == null ? null : r.sondeo;
+                if (sondeo != null) {
+                    sondeo.registrarLectura(valorCarga, !dispositivo.isClockStopped(), reloj.ahora());
                 }
+                Telemetria t = telemetria;
+                if (t != null) {
+                    t.registrar(dispositivo.getAddress(), Telemetria.TIPO_BATERIA, valorCarga);
+                }
+            }
+            if (valorCarga != valorCargaAnt && valorCarga > CARGA_MINIMA) {
+                valorCargaAnt = valorCarga;
+                dispositivo.setBattMon(false);
             }
+
+            // Calcular nivel
+            final int cargaFinal = valorCargaAnt;
+            long ahora = reloj.ahora();
+            if (cargaFinal == cargaNotificada
+                    && ahora - ultimaNotificacion < BATTERY_POLL_INTERVAL_MS) {
+                return;
+            }
+            cargaNotificada = cargaFinal;
+            ultimaNotificacion = ahora;
+            int nivel;
+            String textoNivel;
+            if (cargaFinal >= CARGA_ALTA) {
+                nivel = NIVEL_ALTA;
+                textoNivel = "ALTA";
+            } else if (cargaFinal >= CARGA_MEDIA) {
+                nivel = NIVEL_MEDIA;
+                textoNivel = "MEDIA";
+            } else {
+                nivel = NIVEL_BAJA;
+                textoNivel = "BAJA";
+            }
+
+            listener.onBateriaActualizada(dispositivo.getId(),
+                    cargaFinal, nivel, textoNivel);
         }
     }
 
@@ -514,21 +879,14 @@ public class TratamientoController {
     // ========================
 
     /**
-     * Detiene todos los timers y threads. Llamar desde onDestroy().
+     * Detiene el Planificador (timers y sondeo) y quita los manejadores. Llamar desde onDestroy().
      */
     public void destroy() {
-        timeHandler1.removeCallbacksAndMessages(null);
-        timeHandler2.removeCallbacksAndMessages(null);
-        batteryPollHandler1.removeCallbacksAndMessages(null);
-        batteryPollHandler2.removeCallbacksAndMessages(null);
-
-        if (batteryThread1 != null) {
-            batteryThread1.cancel();
-            batteryThread1 = null;
-        }
-        if (batteryThread2 != null) {
-            batteryThread2.cancel();
-            batteryThread2 = null;
+        planificador.detener();
+
+        for (Recursos r : recursos.values()) {
+            quitarManejador(r.manejadorBateria);
         }
+        recursos.clear();
     }
 }
\ No newline at end of file
@@ -2,17 +2,19 @@ package com.example.triviumgor.controller;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.example.triviumgor.database.PacienteDBHelper;
 import com.example.triviumgor.database.PacienteDataManager;
+import com.example.triviumgor.database.PacienteRepository;
+import com.example.triviumgor.database.RowMapper;
+import com.example.triviumgor.database.RowMappers;
 import com.example.triviumgor.model.Usuario;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class UsuarioController {
     private static final String TAG = "UsuarioController";
@@ -24,6 +26,7 @@ public class UsuarioController {
 
     // Dependencias
     private final PacienteDataManager dataManager;
+    private final PacienteRepository repositorio;
     private final SharedPreferences sharedPreferences;
     private final Context context;
 
@@ -128,6 +131,7 @@ public class UsuarioController {
     public UsuarioController(Context context, PacienteDataManager dataManager) {
         this.context = context;
         this.dataManager = dataManager;
+        this.repositorio = PacienteRepository.getInstance(dataManager);
         this.sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
     }
 
@@ -192,6 +196,14 @@ public class UsuarioController {
         return TextUtils.isEmpty(username) ? null : obtenerUsuarioPorUsername(username);
     }
 
+    /**
+     * ID del usuario logueado leído de la sesión guardada (sin consultar la BD).
+     * @return ID o -1 si no hay sesión
+     */
+    public int getIdUsuarioActual() {
+        return haySesionActiva() ? sharedPreferences.getInt("userId", -1) : -1;
+    }
+
     public String getUsernameActual() {
         return sharedPreferences.getString("username", "");
     }
@@ -296,58 +308,68 @@ public class UsuarioController {
     }
 
     public List<Usuario> obtenerTodosLosUsuarios() {
-        List<Usuario> usuarios = new ArrayList<>();
-        Cursor cursor = null;
-
         try {
-            cursor = dataManager.obtenerTodosUsuarios();
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Usuario u = cursorAUsuario(cursor);
-                    if (u != null) usuarios.add(u);
-                } while (cursor.moveToNext());
-            }
+            List<Usuario> usuarios = RowMapper.lista(dataManager.obtenerTodosUsuarios(), RowMappers.USUARIO);
             Log.d(TAG, "✓ Obtenidos " + usuarios.size() + " usuarios");
+            return usuarios;
         } catch (Exception e) {
             Log.e(TAG, "Error obtener usuarios: " + e.getMessage());
-        } finally {
-            if (cursor != null) cursor.close();
+            return new ArrayList<>();
         }
-        return usuarios;
     }
 
     public Usuario obtenerUsuarioPorUsername(String username) {
-        Cursor cursor = null;
         try {
-            cursor = dataManager.obtenerUsuario(username);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorAUsuario(cursor);
-            }
-            return null;
+            return RowMapper.primero(dataManager.obtenerUsuario(username), RowMappers.USUARIO);
         } catch (Exception e) {
             Log.e(TAG, "Error obtener usuario " + username + ": " + e.getMessage());
             return null;
-        } finally {
-            if (cursor != null) cursor.close();
         }
     }
 
     public Usuario obtenerUsuarioPorId(int id) {
-        Cursor cursor = null;
         try {
-            cursor = dataManager.obtenerUsuarioPorId(id);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorAUsuario(cursor);
-            }
-            return null;
+            return RowMapper.primero(dataManager.obtenerUsuarioPorId(id), RowMappers.USUARIO);
         } catch (Exception e) {
             Log.e(TAG, "Error obtener usuario " + id + ": " + e.getMessage());
             return null;
-        } finally {
-            if (cursor != null) cursor.close();
         }
     }
 
+    // ========================
+    // VARIANTES ASÍNCRONAS
+    // ========================
+    // Se ejecutan fuera del hilo principal; el callback llega en el hilo principal.
+
+    public Future<ResultadoLogin> loginAsync(String username, String password,
+                                             PacienteRepository.Callback<ResultadoLogin> callback) {
+        return repositorio.ejecutarEscritura(() -> login(username, password), callback,
+                e -> callback.onResultado(new ResultadoLogin(false, "Error al procesar el login")));
+    }
+
+    public Future<List<Usuario>> obtenerTodosLosUsuariosAsync(PacienteRepository.Callback<List<Usuario>> callback) {
+        return repositorio.ejecutar(this::obtenerTodosLosUsuarios, callback);
+    }
+
+    public Future<ResultadoOperacion> crearUsuarioAsync(String username, String password,
+                                                        String nombreCompleto, Rol rol,
+                                                        PacienteRepository.Callback<ResultadoOperacion> callback) {
+        return repositorio.ejecutarEscritura(() -> crearUsuario(username, password, nombreCompleto, rol), callback,
+                e -> callback.onResultado(new ResultadoOperacion(false, "Error al crear el usuario")));
+    }
+
+    public Future<ResultadoOperacion> cambiarPasswordAsync(String username, String nuevaPassword,
+                                                           PacienteRepository.Callback<ResultadoOperacion> callback) {
+        return repositorio.ejecutarEscritura(() -> cambiarPassword(username, nuevaPassword), callback,
+                e -> callback.onResultado(new ResultadoOperacion(false, "Error al cambiar la contraseña")));
+    }
+
+    public Future<ResultadoOperacion> toggleEstadoUsuarioAsync(String username, boolean activar,
+                                                               PacienteRepository.Callback<ResultadoOperacion> callback) {
+        return repositorio.ejecutarEscritura(() -> toggleEstadoUsuario(username, activar), callback,
+                e -> callback.onResultado(new ResultadoOperacion(false, "Error al cambiar el estado")));
+    }
+
     // ========================
     // CONTROL DE PERMISOS
     // ========================
@@ -459,26 +481,6 @@ public class UsuarioController {
         }
     }
 
-    private Usuario cursorAUsuario(Cursor cursor) {
-        try {
-            int id = cursor.getInt(cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_USUARIO_ID));
-            String username = cursor.getString(cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_USERNAME));
-            String hash = cursor.getString(cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_PASSWORD_HASH));
-            String nombre = cursor.getString(cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_NOMBRE_COMPLETO));
-            String rol = cursor.getString(cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_ROL));
-            int activo = cursor.getInt(cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_ACTIVO));
-            String fechaCreacion = cursor.getString(cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_FECHA_CREACION));
-
-            int idx = cursor.getColumnIndexOrThrow(PacienteDBHelper.COLUMN_ULTIMO_ACCESO);
-            String ultimoAcceso = cursor.isNull(idx) ? null : cursor.getString(idx);
-
-            return new Usuario(id, username, hash, nombre, rol, activo, fechaCreacion, ultimoAcceso);
-        } catch (Exception e) {
-            Log.e(TAG, "Error convertir cursor: " + e.getMessage());
-            return null;
-        }
-    }
-
     // ========================
     // CLASES RESULTADO
     // ========================
@@ -0,0 +1,189 @@
+package com.example.triviumgor.database;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utilidades para la búsqueda de pacientes sobre la tabla FTS4
+ * (PacienteDBHelper.TABLE_PACIENTES_FTS).
+ *
+ * El texto indexado se guarda ya normalizado (minúsculas y sin tildes) por los
+ * triggers, así que la consulta se normaliza igual en Java antes del MATCH.
+ * El tokenizer "simple" de FTS4 solo pasa a minúsculas ASCII; unicode61 no
+ * está disponible en el SQLite de API 19.
+ *
+ * Los dos lados usan la misma tabla (EQUIVALENCIAS): si la consulta quitara
+ * más diacríticos que el trigger, los nombres con esas letras no se
+ * encontrarían nunca. Las letras fuera de la tabla se dejan tal cual en los
+ * dos lados.
+ */
+public final class BusquedaFts {
+
+    // Orden de columnas de la tabla FTS (ver SQL_CREATE_PACIENTES_FTS)
+    static final String COL_NOMBRE = "nombre";
+    static final String COL_APELLIDOS = "apellidos";
+    static final String COL_DNI = "dni";
+    static final String COL_CIC = "cic";
+    static final String COL_PATOLOGIA = "patologia";
+
+    // Peso de cada columna al ordenar por relevancia, en el mismo orden.
+    // DNI y CIC identifican al paciente, así que pesan más que la patología.
+    private static final double[] PESOS_COLUMNA = {3.0, 3.0, 4.0, 4.0, 1.0};
+
+    // Letras de Latin-1 con diacrítico (y las ligaduras) y su forma en el
+    // índice. lower() de SQLite solo convierte ASCII, por eso van también las
+    // mayúsculas. La usan los triggers (sqlNormalizar) y la consulta (normalizar).
+    static final String[][] EQUIVALENCIAS = {
+            {"À", "a"}, {"Á", "a"}, {"Â", "a"}, {"Ã", "a"}, {"Ä", "a"}, {"Å", "a"}, {"Æ", "ae"},
+            {"Ç", "c"}, {"È", "e"}, {"É", "e"}, {"Ê", "e"}, {"Ë", "e"},
+            {"Ì", "i"}, {"Í", "i"}, {"Î", "i"}, {"Ï", "i"}, {"Ð", "d"}, {"Ñ", "n"},
+            {"Ò", "o"}, {"Ó", "o"}, {"Ô", "o"}, {"Õ", "o"}, {"Ö", "o"}, {"Ø", "o"},
+            {"Ù", "u"}, {"Ú", "u"}, {"Û", "u"}, {"Ü", "u"}, {"Ý", "y"}, {"Þ", "th"},
+            {"ß", "ss"},
+            {"à", "a"}, {"á", "a"}, {"â", "a"}, {"ã", "a"}, {"ä", "a"}, {"å", "a"}, {"æ", "ae"},
+            {"ç", "c"}, {"è", "e"}, {"é", "e"}, {"ê", "e"}, {"ë", "e"},
+            {"ì", "i"}, {"í", "i"}, {"î", "i"}, {"ï", "i"}, {"ð", "d"}, {"ñ", "n"},
+            {"ò", "o"}, {"ó", "o"}, {"ô", "o"}, {"õ", "o"}, {"ö", "o"}, {"ø", "o"},
+            {"ù", "u"}, {"ú", "u"}, {"û", "u"}, {"ü", "u"}, {"ý", "y"}, {"þ", "th"}, {"ÿ", "y"},
+            {"Ÿ", "y"}
+    };
+
+    // Cada replace() anidado gasta pila del parser de SQLite (YYSTACKDEPTH,
+    // ~30 niveles): la tabla se aplica en varias pasadas de este tamaño.
+    static final int EQUIVALENCIAS_POR_PASADA = 20;
+    static final int PASADAS = (EQUIVALENCIAS.length + EQUIVALENCIAS_POR_PASADA - 1) / EQUIVALENCIAS_POR_PASADA;
+
+    private static final Map<Character, String> EQUIVALENCIA_DE = new HashMap<>();
+
+    static {
+        for (String[] par : EQUIVALENCIAS) {
+            EQUIVALENCIA_DE.put(par[0].charAt(0), par[1]);
+        }
+    }
+
+    private BusquedaFts() {
+    }
+
+    /**
+     * Normaliza un texto igual que los triggers: minúsculas ASCII y las letras
+     * de EQUIVALENCIAS sustituidas. Las tildes tecleadas como carácter
+     * combinado se juntan antes con su letra (NFC).
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) return "";
+        String compuesto = Normalizer.normalize(texto, Normalizer.Form.NFC);
+        StringBuilder sb = new StringBuilder(compuesto.length());
+        for (int i = 0; i < compuesto.length(); i++) {
+            char c = compuesto.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                sb.append((char) (c + ('a' - 'A')));
+            } else {
+                String equivalente = EQUIVALENCIA_DE.get(c);
+                if (equivalente != null) {
+                    sb.append(equivalente);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Una pasada de la expresión SQL equivalente a normalizar(), para usar
+     * dentro de triggers. Aplicadas las PASADAS en orden sobre el resultado
+     * de la anterior dan lo mismo que normalizar(); la 0 además pasa a
+     * minúsculas y cambia NULL por ''.
+     * @param expr    expresión SQL de origen, p. ej. "new.nombre"
+     * @param pasada  0..PASADAS-1
+     */
+    static String sqlNormalizar(String expr, int pasada) {
+        String sql = pasada == 0 ? "lower(coalesce(" + expr + ", ''))" : expr;
+        int desde = pasada * EQUIVALENCIAS_POR_PASADA;
+        int hasta = Math.min(EQUIVALENCIAS.length, desde + EQUIVALENCIAS_POR_PASADA);
+        for (int i = desde; i < hasta; i++) {
+            sql = "replace(" + sql + ", '" + EQUIVALENCIAS[i][0] + "', '" + EQUIVALENCIAS[i][1] + "')";
+        }
+        return sql;
+    }
+
+    /**
+     * Construye la expresión MATCH de FTS4 a partir del texto del buscador.
+     * Cada palabra se busca como prefijo ("gar" encuentra "garcía") y todas
+     * deben aparecer (AND implícito). Las palabras se separan como en el
+     * tokenizer "simple": por cualquier carácter ASCII que no sea letra o
+     * dígito; los no ASCII forman parte de la palabra.
+     *
+     * @param filtro  texto introducido por el usuario
+     * @param columna columna FTS a la que se restringe, o null para todas
+     * @return expresión MATCH, o null si el filtro no contiene ninguna palabra
+     */
+    public static String construirMatch(String filtro, String columna) {
+        String[] palabras = normalizar(filtro).split("[^a-z0-9\\u0080-\\uffff]+");
+        StringBuilder match = new StringBuilder();
+        for (String palabra : palabras) {
+            if (palabra.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            if (columna != null) match.append(columna).append(':');
+            match.append(palabra).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * Traduce el campo del Spinner de filtros a la columna FTS.
+     * @return nombre de columna, o null para buscar en todas
+     */
+    public static String columnaParaCampo(String campo) {
+        if (campo == null) return null;
+        switch (campo) {
+            case "Nombre":
+                return COL_NOMBRE;
+            case "Apellidos":
+                return COL_APELLIDOS;
+            case "DNI":
+                return COL_DNI;
+            case "CIC":
+                return COL_CIC;
+            case "Patologia":
+                return COL_PATOLOGIA;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Puntuación de relevancia a partir de matchinfo(tabla, 'pcx').
+     *
+     * Para cada palabra y columna suma los aciertos en la fila, ponderados por
+     * el peso de la columna y divididos por el nº de filas que contienen la
+     * palabra (las palabras raras discriminan más).
+     *
+     * @param matchinfo blob devuelto por matchinfo(), enteros de 32 bits
+     *                  en el orden de bytes nativo
+     */
+    public static double puntuacion(byte[] matchinfo) {
+        if (matchinfo == null || matchinfo.length < 8) return 0;
+        ByteBuffer buffer = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+        int frases = buffer.getInt(0);
+        int columnas = buffer.getInt(4);
+
+        double puntuacion = 0;
+        for (int f = 0; f < frases; f++) {
+            for (int c = 0; c < columnas; c++) {
+                int base = 8 + 12 * (f * columnas + c);
+                if (base + 12 > matchinfo.length) return puntuacion;
+                int aciertosFila = buffer.getInt(base);
+                int filasConAciertos = buffer.getInt(base + 8);
+                if (aciertosFila > 0 && filasConAciertos > 0) {
+                    double peso = c < PESOS_COLUMNA.length ? PESOS_COLUMNA[c] : 1.0;
+                    puntuacion += peso * aciertosFila / filasConAciertos;
+                }
+            }
+        }
+        return puntuacion;
+    }
+}
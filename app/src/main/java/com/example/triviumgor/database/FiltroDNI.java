@@ -0,0 +1,83 @@
+package com.example.triviumgor.database;
+
+import java.util.BitSet;
+
+/**
+ * Filtro de Bloom en memoria con los DNI de la tabla pacientes.
+ *
+ * Responde "seguro que no existe" sin tocar disco, que es el caso normal al
+ * dar de alta un paciente nuevo. Si responde "puede existir" hay que
+ * confirmarlo con la consulta indexada por DNI.
+ *
+ * Los borrados no se reflejan (un filtro de Bloom no permite quitar
+ * elementos): un DNI borrado solo provoca una consulta de más, nunca un
+ * falso "no existe".
+ *
+ * Los DNI deben llegar ya normalizados (PacienteDataManager.normalizarDNI).
+ */
+final class FiltroDNI {
+
+    // ~10 bits por elemento y 7 funciones hash → ~1% de falsos positivos
+    private static final int BITS_POR_ELEMENTO = 10;
+    private static final int NUM_HASHES = 7;
+    private static final int CAPACIDAD_MINIMA = 1024;
+
+    private final BitSet bits;
+    private final int numBits;
+    private final int capacidad;
+    private int elementos;
+
+    /**
+     * @param capacidad nº de DNI previsto; por encima de él la tasa de falsos
+     *                  positivos crece y conviene reconstruir el filtro
+     */
+    FiltroDNI(int capacidad) {
+        this.capacidad = Math.max(CAPACIDAD_MINIMA, capacidad);
+        this.numBits = this.capacidad * BITS_POR_ELEMENTO;
+        this.bits = new BitSet(numBits);
+    }
+
+    synchronized void agregar(String dni) {
+        if (dni == null || dni.isEmpty()) return;
+        int h1 = dni.hashCode();
+        int h2 = hashSecundario(dni);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            bits.set(posicion(h1, h2, i));
+        }
+        elementos++;
+    }
+
+    /**
+     * @return false si el DNI seguro que no está; true si puede estar
+     */
+    synchronized boolean puedeContener(String dni) {
+        if (dni == null || dni.isEmpty()) return false;
+        int h1 = dni.hashCode();
+        int h2 = hashSecundario(dni);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (!bits.get(posicion(h1, h2, i))) return false;
+        }
+        return true;
+    }
+
+    /** @return true si se han añadido más DNI de los previstos */
+    synchronized boolean estaSaturado() {
+        return elementos > capacidad;
+    }
+
+    // Doble hashing (Kirsch–Mitzenmacher): h1 + i·h2
+    private int posicion(int h1, int h2, int i) {
+        int combinado = h1 + i * h2;
+        return (combinado & 0x7fffffff) % numBits;
+    }
+
+    // FNV-1a de 32 bits, independiente de String.hashCode()
+    private static int hashSecundario(String s) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        return h | 1; // nunca 0: las NUM_HASHES posiciones no coinciden todas
+    }
+}
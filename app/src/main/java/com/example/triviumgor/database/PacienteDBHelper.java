@@ -2,14 +2,21 @@ package com.example.triviumgor.database;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Environment;
 import android.util.Log;
 
+import com.example.triviumgor.util.Fechas;
+
 import java.io.File;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
 
 public class PacienteDBHelper extends SQLiteOpenHelper {
 
@@ -17,7 +24,7 @@ public class PacienteDBHelper extends SQLiteOpenHelper {
     // ⚠️ IMPORTANTE: Se incrementó la versión de 2 a 3 para que onUpgrade()
     //    cree la nueva tabla usuario_paciente en dispositivos ya instalados.
     //si volvemos a modificar el esquema subirías a 4 y añadirías un bloque if (oldVersion < 3) en onUpgrade()
-    private static final int DATABASE_VERSION = 5;
+    static final int DATABASE_VERSION = 11;
     private static String DATABASE_PATH;
     private final Context mContext;
 
@@ -73,6 +80,20 @@ public class PacienteDBHelper extends SQLiteOpenHelper {
     public static final String COLUMN_US_USUARIO_ID = "id_usuario";
     public static final String COLUMN_US_SESION_ID = "id_sesion";
 
+    // Telemetría de los estimuladores (v10): resúmenes por minuto y por día
+    // de cada dispositivo (MAC) y tipo de muestra (ver Telemetria). Misma
+    // estructura en las dos tablas; inicio es el epoch ms del minuto o del día
+    // (hora local).
+    public static final String TABLE_TELEMETRIA_MINUTO = "telemetria_minuto";
+    public static final String TABLE_TELEMETRIA_DIA = "telemetria_dia";
+    public static final String COLUMN_TEL_MAC = "mac";
+    public static final String COLUMN_TEL_TIPO = "tipo";
+    public static final String COLUMN_TEL_INICIO = "inicio";
+    public static final String COLUMN_TEL_MUESTRAS = "muestras";
+    public static final String COLUMN_TEL_SUMA = "suma";
+    public static final String COLUMN_TEL_MINIMO = "minimo";
+    public static final String COLUMN_TEL_MAXIMO = "maximo";
+
     // Sentencia SQL para crear la tabla
     private static final String SQL_CREATE_PACIENTES =
             "CREATE TABLE " + TABLE_PACIENTES + " (" +
@@ -100,8 +121,8 @@ public class PacienteDBHelper extends SQLiteOpenHelper {
                     COLUMN_NOMBRE_COMPLETO + " TEXT, " +
                     COLUMN_ROL + " TEXT DEFAULT 'medico', " +
                     COLUMN_ACTIVO + " INTEGER DEFAULT 1, " +
-                    COLUMN_FECHA_CREACION + " TEXT NOT NULL, " +
-                    COLUMN_ULTIMO_ACCESO + " TEXT)";
+                    COLUMN_FECHA_CREACION + " INTEGER NOT NULL, " +  // epoch ms (v9)
+                    COLUMN_ULTIMO_ACCESO + " INTEGER)";
 
 
     // Sentencia SQL para crear la tabla sesiones
@@ -110,7 +131,7 @@ public class PacienteDBHelper extends SQLiteOpenHelper {
                     COLUMN_SESION_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                     COLUMN_PACIENTE_ID + " INTEGER NOT NULL, " +
                     COLUMN_DISPOSITIVO + " TEXT NOT NULL, " +
-                    COLUMN_FECHA + " TEXT NOT NULL, " +
+                    COLUMN_FECHA + " INTEGER NOT NULL, " +  // epoch ms (v9)
                     COLUMN_INTENSIDAD_SESION + " INTEGER NOT NULL, " +
                     COLUMN_TIEMPO_SESION + " INTEGER NOT NULL, " +
                     "FOREIGN KEY (" + COLUMN_PACIENTE_ID + ") REFERENCES " +
@@ -121,7 +142,7 @@ public class PacienteDBHelper extends SQLiteOpenHelper {
                     COLUMN_UP_USUARIO_ID + " INTEGER NOT NULL, " +
                     COLUMN_UP_PACIENTE_ID + " INTEGER NOT NULL, " +
                     COLUMN_UP_ROL + " TEXT NOT NULL DEFAULT 'asignado', " +
-                    COLUMN_UP_FECHA + " TEXT NOT NULL, " +
+                    COLUMN_UP_FECHA + " INTEGER NOT NULL, " +  // epoch ms (v9)
                     "PRIMARY KEY (" + COLUMN_UP_USUARIO_ID + ", " + COLUMN_UP_PACIENTE_ID + "), " +
                     "FOREIGN KEY (" + COLUMN_UP_USUARIO_ID + ") REFERENCES " +
                     TABLE_USUARIOS + "(" + COLUMN_USUARIO_ID + "), " +
@@ -138,12 +159,153 @@ public class PacienteDBHelper extends SQLiteOpenHelper {
                     "FOREIGN KEY (" + COLUMN_US_SESION_ID + ") REFERENCES " +
                     TABLE_SESIONES + "(" + COLUMN_SESION_ID + "))";
 
+    // La PK (mac, tipo, inicio) sirve también de índice para las consultas
+    // por rango de fechas de un dispositivo
+    private static String sqlCreateTelemetria(String tabla) {
+        return "CREATE TABLE IF NOT EXISTS " + tabla + " (" +
+                COLUMN_TEL_MAC + " TEXT NOT NULL, " +
+                COLUMN_TEL_TIPO + " INTEGER NOT NULL, " +
+                COLUMN_TEL_INICIO + " INTEGER NOT NULL, " +  // epoch ms
+                COLUMN_TEL_MUESTRAS + " INTEGER NOT NULL, " +
+                COLUMN_TEL_SUMA + " INTEGER NOT NULL, " +
+                COLUMN_TEL_MINIMO + " INTEGER NOT NULL, " +
+                COLUMN_TEL_MAXIMO + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + COLUMN_TEL_MAC + ", " + COLUMN_TEL_TIPO + ", " + COLUMN_TEL_INICIO + "))";
+    }
+
+    // Índices (v6). Cada uno cubre un camino de acceso concreto del DataManager:
+    //  - sesiones(paciente_id, fecha): historial de un paciente ordenado por fecha
+    //    sin ordenación temporal (obtenerSesionesPaciente, borrados en cascada).
+    //  - usuario_paciente(id_paciente, id_usuario): usuarios de un paciente. La PK
+    //    (id_usuario, id_paciente) ya cubre la búsqueda en el otro sentido.
+    //  - usuario_sesion(id_sesion, id_usuario): usuarios de una sesión (idem).
+    //  - pacientes(dni): búsquedas y updates por DNI (ver AUDITORIA #21). Desde
+    //    v8 es UNIQUE y COLLATE NOCASE, y se crea aparte (crearIndiceDNI).
+    //  - pacientes(nombre): listado completo ordenado por nombre.
+    public static final String INDEX_SESIONES_PACIENTE_FECHA = "idx_sesiones_paciente_fecha";
+    public static final String INDEX_USUARIO_PACIENTE_PACIENTE = "idx_usuario_paciente_paciente";
+    public static final String INDEX_USUARIO_SESION_SESION = "idx_usuario_sesion_sesion";
+    public static final String INDEX_PACIENTES_DNI = "idx_pacientes_dni";
+    public static final String INDEX_PACIENTES_NOMBRE = "idx_pacientes_nombre";
+
+    private static final String[] SQL_CREATE_INDICES = {
+            "CREATE INDEX IF NOT EXISTS " + INDEX_SESIONES_PACIENTE_FECHA + " ON " +
+                    TABLE_SESIONES + " (" + COLUMN_PACIENTE_ID + ", " + COLUMN_FECHA + ")",
+            "CREATE INDEX IF NOT EXISTS " + INDEX_USUARIO_PACIENTE_PACIENTE + " ON " +
+                    TABLE_USUARIO_PACIENTE + " (" + COLUMN_UP_PACIENTE_ID + ", " + COLUMN_UP_USUARIO_ID + ")",
+            "CREATE INDEX IF NOT EXISTS " + INDEX_USUARIO_SESION_SESION + " ON " +
+                    TABLE_USUARIO_SESION + " (" + COLUMN_US_SESION_ID + ", " + COLUMN_US_USUARIO_ID + ")",
+            "CREATE INDEX IF NOT EXISTS " + INDEX_PACIENTES_NOMBRE + " ON " +
+                    TABLE_PACIENTES + " (" + COLUMN_NOMBRE + ")"
+    };
+
+    // Búsqueda de texto (v7): tabla FTS4 con docid = _id del paciente. El
+    // texto se guarda normalizado (minúsculas, sin tildes) y los triggers la
+    // mantienen sincronizada con cualquier INSERT/UPDATE/DELETE en pacientes.
+    // prefix="2,3" crea índices de prefijo para que "ga*" no recorra todo el
+    // vocabulario en cada pulsación del buscador.
+    public static final String TABLE_PACIENTES_FTS = "pacientes_fts";
+    public static final String TRIGGER_FTS_INSERT = "trg_pacientes_fts_ai";
+    public static final String TRIGGER_FTS_UPDATE = "trg_pacientes_fts_au";
+    public static final String TRIGGER_FTS_DELETE = "trg_pacientes_fts_ad";
+
+    private static final String SQL_CREATE_PACIENTES_FTS =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_PACIENTES_FTS + " USING fts4(" +
+                    BusquedaFts.COL_NOMBRE + ", " +
+                    BusquedaFts.COL_APELLIDOS + ", " +
+                    BusquedaFts.COL_DNI + ", " +
+                    BusquedaFts.COL_CIC + ", " +
+                    BusquedaFts.COL_PATOLOGIA + ", " +
+                    "prefix=\"2,3\")";
+
+    private static final String SQL_FTS_COLUMNAS =
+            "docid, " + BusquedaFts.COL_NOMBRE + ", " + BusquedaFts.COL_APELLIDOS + ", " +
+                    BusquedaFts.COL_DNI + ", " + BusquedaFts.COL_CIC + ", " + BusquedaFts.COL_PATOLOGIA;
+
+    /**
+     * Valores de una fila de pacientes (alias "new", "old" o la propia tabla)
+     * tras la primera pasada de normalización; el resto las aplica
+     * sqlPasadasFts sobre la fila ya insertada.
+     */
+    private static String valoresFts(String fila) {
+        return fila + "." + COLUMN_ID + ", " +
+                BusquedaFts.sqlNormalizar(fila + "." + COLUMN_NOMBRE, 0) + ", " +
+                BusquedaFts.sqlNormalizar(fila + "." + COLUMN_APELLIDO1 + " || ' ' || coalesce(" +
+                        fila + "." + COLUMN_APELLIDO2 + ", '')", 0) + ", " +
+                BusquedaFts.sqlNormalizar(fila + "." + COLUMN_DNI, 0) + ", " +
+                BusquedaFts.sqlNormalizar(fila + "." + COLUMN_CIC, 0) + ", " +
+                BusquedaFts.sqlNormalizar(fila + "." + COLUMN_PATOLOGIA, 0);
+    }
+
+    /**
+     * Un UPDATE por cada pasada 1.. de BusquedaFts.sqlNormalizar sobre las
+     * filas de la tabla FTS que cumplan "where" (vacío = todas).
+     */
+    private static String[] sqlPasadasFts(String where) {
+        String[] columnas = {BusquedaFts.COL_NOMBRE, BusquedaFts.COL_APELLIDOS,
+                BusquedaFts.COL_DNI, BusquedaFts.COL_CIC, BusquedaFts.COL_PATOLOGIA};
+        String[] updates = new String[BusquedaFts.PASADAS - 1];
+        for (int pasada = 1; pasada < BusquedaFts.PASADAS; pasada++) {
+            StringBuilder sql = new StringBuilder("UPDATE " + TABLE_PACIENTES_FTS + " SET ");
+            for (int i = 0; i < columnas.length; i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(columnas[i]).append(" = ").append(BusquedaFts.sqlNormalizar(columnas[i], pasada));
+            }
+            updates[pasada - 1] = sql.append(where).toString();
+        }
+        return updates;
+    }
+
+    /** Cuerpo de trigger: valores de "new" en la tabla FTS, con todas las pasadas */
+    private static String sqlInsertarFtsNew() {
+        StringBuilder sql = new StringBuilder("INSERT INTO " + TABLE_PACIENTES_FTS +
+                "(" + SQL_FTS_COLUMNAS + ") VALUES (" + valoresFts("new") + "); ");
+        for (String update : sqlPasadasFts(" WHERE docid = new." + COLUMN_ID)) {
+            sql.append(update).append("; ");
+        }
+        return sql.toString();
+    }
+
+    private static final String[] SQL_CREATE_TRIGGERS_FTS = {
+            "CREATE TRIGGER IF NOT EXISTS " + TRIGGER_FTS_INSERT +
+                    " AFTER INSERT ON " + TABLE_PACIENTES + " BEGIN " +
+                    sqlInsertarFtsNew() + "END",
+            "CREATE TRIGGER IF NOT EXISTS " + TRIGGER_FTS_UPDATE +
+                    " AFTER UPDATE ON " + TABLE_PACIENTES + " BEGIN " +
+                    "DELETE FROM " + TABLE_PACIENTES_FTS + " WHERE docid = old." + COLUMN_ID + "; " +
+                    sqlInsertarFtsNew() + "END",
+            "CREATE TRIGGER IF NOT EXISTS " + TRIGGER_FTS_DELETE +
+                    " AFTER DELETE ON " + TABLE_PACIENTES + " BEGIN " +
+                    "DELETE FROM " + TABLE_PACIENTES_FTS + " WHERE docid = old." + COLUMN_ID + "; END"
+    };
+
+    // Índice de DNI (v8): único y sin distinguir mayúsculas. Si una BBDD antigua
+    // ya tiene DNI repetidos no se puede crear como UNIQUE y se crea normal,
+    // para que las búsquedas por DNI sigan siendo puntuales.
+    private static final String SQL_CREATE_INDICE_DNI_UNICO =
+            "CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_PACIENTES_DNI + " ON " +
+                    TABLE_PACIENTES + " (" + COLUMN_DNI + " COLLATE NOCASE)";
+    private static final String SQL_CREATE_INDICE_DNI =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_PACIENTES_DNI + " ON " +
+                    TABLE_PACIENTES + " (" + COLUMN_DNI + " COLLATE NOCASE)";
+
+    // WAL: el checkpoint automático se lanza cada N páginas (~4 KB) escritas en
+    // el log, y al truncar/reiniciar el -wal se recorta a este tamaño máximo.
+    static final int WAL_AUTOCHECKPOINT_PAGINAS = 250;        // ~1 MB
+    static final long WAL_LIMITE_TAMANO_BYTES = 2L * 1024 * 1024; // 2 MB
+
     // Constructor modificado
     public PacienteDBHelper(Context context) {
         super(context, getDatabasePath(context), null, DATABASE_VERSION);
         mContext = context;
         DATABASE_PATH = getDatabasePath(context);
 
+        // Write-ahead logging: los lectores (lista de pacientes, histórico) ya no
+        // se bloquean mientras se escribe una sesión. Con WAL activo, Android
+        // mantiene un pequeño pool de conexiones de solo lectura además de la
+        // de escritura, y cada hilo del PacienteRepository obtiene la suya.
+        setWriteAheadLoggingEnabled(true);
+
         checkExistingDatabase();
     }
 
@@ -192,6 +354,10 @@ public class PacienteDBHelper extends SQLiteOpenHelper {
         db.execSQL(SQL_CREATE_USUARIOS);
         db.execSQL(SQL_CREATE_USUARIO_PACIENTE);
         db.execSQL(SQL_CREATE_USUARIO_SESION);
+        crearIndices(db);
+        crearIndiceDNI(db);
+        crearBusquedaFts(db);
+        crearTelemetria(db);
 
         // Insertar usuario administrador por defecto
         insertarUsuarioAdmin(db);
@@ -258,8 +424,288 @@ public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             Log.e("PacienteDBHelper", "Error al recrear usuario_sesion: " + e.getMessage());
         }
     }
+    if (oldVersion < 6) {
+        // Migración v5 → v6: índices para historial de sesiones, relaciones
+        // N:M y búsquedas por DNI. Antes todas estas consultas recorrían la
+        // tabla entera. No se toca ningún dato.
+        try {
+            crearIndices(db);
+            Log.d("PacienteDBHelper", "Índices v6 creados en migración");
+        } catch (Exception e) {
+            Log.e("PacienteDBHelper", "Error al crear índices v6: " + e.getMessage());
+        }
+    }
+    if (oldVersion < 7) {
+        // Migración v6 → v7: índice de texto completo para el buscador de
+        // pacientes. Se crea la tabla FTS con sus triggers y se rellena con los
+        // pacientes existentes.
+        db.beginTransaction();
+        try {
+            reconstruirBusquedaFts(db);
+            db.setTransactionSuccessful();
+            Log.d("PacienteDBHelper", "Índice FTS de pacientes creado en migración");
+        } catch (Exception e) {
+            Log.e("PacienteDBHelper", "Error al crear índice FTS v7: " + e.getMessage());
+        } finally {
+            db.endTransaction();
+        }
+    }
+    if (oldVersion < 8) {
+        // Migración v7 → v8: DNI normalizados (sin espacios ni guiones, en
+        // mayúsculas) e índice UNIQUE COLLATE NOCASE en lugar del índice v6.
+        db.beginTransaction();
+        try {
+            db.execSQL("UPDATE " + TABLE_PACIENTES + " SET " + COLUMN_DNI + " = " +
+                    "upper(replace(replace(trim(" + COLUMN_DNI + "), ' ', ''), '-', ''))");
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_PACIENTES_DNI);
+            crearIndiceDNI(db);
+            db.setTransactionSuccessful();
+            Log.d("PacienteDBHelper", "DNI normalizados e índice de DNI recreado en migración");
+        } catch (Exception e) {
+            Log.e("PacienteDBHelper", "Error en migración de DNI v8: " + e.getMessage());
+        } finally {
+            db.endTransaction();
+        }
+    }
+    if (oldVersion < 9) {
+        // Migración v8 → v9: fechas de texto ("yyyy-MM-dd HH:mm:ss", hora
+        // local) a INTEGER en epoch ms. SQLite no permite cambiar el tipo de
+        // una columna, así que cada tabla se copia a una nueva con el esquema
+        // v9 y se renombra. Los _id se conservan.
+        long inicio = System.nanoTime();
+        db.beginTransaction();
+        try {
+            migrarFechasAEpoch(db, TABLE_SESIONES, SQL_CREATE_SESIONES, COLUMN_FECHA);
+            migrarFechasAEpoch(db, TABLE_USUARIOS, SQL_CREATE_USUARIOS,
+                    COLUMN_FECHA_CREACION, COLUMN_ULTIMO_ACCESO);
+            migrarFechasAEpoch(db, TABLE_USUARIO_PACIENTE, SQL_CREATE_USUARIO_PACIENTE, COLUMN_UP_FECHA);
+            crearIndices(db); // los índices de las tablas copiadas se pierden con el DROP
+            db.setTransactionSuccessful();
+            Log.d("PacienteDBHelper", "Fechas migradas a epoch ms en "
+                    + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            Log.e("PacienteDBHelper", "Error en migración de fechas v9: " + e.getMessage());
+        } finally {
+            db.endTransaction();
+        }
+    }
+    if (oldVersion < 10) {
+        // Migración v9 → v10: tablas de telemetría de los estimuladores.
+        // Solo se crean; no se toca ningún dato.
+        try {
+            crearTelemetria(db);
+            Log.d("PacienteDBHelper", "Tablas de telemetría creadas en migración");
+        } catch (Exception e) {
+            Log.e("PacienteDBHelper", "Error al crear tablas de telemetría v10: " + e.getMessage());
+        }
+    }
+    if (oldVersion < 11) {
+        // Migración v10 → v11: los triggers FTS solo quitaban las tildes del
+        // castellano y la consulta todas, así que "Gonçalves" o "Müller" no se
+        // encontraban. Se recrean los triggers con la tabla común
+        // (BusquedaFts.EQUIVALENCIAS) y se reindexan los pacientes.
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_FTS_INSERT);
+            db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_FTS_UPDATE);
+            db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_FTS_DELETE);
+            reconstruirBusquedaFts(db);
+            db.setTransactionSuccessful();
+            Log.d("PacienteDBHelper", "Índice FTS de pacientes reconstruido en migración");
+        } catch (Exception e) {
+            Log.e("PacienteDBHelper", "Error al reconstruir índice FTS v11: " + e.getMessage());
+        } finally {
+            db.endTransaction();
+        }
+    }
 }
 
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        configurarWal(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        Log.d("PacienteDBHelper", "WAL " + (db.isWriteAheadLoggingEnabled() ? "activo" : "NO activo"));
+    }
+
+    /**
+     * Ajusta los checkpoints del WAL para que el fichero -wal no crezca sin
+     * límite con muchas inserciones seguidas de sesiones.
+     * Los PRAGMA que devuelven fila no se pueden lanzar con execSQL en todas
+     * las versiones, por eso se usa rawQuery.
+     */
+    private void configurarWal(SQLiteDatabase db) {
+        try {
+            ejecutarPragma(db, "PRAGMA wal_autocheckpoint=" + WAL_AUTOCHECKPOINT_PAGINAS);
+            ejecutarPragma(db, "PRAGMA journal_size_limit=" + WAL_LIMITE_TAMANO_BYTES);
+        } catch (Exception e) {
+            Log.e("PacienteDBHelper", "Error al configurar WAL: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copia al fichero principal todo lo que esté en el WAL y deja el -wal a
+     * 0 bytes. Sin esto, una copia de trivium.db hecha desde fuera (la BBDD
+     * está en Documents/TriviumData) no ve los cambios posteriores al último
+     * checkpoint automático. En SQLite anterior a 3.8.8 (Android 5.x y
+     * anteriores) TRUNCATE no existe y se hace un checkpoint PASSIVE: el
+     * contenido se copia igual, solo que el -wal no se recorta.
+     * @return true si se copió todo el WAL (ningún lector lo impidió)
+     */
+    static boolean volcarWal(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+        try {
+            // Fila: (bloqueado, páginas en el WAL, páginas copiadas)
+            return cursor.moveToFirst() && cursor.getInt(0) == 0
+                    && cursor.getInt(1) == cursor.getInt(2);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void ejecutarPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Copia una tabla a una nueva con el esquema actual convirtiendo las
+     * columnas de fecha de texto a epoch ms, y la renombra al nombre original.
+     *
+     * La conversión la hace SQLite con strftime('%s', ..., 'utc'), que
+     * interpreta el texto como hora local. Las filas que no entiende (p. ej.
+     * dígitos no latinos por el Locale con el que se guardaron) se corrigen
+     * después en Java con Fechas.parsearAntiguo; si tampoco se pueden leer quedan
+     * a 0 (o NULL si la columna lo admite).
+     */
+    private void migrarFechasAEpoch(SQLiteDatabase db, String tabla, String sqlCreate,
+                                    String... columnasFecha) {
+        String tablaNueva = tabla + "_v9";
+        String prefijo = "CREATE TABLE " + tabla;
+        db.execSQL("DROP TABLE IF EXISTS " + tablaNueva);
+        db.execSQL("CREATE TABLE " + tablaNueva + sqlCreate.substring(prefijo.length()));
+
+        List<String> fecha = Arrays.asList(columnasFecha);
+        StringBuilder columnas = new StringBuilder("rowid");
+        StringBuilder valores = new StringBuilder("rowid");
+        for (String columna : nombresColumnas(db, tabla)) {
+            columnas.append(", ").append(columna);
+            valores.append(", ");
+            if (!fecha.contains(columna)) {
+                valores.append(columna);
+            } else if (columna.equals(COLUMN_ULTIMO_ACCESO)) {
+                valores.append(sqlTextoAEpoch(columna));  // admite NULL
+            } else {
+                valores.append("coalesce(").append(sqlTextoAEpoch(columna)).append(", 0)");
+            }
+        }
+        db.execSQL("INSERT INTO " + tablaNueva + " (" + columnas + ") " +
+                "SELECT " + valores + " FROM " + tabla);
+
+        for (String columna : columnasFecha) {
+            repararFechasNoConvertidas(db, tabla, tablaNueva, columna);
+        }
+
+        // Se conserva el contador de AUTOINCREMENT para no reutilizar IDs borrados
+        long secuencia = -1;
+        Cursor cursor = db.rawQuery("SELECT seq FROM sqlite_sequence WHERE name = ?", new String[]{tabla});
+        try {
+            if (cursor.moveToFirst()) secuencia = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+
+        db.execSQL("DROP TABLE " + tabla);
+        db.execSQL("ALTER TABLE " + tablaNueva + " RENAME TO " + tabla);
+        if (secuencia >= 0) {
+            db.execSQL("UPDATE sqlite_sequence SET seq = max(seq, ?) WHERE name = ?",
+                    new Object[]{secuencia, tabla});
+        }
+    }
+
+    private static String sqlTextoAEpoch(String columna) {
+        return "CAST(strftime('%s', " + columna + ", 'utc') AS INTEGER) * 1000";
+    }
+
+    private void repararFechasNoConvertidas(SQLiteDatabase db, String tabla, String tablaNueva,
+                                            String columna) {
+        int sinConvertir = 0;
+        Cursor cursor = db.rawQuery("SELECT rowid, " + columna + " FROM " + tabla +
+                " WHERE " + columna + " IS NOT NULL AND " + sqlTextoAEpoch(columna) + " IS NULL", null);
+        try {
+            while (cursor.moveToNext()) {
+                try {
+                    long fecha = Fechas.parsearAntiguo(cursor.getString(1));
+                    db.execSQL("UPDATE " + tablaNueva + " SET " + columna + " = ? WHERE rowid = ?",
+                            new Object[]{fecha, cursor.getLong(0)});
+                } catch (ParseException e) {
+                    sinConvertir++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (sinConvertir > 0) {
+            Log.w("PacienteDBHelper", sinConvertir + " fechas de " + tabla + "." + columna
+                    + " no se pudieron convertir");
+        }
+    }
+
+    private static List<String> nombresColumnas(SQLiteDatabase db, String tabla) {
+        Cursor cursor = db.rawQuery("SELECT * FROM " + tabla + " LIMIT 0", null);
+        try {
+            return Arrays.asList(cursor.getColumnNames());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void crearIndices(SQLiteDatabase db) {
+        for (String sql : SQL_CREATE_INDICES) {
+            db.execSQL(sql);
+        }
+    }
+
+    private void crearIndiceDNI(SQLiteDatabase db) {
+        try {
+            db.execSQL(SQL_CREATE_INDICE_DNI_UNICO);
+        } catch (SQLiteConstraintException e) {
+            Log.w("PacienteDBHelper", "Hay DNI duplicados, el índice de DNI se crea sin UNIQUE");
+            db.execSQL(SQL_CREATE_INDICE_DNI);
+        }
+    }
+
+    private void crearBusquedaFts(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_PACIENTES_FTS);
+        for (String sql : SQL_CREATE_TRIGGERS_FTS) {
+            db.execSQL(sql);
+        }
+    }
+
+    /** Crea la tabla FTS y sus triggers si faltan y la rellena con los pacientes actuales */
+    private void reconstruirBusquedaFts(SQLiteDatabase db) {
+        crearBusquedaFts(db);
+        db.execSQL("DELETE FROM " + TABLE_PACIENTES_FTS);
+        db.execSQL("INSERT INTO " + TABLE_PACIENTES_FTS + "(" + SQL_FTS_COLUMNAS + ") " +
+                "SELECT " + valoresFts(TABLE_PACIENTES) + " FROM " + TABLE_PACIENTES);
+        for (String sql : sqlPasadasFts("")) {
+            db.execSQL(sql);
+        }
+    }
+
+    private void crearTelemetria(SQLiteDatabase db) {
+        db.execSQL(sqlCreateTelemetria(TABLE_TELEMETRIA_MINUTO));
+        db.execSQL(sqlCreateTelemetria(TABLE_TELEMETRIA_DIA));
+    }
+
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         // Si el fichero de BBDD está en una versión más nueva que la del código
@@ -268,6 +714,9 @@ public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         // ⚠️ Esto implica pérdida de datos existentes.
         Log.w("PacienteDBHelper", "Downgrade de v" + oldVersion + " a v" + newVersion
                 + ": se recreará el esquema (se pierden los datos).");
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TELEMETRIA_MINUTO);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TELEMETRIA_DIA);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PACIENTES_FTS);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_USUARIO_SESION);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_USUARIO_PACIENTE);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_SESIONES);
@@ -287,7 +736,7 @@ public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             values.put(COLUMN_NOMBRE_COMPLETO, "Administrador");
             values.put(COLUMN_ROL, "admin");
             values.put(COLUMN_ACTIVO, 1);
-            values.put(COLUMN_FECHA_CREACION, getCurrentDateTime());
+            values.put(COLUMN_FECHA_CREACION, Fechas.ahora());
 
             long id = db.insert(TABLE_USUARIOS, null, values);
 
@@ -323,13 +772,6 @@ public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         }
     }
 
-    /**
-     * Obtiene la fecha y hora actual en formato ISO
-     */
-    private String getCurrentDateTime() {
-        return new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss",
-                java.util.Locale.getDefault()).format(new java.util.Date());
-    }
 
 
 
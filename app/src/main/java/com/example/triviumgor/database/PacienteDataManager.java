@@ -1,35 +1,271 @@
 package com.example.triviumgor.database;
 
-import static androidx.constraintlayout.helper.widget.MotionEffect.TAG;
-
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import com.example.triviumgor.model.AgregadoTelemetria;
 import com.example.triviumgor.model.Sesion;
 import com.example.triviumgor.model.Paciente;
+import com.example.triviumgor.util.Fechas;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Capa de acceso a datos única para todo el proceso.
+ *
+ * Se obtiene con getInstance(context) y se comparte entre todas las Activities:
+ * la conexión se abre una sola vez (de forma perezosa, porque LoginActivity
+ * necesita los permisos de almacenamiento antes de poder abrirla) y se mantiene
+ * abierta mientras viva el proceso. Las Activities NO deben llamar a close().
+ *
+ * SQLiteDatabase es thread-safe sobre una misma conexión, así que los métodos
+ * de consulta pueden llamarse desde cualquier hilo una vez abierta.
+ */
+public class PacienteDataManager {
+    private static final String TAG = "PacienteDataManager";
 
+    private static volatile PacienteDataManager instancia;
 
-public class PacienteDataManager {
-    private SQLiteDatabase database;
+    private volatile SQLiteDatabase database;
     private final PacienteDBHelper dbHelper;
 
-    public PacienteDataManager(Context context) {
+    // Nº de veces que se ha abierto realmente la conexión (getWritableDatabase)
+    private final AtomicInteger numeroAperturas = new AtomicInteger(0);
+
+    // Comparación por DNI que puede usar el índice UNIQUE COLLATE NOCASE (v8)
+    static final String WHERE_DNI = PacienteDBHelper.COLUMN_DNI + " = ? COLLATE NOCASE";
+
+    // Sesiones agrupadas por día local (v9: fecha en epoch ms). date() con
+    // 'localtime' usa la zona horaria del dispositivo, igual que Fechas.
+    static final String SQL_DIAS_CON_SESIONES =
+            "SELECT date(" + PacienteDBHelper.COLUMN_FECHA + " / 1000, 'unixepoch', 'localtime') AS dia, " +
+                    "COUNT(*) AS total, MAX(" + PacienteDBHelper.COLUMN_FECHA + ") AS ultima" +
+                    " FROM " + PacienteDBHelper.TABLE_SESIONES +
+                    " WHERE " + PacienteDBHelper.COLUMN_PACIENTE_ID + " = ?" +
+                    " GROUP BY dia ORDER BY dia DESC";
+
+    // Telemetría (v10): cada agregado se suma a la fila de su minuto y a la
+    // de su día. INSERT OR IGNORE + UPDATE porque el UPSERT de SQLite
+    // (ON CONFLICT DO UPDATE) no existe en las versiones de Android soportadas.
+    static final String SQL_TELEMETRIA_CREAR =
+            "INSERT OR IGNORE INTO %s (" + PacienteDBHelper.COLUMN_TEL_MAC + ", " +
+                    PacienteDBHelper.COLUMN_TEL_TIPO + ", " + PacienteDBHelper.COLUMN_TEL_INICIO + ", " +
+                    PacienteDBHelper.COLUMN_TEL_MUESTRAS + ", " + PacienteDBHelper.COLUMN_TEL_SUMA + ", " +
+                    PacienteDBHelper.COLUMN_TEL_MINIMO + ", " + PacienteDBHelper.COLUMN_TEL_MAXIMO + ")" +
+                    " VALUES (?, ?, ?, 0, 0, ?, ?)";
+    static final String SQL_TELEMETRIA_SUMAR =
+            "UPDATE %s SET " +
+                    PacienteDBHelper.COLUMN_TEL_MUESTRAS + " = " + PacienteDBHelper.COLUMN_TEL_MUESTRAS + " + ?, " +
+                    PacienteDBHelper.COLUMN_TEL_SUMA + " = " + PacienteDBHelper.COLUMN_TEL_SUMA + " + ?, " +
+                    PacienteDBHelper.COLUMN_TEL_MINIMO + " = min(" + PacienteDBHelper.COLUMN_TEL_MINIMO + ", ?), " +
+                    PacienteDBHelper.COLUMN_TEL_MAXIMO + " = max(" + PacienteDBHelper.COLUMN_TEL_MAXIMO + ", ?)" +
+                    " WHERE " + PacienteDBHelper.COLUMN_TEL_MAC + " = ? AND " +
+                    PacienteDBHelper.COLUMN_TEL_TIPO + " = ? AND " + PacienteDBHelper.COLUMN_TEL_INICIO + " = ?";
+    // Rango por la PK (mac, tipo, inicio), sin recorrer otros dispositivos
+    static final String WHERE_TELEMETRIA_RANGO =
+            PacienteDBHelper.COLUMN_TEL_MAC + " = ? AND " + PacienteDBHelper.COLUMN_TEL_TIPO + " = ? AND " +
+                    PacienteDBHelper.COLUMN_TEL_INICIO + " >= ? AND " + PacienteDBHelper.COLUMN_TEL_INICIO + " < ?";
+    static final String WHERE_TELEMETRIA_ANTIGUA =
+            PacienteDBHelper.COLUMN_TEL_MAC + " = ? AND " + PacienteDBHelper.COLUMN_TEL_TIPO + " = ? AND " +
+                    PacienteDBHelper.COLUMN_TEL_INICIO + " < ?";
+
+    // Los resúmenes por minuto se guardan 30 días; los diarios, siempre
+    public static final long RETENCION_TELEMETRIA_MINUTO_MS = 30L * 24 * 60 * 60 * 1000;
+
+    // Filtro de existencia de DNI en memoria; se construye en el primer uso
+    private volatile FiltroDNI filtroDNI;
+
+    /**
+     * Columnas de las consultas de lista (PacienteResumen): solo lo que se
+     * pinta en la fila, sin los textos largos de patología y medicación.
+     */
+    public static final String[] COLUMNAS_RESUMEN = {
+            PacienteDBHelper.COLUMN_ID,
+            PacienteDBHelper.COLUMN_DNI,
+            PacienteDBHelper.COLUMN_NOMBRE,
+            PacienteDBHelper.COLUMN_APELLIDO1,
+            PacienteDBHelper.COLUMN_APELLIDO2
+    };
+
+    // ======= SQL DE LAS CONSULTAS =======
+    // Cada consulta con filtro u orden es una constante que ejecuta su método
+    // tal cual; QueryPlanTest (androidTest) pasa estas mismas constantes por
+    // EXPLAIN QUERY PLAN, así la comprobación no puede desviarse del código.
+
+    // Usuarios
+    static final String WHERE_USERNAME = PacienteDBHelper.COLUMN_USERNAME + " = ?";
+    static final String WHERE_USUARIO_ID = PacienteDBHelper.COLUMN_USUARIO_ID + " = ?";
+    static final String SQL_VERIFICAR_CREDENCIALES =
+            "SELECT " + PacienteDBHelper.COLUMN_USUARIO_ID + ", " + PacienteDBHelper.COLUMN_ACTIVO +
+                    " FROM " + PacienteDBHelper.TABLE_USUARIOS +
+                    " WHERE " + WHERE_USERNAME + " AND " + PacienteDBHelper.COLUMN_PASSWORD_HASH + " = ?";
+    static final String SQL_USUARIO_POR_USERNAME =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_USUARIOS + " WHERE " + WHERE_USERNAME;
+    static final String SQL_USUARIO_POR_ID =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_USUARIOS + " WHERE " + WHERE_USUARIO_ID;
+    // Listado completo: lee toda la tabla por definición
+    static final String SQL_TODOS_USUARIOS =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_USUARIOS +
+                    " ORDER BY " + PacienteDBHelper.COLUMN_NOMBRE_COMPLETO;
+
+    // Usuario_paciente
+    static final String WHERE_USUARIO_PACIENTE =
+            PacienteDBHelper.COLUMN_UP_USUARIO_ID + " = ? AND " + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ?";
+    static final String WHERE_UP_PACIENTE = PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ?";
+    static final String SQL_TIENE_ACCESO =
+            "SELECT " + PacienteDBHelper.COLUMN_UP_ROL + " FROM " + PacienteDBHelper.TABLE_USUARIO_PACIENTE +
+                    " WHERE " + WHERE_USUARIO_PACIENTE;
+    static final String SQL_PACIENTES_DE_USUARIO =
+            "SELECT p.* FROM " + PacienteDBHelper.TABLE_PACIENTES + " p " +
+                    "INNER JOIN " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " up " +
+                    "ON p." + PacienteDBHelper.COLUMN_ID + " = up." + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " " +
+                    "WHERE up." + PacienteDBHelper.COLUMN_UP_USUARIO_ID + " = ? " +
+                    "ORDER BY p." + PacienteDBHelper.COLUMN_NOMBRE;
+    static final String SQL_USUARIOS_DE_PACIENTE =
+            "SELECT u.*, up." + PacienteDBHelper.COLUMN_UP_ROL + " AS rol_asignacion " +
+                    "FROM " + PacienteDBHelper.TABLE_USUARIOS + " u " +
+                    "INNER JOIN " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " up " +
+                    "ON u." + PacienteDBHelper.COLUMN_USUARIO_ID + " = up." + PacienteDBHelper.COLUMN_UP_USUARIO_ID + " " +
+                    "WHERE up." + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ?";
+    static final String SQL_CREADOR_DE_PACIENTE =
+            "SELECT u." + PacienteDBHelper.COLUMN_NOMBRE_COMPLETO + ", " +
+                    "u." + PacienteDBHelper.COLUMN_USERNAME + ", " +
+                    "up." + PacienteDBHelper.COLUMN_UP_FECHA + " " +
+                    "FROM " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " up " +
+                    "INNER JOIN " + PacienteDBHelper.TABLE_USUARIOS + " u " +
+                    "ON u." + PacienteDBHelper.COLUMN_USUARIO_ID + " = up." + PacienteDBHelper.COLUMN_UP_USUARIO_ID + " " +
+                    "WHERE up." + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ? " +
+                    "AND up." + PacienteDBHelper.COLUMN_UP_ROL + " = 'creador'";
+
+    // Búsqueda FTS. Sin alias: matchinfo() y MATCH necesitan el nombre real de la tabla FTS
+    static final String SQL_BUSCAR_PACIENTES =
+            "SELECT " + columnasResumen("p") + ", matchinfo(" + PacienteDBHelper.TABLE_PACIENTES_FTS + ", 'pcx') AS relevancia " +
+                    "FROM " + PacienteDBHelper.TABLE_PACIENTES_FTS + " " +
+                    "INNER JOIN " + PacienteDBHelper.TABLE_PACIENTES + " p " +
+                    "ON p." + PacienteDBHelper.COLUMN_ID + " = " + PacienteDBHelper.TABLE_PACIENTES_FTS + ".docid " +
+                    "WHERE " + PacienteDBHelper.TABLE_PACIENTES_FTS + " MATCH ?";
+    // Visibilidad: solo pacientes vinculados al usuario (creador o asignado)
+    static final String SQL_BUSCAR_PACIENTES_DE_USUARIO = SQL_BUSCAR_PACIENTES +
+            " AND " + PacienteDBHelper.TABLE_PACIENTES_FTS + ".docid IN (SELECT " + PacienteDBHelper.COLUMN_UP_PACIENTE_ID +
+            " FROM " + PacienteDBHelper.TABLE_USUARIO_PACIENTE +
+            " WHERE " + PacienteDBHelper.COLUMN_UP_USUARIO_ID + " = ?)";
+
+    // Pacientes
+    static final String WHERE_PACIENTE_ID = PacienteDBHelper.COLUMN_ID + " = ?";
+    static final String SQL_PACIENTE_POR_ID =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_PACIENTES + " WHERE " + WHERE_PACIENTE_ID;
+    static final String SQL_PACIENTE_POR_DNI =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_PACIENTES + " WHERE " + WHERE_DNI + " LIMIT 1";
+    static final String SQL_EXISTE_DNI =
+            "SELECT " + PacienteDBHelper.COLUMN_ID + " FROM " + PacienteDBHelper.TABLE_PACIENTES +
+                    " WHERE " + WHERE_DNI + " AND " + PacienteDBHelper.COLUMN_ID + " != ? LIMIT 1";
+    // Listados completos: leen toda la tabla (o todo el índice) por definición
+    static final String SQL_TODOS_LOS_DNI =
+            "SELECT " + PacienteDBHelper.COLUMN_DNI + " FROM " + PacienteDBHelper.TABLE_PACIENTES +
+                    " ORDER BY " + PacienteDBHelper.COLUMN_DNI + " COLLATE NOCASE";
+    static final String SQL_TODOS_PACIENTES =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_PACIENTES + " ORDER BY " + PacienteDBHelper.COLUMN_NOMBRE;
+    static final String SQL_RESUMEN_PACIENTES =
+            "SELECT " + columnasResumen("p") + " FROM " + PacienteDBHelper.TABLE_PACIENTES + " p" +
+                    " ORDER BY p." + PacienteDBHelper.COLUMN_NOMBRE;
+    static final String SQL_RESUMEN_PACIENTES_DE_USUARIO =
+            "SELECT " + columnasResumen("p") + " FROM " + PacienteDBHelper.TABLE_PACIENTES + " p " +
+                    "INNER JOIN " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " up " +
+                    "ON p." + PacienteDBHelper.COLUMN_ID + " = up." + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " " +
+                    "WHERE up." + PacienteDBHelper.COLUMN_UP_USUARIO_ID + " = ? " +
+                    "ORDER BY p." + PacienteDBHelper.COLUMN_NOMBRE;
+    // Página de pacientes: [desde la última fila][de un usuario]
+    static final String[][] SQL_PAGINA_PACIENTES = {
+            {sqlPaginaPacientes(false, false), sqlPaginaPacientes(false, true)},
+            {sqlPaginaPacientes(true, false), sqlPaginaPacientes(true, true)}
+    };
+    // Relaciones usuario_sesion de todas las sesiones de un paciente
+    static final String SQL_BORRAR_USUARIO_SESION_DE_PACIENTE =
+            "DELETE FROM " + PacienteDBHelper.TABLE_USUARIO_SESION +
+                    " WHERE " + PacienteDBHelper.COLUMN_US_SESION_ID +
+                    " IN (SELECT " + PacienteDBHelper.COLUMN_SESION_ID +
+                    " FROM " + PacienteDBHelper.TABLE_SESIONES +
+                    " WHERE " + PacienteDBHelper.COLUMN_PACIENTE_ID + " = ?)";
+
+    // Sesiones
+    static final String WHERE_SESIONES_PACIENTE = PacienteDBHelper.COLUMN_PACIENTE_ID + " = ?";
+    static final String WHERE_SESION_ID = PacienteDBHelper.COLUMN_SESION_ID + " = ?";
+    static final String SQL_SESIONES_PACIENTE =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_SESIONES + " WHERE " + WHERE_SESIONES_PACIENTE +
+                    " ORDER BY " + PacienteDBHelper.COLUMN_FECHA + " DESC";
+    static final String SQL_SESIONES_PACIENTE_INTERVALO =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_SESIONES + " WHERE " + WHERE_SESIONES_PACIENTE +
+                    " AND " + PacienteDBHelper.COLUMN_FECHA + " >= ? AND " + PacienteDBHelper.COLUMN_FECHA + " < ?" +
+                    " ORDER BY " + PacienteDBHelper.COLUMN_FECHA + " DESC";
+    static final String SQL_SESION_POR_ID =
+            "SELECT * FROM " + PacienteDBHelper.TABLE_SESIONES + " WHERE " + WHERE_SESION_ID;
+
+    // Usuario_sesion
+    static final String WHERE_US_SESION = PacienteDBHelper.COLUMN_US_SESION_ID + " = ?";
+    static final String WHERE_USUARIO_SESION =
+            PacienteDBHelper.COLUMN_US_USUARIO_ID + " = ? AND " + PacienteDBHelper.COLUMN_US_SESION_ID + " = ?";
+    static final String SQL_SESIONES_DE_USUARIO =
+            "SELECT " + PacienteDBHelper.COLUMN_US_SESION_ID + " FROM " + PacienteDBHelper.TABLE_USUARIO_SESION +
+                    " WHERE " + PacienteDBHelper.COLUMN_US_USUARIO_ID + " = ?";
+    static final String SQL_USUARIOS_DE_SESION =
+            "SELECT " + PacienteDBHelper.COLUMN_US_USUARIO_ID + " FROM " + PacienteDBHelper.TABLE_USUARIO_SESION +
+                    " WHERE " + WHERE_US_SESION;
+
+    // Telemetría (tabla de minutos o de días)
+    static final String SQL_TELEMETRIA_RANGO =
+            "SELECT * FROM %s WHERE " + WHERE_TELEMETRIA_RANGO + " ORDER BY " + PacienteDBHelper.COLUMN_TEL_INICIO + " ASC";
+
+    private PacienteDataManager(Context context) {
         dbHelper = new PacienteDBHelper(context);
     }
 
-    public boolean open() {
+    /** Para los tests: sobre una base de datos ya abierta (p. ej. en memoria) */
+    PacienteDataManager(PacienteDBHelper dbHelper, SQLiteDatabase database) {
+        this.dbHelper = dbHelper;
+        this.database = database;
+    }
+
+    /**
+     * Devuelve la instancia compartida. Usa el contexto de aplicación para no
+     * retener ninguna Activity.
+     */
+    public static PacienteDataManager getInstance(Context context) {
+        PacienteDataManager local = instancia;
+        if (local == null) {
+            synchronized (PacienteDataManager.class) {
+                local = instancia;
+                if (local == null) {
+                    local = new PacienteDataManager(context.getApplicationContext());
+                    instancia = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    /**
+     * Abre la conexión si todavía no lo está. Es idempotente: si ya está
+     * abierta no hace nada, así que cambiar de pantalla no cuesta una apertura.
+     * @return true si la base de datos está disponible
+     */
+    public synchronized boolean open() {
+        if (database != null && database.isOpen()) {
+            return true;
+        }
         try {
             database = dbHelper.getWritableDatabase();
+            int n = numeroAperturas.incrementAndGet();
+            Log.d("PacienteDataManager", "Base de datos abierta (aperturas en este proceso: " + n + ")");
             return true;
         } catch (SQLException e) {
             Log.e("ERROR", "Error SQL al abrir la base de datos: " + e.getMessage());
@@ -40,8 +276,48 @@ public class PacienteDataManager {
         }
     }
 
-    public void close() {
+    /**
+     * Cierra la conexión compartida. Solo para el cierre del proceso o
+     * situaciones excepcionales; la siguiente llamada a open() la reabre.
+     */
+    public synchronized void close() {
+        volcarWal();
         dbHelper.close();
+        database = null;
+    }
+
+    /**
+     * Pasa los cambios pendientes del WAL a trivium.db, para que una copia del
+     * fichero hecha fuera de la app (p. ej. por USB) esté al día. Llamarlo
+     * desde el hilo de escritura del PacienteRepository, detrás de las
+     * escrituras que deban quedar incluidas.
+     * @return true si el WAL quedó vacío
+     */
+    public boolean volcarWal() {
+        SQLiteDatabase db = database;
+        if (db == null || !db.isOpen()) return false;
+        try {
+            boolean completo = PacienteDBHelper.volcarWal(db);
+            if (!completo) {
+                Log.w("PacienteDataManager", "Checkpoint del WAL incompleto (hay lectores activos)");
+            }
+            return completo;
+        } catch (Exception e) {
+            Log.e("PacienteDataManager", "Error al volcar el WAL: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean isOpen() {
+        SQLiteDatabase db = database;
+        return db != null && db.isOpen();
+    }
+
+    /**
+     * @return Nº de veces que se ha abierto la conexión desde que arrancó el proceso
+     */
+    public int getNumeroAperturas() {
+        return numeroAperturas.get();
     }
 
     // ======= MÉTODOS PARA AUTENTICACIÓN DE USUARIOS =======
@@ -56,16 +332,7 @@ public class PacienteDataManager {
         try {
             String passwordHash = PacienteDBHelper.hashPassword(password);
 
-            Cursor cursor = database.query(
-                    PacienteDBHelper.TABLE_USUARIOS,
-                    new String[]{PacienteDBHelper.COLUMN_USUARIO_ID, PacienteDBHelper.COLUMN_ACTIVO},
-                    PacienteDBHelper.COLUMN_USERNAME + " = ? AND " +
-                            PacienteDBHelper.COLUMN_PASSWORD_HASH + " = ?",
-                    new String[]{username, passwordHash},
-                    null,
-                    null,
-                    null
-            );
+            Cursor cursor = database.rawQuery(SQL_VERIFICAR_CREDENCIALES, new String[]{username, passwordHash});
 
             if (cursor != null && cursor.moveToFirst()) {
                 int activo = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_ACTIVO));
@@ -95,15 +362,7 @@ public class PacienteDataManager {
      * @return Cursor con los datos del usuario o null
      */
     public Cursor obtenerUsuario(String username) {
-        return database.query(
-                PacienteDBHelper.TABLE_USUARIOS,
-                null,
-                PacienteDBHelper.COLUMN_USERNAME + " = ?",
-                new String[]{username},
-                null,
-                null,
-                null
-        );
+        return database.rawQuery(SQL_USUARIO_POR_USERNAME, new String[]{username});
     }
 
     /**
@@ -112,13 +371,7 @@ public class PacienteDataManager {
      * @return Cursor con los datos del usuario o null
      */
     public Cursor obtenerUsuarioPorId(int id) {
-        return database.query(
-                PacienteDBHelper.TABLE_USUARIOS,
-                null,
-                PacienteDBHelper.COLUMN_USUARIO_ID + " = ?",
-                new String[]{String.valueOf(id)},
-                null, null, null
-        );
+        return database.rawQuery(SQL_USUARIO_POR_ID, new String[]{String.valueOf(id)});
     }
 
     /**
@@ -132,8 +385,6 @@ public class PacienteDataManager {
     public long crearUsuario(String username, String password, String nombreCompleto, String rol) {
         try {
             String passwordHash = PacienteDBHelper.hashPassword(password);
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-            String fechaActual = sdf.format(new Date());
 
             ContentValues values = new ContentValues();
             values.put(PacienteDBHelper.COLUMN_USERNAME, username);
@@ -141,7 +392,7 @@ public class PacienteDataManager {
             values.put(PacienteDBHelper.COLUMN_NOMBRE_COMPLETO, nombreCompleto);
             values.put(PacienteDBHelper.COLUMN_ROL, rol);
             values.put(PacienteDBHelper.COLUMN_ACTIVO, 1);
-            values.put(PacienteDBHelper.COLUMN_FECHA_CREACION, fechaActual);
+            values.put(PacienteDBHelper.COLUMN_FECHA_CREACION, Fechas.ahora());
 
             long id = database.insert(PacienteDBHelper.TABLE_USUARIOS, null, values);
 
@@ -174,7 +425,7 @@ public class PacienteDataManager {
             int rowsAffected = database.update(
                     PacienteDBHelper.TABLE_USUARIOS,
                     values,
-                    PacienteDBHelper.COLUMN_USERNAME + " = ?",
+                    WHERE_USERNAME,
                     new String[]{username}
             );
 
@@ -190,16 +441,13 @@ public class PacienteDataManager {
      */
     private void actualizarUltimoAcceso(int userId) {
         try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-            String fechaActual = sdf.format(new Date());
-
             ContentValues values = new ContentValues();
-            values.put(PacienteDBHelper.COLUMN_ULTIMO_ACCESO, fechaActual);
+            values.put(PacienteDBHelper.COLUMN_ULTIMO_ACCESO, Fechas.ahora());
 
             database.update(
                     PacienteDBHelper.TABLE_USUARIOS,
                     values,
-                    PacienteDBHelper.COLUMN_USUARIO_ID + " = ?",
+                    WHERE_USUARIO_ID,
                     new String[]{String.valueOf(userId)}
             );
         } catch (Exception e) {
@@ -221,7 +469,7 @@ public class PacienteDataManager {
             int rowsAffected = database.update(
                     PacienteDBHelper.TABLE_USUARIOS,
                     values,
-                    PacienteDBHelper.COLUMN_USERNAME + " = ?",
+                    WHERE_USERNAME,
                     new String[]{username}
             );
 
@@ -237,15 +485,7 @@ public class PacienteDataManager {
      * @return Lista de usuarios
      */
     public Cursor obtenerTodosUsuarios() {
-        return database.query(
-                PacienteDBHelper.TABLE_USUARIOS,
-                null,
-                null,
-                null,
-                null,
-                null,
-                PacienteDBHelper.COLUMN_NOMBRE_COMPLETO
-        );
+        return database.rawQuery(SQL_TODOS_USUARIOS, null);
     }
 
     // ======= MÉTODOS PARA USUARIO_PACIENTE =======
@@ -262,13 +502,11 @@ public class PacienteDataManager {
      */
     public boolean vincularUsuarioPaciente(int idUsuario, int idPaciente, String rol) {
         try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-
             ContentValues values = new ContentValues();
             values.put(PacienteDBHelper.COLUMN_UP_USUARIO_ID, idUsuario);
             values.put(PacienteDBHelper.COLUMN_UP_PACIENTE_ID, idPaciente);
             values.put(PacienteDBHelper.COLUMN_UP_ROL, rol);
-            values.put(PacienteDBHelper.COLUMN_UP_FECHA, sdf.format(new Date()));
+            values.put(PacienteDBHelper.COLUMN_UP_FECHA, Fechas.ahora());
 
             long resultado = database.insert(PacienteDBHelper.TABLE_USUARIO_PACIENTE, null, values);
             return resultado != -1;
@@ -289,8 +527,7 @@ public class PacienteDataManager {
         try {
             return database.delete(
                     PacienteDBHelper.TABLE_USUARIO_PACIENTE,
-                    PacienteDBHelper.COLUMN_UP_USUARIO_ID + " = ? AND " +
-                            PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ?",
+                    WHERE_USUARIO_PACIENTE,
                     new String[]{String.valueOf(idUsuario), String.valueOf(idPaciente)}
             ) > 0;
         } catch (Exception e) {
@@ -304,14 +541,8 @@ public class PacienteDataManager {
      */
     public boolean tieneAccesoPaciente(int idUsuario, int idPaciente) {
         try {
-            Cursor cursor = database.query(
-                    PacienteDBHelper.TABLE_USUARIO_PACIENTE,
-                    new String[]{PacienteDBHelper.COLUMN_UP_ROL},
-                    PacienteDBHelper.COLUMN_UP_USUARIO_ID + " = ? AND " +
-                            PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ?",
-                    new String[]{String.valueOf(idUsuario), String.valueOf(idPaciente)},
-                    null, null, null
-            );
+            Cursor cursor = database.rawQuery(SQL_TIENE_ACCESO,
+                    new String[]{String.valueOf(idUsuario), String.valueOf(idPaciente)});
 
             boolean tiene = cursor != null && cursor.getCount() > 0;
             if (cursor != null) cursor.close();
@@ -330,14 +561,7 @@ public class PacienteDataManager {
      * @return Cursor con las columnas de la tabla pacientes
      */
     public Cursor obtenerPacientesDeUsuario(int idUsuario) {
-        String query =
-                "SELECT p.* FROM " + PacienteDBHelper.TABLE_PACIENTES + " p " +
-                        "INNER JOIN " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " up " +
-                        "ON p." + PacienteDBHelper.COLUMN_ID + " = up." + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " " +
-                        "WHERE up." + PacienteDBHelper.COLUMN_UP_USUARIO_ID + " = ? " +
-                        "ORDER BY p." + PacienteDBHelper.COLUMN_NOMBRE;
-
-        return database.rawQuery(query, new String[]{String.valueOf(idUsuario)});
+        return database.rawQuery(SQL_PACIENTES_DE_USUARIO, new String[]{String.valueOf(idUsuario)});
     }
 
     /**
@@ -345,14 +569,7 @@ public class PacienteDataManager {
      * Útil para mostrar la lista de usuarios asignados a un paciente.
      */
     public Cursor obtenerUsuariosDeUnPaciente(int idPaciente) {
-        String query =
-                "SELECT u.*, up." + PacienteDBHelper.COLUMN_UP_ROL + " AS rol_asignacion " +
-                        "FROM " + PacienteDBHelper.TABLE_USUARIOS + " u " +
-                        "INNER JOIN " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " up " +
-                        "ON u." + PacienteDBHelper.COLUMN_USUARIO_ID + " = up." + PacienteDBHelper.COLUMN_UP_USUARIO_ID + " " +
-                        "WHERE up." + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ?";
-
-        return database.rawQuery(query, new String[]{String.valueOf(idPaciente)});
+        return database.rawQuery(SQL_USUARIOS_DE_PACIENTE, new String[]{String.valueOf(idPaciente)});
     }
 
     /**
@@ -364,17 +581,23 @@ public class PacienteDataManager {
      * @return Cursor con los datos del creador, o null
      */
     public Cursor obtenerCreadorDePaciente(int idPaciente) {
-        String query =
-                "SELECT u." + PacienteDBHelper.COLUMN_NOMBRE_COMPLETO + ", " +
-                        "u." + PacienteDBHelper.COLUMN_USERNAME + ", " +
-                        "up." + PacienteDBHelper.COLUMN_UP_FECHA + " " +
-                        "FROM " + PacienteDBHelper.TABLE_USUARIO_PACIENTE + " up " +
-                        "INNER JOIN " + PacienteDBHelper.TABLE_USUARIOS + " u " +
-                        "ON u." + PacienteDBHelper.COLUMN_USUARIO_ID + " = up." + PacienteDBHelper.COLUMN_UP_USUARIO_ID + " " +
-                        "WHERE up." + PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ? " +
-                        "AND up." + PacienteDBHelper.COLUMN_UP_ROL + " = 'creador'";
+        return database.rawQuery(SQL_CREADOR_DE_PACIENTE, new String[]{String.valueOf(idPaciente)});
+    }
 
-        return database.rawQuery(query, new String[]{String.valueOf(idPaciente)});
+    /**
+     * Búsqueda de texto sobre el índice FTS de pacientes.
+     * Devuelve las columnas de COLUMNAS_RESUMEN más el blob de
+     * matchinfo('pcx') en la columna "relevancia" (ver BusquedaFts.puntuacion).
+     *
+     * @param match     expresión MATCH (BusquedaFts.construirMatch)
+     * @param idUsuario usuario cuyos pacientes son visibles, o -1 para todos
+     * @return Cursor con las columnas de COLUMNAS_RESUMEN y relevancia
+     */
+    public Cursor buscarPacientes(String match, int idUsuario) {
+        if (idUsuario == -1) {
+            return database.rawQuery(SQL_BUSCAR_PACIENTES, new String[]{match});
+        }
+        return database.rawQuery(SQL_BUSCAR_PACIENTES_DE_USUARIO, new String[]{match, String.valueOf(idUsuario)});
     }
 
     // ======= MÉTODOS PARA PACIENTES =======
@@ -382,7 +605,7 @@ public class PacienteDataManager {
     public long nuevoPaciente(String dni, String nombre, String apellido1, String apellido2, int edad, String genero,
                               String patologia,String medicacion, int intensidad, int tiempo, String cic) {
         ContentValues values = new ContentValues();
-        values.put(PacienteDBHelper.COLUMN_DNI, dni);
+        values.put(PacienteDBHelper.COLUMN_DNI, normalizarDNI(dni));
         values.put(PacienteDBHelper.COLUMN_NOMBRE, nombre);
         values.put(PacienteDBHelper.COLUMN_APELLIDO1, apellido1);
         values.put(PacienteDBHelper.COLUMN_APELLIDO2, apellido2);
@@ -394,39 +617,170 @@ public class PacienteDataManager {
         values.put(PacienteDBHelper.COLUMN_TIEMPO, tiempo);
         values.put(PacienteDBHelper.COLUMN_CIC, cic);
 
-        return database.insert(PacienteDBHelper.TABLE_PACIENTES, null, values);
+        long id = database.insert(PacienteDBHelper.TABLE_PACIENTES, null, values);
+        if (id != -1) registrarDNIEnFiltro(values.getAsString(PacienteDBHelper.COLUMN_DNI));
+        return id;
+    }
+
+    // ======= BÚSQUEDA POR DNI =======
+
+    /**
+     * Forma canónica de un DNI: sin espacios ni guiones y en mayúsculas.
+     * Es la forma en que se guarda en la tabla pacientes (desde v8).
+     */
+    public static String normalizarDNI(String dni) {
+        if (dni == null) return null;
+        return dni.trim().replace(" ", "").replace("-", "").toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Busca un paciente por DNI con una consulta puntual sobre el índice.
+     * @return Cursor con como mucho una fila (todas las columnas de pacientes)
+     */
+    public Cursor buscarPacientePorDNI(String dni) {
+        return database.rawQuery(SQL_PACIENTE_POR_DNI, new String[]{normalizarDNI(dni)});
+    }
+
+    /**
+     * Comprueba si existe otro paciente con ese DNI.
+     * Primero consulta el filtro en memoria: si dice que no existe, no se
+     * toca el disco. Si puede existir, se confirma con la consulta indexada.
+     *
+     * @param excluirId ID del paciente a ignorar (edición), -1 si es nuevo
+     */
+    public boolean existeDNI(String dni, int excluirId) {
+        String normalizado = normalizarDNI(dni);
+        if (normalizado == null || normalizado.isEmpty()) return false;
+        if (!obtenerFiltroDNI().puedeContener(normalizado)) return false;
+
+        Cursor cursor = database.rawQuery(SQL_EXISTE_DNI, new String[]{normalizado, String.valueOf(excluirId)});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private FiltroDNI obtenerFiltroDNI() {
+        FiltroDNI local = filtroDNI;
+        if (local == null || local.estaSaturado()) {
+            synchronized (this) {
+                local = filtroDNI;
+                if (local == null || local.estaSaturado()) {
+                    local = construirFiltroDNI();
+                    filtroDNI = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    /** Carga todos los DNI recorriendo solo el índice (no la tabla) */
+    private FiltroDNI construirFiltroDNI() {
+        Cursor cursor = database.rawQuery(SQL_TODOS_LOS_DNI, null);
+        try {
+            // Margen para las altas de la sesión antes de tener que reconstruir
+            FiltroDNI filtro = new FiltroDNI(cursor.getCount() * 2);
+            while (cursor.moveToNext()) {
+                filtro.agregar(normalizarDNI(cursor.getString(0)));
+            }
+            Log.d(TAG, "Filtro de DNI construido con " + cursor.getCount() + " pacientes");
+            return filtro;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Sincronizado con la construcción del filtro: un alta que termina mientras
+    // se está construyendo se añade en cuanto el filtro queda publicado.
+    private synchronized void registrarDNIEnFiltro(String dni) {
+        if (filtroDNI != null) filtroDNI.agregar(dni);
     }
 
     // Obtener todos los pacientes
     public Cursor obtenerTodosPacientes() {
+        return database.rawQuery(SQL_TODOS_PACIENTES, null);
+    }
+    /**
+     * Lista completa de pacientes visibles, solo con COLUMNAS_RESUMEN,
+     * ordenada por nombre.
+     * @param idUsuario usuario cuyos pacientes son visibles, o -1 para todos
+     */
+    public Cursor obtenerResumenPacientes(int idUsuario) {
+        if (idUsuario == -1) {
+            return database.rawQuery(SQL_RESUMEN_PACIENTES, null);
+        }
+        return database.rawQuery(SQL_RESUMEN_PACIENTES_DE_USUARIO, new String[]{String.valueOf(idUsuario)});
+    }
+
+    /** COLUMNAS_RESUMEN con prefijo de alias, para consultas con JOIN */
+    private static String columnasResumen(String alias) {
+        StringBuilder sb = new StringBuilder();
+        for (String columna : COLUMNAS_RESUMEN) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(alias).append('.').append(columna);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Página de la lista de pacientes con paginación por clave (keyset) sobre
+     * (nombre, _id): en lugar de OFFSET, cada página empieza justo después de
+     * la última fila de la anterior, así el coste no crece al avanzar.
+     *
+     * @param idUsuario    usuario cuyos pacientes son visibles, o -1 para todos
+     * @param ultimoNombre nombre de la última fila de la página anterior, o null para la primera
+     * @param ultimoId     _id de la última fila de la página anterior (ignorado si ultimoNombre es null)
+     * @param tamano       nº máximo de filas
+     */
+    public Cursor obtenerPaginaPacientes(int idUsuario, String ultimoNombre, int ultimoId, int tamano) {
+        List<String> args = new ArrayList<>();
+        if (ultimoNombre != null) {
+            args.add(ultimoNombre);
+            args.add(ultimoNombre);
+            args.add(String.valueOf(ultimoId));
+        }
+        if (idUsuario != -1) {
+            args.add(String.valueOf(idUsuario));
+        }
+        args.add(String.valueOf(tamano));
 
-        return database.query(
-                PacienteDBHelper.TABLE_PACIENTES,
-                null,
-                null,
-                null,
-                null,
-                null,
-                PacienteDBHelper.COLUMN_NOMBRE // Ordenar por nombre
-        );
+        String sql = SQL_PAGINA_PACIENTES[ultimoNombre != null ? 1 : 0][idUsuario != -1 ? 1 : 0];
+        return database.rawQuery(sql, args.toArray(new String[0]));
+    }
+
+    /** SQL de obtenerPaginaPacientes; el tamaño de página va como último parámetro */
+    private static String sqlPaginaPacientes(boolean desdeUltimo, boolean deUsuario) {
+        StringBuilder where = new StringBuilder();
+        if (desdeUltimo) {
+            // Equivale a (nombre, _id) > (?, ?). SQLite de API 19 no admite
+            // row values; con esta forma el índice de nombre acota el rango.
+            where.append(PacienteDBHelper.COLUMN_NOMBRE).append(" >= ? AND (")
+                    .append(PacienteDBHelper.COLUMN_NOMBRE).append(" > ? OR ")
+                    .append(PacienteDBHelper.COLUMN_ID).append(" > ?)");
+        }
+        if (deUsuario) {
+            if (where.length() > 0) where.append(" AND ");
+            where.append(PacienteDBHelper.COLUMN_ID).append(" IN (SELECT ")
+                    .append(PacienteDBHelper.COLUMN_UP_PACIENTE_ID).append(" FROM ")
+                    .append(PacienteDBHelper.TABLE_USUARIO_PACIENTE).append(" WHERE ")
+                    .append(PacienteDBHelper.COLUMN_UP_USUARIO_ID).append(" = ?)");
+        }
+        return "SELECT " + columnasResumen("p") + " FROM " + PacienteDBHelper.TABLE_PACIENTES + " p" +
+                (where.length() > 0 ? " WHERE " + where : "") +
+                " ORDER BY " + PacienteDBHelper.COLUMN_NOMBRE + ", " + PacienteDBHelper.COLUMN_ID +
+                " LIMIT ?";
     }
+
     public Cursor obtenerPacientePorId(int id) {
-        return database.query(
-                PacienteDBHelper.TABLE_PACIENTES,
-                null,
-                PacienteDBHelper.COLUMN_ID + " = ?",
-                new String[]{String.valueOf(id)},
-                null,
-                null,
-                null
-        );
+        return database.rawQuery(SQL_PACIENTE_POR_ID, new String[]{String.valueOf(id)});
     }
     public int actualizarPaciente(int id, String dni, String nombre, String apellido1, String apellido2, int edad, String genero,
                                   String patologia, String medicacion, int intensidad,
                                   int tiempo, String cic) {
         try {
             ContentValues values = new ContentValues();
-            values.put(PacienteDBHelper.COLUMN_DNI, dni);
+            values.put(PacienteDBHelper.COLUMN_DNI, normalizarDNI(dni));
             values.put(PacienteDBHelper.COLUMN_NOMBRE, nombre);
             values.put(PacienteDBHelper.COLUMN_APELLIDO1, apellido1);
             values.put(PacienteDBHelper.COLUMN_APELLIDO2, apellido2);
@@ -438,12 +792,14 @@ public class PacienteDataManager {
             values.put(PacienteDBHelper.COLUMN_TIEMPO, tiempo);
             values.put(PacienteDBHelper.COLUMN_CIC, cic);
 
-            return database.update(
+            int filas = database.update(
                     PacienteDBHelper.TABLE_PACIENTES,
                     values,
-                    PacienteDBHelper.COLUMN_ID + " = ?",
+                    WHERE_PACIENTE_ID,
                     new String[]{ String.valueOf(id) }
             );
+            if (filas > 0) registrarDNIEnFiltro(values.getAsString(PacienteDBHelper.COLUMN_DNI));
+            return filas;
         } catch (Exception e) {
             Log.e(TAG, "Error al actualizar paciente: " + e.getMessage());
             return -1;
@@ -461,8 +817,8 @@ public class PacienteDataManager {
             return  database.update(
                     PacienteDBHelper.TABLE_PACIENTES,
                     values,
-                    PacienteDBHelper.COLUMN_DNI + " =?",
-                    new String[]{dni}
+                    WHERE_DNI,
+                    new String[]{normalizarDNI(dni)}
             );
         }catch(Exception e) {
             Log.e(TAG, "Error al actualizar paciente: " + e.getMessage());
@@ -496,33 +852,26 @@ public class PacienteDataManager {
         try {
             // 1. Borrar relaciones usuario_sesion de las sesiones del paciente
             //    (si no, al borrar sesiones quedan huérfanos en usuario_sesion).
-            database.execSQL(
-                    "DELETE FROM " + PacienteDBHelper.TABLE_USUARIO_SESION +
-                            " WHERE " + PacienteDBHelper.COLUMN_US_SESION_ID +
-                            " IN (SELECT " + PacienteDBHelper.COLUMN_SESION_ID +
-                            " FROM " + PacienteDBHelper.TABLE_SESIONES +
-                            " WHERE " + PacienteDBHelper.COLUMN_PACIENTE_ID + " = ?)",
-                    new Object[]{idPaciente}
-            );
+            database.execSQL(SQL_BORRAR_USUARIO_SESION_DE_PACIENTE, new Object[]{idPaciente});
 
             // 2. Borrar las sesiones del paciente
             database.delete(
                     PacienteDBHelper.TABLE_SESIONES,
-                    PacienteDBHelper.COLUMN_PACIENTE_ID + " = ?",
+                    WHERE_SESIONES_PACIENTE,
                     new String[] { String.valueOf(idPaciente) }
             );
 
             // 3. Borrar vínculos usuario_paciente
             database.delete(
                     PacienteDBHelper.TABLE_USUARIO_PACIENTE,
-                    PacienteDBHelper.COLUMN_UP_PACIENTE_ID + " = ?",
+                    WHERE_UP_PACIENTE,
                     new String[]{String.valueOf(idPaciente)}
             );
 
             // 4. Borrar el paciente. Si no existía, rollback (no tocamos nada).
             int filasBorradas = database.delete(
                     PacienteDBHelper.TABLE_PACIENTES,
-                    PacienteDBHelper.COLUMN_ID + " = ?",
+                    WHERE_PACIENTE_ID,
                     new String[] { String.valueOf(idPaciente) }
             );
             if (filasBorradas <= 0) {
@@ -548,7 +897,7 @@ public class PacienteDataManager {
     public long nuevoPaciente2disp(String dni, String nombre, String apellido1, String apellido2, int edad, String genero,
                                    String patologia,String medicacion, int intensidad, int tiempo, int intensidad2, int tiempo2, String cic) {
         ContentValues values = new ContentValues();
-        values.put(PacienteDBHelper.COLUMN_DNI, dni);
+        values.put(PacienteDBHelper.COLUMN_DNI, normalizarDNI(dni));
         values.put(PacienteDBHelper.COLUMN_NOMBRE, nombre);
         values.put(PacienteDBHelper.COLUMN_APELLIDO1, apellido1);
         values.put(PacienteDBHelper.COLUMN_APELLIDO2, apellido2);
@@ -562,14 +911,16 @@ public class PacienteDataManager {
         values.put(PacienteDBHelper.COLUMN_TIEMPO2, tiempo2);
         values.put(PacienteDBHelper.COLUMN_CIC, cic);
 
-        return database.insert(PacienteDBHelper.TABLE_PACIENTES, null, values);
+        long id = database.insert(PacienteDBHelper.TABLE_PACIENTES, null, values);
+        if (id != -1) registrarDNIEnFiltro(values.getAsString(PacienteDBHelper.COLUMN_DNI));
+        return id;
     }
     public int actualizarPaciente2disp(int id, String dni, String nombre, String apellido1, String apellido2, int edad, String genero,
                                        String patologia, String medicacion, int intensidad,
                                        int tiempo,int intensidad2, int tiempo2, String cic) {
         try {
             ContentValues values = new ContentValues();
-            values.put(PacienteDBHelper.COLUMN_DNI, dni);
+            values.put(PacienteDBHelper.COLUMN_DNI, normalizarDNI(dni));
             values.put(PacienteDBHelper.COLUMN_NOMBRE, nombre);
             values.put(PacienteDBHelper.COLUMN_APELLIDO1, apellido1);
             values.put(PacienteDBHelper.COLUMN_APELLIDO2, apellido2);
@@ -583,12 +934,14 @@ public class PacienteDataManager {
             values.put(PacienteDBHelper.COLUMN_TIEMPO2, tiempo2);
             values.put(PacienteDBHelper.COLUMN_CIC, cic);
 
-            return database.update(
+            int filas = database.update(
                     PacienteDBHelper.TABLE_PACIENTES,
                     values,
-                    PacienteDBHelper.COLUMN_ID + " = ?",
+                    WHERE_PACIENTE_ID,
                     new String[]{ String.valueOf(id) }
             );
+            if (filas > 0) registrarDNIEnFiltro(values.getAsString(PacienteDBHelper.COLUMN_DNI));
+            return filas;
         } catch (Exception e) {
             Log.e(TAG, "Error al actualizar paciente: " + e.getMessage());
             return -1;
@@ -607,8 +960,8 @@ public class PacienteDataManager {
             return  database.update(
                     PacienteDBHelper.TABLE_PACIENTES,
                     values,
-                    PacienteDBHelper.COLUMN_DNI + " =?",
-                    new String[]{dni}
+                    WHERE_DNI,
+                    new String[]{normalizarDNI(dni)}
             );
         }catch(Exception e) {
             Log.e(TAG, "Error al actualizar paciente: " + e.getMessage());
@@ -628,14 +981,10 @@ public class PacienteDataManager {
      */
     public long registrarSesion(int idPaciente, String dispositivo, int intensidad, int tiempo) {
         try {
-            // Obtener fecha actual en formato ISO
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-            String fechaActual = sdf.format(new Date());
-
             ContentValues values = new ContentValues();
             values.put(PacienteDBHelper.COLUMN_PACIENTE_ID, idPaciente);
             values.put(PacienteDBHelper.COLUMN_DISPOSITIVO, dispositivo);
-            values.put(PacienteDBHelper.COLUMN_FECHA, fechaActual);
+            values.put(PacienteDBHelper.COLUMN_FECHA, Fechas.ahora()); // epoch ms
             values.put(PacienteDBHelper.COLUMN_INTENSIDAD_SESION, intensidad);
             values.put(PacienteDBHelper.COLUMN_TIEMPO_SESION, tiempo);
 
@@ -660,35 +1009,9 @@ public class PacienteDataManager {
      * @return Lista de sesiones
      */
     public List<Sesion> obtenerSesionesPaciente(int idPaciente) {
-        List<Sesion> sesiones = new ArrayList<>();
-
-        Cursor cursor = database.query(
-                PacienteDBHelper.TABLE_SESIONES,
-                null,
-                PacienteDBHelper.COLUMN_PACIENTE_ID + " = ?",
-                new String[]{String.valueOf(idPaciente)},
-                null,
-                null,
-                PacienteDBHelper.COLUMN_FECHA + " DESC" // Ordenar por fecha, más reciente primero
-        );
-
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                int id = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_SESION_ID));
-                String dispositivo = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_DISPOSITIVO));
-                String fecha = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_FECHA));
-                int intensidad = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD_SESION));
-                int tiempo = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO_SESION));
-
-
-                Sesion sesion = new Sesion(id, idPaciente, dispositivo, fecha, intensidad, tiempo);
-                sesiones.add(sesion);
-            } while (cursor.moveToNext());
-
-            cursor.close();
-        }
-
-        return sesiones;
+        // Más reciente primero
+        Cursor cursor = database.rawQuery(SQL_SESIONES_PACIENTE, new String[]{String.valueOf(idPaciente)});
+        return RowMapper.lista(cursor, RowMappers.SESION);
     }
 
     /**
@@ -697,34 +1020,31 @@ public class PacienteDataManager {
      * @return Objeto Sesion o null si no se encuentra
      */
     public Sesion obtenerSesion(int idSesion) {
-        Cursor cursor = database.query(
-                PacienteDBHelper.TABLE_SESIONES,
-                null,
-                PacienteDBHelper.COLUMN_SESION_ID + " = ?",
-                new String[]{String.valueOf(idSesion)},
-                null,
-                null,
-                null
-        );
-
-        if (cursor != null && cursor.moveToFirst()) {
-            int id = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_SESION_ID));
-            int idPaciente = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_PACIENTE_ID));
-            String dispositivo = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_DISPOSITIVO));
-            String fecha = cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_FECHA));
-            int intensidad = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD_SESION));
-            int tiempo = cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO_SESION));
+        Cursor cursor = database.rawQuery(SQL_SESION_POR_ID, new String[]{String.valueOf(idSesion)});
 
+        return RowMapper.primero(cursor, RowMappers.SESION);
+    }
 
-            cursor.close();
-            return new Sesion(id, idPaciente, dispositivo, fecha, intensidad, tiempo);
-        }
-
-        if (cursor != null) {
-            cursor.close();
-        }
+    /**
+     * Sesiones de un paciente en un intervalo de tiempo, más recientes primero.
+     * Usa el índice (paciente_id, fecha) como rango, sin leer el resto del historial.
+     * @param desde inicio del intervalo en epoch ms (incluido)
+     * @param hasta fin del intervalo en epoch ms (excluido)
+     */
+    public List<Sesion> obtenerSesionesPaciente(int idPaciente, long desde, long hasta) {
+        Cursor cursor = database.rawQuery(SQL_SESIONES_PACIENTE_INTERVALO,
+                new String[]{String.valueOf(idPaciente), String.valueOf(desde), String.valueOf(hasta)});
+        return RowMapper.lista(cursor, RowMappers.SESION);
+    }
 
-        return null;
+    /**
+     * Días (hora local) con sesiones de un paciente, más recientes primero.
+     * Columnas: dia ("yyyy-MM-dd"), total (nº de sesiones) y ultima (epoch ms
+     * de la última sesión del día). El agrupado lo hace SQLite sobre el índice
+     * (paciente_id, fecha), sin traer las sesiones a memoria.
+     */
+    public Cursor obtenerDiasConSesiones(int idPaciente) {
+        return database.rawQuery(SQL_DIAS_CON_SESIONES, new String[]{String.valueOf(idPaciente)});
     }
 
     /**
@@ -739,14 +1059,14 @@ public class PacienteDataManager {
             //    (evita huérfanos en la tabla intermedia).
             database.delete(
                     PacienteDBHelper.TABLE_USUARIO_SESION,
-                    PacienteDBHelper.COLUMN_US_SESION_ID + " = ?",
+                    WHERE_US_SESION,
                     new String[]{String.valueOf(idSesion)}
             );
 
             // 2. Borrar la sesión. Si no existía, rollback.
             int filasBorradas = database.delete(
                     PacienteDBHelper.TABLE_SESIONES,
-                    PacienteDBHelper.COLUMN_SESION_ID + " = ?",
+                    WHERE_SESION_ID,
                     new String[]{String.valueOf(idSesion)}
             );
             if (filasBorradas <= 0) {
@@ -763,6 +1083,105 @@ public class PacienteDataManager {
         }
     }
 
+    // ======= MÉTODOS PARA TELEMETRÍA =======
+
+    /**
+     * Guarda un lote de agregados por minuto (ver Telemetria) en una sola
+     * transacción. Cada agregado se suma a su fila de minuto y a la de su día,
+     * así que el volumen escrito depende de los minutos con datos y no del
+     * número de muestras. De paso borra los minutos de más de
+     * RETENCION_TELEMETRIA_MINUTO_MS de los dispositivos del lote.
+     * @return true si se guardó todo el lote
+     */
+    public boolean guardarTelemetria(List<AgregadoTelemetria> agregados) {
+        if (agregados.isEmpty()) return true;
+
+        database.beginTransaction();
+        SQLiteStatement crearMinuto = null, sumarMinuto = null, crearDia = null, sumarDia = null;
+        try {
+            crearMinuto = database.compileStatement(
+                    String.format(SQL_TELEMETRIA_CREAR, PacienteDBHelper.TABLE_TELEMETRIA_MINUTO));
+            sumarMinuto = database.compileStatement(
+                    String.format(SQL_TELEMETRIA_SUMAR, PacienteDBHelper.TABLE_TELEMETRIA_MINUTO));
+            crearDia = database.compileStatement(
+                    String.format(SQL_TELEMETRIA_CREAR, PacienteDBHelper.TABLE_TELEMETRIA_DIA));
+            sumarDia = database.compileStatement(
+                    String.format(SQL_TELEMETRIA_SUMAR, PacienteDBHelper.TABLE_TELEMETRIA_DIA));
+
+            HashSet<String> series = new HashSet<>();
+            for (AgregadoTelemetria a : agregados) {
+                if (a.getMuestras() == 0) continue;
+                sumarTelemetria(crearMinuto, sumarMinuto, a, a.getInicio());
+                sumarTelemetria(crearDia, sumarDia, a, Fechas.inicioDelDia(a.getInicio()));
+                series.add(a.getMac() + "|" + a.getTipo());
+            }
+
+            String limite = String.valueOf(Fechas.ahora() - RETENCION_TELEMETRIA_MINUTO_MS);
+            for (String serie : series) {
+                int separador = serie.lastIndexOf('|');
+                database.delete(PacienteDBHelper.TABLE_TELEMETRIA_MINUTO, WHERE_TELEMETRIA_ANTIGUA,
+                        new String[]{serie.substring(0, separador), serie.substring(separador + 1), limite});
+            }
+
+            database.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            Log.e("PacienteDataManager", "Error al guardar telemetría: " + e.getMessage());
+            return false;
+        } finally {
+            if (crearMinuto != null) crearMinuto.close();
+            if (sumarMinuto != null) sumarMinuto.close();
+            if (crearDia != null) crearDia.close();
+            if (sumarDia != null) sumarDia.close();
+            database.endTransaction();
+        }
+    }
+
+    private static void sumarTelemetria(SQLiteStatement crear, SQLiteStatement sumar,
+                                        AgregadoTelemetria a, long inicio) {
+        crear.clearBindings();
+        crear.bindString(1, a.getMac());
+        crear.bindLong(2, a.getTipo());
+        crear.bindLong(3, inicio);
+        crear.bindLong(4, a.getMinimo());
+        crear.bindLong(5, a.getMaximo());
+        crear.executeInsert();
+
+        sumar.clearBindings();
+        sumar.bindLong(1, a.getMuestras());
+        sumar.bindLong(2, a.getSuma());
+        sumar.bindLong(3, a.getMinimo());
+        sumar.bindLong(4, a.getMaximo());
+        sumar.bindString(5, a.getMac());
+        sumar.bindLong(6, a.getTipo());
+        sumar.bindLong(7, inicio);
+        sumar.executeUpdateDelete();
+    }
+
+    /**
+     * Resúmenes por minuto de un dispositivo y tipo, en orden cronológico.
+     * @param desde inicio del intervalo en epoch ms (incluido)
+     * @param hasta fin del intervalo en epoch ms (excluido)
+     */
+    public List<AgregadoTelemetria> obtenerTelemetriaMinutos(String mac, int tipo, long desde, long hasta) {
+        return obtenerTelemetria(PacienteDBHelper.TABLE_TELEMETRIA_MINUTO, mac, tipo, desde, hasta);
+    }
+
+    /**
+     * Resúmenes diarios (hora local) de un dispositivo y tipo, en orden cronológico.
+     * @param desde inicio del intervalo en epoch ms (incluido)
+     * @param hasta fin del intervalo en epoch ms (excluido)
+     */
+    public List<AgregadoTelemetria> obtenerTelemetriaDias(String mac, int tipo, long desde, long hasta) {
+        return obtenerTelemetria(PacienteDBHelper.TABLE_TELEMETRIA_DIA, mac, tipo, desde, hasta);
+    }
+
+    private List<AgregadoTelemetria> obtenerTelemetria(String tabla, String mac, int tipo, long desde, long hasta) {
+        Cursor cursor = database.rawQuery(String.format(SQL_TELEMETRIA_RANGO, tabla),
+                new String[]{mac, String.valueOf(tipo), String.valueOf(desde), String.valueOf(hasta)});
+        return RowMapper.lista(cursor, RowMappers.TELEMETRIA);
+    }
+
     // ======= MÉTODOS PARA USUARIO_SESION =======
 
     /**
@@ -773,9 +1192,6 @@ public class PacienteDataManager {
      */
     public boolean asignarUsuarioSesion(int idUsuario, int idSesion) {
         try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-            String fechaActual = sdf.format(new Date());
-
             ContentValues values = new ContentValues();
             values.put(PacienteDBHelper.COLUMN_US_USUARIO_ID, idUsuario);
             values.put(PacienteDBHelper.COLUMN_US_SESION_ID,  idSesion);
@@ -796,13 +1212,7 @@ public class PacienteDataManager {
      */
     public List<Integer> obtenerSesionesPorUsuario(int idUsuario) {
         List<Integer> sesionIds = new ArrayList<>();
-        Cursor cursor = database.query(
-                PacienteDBHelper.TABLE_USUARIO_SESION,
-                new String[]{PacienteDBHelper.COLUMN_US_SESION_ID},
-                PacienteDBHelper.COLUMN_US_USUARIO_ID + " = ?",
-                new String[]{String.valueOf(idUsuario)},
-                null, null, null
-        );
+        Cursor cursor = database.rawQuery(SQL_SESIONES_DE_USUARIO, new String[]{String.valueOf(idUsuario)});
         if (cursor != null) {
             while (cursor.moveToNext()) {
                 sesionIds.add(cursor.getInt(0));
@@ -819,13 +1229,7 @@ public class PacienteDataManager {
      */
     public List<Integer> obtenerUsuariosPorSesion(int idSesion) {
         List<Integer> usuarioIds = new ArrayList<>();
-        Cursor cursor = database.query(
-                PacienteDBHelper.TABLE_USUARIO_SESION,
-                new String[]{PacienteDBHelper.COLUMN_US_USUARIO_ID},
-                PacienteDBHelper.COLUMN_US_SESION_ID + " = ?",
-                new String[]{String.valueOf(idSesion)},
-                null, null, null
-        );
+        Cursor cursor = database.rawQuery(SQL_USUARIOS_DE_SESION, new String[]{String.valueOf(idSesion)});
         if (cursor != null) {
             while (cursor.moveToNext()) {
                 usuarioIds.add(cursor.getInt(0));
@@ -842,8 +1246,7 @@ public class PacienteDataManager {
         try {
             return database.delete(
                     PacienteDBHelper.TABLE_USUARIO_SESION,
-                    PacienteDBHelper.COLUMN_US_USUARIO_ID + " = ? AND " +
-                            PacienteDBHelper.COLUMN_US_SESION_ID  + " = ?",
+                    WHERE_USUARIO_SESION,
                     new String[]{String.valueOf(idUsuario), String.valueOf(idSesion)}
             ) > 0;
         } catch (Exception e) {
@@ -858,7 +1261,7 @@ public class PacienteDataManager {
         try {
             database.delete(
                     PacienteDBHelper.TABLE_USUARIO_SESION,
-                    PacienteDBHelper.COLUMN_US_SESION_ID + " = ?",
+                    WHERE_US_SESION,
                     new String[]{String.valueOf(idSesion)}
             );
         } catch (Exception e) {
@@ -0,0 +1,270 @@
+package com.example.triviumgor.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Repositorio asíncrono sobre PacienteDataManager.
+ *
+ * Ejecuta las consultas y escrituras en segundo plano y entrega el resultado
+ * en el hilo principal mediante callbacks. Así ninguna operación de SQLite
+ * bloquea la UI (jank / ANR en las tablets de gama baja).
+ *
+ * Con WAL activo (ver PacienteDBHelper) las lecturas no esperan a las
+ * escrituras, por eso hay dos ejecutores:
+ *  - lecturas: pool pequeño, cada hilo usa una conexión de solo lectura del
+ *    pool de SQLiteDatabase (listados, historial, búsquedas).
+ *  - escrituras: un único hilo; SQLite solo admite un escritor a la vez y así
+ *    se evita que varias escrituras compitan por el bloqueo.
+ *
+ * Uso típico desde un controller:
+ *   repositorio.ejecutar(() -> obtenerTodosPacientes(), lista -> {...});
+ *   repositorio.ejecutarEscritura(() -> guardarPaciente(...), id -> {...});
+ *
+ * El Future devuelto permite cancelar: si se cancela antes de terminar, el
+ * callback no se llega a invocar.
+ */
+public class PacienteRepository {
+
+    private static final String TAG = "PacienteRepository";
+
+    // Pool de lectura acotado y cola limitada para no acumular trabajo sin
+    // control. El nº de hilos no debe superar las conexiones de lectura que
+    // abre SQLiteDatabase en modo WAL (normalmente 4 o más).
+    private static final int NUM_HILOS_LECTURA = 3;
+    private static final int CAPACIDAD_COLA = 64;
+    private static final long KEEP_ALIVE_S = 30;
+
+    /** Callback de resultado, siempre invocado en el hilo principal */
+    public interface Callback<T> {
+        void onResultado(T resultado);
+    }
+
+    /** Callback de error, siempre invocado en el hilo principal */
+    public interface ErrorCallback {
+        void onError(Exception e);
+    }
+
+    private static volatile PacienteRepository instancia;
+
+    private final PacienteDataManager dataManager;
+    private final ThreadPoolExecutor executorLectura;
+    private final ThreadPoolExecutor executorEscritura;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Estadísticas de latencia de lectura (tiempo de ejecución de la tarea,
+    // sin contar la espera en cola), en microsegundos
+    private final AtomicLong lecturasMedidas = new AtomicLong();
+    private final AtomicLong lecturaTotalUs = new AtomicLong();
+    private final AtomicLong lecturaMaxUs = new AtomicLong();
+
+    private PacienteRepository(PacienteDataManager dataManager) {
+        this.dataManager = dataManager;
+        this.executorLectura = crearExecutor(NUM_HILOS_LECTURA, "BD-L");
+        this.executorEscritura = crearExecutor(1, "BD-E");
+    }
+
+    private static ThreadPoolExecutor crearExecutor(int hilos, String prefijo) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                hilos, hilos,
+                KEEP_ALIVE_S, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(CAPACIDAD_COLA),
+                new HilosBD(prefijo),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Devuelve el repositorio compartido del proceso.
+     * @param dataManager instancia compartida (PacienteDataManager.getInstance)
+     */
+    public static PacienteRepository getInstance(PacienteDataManager dataManager) {
+        PacienteRepository local = instancia;
+        if (local == null) {
+            synchronized (PacienteRepository.class) {
+                local = instancia;
+                if (local == null) {
+                    local = new PacienteRepository(dataManager);
+                    instancia = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    public PacienteDataManager getDataManager() {
+        return dataManager;
+    }
+
+    /**
+     * Ejecuta una consulta de solo lectura en segundo plano.
+     * Los errores solo se registran en el log.
+     */
+    public <T> Future<T> ejecutar(Callable<T> tarea, Callback<T> callback) {
+        return ejecutar(tarea, callback, null);
+    }
+
+    /**
+     * Ejecuta una consulta de solo lectura en el pool de lectura y entrega el
+     * resultado (o el error) en el hilo principal.
+     *
+     * @param tarea    consulta a realizar contra la base de datos
+     * @param callback recibe el resultado; puede ser null
+     * @param onError  recibe la excepción; si es null solo se registra en el log
+     * @return Future para esperar el resultado o cancelar la entrega
+     */
+    public <T> Future<T> ejecutar(Callable<T> tarea, Callback<T> callback,
+                                  ErrorCallback onError) {
+        return enviar(executorLectura, medirLectura(tarea), callback, onError);
+    }
+
+    /**
+     * Ejecuta una escritura en el hilo único de escritura.
+     * Los errores solo se registran en el log.
+     */
+    public <T> Future<T> ejecutarEscritura(Callable<T> tarea, Callback<T> callback) {
+        return ejecutarEscritura(tarea, callback, null);
+    }
+
+    /**
+     * Ejecuta una escritura (insert / update / delete) en el hilo único de
+     * escritura. Las escrituras se aplican en el orden en que se envían.
+     */
+    public <T> Future<T> ejecutarEscritura(Callable<T> tarea, Callback<T> callback,
+                                           ErrorCallback onError) {
+        return enviar(executorEscritura, tarea, callback, onError);
+    }
+
+    private <T> Future<T> enviar(ThreadPoolExecutor executor, final Callable<T> tarea,
+                                 final Callback<T> callback, final ErrorCallback onError) {
+        final FutureTask<T> futuro = new FutureTask<T>(tarea) {
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                try {
+                    final T resultado = get();
+                    if (callback != null) {
+                        mainHandler.post(() -> {
+                            if (!isCancelled()) callback.onResultado(resultado);
+                        });
+                    }
+                } catch (Exception e) {
+                    Throwable causa = e.getCause() != null ? e.getCause() : e;
+                    entregarError(causa instanceof Exception ? (Exception) causa : e, onError);
+                }
+            }
+        };
+
+        try {
+            executor.execute(futuro);
+        } catch (RejectedExecutionException e) {
+            // Cola llena: no bloqueamos al llamante, se notifica como error
+            futuro.cancel(false);
+            entregarError(e, onError);
+        }
+        return futuro;
+    }
+
+    /**
+     * @return nº de tareas esperando en las colas (diagnóstico)
+     */
+    public int getTareasPendientes() {
+        return executorLectura.getQueue().size() + executorEscritura.getQueue().size();
+    }
+
+    // ======= LATENCIA DE LECTURA =======
+
+    private <T> Callable<T> medirLectura(final Callable<T> tarea) {
+        return () -> {
+            long inicio = System.nanoTime();
+            try {
+                return tarea.call();
+            } finally {
+                registrarLatencia((System.nanoTime() - inicio) / 1000L);
+            }
+        };
+    }
+
+    private void registrarLatencia(long us) {
+        lecturasMedidas.incrementAndGet();
+        lecturaTotalUs.addAndGet(us);
+        long max;
+        do {
+            max = lecturaMaxUs.get();
+        } while (us > max && !lecturaMaxUs.compareAndSet(max, us));
+    }
+
+    /** @return nº de lecturas medidas desde el último reinicio */
+    public long getLecturasMedidas() {
+        return lecturasMedidas.get();
+    }
+
+    /** @return latencia media de lectura en microsegundos (0 si no hay datos) */
+    public long getLatenciaMediaLecturaUs() {
+        long n = lecturasMedidas.get();
+        return n == 0 ? 0 : lecturaTotalUs.get() / n;
+    }
+
+    /** @return peor latencia de lectura observada en microsegundos */
+    public long getLatenciaMaxLecturaUs() {
+        return lecturaMaxUs.get();
+    }
+
+    /**
+     * Reinicia las estadísticas. Útil para comparar la latencia de lectura
+     * con y sin inserciones de sesiones concurrentes.
+     */
+    public void reiniciarEstadisticas() {
+        lecturasMedidas.set(0);
+        lecturaTotalUs.set(0);
+        lecturaMaxUs.set(0);
+    }
+
+    /** Vuelca las estadísticas de lectura al log */
+    public void registrarEstadisticas() {
+        Log.d(TAG, "Lecturas: " + getLecturasMedidas() +
+                " | media: " + getLatenciaMediaLecturaUs() + " us" +
+                " | máx: " + getLatenciaMaxLecturaUs() + " us" +
+                " | pendientes: " + getTareasPendientes());
+    }
+
+    private void entregarError(final Exception e, final ErrorCallback onError) {
+        Log.e(TAG, "Error en operación de base de datos: " + e.getMessage());
+        if (onError != null) {
+            mainHandler.post(() -> onError.onError(e));
+        }
+    }
+
+    /** Hilos con nombre y prioridad de segundo plano */
+    private static class HilosBD implements ThreadFactory {
+        private final AtomicInteger contador = new AtomicInteger(1);
+        private final String prefijo;
+
+        HilosBD(String prefijo) {
+            this.prefijo = prefijo;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(() -> {
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, prefijo + "-" + contador.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
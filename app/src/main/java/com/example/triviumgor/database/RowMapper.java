@@ -0,0 +1,81 @@
+package com.example.triviumgor.database;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Convierte filas de un Cursor en objetos del modelo.
+ *
+ * Cada mapper se crea para un cursor concreto y resuelve los índices de
+ * columna una sola vez en el constructor; mapear() solo lee por índice, sin
+ * buscar el nombre de la columna en cada celda. No se comparte entre cursores
+ * ni entre hilos: se crea uno por consulta (ver RowMappers).
+ *
+ * @param <T> tipo del modelo
+ */
+public abstract class RowMapper<T> {
+
+    /** Convierte la fila actual del cursor */
+    public abstract T mapear(Cursor cursor);
+
+    /**
+     * Crea un RowMapper para un cursor. Permite a los métodos genéricos
+     * (lista, primero) crear el mapper con el cursor ya abierto.
+     */
+    public interface Fabrica<T> {
+        RowMapper<T> crear(Cursor cursor);
+    }
+
+    /**
+     * Recorre el cursor entero y lo cierra.
+     * @param cursor cursor a recorrer; si es null devuelve una lista vacía
+     */
+    public static <T> List<T> lista(Cursor cursor, Fabrica<T> fabrica) {
+        List<T> lista = new ArrayList<>();
+        if (cursor == null) return lista;
+        try {
+            RowMapper<T> mapper = fabrica.crear(cursor);
+            while (cursor.moveToNext()) {
+                lista.add(mapper.mapear(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return lista;
+    }
+
+    /**
+     * Mapea solo la primera fila y cierra el cursor.
+     * @return el objeto, o null si el cursor es null o está vacío
+     */
+    public static <T> T primero(Cursor cursor, Fabrica<T> fabrica) {
+        if (cursor == null) return null;
+        try {
+            return cursor.moveToFirst() ? fabrica.crear(cursor).mapear(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // ======= HELPERS PARA SUBCLASES =======
+
+    /** Índice de una columna obligatoria; falla pronto si la consulta no la trae */
+    protected static int columna(Cursor cursor, String nombre) {
+        return cursor.getColumnIndexOrThrow(nombre);
+    }
+
+    /** Índice de una columna opcional, o -1 si la consulta no la trae */
+    protected static int columnaOpcional(Cursor cursor, String nombre) {
+        return cursor.getColumnIndex(nombre);
+    }
+
+    protected static String texto(Cursor cursor, int indice) {
+        return indice < 0 ? null : cursor.getString(indice);
+    }
+
+    protected static int entero(Cursor cursor, int indice) {
+        return indice < 0 ? 0 : cursor.getInt(indice);
+    }
+}
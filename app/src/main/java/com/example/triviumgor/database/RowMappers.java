@@ -0,0 +1,162 @@
+package com.example.triviumgor.database;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.triviumgor.model.AgregadoTelemetria;
+import com.example.triviumgor.model.Paciente;
+import com.example.triviumgor.model.PacienteResumen;
+import com.example.triviumgor.model.Sesion;
+import com.example.triviumgor.model.Usuario;
+
+/**
+ * RowMappers de las tablas de la aplicación.
+ *
+ * Uso:
+ *   List<Paciente> lista = RowMapper.lista(cursor, RowMappers.PACIENTE);
+ *   Usuario u = RowMapper.primero(cursor, RowMappers.USUARIO);
+ */
+public final class RowMappers {
+
+    private static final String TAG = "RowMappers";
+
+    public static final RowMapper.Fabrica<Paciente> PACIENTE = PacienteMapper::new;
+    public static final RowMapper.Fabrica<PacienteResumen> PACIENTE_RESUMEN = PacienteResumenMapper::new;
+    public static final RowMapper.Fabrica<Sesion> SESION = SesionMapper::new;
+    public static final RowMapper.Fabrica<Usuario> USUARIO = UsuarioMapper::new;
+    public static final RowMapper.Fabrica<AgregadoTelemetria> TELEMETRIA = TelemetriaMapper::new;
+
+    private RowMappers() {
+    }
+
+    /**
+     * Convierte el texto guardado en la columna genero en el enum.
+     * Un valor nulo, antiguo o corrupto no debe tumbar la lectura del paciente
+     * (AUDITORIA #14): se devuelve PREFIERO_NO_DECIR.
+     */
+    public static Paciente.Genero generoDesde(String valor) {
+        if (valor == null) return Paciente.Genero.PREFIERO_NO_DECIR;
+        try {
+            return Paciente.Genero.valueOf(valor);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Género desconocido en BD: " + valor);
+            return Paciente.Genero.PREFIERO_NO_DECIR;
+        }
+    }
+
+    /** Fila completa de pacientes (SELECT *) */
+    static final class PacienteMapper extends RowMapper<Paciente> {
+        private final int id, cic, dni, nombre, ap1, ap2, edad, genero, patologia, medicacion;
+        private final int intensidad, tiempo, intensidad2, tiempo2;
+
+        PacienteMapper(Cursor cursor) {
+            id = columna(cursor, PacienteDBHelper.COLUMN_ID);
+            cic = columna(cursor, PacienteDBHelper.COLUMN_CIC);
+            dni = columna(cursor, PacienteDBHelper.COLUMN_DNI);
+            nombre = columna(cursor, PacienteDBHelper.COLUMN_NOMBRE);
+            ap1 = columna(cursor, PacienteDBHelper.COLUMN_APELLIDO1);
+            ap2 = columna(cursor, PacienteDBHelper.COLUMN_APELLIDO2);
+            edad = columna(cursor, PacienteDBHelper.COLUMN_EDAD);
+            genero = columna(cursor, PacienteDBHelper.COLUMN_GENERO);
+            patologia = columna(cursor, PacienteDBHelper.COLUMN_PATOLOGIA);
+            medicacion = columna(cursor, PacienteDBHelper.COLUMN_MEDICACIÓN);
+            intensidad = columna(cursor, PacienteDBHelper.COLUMN_INTENSIDAD);
+            tiempo = columna(cursor, PacienteDBHelper.COLUMN_TIEMPO);
+            intensidad2 = columnaOpcional(cursor, PacienteDBHelper.COLUMN_INTENSIDAD2);
+            tiempo2 = columnaOpcional(cursor, PacienteDBHelper.COLUMN_TIEMPO2);
+        }
+
+        @Override
+        public Paciente mapear(Cursor cursor) {
+            return new Paciente(cursor.getInt(id), cursor.getString(cic), cursor.getString(dni),
+                    cursor.getString(nombre), cursor.getString(ap1), cursor.getString(ap2),
+                    cursor.getInt(edad), generoDesde(cursor.getString(genero)),
+                    cursor.getString(patologia), cursor.getString(medicacion),
+                    cursor.getInt(intensidad), cursor.getInt(tiempo),
+                    entero(cursor, intensidad2), entero(cursor, tiempo2));
+        }
+    }
+
+    /** Columnas de PacienteDataManager.COLUMNAS_RESUMEN */
+    static final class PacienteResumenMapper extends RowMapper<PacienteResumen> {
+        private final int id, dni, nombre, ap1, ap2;
+
+        PacienteResumenMapper(Cursor cursor) {
+            id = columna(cursor, PacienteDBHelper.COLUMN_ID);
+            dni = columna(cursor, PacienteDBHelper.COLUMN_DNI);
+            nombre = columna(cursor, PacienteDBHelper.COLUMN_NOMBRE);
+            ap1 = columna(cursor, PacienteDBHelper.COLUMN_APELLIDO1);
+            ap2 = columna(cursor, PacienteDBHelper.COLUMN_APELLIDO2);
+        }
+
+        @Override
+        public PacienteResumen mapear(Cursor cursor) {
+            return new PacienteResumen(cursor.getInt(id), cursor.getString(dni),
+                    cursor.getString(nombre), cursor.getString(ap1), cursor.getString(ap2));
+        }
+    }
+
+    /** Fila completa de sesiones */
+    static final class SesionMapper extends RowMapper<Sesion> {
+        private final int id, idPaciente, dispositivo, fecha, intensidad, tiempo;
+
+        SesionMapper(Cursor cursor) {
+            id = columna(cursor, PacienteDBHelper.COLUMN_SESION_ID);
+            idPaciente = columna(cursor, PacienteDBHelper.COLUMN_PACIENTE_ID);
+            dispositivo = columna(cursor, PacienteDBHelper.COLUMN_DISPOSITIVO);
+            fecha = columna(cursor, PacienteDBHelper.COLUMN_FECHA);
+            intensidad = columna(cursor, PacienteDBHelper.COLUMN_INTENSIDAD_SESION);
+            tiempo = columna(cursor, PacienteDBHelper.COLUMN_TIEMPO_SESION);
+        }
+
+        @Override
+        public Sesion mapear(Cursor cursor) {
+            return new Sesion(cursor.getInt(id), cursor.getInt(idPaciente), cursor.getString(dispositivo),
+                    cursor.getLong(fecha), cursor.getInt(intensidad), cursor.getInt(tiempo));
+        }
+    }
+
+    /** Fila completa de telemetria_minuto o telemetria_dia */
+    static final class TelemetriaMapper extends RowMapper<AgregadoTelemetria> {
+        private final int mac, tipo, inicio, muestras, suma, minimo, maximo;
+
+        TelemetriaMapper(Cursor cursor) {
+            mac = columna(cursor, PacienteDBHelper.COLUMN_TEL_MAC);
+            tipo = columna(cursor, PacienteDBHelper.COLUMN_TEL_TIPO);
+            inicio = columna(cursor, PacienteDBHelper.COLUMN_TEL_INICIO);
+            muestras = columna(cursor, PacienteDBHelper.COLUMN_TEL_MUESTRAS);
+            suma = columna(cursor, PacienteDBHelper.COLUMN_TEL_SUMA);
+            minimo = columna(cursor, PacienteDBHelper.COLUMN_TEL_MINIMO);
+            maximo = columna(cursor, PacienteDBHelper.COLUMN_TEL_MAXIMO);
+        }
+
+        @Override
+        public AgregadoTelemetria mapear(Cursor cursor) {
+            return new AgregadoTelemetria(cursor.getString(mac), cursor.getInt(tipo), cursor.getLong(inicio),
+                    cursor.getLong(muestras), cursor.getLong(suma), cursor.getLong(minimo), cursor.getLong(maximo));
+        }
+    }
+
+    /** Fila completa de usuarios */
+    static final class UsuarioMapper extends RowMapper<Usuario> {
+        private final int id, username, hash, nombre, rol, activo, fechaCreacion, ultimoAcceso;
+
+        UsuarioMapper(Cursor cursor) {
+            id = columna(cursor, PacienteDBHelper.COLUMN_USUARIO_ID);
+            username = columna(cursor, PacienteDBHelper.COLUMN_USERNAME);
+            hash = columna(cursor, PacienteDBHelper.COLUMN_PASSWORD_HASH);
+            nombre = columna(cursor, PacienteDBHelper.COLUMN_NOMBRE_COMPLETO);
+            rol = columna(cursor, PacienteDBHelper.COLUMN_ROL);
+            activo = columna(cursor, PacienteDBHelper.COLUMN_ACTIVO);
+            fechaCreacion = columna(cursor, PacienteDBHelper.COLUMN_FECHA_CREACION);
+            ultimoAcceso = columna(cursor, PacienteDBHelper.COLUMN_ULTIMO_ACCESO);
+        }
+
+        @Override
+        public Usuario mapear(Cursor cursor) {
+            return new Usuario(cursor.getInt(id), cursor.getString(username), cursor.getString(hash),
+                    cursor.getString(nombre), cursor.getString(rol), cursor.getInt(activo),
+                    cursor.getLong(fechaCreacion), cursor.getLong(ultimoAcceso));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.triviumgor.database;
+
+import android.util.Log;
+
+import com.example.triviumgor.model.AgregadoTelemetria;
+import com.example.triviumgor.util.Fechas;
+import com.example.triviumgor.util.Planificador;
+import com.example.triviumgor.util.Reloj;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serie temporal de telemetría de los estimuladores (batería, RTT del latido,
+ * pérdidas de enlace y tiempos de reconexión), por MAC.
+ *
+ * Las muestras no se escriben una a una: registrar() solo las suma en memoria
+ * al resumen de su minuto. Cada VOLCADO_MS los minutos ya cerrados se mandan
+ * en un lote al hilo de escritura del repositorio, que los suma a las tablas
+ * por minuto y por día (PacienteDataManager.guardarTelemetria). Así lo escrito
+ * es, como mucho, una fila por dispositivo, tipo y minuto, por mucho que se
+ * muestree o que dure la conexión; y los minutos antiguos se purgan.
+ *
+ * El volcado lo lanza la siguiente muestra o, si no llega ninguna (p. ej. tras
+ * parar la monitorización), la tarea de programarVolcado() en el Planificador.
+ *
+ * registrar() se llama desde el hilo principal, el del Planificador y el
+ * lector del latido: está sincronizado. Lo que aún no se ha volcado no
+ * aparece en las consultas.
+ */
+public class Telemetria {
+
+    private static final String TAG = "Telemetria";
+
+    // Tipos de muestra (columna tipo). No cambiar los valores: están en la BBDD.
+    /** Lectura del ADC de batería */
+    public static final int TIPO_BATERIA = 1;
+    /** RTT de un latido, en microsegundos */
+    public static final int TIPO_RTT_US = 2;
+    /** Enlace dado por muerto (valor 1 por evento) */
+    public static final int TIPO_ENLACE_PERDIDO = 3;
+    /** Tiempo hasta recuperar un enlace, en milisegundos */
+    public static final int TIPO_RECONEXION_MS = 4;
+
+    private static final long MINUTO_MS = 60000;
+    public static final long VOLCADO_MS = 60000;
+    // Con más resúmenes abiertos que esto se vuelca todo, aunque sea el minuto en curso
+    private static final int MAX_AGREGADOS = 256;
+    // El volcado periódico puede esperar a otras tareas del Planificador
+    private static final long HOLGURA_VOLCADO_MS = 5000;
+
+    private final PacienteRepository repositorio;
+    // Hora de pared (epoch ms) para los minutos de los resúmenes
+    private final Reloj reloj;
+
+    // Resúmenes pendientes de volcar, por mac|tipo|minuto
+    private final Map<String, AgregadoTelemetria> pendientes = new HashMap<>();
+    private long ultimoVolcado;
+    private boolean cerrada = false;
+    private Planificador.Tarea tareaVolcado;
+
+    // Estadísticas
+    private final AtomicLong muestras = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong filasEscritas = new AtomicLong();
+    private final AtomicLong lotesFallidos = new AtomicLong();
+
+    public Telemetria(PacienteRepository repositorio) {
+        this(repositorio, Fechas::ahora);
+    }
+
+    /** @param reloj epoch ms; en los tests, uno falso */
+    Telemetria(PacienteRepository repositorio, Reloj reloj) {
+        this.repositorio = repositorio;
+        this.reloj = reloj;
+        this.ultimoVolcado = reloj.ahora();
+    }
+
+    /**
+     * Vuelca los minutos cerrados cada VOLCADO_MS aunque no lleguen muestras.
+     * La tarea se cancela en cerrar() (o al detener el Planificador).
+     */
+    public synchronized void programarVolcado(Planificador planificador) {
+        if (cerrada) return;
+        if (tareaVolcado != null) tareaVolcado.cancelar();
+        tareaVolcado = planificador.programarPeriodica(this::volcarCerrados,
+                VOLCADO_MS, VOLCADO_MS, HOLGURA_VOLCADO_MS);
+    }
+
+    /** Suma una muestra al resumen del minuto actual de ese dispositivo y tipo */
+    public void registrar(String mac, int tipo, long valor) {
+        if (mac == null || mac.isEmpty()) return;
+        long ahora = reloj.ahora();
+        long minuto = ahora - ahora % MINUTO_MS;
+
+        List<AgregadoTelemetria> lote = null;
+        synchronized (this) {
+            if (cerrada) return;
+            String clave = mac + "|" + tipo + "|" + minuto;
+            AgregadoTelemetria agregado = pendientes.get(clave);
+            if (agregado == null) {
+                agregado = new AgregadoTelemetria(mac, tipo, minuto);
+                pendientes.put(clave, agregado);
+            }
+            agregado.anadir(valor);
+            muestras.incrementAndGet();
+
+            if (pendientes.size() >= MAX_AGREGADOS) {
+                lote = extraer(Long.MAX_VALUE);
+            } else if (ahora - ultimoVolcado >= VOLCADO_MS) {
+                lote = extraer(minuto);
+            }
+        }
+        if (lote != null) escribir(lote);
+    }
+
+    /** Vuelca los minutos anteriores al actual; el minuto en curso sigue abierto */
+    public void volcarCerrados() {
+        long ahora = reloj.ahora();
+        List<AgregadoTelemetria> lote;
+        synchronized (this) {
+            lote = extraer(ahora - ahora % MINUTO_MS);
+        }
+        escribir(lote);
+    }
+
+    /** Vuelca todo lo pendiente (incluido el minuto en curso) */
+    public void volcar() {
+        List<AgregadoTelemetria> lote;
+        synchronized (this) {
+            lote = extraer(Long.MAX_VALUE);
+        }
+        escribir(lote);
+    }
+
+    /** Vuelca lo pendiente y deja de aceptar muestras (onDestroy) */
+    public void cerrar() {
+        volcar();
+        synchronized (this) {
+            cerrada = true;
+            if (tareaVolcado != null) tareaVolcado.cancelar();
+            tareaVolcado = null;
+        }
+        registrarEstadisticas();
+    }
+
+    // Saca los resúmenes de minutos anteriores a limite (llamar con el lock)
+    private List<AgregadoTelemetria> extraer(long limite) {
+        ultimoVolcado = reloj.ahora();
+        List<AgregadoTelemetria> lote = new ArrayList<>();
+        Iterator<AgregadoTelemetria> it = pendientes.values().iterator();
+        while (it.hasNext()) {
+            AgregadoTelemetria agregado = it.next();
+            if (agregado.getInicio() < limite) {
+                lote.add(agregado);
+                it.remove();
+            }
+        }
+        return lote;
+    }
+
+    /** Manda el lote al hilo de escritura; los tests lo sustituyen para verlo */
+    void escribir(final List<AgregadoTelemetria> lote) {
+        if (lote.isEmpty()) return;
+        final PacienteDataManager dataManager = repositorio.getDataManager();
+        repositorio.ejecutarEscritura(() -> dataManager.guardarTelemetria(lote), ok -> {
+            if (ok) {
+                lotes.incrementAndGet();
+                filasEscritas.addAndGet(lote.size());
+            } else {
+                lotesFallidos.incrementAndGet();
+            }
+        }, e -> {
+            // Telemetría: se pierde el lote, no se reintenta
+            lotesFallidos.incrementAndGet();
+            Log.w(TAG, "Lote de telemetría descartado (" + lote.size() + "): " + e.getMessage());
+        });
+    }
+
+    // ========================
+    // CONSULTAS
+    // ========================
+
+    /** Resúmenes por minuto de un dispositivo en [desde, hasta), en orden cronológico */
+    public Future<List<AgregadoTelemetria>> obtenerMinutos(String mac, int tipo, long desde, long hasta,
+                                                           PacienteRepository.Callback<List<AgregadoTelemetria>> callback) {
+        final PacienteDataManager dataManager = repositorio.getDataManager();
+        return repositorio.ejecutar(() -> dataManager.obtenerTelemetriaMinutos(mac, tipo, desde, hasta), callback);
+    }
+
+    /** Resúmenes diarios de un dispositivo en [desde, hasta), en orden cronológico */
+    public Future<List<AgregadoTelemetria>> obtenerDias(String mac, int tipo, long desde, long hasta,
+                                                        PacienteRepository.Callback<List<AgregadoTelemetria>> callback) {
+        final PacienteDataManager dataManager = repositorio.getDataManager();
+        return repositorio.ejecutar(() -> dataManager.obtenerTelemetriaDias(mac, tipo, desde, hasta), callback);
+    }
+
+    // ========================
+    // ESTADÍSTICAS
+    // ========================
+
+    public long getMuestras() { return muestras.get(); }
+    public long getLotes() { return lotes.get(); }
+    public long getFilasEscritas() { return filasEscritas.get(); }
+    public long getLotesFallidos() { return lotesFallidos.get(); }
+
+    /** @return muestras por resumen escrito (cuántas escrituras se ahorran) */
+    public double getMuestrasPorFila() {
+        long filas = filasEscritas.get();
+        return filas == 0 ? 0 : muestras.get() / (double) filas;
+    }
+
+    public void registrarEstadisticas() {
+        Log.d(TAG, "Muestras: " + muestras.get() +
+                " | lotes: " + lotes.get() +
+                " | resúmenes escritos: " + filasEscritas.get() +
+                " | muestras por resumen: " + String.format("%.1f", getMuestrasPorFila()) +
+                " | lotes fallidos: " + lotesFallidos.get());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.triviumgor.model;
+
+/**
+ * Resumen de las muestras de telemetría de un dispositivo en un intervalo
+ * (un minuto o un día): nº de muestras, suma, mínimo y máximo.
+ * Ver Telemetria para los tipos de muestra.
+ */
+public class AgregadoTelemetria {
+
+    private final String mac;
+    private final int tipo;
+    private final long inicio; // epoch ms del inicio del minuto o del día
+    private long muestras;
+    private long suma;
+    private long minimo;
+    private long maximo;
+
+    /** Agregado vacío, para ir añadiendo muestras */
+    public AgregadoTelemetria(String mac, int tipo, long inicio) {
+        this(mac, tipo, inicio, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+
+    // Constructor completo (lectura de la BBDD)
+    public AgregadoTelemetria(String mac, int tipo, long inicio, long muestras,
+                              long suma, long minimo, long maximo) {
+        this.mac = mac;
+        this.tipo = tipo;
+        this.inicio = inicio;
+        this.muestras = muestras;
+        this.suma = suma;
+        this.minimo = minimo;
+        this.maximo = maximo;
+    }
+
+    public void anadir(long valor) {
+        muestras++;
+        suma += valor;
+        if (valor < minimo) minimo = valor;
+        if (valor > maximo) maximo = valor;
+    }
+
+    public String getMac() { return mac; }
+    public int getTipo() { return tipo; }
+    public long getInicio() { return inicio; }
+    public long getMuestras() { return muestras; }
+    public long getSuma() { return suma; }
+    public long getMinimo() { return minimo; }
+    public long getMaximo() { return maximo; }
+
+    /** @return media de las muestras (0 si no hay) */
+    public double getMedia() {
+        return muestras == 0 ? 0 : suma / (double) muestras;
+    }
+}
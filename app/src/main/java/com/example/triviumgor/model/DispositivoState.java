@@ -1,66 +1,250 @@
 package com.example.triviumgor.model;
 
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 
-import java.io.InputStream;
-import java.io.OutputStream;
+import com.example.triviumgor.bluetooth.ColaComandos;
+import com.example.triviumgor.bluetooth.LectorDispositivo;
+import com.example.triviumgor.bluetooth.TramaCodec;
+import com.example.triviumgor.bluetooth.TramaSesionPendiente;
+import com.example.triviumgor.bluetooth.Transporte;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Encapsula el estado completo de un dispositivo Bluetooth.
  * Elimina la duplicación de variables (IsConnected/IsConnected3, address/address3, etc.)
- * Cada instancia representa un dispositivo (1 o 2).
+ * Cada instancia representa un dispositivo, identificado por su id en el
+ * RegistroDispositivos.
+ *
+ * Conexión y sesión son una máquina de estados (Estado) en vez de booleanos
+ * sueltos que podían contradecirse (conectado con el reloj parado a medias,
+ * battMon activo sin conexión...). El estado se guarda en una Instantanea
+ * inmutable y cada transición es un compareAndSet: la lee y escribe el hilo
+ * principal, los hilos de conexión, el Planificador y los lectores sin
+ * bloqueos, y una transición que compiten dos hilos (p. ej. fin de sesión por
+ * tiempo y por botón) solo la gana uno. Los recursos de la conexión
+ * (transporte, cola y lector) van en la misma Instantanea: quien ve
+ * CONECTADO ve también la cola de esa conexión, y solo quien gana la
+ * transición a DESCONECTADO los cierra.
  */
 public class DispositivoState {
 
-    private final int numero; // 1 o 2
+    /**
+     * DESCONECTADO → CONECTADO (abrirConexion) → EN_SESION (iniciarSesion)
+     * → CONECTADO (detenerSesion); desde cualquiera → DESCONECTADO (resetConexion).
+     * abrirConexion solo sale de DESCONECTADO.
+     */
+    public enum Estado { DESCONECTADO, CONECTADO, EN_SESION }
+
+    /** Recursos de una conexión abierta; se cierran juntos */
+    private static final class Conexion {
+        final Transporte transporte;
+        final String address;
+        final ColaComandos cola;
+        final LectorDispositivo lector;
+
+        Conexion(Transporte transporte, String address, ColaComandos cola, LectorDispositivo lector) {
+            this.transporte = transporte;
+            this.address = address;
+            this.cola = cola;
+            this.lector = lector;
+        }
+
+        void cerrar() {
+            cola.cerrar();
+            lector.cerrar();
+            // Libera el socket aunque el enlace ya esté muerto (reconexión)
+            try {
+                transporte.cerrar();
+            } catch (IOException ignored) {
+            }
+        }
+    }
 
-    // Bluetooth
-    private BluetoothDevice btDevice;
-    private BluetoothSocket btSocket;
-    private InputStream inputStream;
-    private OutputStream outputStream;
-    private String address = "";
+    /** Estado de conexión y sesión en un instante; inmutable */
+    public static final class Instantanea {
+        static final Instantanea INICIAL = new Instantanea(Estado.DESCONECTADO, false, null);
+
+        private final Estado estado;
+        // Petición de batería en curso; siempre false si está desconectado
+        private final boolean battMon;
+        // null si y solo si está desconectado
+        private final Conexion conexion;
+
+        Instantanea(Estado estado, boolean battMon, Conexion conexion) {
+            this.estado = estado;
+            this.battMon = estado != Estado.DESCONECTADO && battMon;
+            this.conexion = estado == Estado.DESCONECTADO ? null : conexion;
+        }
+
+        Instantanea conEstado(Estado nuevo) {
+            return new Instantanea(nuevo, battMon, conexion);
+        }
+
+        Instantanea conBattMon(boolean nuevo) {
+            return new Instantanea(estado, nuevo, conexion);
+        }
+
+        public Estado getEstado() { return estado; }
+        public boolean isConnected() { return estado != Estado.DESCONECTADO; }
+        public boolean isSesionActiva() { return estado == Estado.EN_SESION; }
+        public boolean isBattMon() { return battMon; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Instantanea)) return false;
+            Instantanea otra = (Instantanea) o;
+            return estado == otra.estado && battMon == otra.battMon && conexion == otra.conexion;
+        }
+
+        @Override
+        public int hashCode() {
+            return (estado.hashCode() * 31 + (battMon ? 1 : 0)) * 31 + System.identityHashCode(conexion);
+        }
+
+        @Override
+        public String toString() {
+            return estado + (battMon ? " (batería)" : "");
+        }
+    }
 
-    // Conexión
-    private boolean connected = false;
-    private boolean battMon = false;
-    private boolean battMonSent = false;
+    /**
+     * Se invoca solo cuando el estado cambia de verdad, en el hilo que hizo
+     * la transición (no tiene por qué ser el principal).
+     */
+    public interface OnCambioEstado {
+        void onCambioEstado(DispositivoState dispositivo, Instantanea anterior, Instantanea actual);
+    }
 
-    // Sesión
-    private boolean clockStopped = true;
-    private int minutoTranscurrido = 0;
+    // Transición sobre la instantánea actual; null = no aplicable
+    private interface Transicion {
+        Instantanea aplicar(Instantanea actual);
+    }
+
+    private final int id;
+
+    // Conexión y sesión
+    private final AtomicReference<Instantanea> estado = new AtomicReference<>(Instantanea.INICIAL);
+    private final CopyOnWriteArrayList<OnCambioEstado> observadores = new CopyOnWriteArrayList<>();
+
+    // Bluetooth (transporte, dirección, cola y lector van en la Instantanea)
+    private volatile BluetoothDevice btDevice;
+
+    // Protocolo: buffer de tramas propio y pausa entre bytes según el firmware
+    private final TramaCodec codec = new TramaCodec();
+    private volatile int pausaEntreBytesMs = TramaCodec.PAUSA_ENTRE_BYTES_LEGACY_MS;
+    private final TramaSesionPendiente sesionPendiente = new TramaSesionPendiente();
+
+    // Sesión (minutoTranscurrido lo actualiza el timer a partir de su CuentaAtras)
+    private volatile int minutoTranscurrido = 0;
 
-    // Paciente asignado
-    private int pacienteId = -1;
-    private String pacienteDNI = "";
-    private String pacienteNombre = "";
-    private int intensidad = 0;
-    private int duracionMin = 0;
+    // Paciente asignado (se lee desde el Planificador y los hilos de conexión)
+    private volatile int pacienteId = -1;
+    private volatile String pacienteDNI = "";
+    private volatile String pacienteNombre = "";
+    private volatile int intensidad = 0;
+    private volatile int duracionMin = 0;
 
-    public DispositivoState(int numero) {
-        this.numero = numero;
+    /** Usar RegistroDispositivos.crear() para que el id sea único */
+    DispositivoState(int id) {
+        this.id = id;
     }
 
     /**
-     * Resetea todo el estado de conexión (al desconectar).
+     * Resetea todo el estado de conexión (al desconectar). Primero pasa a
+     * DESCONECTADO y luego cierra la cola, el lector y el transporte de la
+     * conexión que tenía: nadie ve CONECTADO con los recursos ya cerrados, y
+     * si dos hilos resetean a la vez solo uno cierra.
      */
     public void resetConexion() {
-        connected = false;
-        battMon = false;
-        battMonSent = false;
-        address = "";
+        Conexion anterior = null;
+        while (true) {
+            Instantanea actual = estado.get();
+            if (actual.estado == Estado.DESCONECTADO) break;
+            if (cambiar(actual, Instantanea.INICIAL)) {
+                anterior = actual.conexion;
+                break;
+            }
+        }
         btDevice = null;
-        btSocket = null;
-        inputStream = null;
-        outputStream = null;
+        sesionPendiente.descartar();
+        if (anterior != null) {
+            anterior.cerrar();
+        }
+    }
+
+    /**
+     * Prepara la conexión sobre un transporte ya abierto: crea la cola de
+     * comandos y el lector y, si estaba DESCONECTADO, los publica junto con
+     * el estado CONECTADO y arranca el lector.
+     * @param despacho donde se entregan los mensajes recibidos (ver LectorDispositivo)
+     * @throws IOException si no se pueden abrir los streams o el dispositivo
+     *         ya tenía una conexión (no se toca; el transporte nuevo lo cierra
+     *         quien lo abrió)
+     */
+    public void abrirConexion(Transporte transporte, Executor despacho) throws IOException {
+        String direccion = transporte.getDireccion();
+        LectorDispositivo nuevoLector = new LectorDispositivo(direccion, transporte.getEntrada(), despacho);
+        ColaComandos nuevaCola = new ColaComandos(direccion, transporte.getSalida());
+        final Conexion conexion = new Conexion(transporte, direccion, nuevaCola, nuevoLector);
+
+        if (!cambiar(actual -> actual.estado == Estado.DESCONECTADO
+                ? new Instantanea(Estado.CONECTADO, true, conexion) : null)) {
+            nuevaCola.cerrar();
+            throw new IOException("El dispositivo " + id + " ya está conectado ("
+                    + getEstado() + ")");
+        }
+        nuevoLector.start();
+    }
+
+    /**
+     * CONECTADO → EN_SESION.
+     * @return false si no estaba conectado sin sesión (otro hilo se adelantó)
+     */
+    public boolean iniciarSesion() {
+        return cambiar(actual -> actual.estado == Estado.CONECTADO
+                ? actual.conEstado(Estado.EN_SESION) : null);
+    }
+
+    /**
+     * EN_SESION → CONECTADO. Si compiten varios hilos (fin por tiempo, botón,
+     * envío fallido), solo uno recibe true y debe avisar del fin de sesión.
+     * @return false si no había sesión en curso
+     */
+    public boolean detenerSesion() {
+        return cambiar(actual -> actual.estado == Estado.EN_SESION
+                ? actual.conEstado(Estado.CONECTADO) : null);
+    }
+
+    /** Bucle de compareAndSet; avisa a los observadores si hubo cambio real */
+    private boolean cambiar(Transicion transicion) {
+        while (true) {
+            Instantanea actual = estado.get();
+            Instantanea nueva = transicion.aplicar(actual);
+            if (nueva == null) return false;
+            if (nueva.equals(actual)) return true;
+            if (cambiar(actual, nueva)) return true;
+        }
+    }
+
+    /** Un compareAndSet; si gana avisa a los observadores */
+    private boolean cambiar(Instantanea actual, Instantanea nueva) {
+        if (!estado.compareAndSet(actual, nueva)) return false;
+        for (OnCambioEstado observador : observadores) {
+            observador.onCambioEstado(this, actual, nueva);
+        }
+        return true;
     }
 
     /**
      * Resetea el estado de sesión (al finalizar o desconectar).
      */
     public void resetSesion() {
-        clockStopped = true;
+        detenerSesion();
         minutoTranscurrido = 0;
     }
 
@@ -88,7 +272,7 @@ public class DispositivoState {
      * Indica si hay una sesión activa (conectado y reloj corriendo).
      */
     public boolean isSesionActiva() {
-        return connected && !clockStopped;
+        return estado.get().isSesionActiva();
     }
 
     /**
@@ -102,41 +286,69 @@ public class DispositivoState {
     // GETTERS / SETTERS
     // ========================
 
-    public int getNumero() { return numero; }
+    public int getId() { return id; }
+
+    // Estado
+    /** @return estado de conexión y sesión coherente en un único instante */
+    public Instantanea getInstantanea() { return estado.get(); }
+    public Estado getEstado() { return estado.get().getEstado(); }
+
+    public void addObservador(OnCambioEstado observador) { observadores.addIfAbsent(observador); }
+    public void quitarObservador(OnCambioEstado observador) { observadores.remove(observador); }
 
     // Bluetooth
     public BluetoothDevice getBtDevice() { return btDevice; }
     public void setBtDevice(BluetoothDevice btDevice) { this.btDevice = btDevice; }
 
-    public BluetoothSocket getBtSocket() { return btSocket; }
-    public void setBtSocket(BluetoothSocket btSocket) { this.btSocket = btSocket; }
+    /** Canal con el dispositivo (RFCOMM o simulador); null si no está conectado */
+    public Transporte getTransporte() {
+        Conexion c = estado.get().conexion;
+        return c == null ? null : c.transporte;
+    }
 
-    public InputStream getInputStream() { return inputStream; }
-    public void setInputStream(InputStream inputStream) { this.inputStream = inputStream; }
+    /** Cola por la que se escriben todos los comandos al dispositivo; null si no está conectado */
+    public ColaComandos getColaComandos() {
+        Conexion c = estado.get().conexion;
+        return c == null ? null : c.cola;
+    }
 
-    public OutputStream getOutputStream() { return outputStream; }
-    public void setOutputStream(OutputStream outputStream) { this.outputStream = outputStream; }
+    /** Único lector del InputStream; reparte los mensajes recibidos. null si no está conectado */
+    public LectorDispositivo getLector() {
+        Conexion c = estado.get().conexion;
+        return c == null ? null : c.lector;
+    }
 
-    public String getAddress() { return address; }
-    public void setAddress(String address) { this.address = address; }
+    /** @return MAC de la conexión actual; "" si no está conectado */
+    public String getAddress() {
+        Conexion c = estado.get().conexion;
+        return c == null ? "" : c.address;
+    }
 
-    // Conexión
-    public boolean isConnected() { return connected; }
-    public void setConnected(boolean connected) { this.connected = connected; }
+    // Protocolo
+    public TramaCodec getCodec() { return codec; }
+
+    /** Trama de sesión pendiente de envío (agrupación de cambios de intensidad) */
+    public TramaSesionPendiente getSesionPendiente() { return sesionPendiente; }
 
-    public boolean isBattMon() { return battMon; }
-    public void setBattMon(boolean battMon) { this.battMon = battMon; }
+    /** Pausa entre bytes al enviar una trama; 0 = trama en una sola escritura */
+    public int getPausaEntreBytesMs() { return pausaEntreBytesMs; }
+    public void setPausaEntreBytesMs(int pausaEntreBytesMs) { this.pausaEntreBytesMs = pausaEntreBytesMs; }
 
-    public boolean isBattMonSent() { return battMonSent; }
-    public void setBattMonSent(boolean battMonSent) { this.battMonSent = battMonSent; }
+    // Conexión
+    public boolean isConnected() { return estado.get().isConnected(); }
+
+    public boolean isBattMon() { return estado.get().isBattMon(); }
+    /** Sin conexión se queda en false (p. ej. un sondeo que llega tarde) */
+    public void setBattMon(boolean battMon) {
+        cambiar(actual -> actual.conBattMon(battMon));
+    }
 
     // Sesión
-    public boolean isClockStopped() { return clockStopped; }
-    public void setClockStopped(boolean clockStopped) { this.clockStopped = clockStopped; }
+    /** @return true si no hay sesión en curso (el reloj de sesión está parado) */
+    public boolean isClockStopped() { return !estado.get().isSesionActiva(); }
 
     public int getMinutoTranscurrido() { return minutoTranscurrido; }
     public void setMinutoTranscurrido(int minutoTranscurrido) { this.minutoTranscurrido = minutoTranscurrido; }
-    public void incrementarMinuto() { this.minutoTranscurrido++; }
 
     // Paciente
     public int getPacienteId() { return pacienteId; }
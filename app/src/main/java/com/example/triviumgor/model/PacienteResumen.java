@@ -0,0 +1,55 @@
+package com.example.triviumgor.model;
+
+/**
+ * Resumen de un paciente para listas y búsquedas.
+ *
+ * Solo lleva las columnas que se pintan en la lista (ID, DNI y nombre), sin
+ * patología, medicación ni configuración. El Paciente completo se carga por
+ * ID cuando se abre la ficha.
+ */
+public class PacienteResumen {
+
+    private final int ID;
+    private final String DNI;
+    private final String nombre;
+    private final String ap1;
+    private final String ap2;
+
+    public PacienteResumen(int ID, String DNI, String nombre, String ap1, String ap2) {
+        this.ID = ID;
+        this.DNI = DNI;
+        this.nombre = nombre;
+        this.ap1 = ap1;
+        this.ap2 = ap2;
+    }
+
+    /**
+     * Devuelve el nombre completo: "Nombre Apellido1 Apellido2"
+     */
+    public String getNombreCompleto() {
+        String completo = nombre + " " + ap1;
+        if (ap2 != null && !ap2.isEmpty()) {
+            completo += " " + ap2;
+        }
+        return completo;
+    }
+
+    /**
+     * Texto de la fila en la lista: "DNI: XXXXXXXXX - Nombre Apellido1 Apellido2"
+     */
+    public String getTextoLista() {
+        return "DNI: " + DNI + " - " + getNombreCompleto();
+    }
+
+    // Getters
+
+    public int getID() { return ID; }
+
+    public String getDNI() { return DNI; }
+
+    public String getNombre() { return nombre; }
+
+    public String getAp1() { return ap1; }
+
+    public String getAp2() { return ap2; }
+}
@@ -0,0 +1,81 @@
+package com.example.triviumgor.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de los estimuladores que maneja la tablet.
+ *
+ * Sustituye a las parejas dispositivo1/dispositivo2 repartidas por los
+ * controllers: cada DispositivoState se identifica por su id y los
+ * controllers buscan aquí en vez de comparar con dos referencias fijas.
+ * Cada dispositivo conectado tiene sus propios hilos de escritura y lectura
+ * (ColaComandos, LectorDispositivo); timers y sondeos comparten el
+ * Planificador de TratamientoController, así que añadir un dispositivo tiene
+ * un coste fijo.
+ *
+ * Thread-safe: se consulta desde el hilo principal, los hilos de conexión y
+ * el BroadcastReceiver de desconexión.
+ */
+public class RegistroDispositivos {
+
+    private final ConcurrentHashMap<Integer, DispositivoState> dispositivos = new ConcurrentHashMap<>();
+
+    /**
+     * Crea y registra un dispositivo.
+     * @throws IllegalArgumentException si ya hay uno con ese id
+     */
+    public DispositivoState crear(int id) {
+        DispositivoState nuevo = new DispositivoState(id);
+        if (dispositivos.putIfAbsent(id, nuevo) != null) {
+            throw new IllegalArgumentException("Ya existe el dispositivo " + id);
+        }
+        return nuevo;
+    }
+
+    /** @return el dispositivo con ese id, o null */
+    public DispositivoState obtener(int id) {
+        return dispositivos.get(id);
+    }
+
+    /** Quita un dispositivo del registro (debe estar desconectado) */
+    public void quitar(int id) {
+        dispositivos.remove(id);
+    }
+
+    /** @return todos los dispositivos, ordenados por id */
+    public List<DispositivoState> getTodos() {
+        List<DispositivoState> todos = new ArrayList<>(dispositivos.values());
+        Collections.sort(todos, (a, b) -> Integer.compare(a.getId(), b.getId()));
+        return todos;
+    }
+
+    public int size() {
+        return dispositivos.size();
+    }
+
+    /**
+     * Dispositivo conectado a una MAC.
+     * @return el dispositivo, o null si ninguno está conectado a esa dirección
+     */
+    public DispositivoState buscarConectado(String mac) {
+        if (mac == null) return null;
+        for (DispositivoState d : dispositivos.values()) {
+            if (d.isConnected() && mac.equals(d.getAddress())) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indica si otro dispositivo del registro (distinto de actual) ya está
+     * conectado a esa MAC. Sirve para no ofrecerla al conectar.
+     */
+    public boolean estaConectadoEnOtro(String mac, DispositivoState actual) {
+        DispositivoState conectado = buscarConectado(mac);
+        return conectado != null && conectado != actual;
+    }
+}
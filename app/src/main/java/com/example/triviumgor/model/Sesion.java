@@ -5,12 +5,12 @@ public class Sesion {
     private int id;
     private int idPaciente;
     private String dispositivo;
-    private String fecha;
+    private long fecha; // epoch ms
     private int intensidad;
     private int tiempo;
 
     // Constructor completo
-    public Sesion(int id, int idPaciente, String dispositivo, String fecha,
+    public Sesion(int id, int idPaciente, String dispositivo, long fecha,
                   int intensidad, int tiempo) {
         this.id = id;
         this.idPaciente = idPaciente;
@@ -21,7 +21,7 @@ public class Sesion {
     }
 
     // Constructor sin ID (para inserciones)
-    public Sesion(int idPaciente, String dispositivo, String fecha,
+    public Sesion(int idPaciente, String dispositivo, long fecha,
                   int intensidad, int tiempo) {
         this.idPaciente = idPaciente;
         this.dispositivo = dispositivo;
@@ -41,8 +41,8 @@ public class Sesion {
     public String getDispositivo() { return dispositivo; }
     public void setDispositivo(String dispositivo) { this.dispositivo = dispositivo; }
 
-    public String getFecha() { return fecha; }
-    public void setFecha(String fecha) { this.fecha = fecha; }
+    public long getFecha() { return fecha; }
+    public void setFecha(long fecha) { this.fecha = fecha; }
 
     public int getIntensidad() { return intensidad; }
     public void setIntensidad(int intensidad) { this.intensidad = intensidad; }
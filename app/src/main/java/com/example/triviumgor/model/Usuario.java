@@ -7,10 +7,10 @@ public class Usuario {
     private String nombreCompleto;
     private String rol;
     private int activo; // en web es un boolean, tambien en base de datos
-    private String fechaCreacion;
-    private String ultimoAcceso;
+    private long fechaCreacion; // epoch ms
+    private long ultimoAcceso;  // epoch ms, 0 si nunca ha entrado
 
-    public Usuario(int id, String username, String hashPassword, String nombreCompleto, String rol, int activo, String fechaCreacion, String ultimoAcceso) {
+    public Usuario(int id, String username, String hashPassword, String nombreCompleto, String rol, int activo, long fechaCreacion, long ultimoAcceso) {
         this.id = id;
         this.username = username;
         this.hashPassword = hashPassword;
@@ -23,7 +23,7 @@ public class Usuario {
 
     //sin ID para inserciones
 
-    public Usuario(String username, String hashPassword, String nombreCompleto, String rol, int activo, String fechaCreacion, String ultimoAcceso) {
+    public Usuario(String username, String hashPassword, String nombreCompleto, String rol, int activo, long fechaCreacion, long ultimoAcceso) {
         this.username = username;
         this.hashPassword = hashPassword;
         this.nombreCompleto = nombreCompleto;
@@ -81,19 +81,19 @@ public class Usuario {
         this.activo = activo;
     }
 
-    public String getFechaCreacion() {
+    public long getFechaCreacion() {
         return fechaCreacion;
     }
 
-    public void setFechaCreacion(String fechaCreacion) {
+    public void setFechaCreacion(long fechaCreacion) {
         this.fechaCreacion = fechaCreacion;
     }
 
-    public String getUltimoAcceso() {
+    public long getUltimoAcceso() {
         return ultimoAcceso;
     }
 
-    public void setUltimoAcceso(String ultimoAcceso) {
+    public void setUltimoAcceso(long ultimoAcceso) {
         this.ultimoAcceso = ultimoAcceso;
     }
 }
@@ -0,0 +1,66 @@
+package com.example.triviumgor.util;
+
+/**
+ * Cuenta atrás de una sesión de tratamiento.
+ *
+ * Antes los minutos se contaban comparando Calendar.MINUTE cada 20 s: una
+ * sesión podía durar casi un minuto más o menos de lo prescrito y un cambio de
+ * hora la desplazaba. Ahora todo se calcula a partir del instante de inicio en
+ * un Reloj monótono: el minuto n termina exactamente en inicio + n * 60 s y no
+ * se acumula error por mucho que se retrase una comprobación.
+ *
+ * La duración se pasa en cada consulta porque puede cambiar durante la sesión
+ * (iniciarOActualizarSesion la actualiza junto con la intensidad).
+ */
+public final class CuentaAtras {
+
+    public static final long MINUTO_MS = 60000L;
+    public static final long SEGUNDO_MS = 1000L;
+
+    private final Reloj reloj;
+    private final long inicio;
+
+    /** Empieza a contar en el instante actual del reloj */
+    public CuentaAtras(Reloj reloj) {
+        this.reloj = reloj;
+        this.inicio = reloj.ahora();
+    }
+
+    /**
+     * Continúa una cuenta atrás interrumpida (p. ej. por una reconexión):
+     * cuenta como si hubiera empezado transcurridoPrevioMs antes de ahora.
+     */
+    public CuentaAtras(Reloj reloj, long transcurridoPrevioMs) {
+        this.reloj = reloj;
+        this.inicio = reloj.ahora() - transcurridoPrevioMs;
+    }
+
+    public long getTranscurridoMs() {
+        return Math.max(0, reloj.ahora() - inicio);
+    }
+
+    /** @return minutos completos desde el inicio */
+    public int getMinutosTranscurridos() {
+        return (int) (getTranscurridoMs() / MINUTO_MS);
+    }
+
+    /** @return duración menos los minutos completos transcurridos (lo que se muestra en pantalla) */
+    public int getMinutosRestantes(int duracionMin) {
+        return Math.max(0, duracionMin - getMinutosTranscurridos());
+    }
+
+    /** @return segundos que faltan, redondeando hacia arriba (0 = terminada) */
+    public int getSegundosRestantes(int duracionMin) {
+        long restanteMs = duracionMin * MINUTO_MS - getTranscurridoMs();
+        return restanteMs <= 0 ? 0 : (int) ((restanteMs + SEGUNDO_MS - 1) / SEGUNDO_MS);
+    }
+
+    public boolean isAgotada(int duracionMin) {
+        return duracionMin > 0 && getTranscurridoMs() >= duracionMin * MINUTO_MS;
+    }
+
+    /** @return ms hasta el siguiente múltiplo de periodoMs contado desde el inicio */
+    public long msHastaSiguiente(long periodoMs) {
+        return periodoMs - getTranscurridoMs() % periodoMs;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.triviumgor.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Fechas de la base de datos.
+ *
+ * Desde la v9 del esquema todas las fechas (sesiones, usuarios, asignaciones)
+ * se guardan como INTEGER en milisegundos desde epoch (UTC). Solo se
+ * convierten a texto al pintarlas, con la zona horaria del dispositivo.
+ *
+ * SimpleDateFormat no es thread-safe y las lecturas van en varios hilos
+ * (PacienteRepository), así que se crea uno por llamada.
+ */
+public final class Fechas {
+
+    // Formato de texto usado en la BBDD hasta la v8
+    public static final String PATRON_BD_ANTIGUO = "yyyy-MM-dd HH:mm:ss";
+
+    private Fechas() {
+    }
+
+    /** Instante actual para guardar en la BBDD */
+    public static long ahora() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Convierte una fecha guardada como texto antes de la v9 ("yyyy-MM-dd
+     * HH:mm:ss", hora local del dispositivo) a epoch ms. Se lee con el Locale
+     * actual, el mismo con el que se escribía.
+     */
+    public static long parsearAntiguo(String texto) throws ParseException {
+        SimpleDateFormat formato = new SimpleDateFormat(PATRON_BD_ANTIGUO, Locale.getDefault());
+        return formato.parse(texto).getTime();
+    }
+
+    /** Primer milisegundo del día (hora local) que contiene al instante */
+    public static long inicioDelDia(long epochMs) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(epochMs);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
+    }
+
+    /** Primer milisegundo del día siguiente (tiene en cuenta los cambios de hora) */
+    public static long inicioDelDiaSiguiente(long epochMs) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(inicioDelDia(epochMs));
+        c.add(Calendar.DAY_OF_MONTH, 1);
+        return c.getTimeInMillis();
+    }
+
+    /** "dd/MM/yyyy" */
+    public static String formatearFecha(long epochMs) {
+        return formatear("dd/MM/yyyy", epochMs);
+    }
+
+    /** "HH:mm:ss" */
+    public static String formatearHora(long epochMs) {
+        return formatear("HH:mm:ss", epochMs);
+    }
+
+    /** "dd/MM/yyyy HH:mm:ss" */
+    public static String formatearFechaHora(long epochMs) {
+        return formatear("dd/MM/yyyy HH:mm:ss", epochMs);
+    }
+
+    private static String formatear(String patron, long epochMs) {
+        return new SimpleDateFormat(patron, Locale.getDefault()).format(new Date(epochMs));
+    }
+}
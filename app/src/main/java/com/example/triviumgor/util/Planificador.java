@@ -0,0 +1,226 @@
+package com.example.triviumgor.util;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * Planificador único para el trabajo periódico de todos los dispositivos
+ * (timers de sesión, sondeo de batería...).
+ *
+ * Sustituye a los cuatro Handler del hilo principal de TratamientoController:
+ * - Los plazos son monótonos (Reloj.SISTEMA = SystemClock.elapsedRealtime):
+ *   un cambio de hora del sistema no los mueve.
+ * - Las tareas periódicas son de ritmo fijo: el siguiente plazo se calcula
+ *   desde el anterior y no desde que terminó la ejecución, así no acumulan
+ *   retraso. Si se pierden periodos (p. ej. el dispositivo estuvo dormido) se
+ *   ejecuta una vez y se salta al siguiente plazo futuro.
+ * - Cada tarea admite una holgura: puede ejecutarse hasta holguraMs tarde.
+ *   El hilo despierta en el primer instante en que alguna tarea agota su
+ *   holgura y en esa misma vuelta ejecuta todas las que ya han vencido, de
+ *   modo que las que caen cerca comparten despertar.
+ * - Todo se ejecuta en un solo hilo ("Planificador"), fuera del hilo
+ *   principal. Los listeners que tocan Views deben pasar a la UI
+ *   (MainActivity ya usa runOnUiThread).
+ *
+ * El coste es un hilo en total, no uno (ni un Handler) por dispositivo.
+ */
+public final class Planificador {
+
+    private static final String TAG = "Planificador";
+
+    /** Tarea programada; permite cancelarla */
+    public final class Tarea implements Comparable<Tarea> {
+        private final Runnable accion;
+        private final long periodoMs;   // 0 = una sola vez
+        private final long holguraMs;
+        private long plazo;             // en ms del Reloj
+        private boolean cancelada = false;
+
+        private Tarea(Runnable accion, long plazo, long periodoMs, long holguraMs) {
+            this.accion = accion;
+            this.plazo = plazo;
+            this.periodoMs = periodoMs;
+            this.holguraMs = holguraMs;
+        }
+
+        /** Cancela la tarea. Si se está ejecutando, termina pero no se repite */
+        public void cancelar() {
+            synchronized (Planificador.this) {
+                cancelada = true;
+                cola.remove(this);
+                Planificador.this.notifyAll();
+            }
+        }
+
+        public boolean isCancelada() {
+            synchronized (Planificador.this) {
+                return cancelada;
+            }
+        }
+
+        @Override
+        public int compareTo(Tarea otra) {
+            return Long.compare(plazo, otra.plazo);
+        }
+    }
+
+    private final Reloj reloj;
+    private final PriorityQueue<Tarea> cola = new PriorityQueue<>();
+    private final ArrayList<Tarea> vencidas = new ArrayList<>();
+    private final Thread hilo;
+    private boolean detenido = false;
+
+    // Estadísticas (diagnóstico)
+    private long despertares = 0;
+    private long ejecuciones = 0;
+
+    public Planificador() {
+        this(Reloj.SISTEMA);
+    }
+
+    public Planificador(Reloj reloj) {
+        this.reloj = reloj;
+        hilo = new Thread(this::bucle, "Planificador");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /** Instante actual de los plazos */
+    public long ahora() {
+        return reloj.ahora();
+    }
+
+    /**
+     * Ejecuta una acción una vez.
+     * @param retrasoMs  tiempo hasta la ejecución
+     * @param holguraMs  retraso admisible para agrupar con otras tareas
+     */
+    public Tarea programar(Runnable accion, long retrasoMs, long holguraMs) {
+        return anadir(new Tarea(accion, ahora() + retrasoMs, 0, holguraMs));
+    }
+
+    /**
+     * Ejecuta una acción cada periodoMs (ritmo fijo).
+     * @param retrasoMs  tiempo hasta la primera ejecución
+     * @param holguraMs  retraso admisible para agrupar con otras tareas
+     */
+    public Tarea programarPeriodica(Runnable accion, long retrasoMs, long periodoMs, long holguraMs) {
+        if (periodoMs <= 0) {
+            throw new IllegalArgumentException("Periodo no válido: " + periodoMs);
+        }
+        return anadir(new Tarea(accion, ahora() + retrasoMs, periodoMs, holguraMs));
+    }
+
+    private synchronized Tarea anadir(Tarea tarea) {
+        if (detenido) {
+            tarea.cancelada = true;
+            return tarea;
+        }
+        cola.add(tarea);
+        notifyAll();
+        return tarea;
+    }
+
+    /**
+     * Hace que el hilo vuelva a comprobar los plazos ahora mismo. La espera
+     * entre plazos es un wait() en tiempo real: con un Reloj falso que se
+     * adelanta a mano, hay que llamar a esto después de adelantarlo.
+     */
+    public synchronized void despertar() {
+        notifyAll();
+    }
+
+    /** Cancela todas las tareas y termina el hilo. Llamar desde onDestroy() */
+    public void detener() {
+        synchronized (this) {
+            detenido = true;
+            for (Tarea t : cola) {
+                t.cancelada = true;
+            }
+            cola.clear();
+            notifyAll();
+        }
+    }
+
+    private void bucle() {
+        while (true) {
+            synchronized (this) {
+                if (!esperarVencidas()) return;
+                despertares++;
+            }
+
+            for (int i = 0; i < vencidas.size(); i++) {
+                Tarea t = vencidas.get(i);
+                if (t.isCancelada()) continue; // cancelada tras salir de la cola
+                try {
+                    t.accion.run();
+                } catch (RuntimeException e) {
+                    // Una tarea que falla no debe parar las demás
+                    Log.e(TAG, "Error en tarea programada: " + e.getMessage(), e);
+                }
+            }
+
+            synchronized (this) {
+                long ahora = ahora();
+                ejecuciones += vencidas.size();
+                for (int i = 0; i < vencidas.size(); i++) {
+                    Tarea t = vencidas.get(i);
+                    if (t.periodoMs > 0 && !t.cancelada && !detenido) {
+                        t.plazo += t.periodoMs;
+                        if (t.plazo <= ahora) {
+                            // Periodos perdidos: saltar al siguiente plazo futuro
+                            long perdidos = (ahora - t.plazo) / t.periodoMs + 1;
+                            t.plazo += perdidos * t.periodoMs;
+                        }
+                        cola.add(t);
+                    }
+                }
+                vencidas.clear();
+            }
+        }
+    }
+
+    /**
+     * Espera (con el monitor tomado) hasta que alguna tarea agote su holgura y
+     * saca de la cola todas las vencidas.
+     * @return false si el planificador se ha detenido
+     */
+    private boolean esperarVencidas() {
+        while (!detenido) {
+            if (cola.isEmpty()) {
+                esperar(0);
+                continue;
+            }
+            long limite = Long.MAX_VALUE;
+            for (Tarea t : cola) {
+                limite = Math.min(limite, t.plazo + t.holguraMs);
+            }
+            long ahora = ahora();
+            if (ahora < limite) {
+                esperar(limite - ahora);
+                continue;
+            }
+            while (!cola.isEmpty() && cola.peek().plazo <= ahora) {
+                vencidas.add(cola.poll());
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void esperar(long ms) {
+        try {
+            wait(ms);
+        } catch (InterruptedException e) {
+            detenido = true;
+        }
+    }
+
+    /** Vuelca al log cuántas veces despertó el hilo y cuántas tareas ejecutó */
+    public synchronized void registrarEstadisticas() {
+        Log.d(TAG, "Despertares: " + despertares + " | ejecuciones: " + ejecuciones
+                + " | programadas: " + cola.size());
+    }
+}
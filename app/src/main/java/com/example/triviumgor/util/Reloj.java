@@ -0,0 +1,20 @@
+package com.example.triviumgor.util;
+
+import android.os.SystemClock;
+
+/**
+ * Fuente de tiempo monótona en milisegundos.
+ *
+ * Los plazos y cuentas atrás (Planificador, CuentaAtras) se calculan con un
+ * Reloj y no con la hora del sistema: un cambio de hora no los mueve. En los
+ * tests se sustituye por uno falso: CuentaAtras lo consulta directamente; el
+ * Planificador espera en tiempo real y hay que llamar a despertar() después
+ * de adelantarlo.
+ */
+public interface Reloj {
+
+    /** Reloj del sistema: SystemClock.elapsedRealtime (incluye el tiempo dormido) */
+    Reloj SISTEMA = SystemClock::elapsedRealtime;
+
+    long ahora();
+}
@@ -42,7 +42,7 @@ public class AdminUsuariosActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
 
         // Inicializar DataManager
-        dataManager = new PacienteDataManager(this);
+        dataManager = PacienteDataManager.getInstance(this);
         if (!dataManager.open()) {
             Toast.makeText(this, "Error al abrir la base de datos", Toast.LENGTH_LONG).show();
             finish();
@@ -126,31 +126,43 @@ public class AdminUsuariosActivity extends AppCompatActivity {
         UsuarioController.Rol rol = UsuarioController.Rol.fromTextoFormateado(rolTexto);
 
         // TODAS las validaciones las hace el controller
-        UsuarioController.ResultadoOperacion resultado =
-                usuarioController.crearUsuario(username, password, nombreCompleto, rol);
-
-        if (resultado.exitoso) {
-            Toast.makeText(this, resultado.mensaje, Toast.LENGTH_SHORT).show();
-
-            // Limpiar formulario
-            etNewUsername.setText("");
-            etNewPassword.setText("");
-            etNombreCompleto.setText("");
-            spinnerRol.setSelection(0);
-
-            // Recargar lista
-            cargarUsuarios();
-            recyclerViewUsuarios.smoothScrollToPosition(
-                    usuarioAdapter.getItemCount() > 0 ? usuarioAdapter.getItemCount() - 1 : 0);
-        } else {
-            Toast.makeText(this, resultado.mensaje, Toast.LENGTH_LONG).show();
-        }
+        btnCrearUsuario.setEnabled(false);
+        usuarioController.crearUsuarioAsync(username, password, nombreCompleto, rol, resultado -> {
+            if (isFinishing()) return;
+            btnCrearUsuario.setEnabled(true);
+
+            if (resultado.exitoso) {
+                Toast.makeText(this, resultado.mensaje, Toast.LENGTH_SHORT).show();
+
+                // Limpiar formulario
+                etNewUsername.setText("");
+                etNewPassword.setText("");
+                etNombreCompleto.setText("");
+                spinnerRol.setSelection(0);
+
+                // Recargar lista y bajar hasta el nuevo usuario
+                cargarUsuarios(true);
+            } else {
+                Toast.makeText(this, resultado.mensaje, Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     private void cargarUsuarios() {
-        // Obtener usuarios del controller
-        usuariosList = usuarioController.obtenerTodosLosUsuarios();
-        usuarioAdapter.actualizarLista(usuariosList);
+        cargarUsuarios(false);
+    }
+
+    private void cargarUsuarios(final boolean scrollAlFinal) {
+        // Obtener usuarios del controller (en segundo plano)
+        usuarioController.obtenerTodosLosUsuariosAsync(lista -> {
+            if (isFinishing()) return;
+            usuariosList = lista;
+            usuarioAdapter.actualizarLista(usuariosList);
+            if (scrollAlFinal) {
+                recyclerViewUsuarios.smoothScrollToPosition(
+                        usuarioAdapter.getItemCount() > 0 ? usuarioAdapter.getItemCount() - 1 : 0);
+            }
+        });
     }
 
 
@@ -210,10 +222,10 @@ public class AdminUsuariosActivity extends AppCompatActivity {
             public void onClick(DialogInterface dialog, int which) {
                 String newPassword = etNewPass.getText().toString().trim();
 
-                UsuarioController.ResultadoOperacion resultado =
-                        usuarioController.cambiarPassword(usuario.getUsername(), newPassword);
-
-                Toast.makeText(AdminUsuariosActivity.this, resultado.mensaje, Toast.LENGTH_SHORT).show();
+                usuarioController.cambiarPasswordAsync(usuario.getUsername(), newPassword, resultado -> {
+                    if (isFinishing()) return;
+                    Toast.makeText(AdminUsuariosActivity.this, resultado.mensaje, Toast.LENGTH_SHORT).show();
+                });
             }
         });
 
@@ -232,33 +244,21 @@ public class AdminUsuariosActivity extends AppCompatActivity {
                 .setPositiveButton("Sí", new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        UsuarioController.ResultadoOperacion resultado =
-                                usuarioController.toggleEstadoUsuario(usuario.getUsername(), nuevoEstado);
-
-                        if (resultado.exitoso) {
-                            Toast.makeText(AdminUsuariosActivity.this,
-                                    resultado.mensaje,
-                                    Toast.LENGTH_SHORT).show();
-                            cargarUsuarios();
-                        } else {
+                        usuarioController.toggleEstadoUsuarioAsync(usuario.getUsername(), nuevoEstado, resultado -> {
+                            if (isFinishing()) return;
                             Toast.makeText(AdminUsuariosActivity.this,
                                     resultado.mensaje,
                                     Toast.LENGTH_SHORT).show();
-                        }
+                            if (resultado.exitoso) {
+                                cargarUsuarios();
+                            }
+                        });
                     }
                 })
                 .setNegativeButton("No", null)
                 .show();
     }
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (dataManager != null) {
-            dataManager.close();
-        }
-    }
-
     @Override
     public boolean onSupportNavigateUp() {
         finish();
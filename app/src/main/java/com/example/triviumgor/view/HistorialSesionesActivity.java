@@ -20,10 +20,8 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.triviumgor.R;
 import com.example.triviumgor.controller.SesionController;
-import com.example.triviumgor.controller.UsuarioController;
 import com.example.triviumgor.database.PacienteDataManager;
 import com.example.triviumgor.model.Sesion;
-import com.example.triviumgor.model.Usuario;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -38,8 +36,6 @@ public class HistorialSesionesActivity extends AppCompatActivity {
 
     private PacienteDataManager dataManager;
     private SesionController sesionController;
-    private UsuarioController usuarioController;
-    private List<Sesion> sesiones;
     private List<SesionController.GrupoDia> grupos;
     private int pacienteId;
     private String nombrePaciente;
@@ -71,7 +67,7 @@ public class HistorialSesionesActivity extends AppCompatActivity {
         tvTitulo.setText("Histórico de Sesiones");
         tvNombrePaciente.setText("Paciente: " + nombrePaciente);
 
-        dataManager = new PacienteDataManager(this);
+        dataManager = PacienteDataManager.getInstance(this);
         if (!dataManager.open()) {
             Toast.makeText(this, "Error al abrir la base de datos", Toast.LENGTH_SHORT).show();
             finish();
@@ -79,7 +75,6 @@ public class HistorialSesionesActivity extends AppCompatActivity {
         }
 
         sesionController = new SesionController(dataManager);
-        usuarioController = new UsuarioController(this, dataManager);
         cargarSesiones();
 
         btnVolver.setOnClickListener(v -> {
@@ -91,18 +86,20 @@ public class HistorialSesionesActivity extends AppCompatActivity {
         });
     }
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (dataManager != null) dataManager.close();
-    }
-
     private void cargarSesiones() {
-        try {
-            sesiones = sesionController.obtenerSesionesPaciente(pacienteId);
-            tvInfoHistorial.setText("Sesiones registradas: " + sesiones.size());
+        // La consulta va en segundo plano; el resultado se pinta en el hilo principal.
+        // Solo se cargan los días (agrupados en SQL); las sesiones de un día se
+        // piden al abrirlo.
+        sesionController.obtenerDiasConSesionesAsync(pacienteId, dias -> {
+            if (isFinishing()) return;
+            grupos = dias;
+            int total = 0;
+            for (SesionController.GrupoDia grupo : grupos) {
+                total += grupo.getNumSesiones();
+            }
+            tvInfoHistorial.setText("Sesiones registradas: " + total);
 
-            if (sesiones.isEmpty()) {
+            if (grupos.isEmpty()) {
                 ArrayList<String> mensajes = new ArrayList<>();
                 mensajes.add("No hay sesiones registradas para este paciente");
                 recyclerViewSesiones.setAdapter(new MensajeAdapter(mensajes));
@@ -110,14 +107,14 @@ public class HistorialSesionesActivity extends AppCompatActivity {
             }
 
             mostrarVistaAgrupada();
-        } catch (Exception e) {
+        }, e -> {
+            if (isFinishing()) return;
             Log.e("HistorialSesiones", "Error al cargar sesiones: " + e.getMessage());
             Toast.makeText(this, "Error al cargar sesiones", Toast.LENGTH_SHORT).show();
-        }
+        });
     }
 
     private void mostrarVistaAgrupada() {
-        grupos = sesionController.agruparPorDia(sesiones);
         List<String> fechas = sesionController.obtenerFechasAgrupadas(grupos);
         recyclerViewSesiones.setAdapter(new FechaAdapter(fechas));
         mostrandoDetalleDia = false;
@@ -126,10 +123,16 @@ public class HistorialSesionesActivity extends AppCompatActivity {
     private void mostrarSesionesDelDia(int posicionGrupo) {
         if (grupos != null && posicionGrupo < grupos.size()) {
             SesionController.GrupoDia grupo = grupos.get(posicionGrupo);
-            List<Sesion> sesionesDelDia = new ArrayList<>(
-                    sesiones.subList(grupo.indiceInicio, grupo.indiceFin));
-            recyclerViewSesiones.setAdapter(new SesionRecyclerAdapter(sesionesDelDia));
             mostrandoDetalleDia = true;
+            sesionController.obtenerSesionesPacienteAsync(pacienteId, grupo.desde, grupo.hasta,
+                    sesionesDelDia -> {
+                        if (isFinishing() || !mostrandoDetalleDia) return;
+                        recyclerViewSesiones.setAdapter(new SesionRecyclerAdapter(sesionesDelDia));
+                    }, e -> {
+                        if (isFinishing()) return;
+                        Log.e("HistorialSesiones", "Error al cargar sesiones del día: " + e.getMessage());
+                        Toast.makeText(this, "Error al cargar sesiones", Toast.LENGTH_SHORT).show();
+                    });
         }
     }
 
@@ -150,12 +153,14 @@ public class HistorialSesionesActivity extends AppCompatActivity {
         Button btnCerrar = dialogView.findViewById(R.id.btnCerrar);
         Button btnBorrarS = dialogView.findViewById(R.id.tvBTNBorrar);
 
-        String listaNomUsuario = getUsuariosPorSesion(sesion);
-        if (listaNomUsuario == ""){
-            layoutT.setVisibility(View.GONE);
-        }else{
+        // Los usuarios que la realizaron se cargan en segundo plano; hasta
+        // entonces la fila queda oculta
+        layoutT.setVisibility(View.GONE);
+        sesionController.obtenerNombresUsuariosSesionAsync(sesion.getId(), listaNomUsuario -> {
+            if (isFinishing() || listaNomUsuario.isEmpty()) return;
             tvTratado.setText(listaNomUsuario);
-        }
+            layoutT.setVisibility(View.VISIBLE);
+        });
 
         tvFechaCompleta.setText(sesionController.formatearFecha(sesion.getFecha()));
         tvHora.setText(sesionController.formatearHora(sesion.getFecha()));
@@ -175,14 +180,17 @@ public class HistorialSesionesActivity extends AppCompatActivity {
     private void dialogoBorrarSesion(Sesion sesion) {
         new androidx.appcompat.app.AlertDialog.Builder(this)
                 .setTitle("Desea Borrar este Historico?")
-                .setMessage(sesion.getFecha())
+                .setMessage(sesionController.formatearFechaHora(sesion.getFecha()))
                 .setPositiveButton("Borrar", (dialog, which) -> {
-                    boolean eliminado = sesionController.eliminarSesion(sesion.getId());
-                    cargarSesiones();
-                    Toast.makeText(this,
-                            eliminado ? "Borrado correctamente"
-                                    : "No se ha borrado el Historico " + sesion.getFecha(),
-                            Toast.LENGTH_SHORT).show();
+                    sesionController.eliminarSesionAsync(sesion.getId(), eliminado -> {
+                        if (isFinishing()) return;
+                        cargarSesiones();
+                        Toast.makeText(this,
+                                eliminado ? "Borrado correctamente"
+                                        : "No se ha borrado el Historico "
+                                        + sesionController.formatearFechaHora(sesion.getFecha()),
+                                Toast.LENGTH_SHORT).show();
+                    });
                 })
                 .setNegativeButton("Cancelar", (dialog, which) -> dialog.dismiss())
                 .create().show();
@@ -253,7 +261,7 @@ public class HistorialSesionesActivity extends AppCompatActivity {
         @Override
         public void onBindViewHolder(@NonNull VH h, int pos) {
             Sesion s = lista.get(pos);
-            h.tvFecha.setText(s.getFecha());
+            h.tvFecha.setText(sesionController.formatearFechaHora(s.getFecha()));
             h.tvInfo.setText(s.getDispositivo() + " · Intensidad: " + s.getIntensidad());
             h.itemView.setOnClickListener(v -> mostrarDetallesSesion(s));
             h.itemView.setOnLongClickListener(v -> {
@@ -272,26 +280,4 @@ public class HistorialSesionesActivity extends AppCompatActivity {
             }
         }
     }
-
-    // =========================================================
-    //  Funciones Extras Para Ayudar
-    // =========================================================
-
-    private String getUsuariosPorSesion (Sesion sesion){
-        List<Integer> listaUsuarioId = dataManager.obtenerUsuariosPorSesion(sesion.getId());
-        String listaUsuarios = "";
-
-        if (!listaUsuarioId.isEmpty()){
-            for (int id: listaUsuarioId) {
-                String nombre = usuarioController.obtenerUsuarioPorId(id).getNombreCompleto();
-                if (listaUsuarios != ""){
-                    listaUsuarios += ", ";
-                }
-                listaUsuarios += nombre;
-            }
-        }
-
-        return listaUsuarios;
-
-    }
-}
\ No newline at end of file
+}
@@ -117,7 +117,7 @@ public class LoginActivity extends AppCompatActivity {
     //INICIALIZAR PROCESO
     private void initApp() {
         // Abrir base de datos
-        dataManager = new PacienteDataManager(this);
+        dataManager = PacienteDataManager.getInstance(this);
         if (!dataManager.open()) {
             Toast.makeText(this, "Error al abrir la base de datos", Toast.LENGTH_LONG).show();
             finish();
@@ -154,17 +154,23 @@ public class LoginActivity extends AppCompatActivity {
         String username = etUsername.getText().toString().trim();
         String password = etPassword.getText().toString().trim();
 
-        UsuarioController.ResultadoLogin resultado = usuarioController.login(username, password);
+        // El login consulta la BD: se hace en segundo plano y se bloquea el
+        // botón para evitar dobles pulsaciones mientras tanto.
+        btnLogin.setEnabled(false);
+        usuarioController.loginAsync(username, password, resultado -> {
+            if (isFinishing()) return;
+            btnLogin.setEnabled(true);
 
-        if (resultado.exitoso) {
-            Toast.makeText(this, resultado.mensaje, Toast.LENGTH_SHORT).show();
-            navigateToMain();
-        } else {
-            tvError.setText(resultado.mensaje);
-            tvError.setVisibility(View.VISIBLE);
-            etPassword.setText("");
-            etPassword.requestFocus();
-        }
+            if (resultado.exitoso) {
+                Toast.makeText(this, resultado.mensaje, Toast.LENGTH_SHORT).show();
+                navigateToMain();
+            } else {
+                tvError.setText(resultado.mensaje);
+                tvError.setVisibility(View.VISIBLE);
+                etPassword.setText("");
+                etPassword.requestFocus();
+            }
+        });
     }
 
     private void navigateToMain() {
@@ -177,12 +183,4 @@ public class LoginActivity extends AppCompatActivity {
     public void onBackPressed() {
         moveTaskToBack(true);
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (dataManager != null) {
-            dataManager.close();
-        }
-    }
 }
\ No newline at end of file
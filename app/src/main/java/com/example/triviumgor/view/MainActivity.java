@@ -11,8 +11,6 @@ import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -39,8 +37,11 @@ import com.example.triviumgor.controller.SesionController;
 import com.example.triviumgor.controller.TratamientoController;
 import com.example.triviumgor.controller.UsuarioController;
 import com.example.triviumgor.database.PacienteDataManager;
+import com.example.triviumgor.database.PacienteRepository;
+import com.example.triviumgor.database.Telemetria;
 import com.example.triviumgor.model.DispositivoState;
 import com.example.triviumgor.model.Paciente;
+import com.example.triviumgor.model.RegistroDispositivos;
 import com.example.triviumgor.model.Usuario;
 import com.example.triviumgor.util.UIHelper;
 
@@ -61,6 +62,7 @@ public class MainActivity extends AppCompatActivity
     // ========================
     // DISPOSITIVOS (Estado)
     // ========================
+    private RegistroDispositivos registro;
     private DispositivoState dispositivo1;
     private DispositivoState dispositivo2;
 
@@ -73,6 +75,8 @@ public class MainActivity extends AppCompatActivity
     private SesionController sesionController;
     UsuarioController usuarioController;
     private PacienteDataManager dataManager;
+    // Batería, RTT, pérdidas y reconexiones de los estimuladores, por MAC
+    private Telemetria telemetria;
 
     // ========================
     // VISTAS - Dispositivo 1
@@ -98,11 +102,6 @@ public class MainActivity extends AppCompatActivity
     // VISTAS - Comunes
     // ========================
     private Button Disconnect;
-
-    // Debounce para ignorar ACL_DISCONNECTED espurios tras reconexión rápida
-    private boolean recentlyConnected1 = false;
-    private boolean recentlyConnected2 = false;
-    private final Handler aclDebounceHandler = new Handler(Looper.getMainLooper());
     private Button ConectarPaciente, ventanaPacienteBtn, btnVerLista;
     private TextView nombreDispositivoPac1, nombreDispositivoPac2;
     private TextView Otrotexto1, Otrotexto2, Otrotexto3, Otrotexto4, OtroTexto5;
@@ -134,52 +133,14 @@ public class MainActivity extends AppCompatActivity
             BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
             if (device == null) return;
 
-            String mac = device.getAddress();
-
-            // Dispositivo 1
-            if (mac.equals(dispositivo1.getAddress()) && dispositivo1.isConnected()) {
-                // Ignorar si acabamos de reconectar (evento espurio de conexión anterior)
-                if (recentlyConnected1) {
-                    Log.d(TAG, "Ignorando ACL_DISCONNECTED espurio para dispositivo 1 (recién conectado)");
-                    return;
-                }
-                tratamientoController.finalizarSesion(dispositivo1);
-                tratamientoController.detenerMonitorizacionBateria(dispositivo1);
-                dispositivo1.resetCompleto();
-
-                runOnUiThread(() -> {
-                    UIHelper.resetButtonToDefault(Conexion);
-                    Conexion.setText("Conectar");
-                    dispBluetoothNom1.setText("");
-                    dispBluetoothNom1.setVisibility(View.GONE);
-                    iconBatt1.setVisibility(View.GONE);
-                    InicioPulsos.setEnabled(false);
-                    UIHelper.setButtonColor(InicioPulsos, UIHelper.COLOR_DESHABILITADO);
-                    InicioPulsos.setText("Iniciar");
-                    UIHelper.resetButtonToDefault(FinPulsos);
-                });
-            }
-            // Dispositivo 2
-            else if (mac.equals(dispositivo2.getAddress()) && dispositivo2.isConnected()) {
-                if (recentlyConnected2) {
-                    Log.d(TAG, "Ignorando ACL_DISCONNECTED espurio para dispositivo 2 (recién conectado)");
-                    return;
-                }
-                tratamientoController.finalizarSesion(dispositivo2);
-                tratamientoController.detenerMonitorizacionBateria(dispositivo2);
-                dispositivo2.resetCompleto();
+            DispositivoState desconectado = registro.buscarConectado(device.getAddress());
+            if (desconectado == null) return;
 
-                runOnUiThread(() -> {
-                    UIHelper.resetButtonToDefault(Conexion2);
-                    Conexion2.setText("Conectar");
-                    dispBluetoothNom2.setText("");
-                    dispBluetoothNom2.setVisibility(View.GONE);
-                    iconBatt2.setVisibility(View.GONE);
-                    InicioPulsos2.setEnabled(false);
-                    UIHelper.setButtonColor(InicioPulsos2, UIHelper.COLOR_DESHABILITADO);
-                    InicioPulsos2.setText("Iniciar");
-                    UIHelper.resetButtonToDefault(FinPulsos2);
-                });
+            // Puede ser un evento espurio de la conexión anterior: el latido
+            // comprueba el enlace actual y, si está muerto, avisa con
+            // onEnlacePerdido (~1 s). Sin conexión que comprobar, se da por perdido.
+            if (!tratamientoController.verificarEnlace(desconectado)) {
+                perderEnlace(desconectado);
             }
         }
     };
@@ -194,11 +155,16 @@ public class MainActivity extends AppCompatActivity
         setContentView(R.layout.activity_main);
 
         // Inicializar estado
-        dispositivo1 = new DispositivoState(1);
-        dispositivo2 = new DispositivoState(2);
+        // La pantalla tiene dos slots; el resto de la app trabaja con el registro
+        registro = new RegistroDispositivos();
+        dispositivo1 = registro.crear(1);
+        dispositivo2 = registro.crear(2);
+        for (DispositivoState disp : registro.getTodos()) {
+            disp.addObservador(cambioEstadoListener);
+        }
 
         // Inicializar DB y controllers
-        dataManager = new PacienteDataManager(this);
+        dataManager = PacienteDataManager.getInstance(this);
         if (!dataManager.open()) {
             Toast.makeText(this, "Error al abrir la base de datos", Toast.LENGTH_LONG).show();
             finish();
@@ -206,9 +172,11 @@ public class MainActivity extends AppCompatActivity
         }
 
         bluetoothController = new BluetoothController(this);
-        bluetoothController.setDispositivoRefs(dispositivo1, dispositivo2);
+        bluetoothController.setRegistro(registro);
 
         tratamientoController = new TratamientoController(this);
+        telemetria = new Telemetria(PacienteRepository.getInstance(dataManager));
+        tratamientoController.setTelemetria(telemetria);
         pacienteController = new PacienteController(dataManager);
         sesionController = new SesionController(dataManager);
         usuarioController = new UsuarioController(this, dataManager);
@@ -235,6 +203,13 @@ public class MainActivity extends AppCompatActivity
         bluetoothController.leerArchivoMACs();
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Al salir de la app la BBDD puede copiarse desde fuera: dejar trivium.db al día
+        PacienteRepository.getInstance(dataManager).ejecutarEscritura(dataManager::volcarWal, null);
+    }
+
     @Override
     protected void onDestroy() {
         try {
@@ -244,15 +219,22 @@ public class MainActivity extends AppCompatActivity
         }
 
         tratamientoController.destroy();
+        bluetoothController.cancelarConexiones();
 
-        if (dispositivo1.isConnected() && dispositivo1.getBtSocket() != null) {
-            try { dispositivo1.getBtSocket().close(); } catch (Exception e) { }
+        // Cierra también la cola de comandos y el lector de cada conexión
+        for (DispositivoState disp : registro.getTodos()) {
+            if (disp.isConnected()) {
+                bluetoothController.desconectar(disp);
+            }
         }
-        if (dispositivo2.isConnected() && dispositivo2.getBtSocket() != null) {
-            try { dispositivo2.getBtSocket().close(); } catch (Exception e) { }
+        for (DispositivoState disp : registro.getTodos()) {
+            disp.quitarObservador(cambioEstadoListener);
         }
+        telemetria.cerrar();
+        // Detrás del último lote de telemetría en el hilo de escritura
+        PacienteRepository.getInstance(dataManager).ejecutarEscritura(dataManager::volcarWal, null);
 
-        if (dataManager != null) dataManager.close();
+        // dataManager es compartido por todo el proceso: no se cierra aquí
         super.onDestroy();
     }
 
@@ -391,6 +373,157 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
+    // ========================
+    // CONEXIÓN
+    // ========================
+
+    /**
+     * Un corte breve de radio no termina la terapia: se conserva el paciente
+     * y la sesión (suspendida) y se reintenta la misma MAC.
+     */
+    private void perderEnlace(DispositivoState disp) {
+        String mac = disp.getAddress();
+        telemetria.registrar(mac, Telemetria.TIPO_ENLACE_PERDIDO, 1);
+        tratamientoController.suspenderSesion(disp);
+        tratamientoController.detenerMonitorizacionBateria(disp);
+        disp.resetConexion();
+        mostrarReconectando(disp);
+        bluetoothController.reconectar(disp, mac, reconexionListener);
+    }
+
+    // Solo llega con cambios reales de conexión o sesión, desde cualquier hilo
+    private final DispositivoState.OnCambioEstado cambioEstadoListener =
+            (disp, anterior, actual) -> Log.d(TAG, "Dispositivo " + disp.getId() + ": "
+                    + anterior + " → " + actual);
+
+    private final BluetoothController.OnReconexion reconexionListener =
+            new BluetoothController.OnReconexion() {
+        @Override
+        public void onReconectado(DispositivoState disp, long recuperacionMs, int intentos) {
+            mostrarConectado(disp);
+            telemetria.registrar(disp.getAddress(), Telemetria.TIPO_RECONEXION_MS, recuperacionMs);
+            if (tratamientoController.reanudarSesion(disp)) {
+                Button btnInicio = disp == dispositivo1 ? InicioPulsos : InicioPulsos2;
+                UIHelper.setButtonColor(btnInicio, UIHelper.COLOR_SESION_ACTIVA);
+                btnInicio.setText("Actualizar");
+            }
+            Toast.makeText(MainActivity.this, "Dispositivo " + disp.getId() + " reconectado",
+                    Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        public void onReconexionFallida(DispositivoState disp, String mensaje) {
+            tratamientoController.descartarSesionSuspendida(disp);
+            disp.resetCompleto();
+            mostrarDesconectado(disp);
+            Toast.makeText(MainActivity.this, mensaje, Toast.LENGTH_SHORT).show();
+        }
+    };
+
+    /**
+     * Si el dispositivo se está reconectando, deja de intentarlo y descarta
+     * la sesión suspendida.
+     * @return true si había una reconexión en curso
+     */
+    private boolean cancelarReconexion(DispositivoState disp) {
+        if (!bluetoothController.isReconectando(disp)) return false;
+        bluetoothController.cancelarReconexion(disp);
+        tratamientoController.descartarSesionSuspendida(disp);
+        disp.resetCompleto();
+        mostrarDesconectado(disp);
+        Toast.makeText(this, "Reconexión cancelada", Toast.LENGTH_SHORT).show();
+        return true;
+    }
+
+    private void mostrarReconectando(DispositivoState disp) {
+        Button btnConexion = disp == dispositivo1 ? Conexion : Conexion2;
+        Button btnInicio = disp == dispositivo1 ? InicioPulsos : InicioPulsos2;
+        ImageView iconBatt = disp == dispositivo1 ? iconBatt1 : iconBatt2;
+
+        UIHelper.setButtonColor(btnConexion, UIHelper.COLOR_CONECTANDO);
+        btnConexion.setText("reconectando...");
+        btnInicio.setEnabled(false);
+        UIHelper.setButtonColor(btnInicio, UIHelper.COLOR_DESHABILITADO);
+        iconBatt.setImageResource(R.drawable.ic_battery_unknown);
+    }
+
+    private void mostrarDesconectado(DispositivoState disp) {
+        boolean esPrimero = disp == dispositivo1;
+        Button btnConexion = esPrimero ? Conexion : Conexion2;
+        Button btnInicio = esPrimero ? InicioPulsos : InicioPulsos2;
+        Button btnFin = esPrimero ? FinPulsos : FinPulsos2;
+        TextView lblNombre = esPrimero ? dispBluetoothNom1 : dispBluetoothNom2;
+        ImageView iconBatt = esPrimero ? iconBatt1 : iconBatt2;
+
+        UIHelper.resetButtonToDefault(btnConexion);
+        btnConexion.setText("Conectar");
+        lblNombre.setText("");
+        lblNombre.setVisibility(View.GONE);
+        iconBatt.setVisibility(View.GONE);
+        btnInicio.setEnabled(false);
+        UIHelper.setButtonColor(btnInicio, UIHelper.COLOR_DESHABILITADO);
+        btnInicio.setText("Iniciar");
+        UIHelper.resetButtonToDefault(btnFin);
+    }
+
+    /**
+     * Conecta en paralelo los estimuladores conocidos a los slots libres.
+     * @return true: consume la pulsación larga
+     */
+    private boolean conectarTodos() {
+        if (!tienePermisoBluetooth()) {
+            return true;
+        }
+        for (DispositivoState disp : registro.getTodos()) {
+            if (!disp.isConnected()) {
+                Button btnConexion = disp == dispositivo1 ? Conexion : Conexion2;
+                UIHelper.setButtonColor(btnConexion, UIHelper.COLOR_CONECTANDO);
+                btnConexion.setText("conectando...");
+            }
+        }
+        bluetoothController.conectarTodos(new BluetoothController.OnResultadoConexion() {
+            @Override
+            public void onConectado(DispositivoState dispositivo) {
+                mostrarConectado(dispositivo);
+            }
+
+            @Override
+            public void onFallo(DispositivoState dispositivo, String mensaje) {
+                mostrarErrorConexion(dispositivo, mensaje);
+            }
+        });
+        return true;
+    }
+
+    private void mostrarConectado(DispositivoState disp) {
+        boolean esPrimero = disp == dispositivo1;
+        Button btnConexion = esPrimero ? Conexion : Conexion2;
+        Button btnInicio = esPrimero ? InicioPulsos : InicioPulsos2;
+        TextView lblNombre = esPrimero ? dispBluetoothNom1 : dispBluetoothNom2;
+        ImageView iconBatt = esPrimero ? iconBatt1 : iconBatt2;
+
+        UIHelper.setButtonColor(btnConexion, UIHelper.COLOR_CONECTADO);
+        btnConexion.setTextColor(Color.BLACK);
+        btnConexion.setText("conectado");
+        btnInicio.setEnabled(true);
+        UIHelper.resetButtonToDefault(btnInicio);
+
+        String nomBT = construirNombreBT(disp);
+        lblNombre.setText(nomBT);
+        lblNombre.setVisibility(View.VISIBLE);
+        iconBatt.setImageResource(R.drawable.ic_battery_unknown);
+        iconBatt.setVisibility(View.VISIBLE);
+        tratamientoController.iniciarMonitorizacionBateria(disp);
+
+    }
+
+    private void mostrarErrorConexion(DispositivoState disp, String error) {
+        Button btnConexion = disp == dispositivo1 ? Conexion : Conexion2;
+        UIHelper.resetButtonToDefault(btnConexion);
+        btnConexion.setText("Conectar");
+        Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
+    }
+
     // ========================
     // LISTENERS
     // ========================
@@ -398,6 +531,9 @@ public class MainActivity extends AppCompatActivity
     private void configurarListeners() {
         // CONECTAR Dispositivo 1
         Conexion.setOnClickListener(v -> {
+            // Pulsar durante la reconexión automática la cancela
+            if (cancelarReconexion(dispositivo1)) return;
+
             // Verificar permiso Bluetooth antes de conectar (Android 12+)
             if (!tienePermisoBluetooth()) {
                 dispositivoPendienteConexion = 1;
@@ -407,36 +543,16 @@ public class MainActivity extends AppCompatActivity
             UIHelper.setButtonColor(Conexion, UIHelper.COLOR_CONECTANDO);
             Conexion.setText("conectando...");
 
-            bluetoothController.conectarDispositivo(dispositivo1, () -> {
-                runOnUiThread(() -> {
-                    UIHelper.setButtonColor(Conexion, UIHelper.COLOR_CONECTADO);
-                    Conexion.setTextColor(Color.BLACK);
-                    Conexion.setText("conectado");
-                    InicioPulsos.setEnabled(true);
-                    UIHelper.resetButtonToDefault(InicioPulsos);
-
-                    String nomBT = construirNombreBT(dispositivo1);
-                    dispBluetoothNom1.setText(nomBT);
-                    dispBluetoothNom1.setVisibility(View.VISIBLE);
-                    iconBatt1.setImageResource(R.drawable.ic_battery_unknown);
-                    iconBatt1.setVisibility(View.VISIBLE);
-                    tratamientoController.iniciarMonitorizacionBateria(dispositivo1);
-
-                    // Proteger contra ACL_DISCONNECTED espurio de conexión anterior
-                    recentlyConnected1 = true;
-                    aclDebounceHandler.postDelayed(() -> recentlyConnected1 = false, 3000);
-                });
-            }, error -> {
-                runOnUiThread(() -> {
-                    UIHelper.resetButtonToDefault(Conexion);
-                    Conexion.setText("Conectar");
-                    Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
-                });
-            });
+            bluetoothController.conectarDispositivo(dispositivo1,
+                    () -> runOnUiThread(() -> mostrarConectado(dispositivo1)),
+                    error -> runOnUiThread(() -> mostrarErrorConexion(dispositivo1, error)));
         });
 
         // CONECTAR Dispositivo 2
         Conexion2.setOnClickListener(v -> {
+            // Pulsar durante la reconexión automática la cancela
+            if (cancelarReconexion(dispositivo2)) return;
+
             // Verificar permiso Bluetooth antes de conectar (Android 12+)
             if (!tienePermisoBluetooth()) {
                 dispositivoPendienteConexion = 2;
@@ -446,34 +562,15 @@ public class MainActivity extends AppCompatActivity
             UIHelper.setButtonColor(Conexion2, UIHelper.COLOR_CONECTANDO);
             Conexion2.setText("conectando...");
 
-            bluetoothController.conectarDispositivo(dispositivo2, () -> {
-                runOnUiThread(() -> {
-                    UIHelper.setButtonColor(Conexion2, UIHelper.COLOR_CONECTADO);
-                    Conexion2.setTextColor(Color.BLACK);
-                    Conexion2.setText("conectado");
-                    InicioPulsos2.setEnabled(true);
-                    UIHelper.resetButtonToDefault(InicioPulsos2);
-
-                    String nomBT = construirNombreBT(dispositivo2);
-                    dispBluetoothNom2.setText(nomBT);
-                    dispBluetoothNom2.setVisibility(View.VISIBLE);
-                    iconBatt2.setImageResource(R.drawable.ic_battery_unknown);
-                    iconBatt2.setVisibility(View.VISIBLE);
-                    tratamientoController.iniciarMonitorizacionBateria(dispositivo2);
-
-                    // Proteger contra ACL_DISCONNECTED espurio de conexión anterior
-                    recentlyConnected2 = true;
-                    aclDebounceHandler.postDelayed(() -> recentlyConnected2 = false, 3000);
-                });
-            }, error -> {
-                runOnUiThread(() -> {
-                    UIHelper.resetButtonToDefault(Conexion2);
-                    Conexion2.setText("Conectar");
-                    Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
-                });
-            });
+            bluetoothController.conectarDispositivo(dispositivo2,
+                    () -> runOnUiThread(() -> mostrarConectado(dispositivo2)),
+                    error -> runOnUiThread(() -> mostrarErrorConexion(dispositivo2, error)));
         });
 
+        // CONECTAR TODOS los dispositivos conocidos (pulsación larga)
+        Conexion.setOnLongClickListener(v -> conectarTodos());
+        Conexion2.setOnLongClickListener(v -> conectarTodos());
+
         // INICIAR Dispositivo 1
         InicioPulsos.setOnClickListener(v -> {
             if (!dispositivo1.isConnected()) return;
@@ -579,9 +676,9 @@ public class MainActivity extends AppCompatActivity
     // ========================
 
     @Override
-    public void onTiempoRestanteActualizado(int dispositivoNum, int minutosRestantes) {
+    public void onTiempoRestanteActualizado(int dispositivoId, int minutosRestantes) {
         runOnUiThread(() -> {
-            if (dispositivoNum == 1) {
+            if (dispositivoId == 1) {
                 Param5.setText(String.valueOf(minutosRestantes));
             } else {
                 Param13.setText(String.valueOf(minutosRestantes));
@@ -590,22 +687,27 @@ public class MainActivity extends AppCompatActivity
     }
 
     @Override
-    public void onSesionFinalizada(int dispositivoNum) {
+    public void onSegundosRestantesActualizados(int dispositivoId, int segundosRestantes) {
+        // La pantalla solo muestra minutos (no se activa setResolucionSegundos)
+    }
+
+    @Override
+    public void onSesionFinalizada(int dispositivoId) {
         runOnUiThread(() -> {
-            if (dispositivoNum == 1) {
+            if (dispositivoId == 1) {
                 InicioPulsos.setText("Iniciar");
                 UIHelper.resetButtonToDefault(InicioPulsos);
             } else {
                 InicioPulsos2.setText("Iniciar");
                 UIHelper.resetButtonToDefault(InicioPulsos2);
             }
-            Toast.makeText(this, "Sesión finalizada (Dispositivo " + dispositivoNum + ")",
+            Toast.makeText(this, "Sesión finalizada (Dispositivo " + dispositivoId + ")",
                     Toast.LENGTH_SHORT).show();
         });
     }
 
     @Override
-    public void onBateriaActualizada(int dispositivoNum, int valorCarga, int nivel, String textoNivel) {
+    public void onBateriaActualizada(int dispositivoId, int valorCarga, int nivel, String textoNivel) {
         runOnUiThread(() -> {
             int iconRes;
             switch (nivel) {
@@ -620,7 +722,7 @@ public class MainActivity extends AppCompatActivity
                     break;
             }
 
-            if (dispositivoNum == 1) {
+            if (dispositivoId == 1) {
                 iconBatt1.setImageResource(iconRes);
                 iconBatt1.setVisibility(View.VISIBLE);
                 OtroTexto6.setText(String.valueOf(valorCarga));
@@ -633,26 +735,36 @@ public class MainActivity extends AppCompatActivity
     }
 
     @Override
-    public void onError(int dispositivoNum, String mensaje) {
+    public void onError(int dispositivoId, String mensaje) {
         runOnUiThread(() -> {
-            Toast.makeText(this, "Disp." + dispositivoNum + ": " + mensaje,
+            Toast.makeText(this, "Disp." + dispositivoId + ": " + mensaje,
                     Toast.LENGTH_SHORT).show();
         });
     }
 
     @Override
-    public void onSesionIniciada(int dispositivoNum) {
-        Log.d(TAG, "Sesión iniciada en dispositivo " + dispositivoNum);
+    public void onSesionIniciada(int dispositivoId) {
+        Log.d(TAG, "Sesión iniciada en dispositivo " + dispositivoId);
     }
 
     @Override
-    public void onIntensidadActualizada(int dispositivoNum, int intensidad) {
+    public void onIntensidadActualizada(int dispositivoId, int intensidad) {
         runOnUiThread(() -> {
             Toast.makeText(this, "Intensidad actualizada a " + intensidad,
                     Toast.LENGTH_SHORT).show();
         });
     }
 
+    @Override
+    public void onEnlacePerdido(int dispositivoId, String motivo) {
+        runOnUiThread(() -> {
+            DispositivoState disp = registro.obtener(dispositivoId);
+            if (disp == null || !disp.isConnected()) return;
+            Log.w(TAG, "Enlace perdido con dispositivo " + dispositivoId + ": " + motivo);
+            perderEnlace(disp);
+        });
+    }
+
     // ========================
     // HELPERS
     // ========================
@@ -667,29 +779,25 @@ public class MainActivity extends AppCompatActivity
 
     private void registrarSesionEnDB(String dniPaciente, String nombreDisp,
                                      int intensidad, int duracion) {
-        Paciente pac = buscarPacientePorDNI(dniPaciente);
-        if (pac != null) {
-            long error = (long)-1;
-            if (usuarioController.haySesionActiva()){
-                int idUsuarioActual = usuarioController.getUsuarioActual().getId();
-                error = sesionController.registrarSesion(pac.getID(), idUsuarioActual, nombreDisp, intensidad, duracion);
-            }else {
-                error = sesionController.registrarSesion(pac.getID(), nombreDisp, intensidad, duracion);
-            }
-
-            if (error == (long)-1){
-                Toast.makeText(this, "Hubo error al guardar la Sesion en la BBDD", Toast.LENGTH_LONG);
+        // Búsqueda del paciente (consulta puntual por DNI) y registro de la
+        // sesión en segundo plano: se llama justo al iniciar los pulsos y no
+        // debe bloquear la UI.
+        final int idUsuarioActual = usuarioController.getIdUsuarioActual();
+        pacienteController.obtenerPacientePorDNIAsync(dniPaciente, pac -> {
+            if (pac == null) {
+                if (!isFinishing()) {
+                    Toast.makeText(this, "No se a podido detectar al Paciente", Toast.LENGTH_SHORT).show();
+                }
+                return;
             }
-        }else{
-            Toast.makeText(this,"No se a podido detectar al Paciente", Toast.LENGTH_SHORT);
-        }
-    }
 
-    private Paciente buscarPacientePorDNI(String dni) {
-        for (Paciente p : pacienteController.obtenerTodosPacientes()) {
-            if (p.getDNI().equals(dni)) return p;
-        }
-        return null;
+            sesionController.registrarSesionAsync(pac.getID(), idUsuarioActual, nombreDisp, intensidad, duracion,
+                    idSesion -> {
+                        if (idSesion == -1 && !isFinishing()) {
+                            Toast.makeText(this, "Hubo error al guardar la Sesion en la BBDD", Toast.LENGTH_LONG).show();
+                        }
+                    });
+        });
     }
 
     private void guardarConfiguracionPaciente() {
@@ -707,8 +815,11 @@ public class MainActivity extends AppCompatActivity
         if (DNIpaciente != null && !DNIpaciente.isEmpty()) {
             int intensidad = Integer.parseInt(Param3.getText().toString());
             int tiempo = Integer.parseInt(Param4.getText().toString());
-            pacienteController.guardarConfiguracion(DNIpaciente, intensidad, tiempo);
-            Toast.makeText(this, "Configuración guardada", Toast.LENGTH_SHORT).show();
+            pacienteController.guardarConfiguracionAsync(DNIpaciente, intensidad, tiempo, resultado -> {
+                if (isFinishing()) return;
+                Toast.makeText(this, resultado.exito ? "Configuración guardada" : resultado.mensaje,
+                        Toast.LENGTH_SHORT).show();
+            });
         }
     }
 
@@ -844,12 +955,8 @@ public class MainActivity extends AppCompatActivity
                                         ImageView iconBatt) {
         tratamientoController.finalizarSesion(disp);
         tratamientoController.detenerMonitorizacionBateria(disp);
-        try {
-            if (disp.getBtSocket() != null) disp.getBtSocket().close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        disp.resetCompleto();
+        // Espera a que salga la parada encolada antes de cerrar el socket
+        bluetoothController.desconectar(disp);
 
         UIHelper.resetButtonToDefault(btnConexion);
         btnConexion.setText("Conectar");
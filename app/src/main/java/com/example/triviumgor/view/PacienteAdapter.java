@@ -0,0 +1,133 @@
+package com.example.triviumgor.view;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.triviumgor.model.PacienteResumen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter de la lista de pacientes de VentanaPacienteActivity.
+ *
+ * La lista se carga por páginas: cuando se pinta una de las últimas filas se
+ * avisa al listener (onFinDeLista) para que pida la siguiente página y la
+ * añada con agregarPagina(). Cada fila lleva el ID real del paciente
+ * (stable ids), así que no hace falta traducir posiciones a IDs.
+ */
+public class PacienteAdapter extends RecyclerView.Adapter<PacienteAdapter.PacienteViewHolder> {
+
+    // Se pide la siguiente página cuando quedan menos de estas filas por pintar
+    private static final int UMBRAL_CARGA = 10;
+
+    public interface OnPacienteClickListener {
+        void onPacienteClick(PacienteResumen paciente);
+
+        /** Se han pintado las últimas filas cargadas y puede haber más */
+        void onFinDeLista();
+    }
+
+    private final List<PacienteResumen> pacientes = new ArrayList<>();
+    private final OnPacienteClickListener listener;
+    private boolean hayMas = false;
+
+    // Texto a mostrar como única fila cuando no hay pacientes (p. ej. "Cargando...")
+    private String mensaje;
+
+    public PacienteAdapter(OnPacienteClickListener listener) {
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    /** Sustituye el contenido por la primera página (o por un resultado de búsqueda) */
+    public void reemplazar(List<PacienteResumen> pagina, boolean hayMas) {
+        pacientes.clear();
+        pacientes.addAll(pagina);
+        this.hayMas = hayMas;
+        notifyDataSetChanged();
+    }
+
+    /** Añade la siguiente página al final de la lista */
+    public void agregarPagina(List<PacienteResumen> pagina, boolean hayMas) {
+        int inicio = pacientes.size();
+        pacientes.addAll(pagina);
+        this.hayMas = hayMas;
+        notifyItemRangeInserted(inicio, pagina.size());
+    }
+
+    /**
+     * Mensaje que se muestra cuando la lista está vacía.
+     * @param mensaje texto, o null para no mostrar nada
+     */
+    public void setMensaje(String mensaje) {
+        this.mensaje = mensaje;
+        if (pacientes.isEmpty()) notifyDataSetChanged();
+    }
+
+    /** @return último paciente cargado (clave de la siguiente página), o null */
+    public PacienteResumen getUltimo() {
+        return pacientes.isEmpty() ? null : pacientes.get(pacientes.size() - 1);
+    }
+
+    public boolean hayMas() {
+        return hayMas;
+    }
+
+    private boolean mostrandoMensaje() {
+        return pacientes.isEmpty() && mensaje != null;
+    }
+
+    @NonNull
+    @Override
+    public PacienteViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_1, parent, false);
+        return new PacienteViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PacienteViewHolder holder, int position) {
+        if (mostrandoMensaje()) {
+            holder.tvTexto.setText(mensaje);
+            holder.itemView.setOnClickListener(null);
+            return;
+        }
+
+        holder.tvTexto.setText(pacientes.get(position).getTextoLista());
+        holder.itemView.setOnClickListener(v -> {
+            int pos = holder.getAdapterPosition();
+            if (listener != null && pos != RecyclerView.NO_POSITION && pos < pacientes.size()) {
+                listener.onPacienteClick(pacientes.get(pos));
+            }
+        });
+
+        if (hayMas && listener != null && position >= pacientes.size() - UMBRAL_CARGA) {
+            listener.onFinDeLista();
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mostrandoMensaje() ? 1 : pacientes.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mostrandoMensaje() ? RecyclerView.NO_ID : pacientes.get(position).getID();
+    }
+
+    static class PacienteViewHolder extends RecyclerView.ViewHolder {
+        TextView tvTexto;
+
+        PacienteViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvTexto = itemView.findViewById(android.R.id.text1);
+        }
+    }
+}
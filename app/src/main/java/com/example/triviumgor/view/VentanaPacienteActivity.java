@@ -13,7 +13,6 @@ import android.widget.RadioGroup;
 import android.widget.Spinner;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.ListView;
 import android.widget.RelativeLayout;
 import android.widget.ScrollView;
 import android.widget.TextView;
@@ -21,12 +20,17 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.triviumgor.R;
 import com.example.triviumgor.controller.PacienteController;
 import com.example.triviumgor.controller.UsuarioController;
 import com.example.triviumgor.database.PacienteDataManager;
+import com.example.triviumgor.database.PacienteRepository;
 import com.example.triviumgor.model.Paciente;
+import com.example.triviumgor.model.PacienteResumen;
 
 import java.util.List;
 
@@ -42,8 +46,14 @@ public class VentanaPacienteActivity extends AppCompatActivity {
     private Button btnVerHistorico, verList, crearPac;
     private TextView nomSelPaciente;
 
-    // Lista
-    private ListView vieLista;
+    // Lista (paginada)
+    private static final int TAMANO_PAGINA = 50;
+    private RecyclerView vieLista;
+    private PacienteAdapter pacienteAdapter;
+    private boolean cargandoPagina = false;
+    // Cada recarga o búsqueda abre una generación nueva: las respuestas de
+    // páginas pedidas en una generación anterior llegan tarde y se descartan
+    private int generacionLista = 0;
     private RelativeLayout verLista;
     private Button btnBuscar;
 
@@ -69,8 +79,6 @@ public class VentanaPacienteActivity extends AppCompatActivity {
     private Button btnEditar, btnBorrar, btnIniciarTratamiento;
 
     private int pacienteSeleccionadoId = -1;
-    private String[] pacientesNombres;
-    private int[] pacientesIds;
     private boolean filtrado = false;
 
     // Datos recibidos de MainActivity
@@ -95,7 +103,7 @@ public class VentanaPacienteActivity extends AppCompatActivity {
 
         // Inicializar base de datos
         try {
-            dataManager = new PacienteDataManager(this);
+            dataManager = PacienteDataManager.getInstance(this);
             if (!dataManager.open()) {
                 Toast.makeText(this, "Error al abrir la base de datos", Toast.LENGTH_LONG).show();
                 finish();
@@ -163,45 +171,22 @@ public class VentanaPacienteActivity extends AppCompatActivity {
         btnBuscar = findViewById(R.id.botonBuscar);
         btnBuscar.setOnClickListener(v -> mostrarDialogoFiltrar());
 
-        // Adaptador inicial
-        pacientesNombres = new String[]{"Cargando pacientes..."};
-        vieLista.setAdapter(new ArrayAdapter<>(this,
-                android.R.layout.simple_list_item_1, pacientesNombres));
-
-        // Click en paciente de la lista
-        vieLista.setOnItemClickListener((parent, view, position, id) -> {
-            if (pacientesNombres.length == 1 && pacientesNombres[0].equals("No hay pacientes registrados")) {
-                return;
-            }
-
-            String nombrePac = vieLista.getAdapter().getItem(position).toString();
-            nombrePac = nombrePac.substring(nombrePac.indexOf("-") + 1);
-            Toast.makeText(this, "Seleccionaste: " + nombrePac, Toast.LENGTH_SHORT).show();
-            nomSelPaciente.setText(nombrePac);
-            verLista.setVisibility(View.INVISIBLE);
-
-            // Obtener ID real
-            if (filtrado) {
-                String nombreFiltrado = vieLista.getAdapter().getItem(position).toString();
-                actualizarListaPacientes();
-                pacienteSeleccionadoId = -1;
-                for (int i = 0; i < pacientesNombres.length; i++) {
-                    if (nombreFiltrado.equals(pacientesNombres[i])) {
-                        pacienteSeleccionadoId = pacientesIds[i];
-                        break;
-                    }
-                }
-            } else {
-                pacienteSeleccionadoId = (position < pacientesIds.length) ? pacientesIds[position] : -1;
+        // Lista paginada: se carga la primera página y el resto al hacer scroll
+        pacienteAdapter = new PacienteAdapter(new PacienteAdapter.OnPacienteClickListener() {
+            @Override
+            public void onPacienteClick(PacienteResumen paciente) {
+                seleccionarPaciente(paciente);
             }
 
-            if (pacienteSeleccionadoId != -1) {
-                cargarDetallesPaciente(pacienteSeleccionadoId);
-                detallesScrollView.setVisibility(View.VISIBLE);
-                verLista.setVisibility(View.GONE);
-                pacienteScrollView.setVisibility(View.GONE);
+            @Override
+            public void onFinDeLista() {
+                cargarSiguientePagina();
             }
         });
+        pacienteAdapter.setMensaje("Cargando pacientes...");
+        vieLista.setLayoutManager(new LinearLayoutManager(this));
+        vieLista.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        vieLista.setAdapter(pacienteAdapter);
 
         actualizarListaPacientes();
         procesarExtras();
@@ -270,46 +255,59 @@ public class VentanaPacienteActivity extends AppCompatActivity {
             genero = "FEMENINO";
         }
 
-        PacienteController.Resultado resultado;
+        // Capturamos datos del formulario ANTES de lanzar el guardado
+        final String _dni        = dni;
+        final String _nombre     = nombre;
+        final String _ap1        = apellido1;
+        final String _ap2        = apellido2;
+        final String _edad       = edad;
+        final String _cic        = cic;
+        final String _patologia  = patologia;
+        final String _medicacion = medicacion;
+        final String _intensidad = intensidadStr;
+        final String _tiempo     = tiempoStr;
+        final String _genero     = genero;
+
+        // El guardado (validación de DNI + insert/update) va en segundo plano
+        PacienteRepository.Callback<PacienteController.Resultado> alGuardar = resultado -> {
+            if (isFinishing()) return;
+            btnGuardar.setEnabled(true);
+            mostrarResultadoGuardado(resultado, _dni, _nombre, _ap1, _ap2, _edad, _cic,
+                    _patologia, _medicacion, _intensidad, _tiempo, _genero);
+        };
 
+        btnGuardar.setEnabled(false);
         if (editando) {
             if (optionDis == 3) {
-                resultado = pacienteController.actualizarPaciente2disp(idEditando, dni, nombre,
+                pacienteController.actualizarPaciente2dispAsync(idEditando, dni, nombre,
                         apellido1, apellido2, edad, genero, patologia, medicacion,
-                        intensidadStr, tiempoStr, intensidadStr2, tiempoStr2, cic);
+                        intensidadStr, tiempoStr, intensidadStr2, tiempoStr2, cic, alGuardar);
             } else {
-                resultado = pacienteController.actualizarPaciente(idEditando, dni, nombre,
+                pacienteController.actualizarPacienteAsync(idEditando, dni, nombre,
                         apellido1, apellido2, edad, genero, patologia, medicacion,
-                        intensidadStr, tiempoStr, cic);
+                        intensidadStr, tiempoStr, cic, alGuardar);
             }
         } else {
             if (optionDis == 3) {
-                resultado = pacienteController.guardarPaciente2disp(idUsuarioReal,dni, nombre, apellido1, apellido2, edad, genero,
+                pacienteController.guardarPaciente2dispAsync(idUsuarioReal,dni, nombre, apellido1, apellido2, edad, genero,
                         patologia, medicacion,
-                        intensidadStr, tiempoStr, intensidadStr2, tiempoStr2, cic);
+                        intensidadStr, tiempoStr, intensidadStr2, tiempoStr2, cic, alGuardar);
             } else {
-                resultado = pacienteController.guardarPaciente(idUsuarioReal,dni, nombre, apellido1, apellido2, edad, genero,
+                pacienteController.guardarPacienteAsync(idUsuarioReal,dni, nombre, apellido1, apellido2, edad, genero,
                         patologia, medicacion,
-                        intensidadStr, tiempoStr, cic);
+                        intensidadStr, tiempoStr, cic, alGuardar);
             }
         }
+    }
 
+    private void mostrarResultadoGuardado(PacienteController.Resultado resultado,
+                                          String _dni, String _nombre, String _ap1, String _ap2,
+                                          String _edad, String _cic, String _patologia,
+                                          String _medicacion, String _intensidad, String _tiempo,
+                                          String _genero) {
         Toast.makeText(this, resultado.mensaje, Toast.LENGTH_SHORT).show();
 
         if (resultado.exito) {
-            // Capturamos datos del formulario ANTES de limpiar
-            final String _dni        = dni;
-            final String _nombre     = nombre;
-            final String _ap1        = apellido1;
-            final String _ap2        = apellido2;
-            final String _edad       = edad;
-            final String _cic        = cic;
-            final String _patologia  = patologia;
-            final String _medicacion = medicacion;
-            final String _intensidad = intensidadStr;
-            final String _tiempo     = tiempoStr;
-            final String _genero     = genero;
-
             pacienteSeleccionadoId = (int) resultado.id;
 
             limpiarCampos();
@@ -361,27 +359,51 @@ public class VentanaPacienteActivity extends AppCompatActivity {
     // LISTA DE PACIENTES
     // ========================
 
+    /**
+     * Recarga la lista desde la primera página, en segundo plano.
+     * Solo se lee una página; el resto se pide al hacer scroll.
+     */
     private void actualizarListaPacientes() {
-        List<com.example.triviumgor.model.Paciente> lista = (idUsuarioActual == -1)
-                ? pacienteController.obtenerTodosPacientes()
-                : pacienteController.obtenerPacientesDeUsuario(idUsuarioActual);
-        if (lista.isEmpty()) {
-            pacientesNombres = new String[]{"No hay pacientes registrados"};
-            pacientesIds = new int[0];
-        } else {
-            pacientesNombres = new String[lista.size()];
-            pacientesIds = new int[lista.size()];
-            for (int i = 0; i < lista.size(); i++) {
-                com.example.triviumgor.model.Paciente p = lista.get(i);
-                pacientesNombres[i] = "DNI: " + p.getDNI() + " - " + p.getNombre() + " " + p.getAp1();
-                if (p.getAp2() != null && !p.getAp2().isEmpty())
-                    pacientesNombres[i] += " " + p.getAp2();
-                pacientesIds[i] = p.getID();
-            }
-        }
-        vieLista.setAdapter(new ArrayAdapter<>(this,
-                android.R.layout.simple_list_item_1, pacientesNombres));
-        filtrado = false;
+        final int generacion = ++generacionLista;
+        cargandoPagina = true;
+        pacienteController.obtenerPaginaPacientesAsync(idUsuarioActual, null, TAMANO_PAGINA, pagina -> {
+            if (generacion != generacionLista) return;
+            cargandoPagina = false;
+            if (isFinishing()) return;
+            filtrado = false;
+            pacienteAdapter.setMensaje("No hay pacientes registrados");
+            pacienteAdapter.reemplazar(pagina, pagina.size() == TAMANO_PAGINA);
+        });
+    }
+
+    private void cargarSiguientePagina() {
+        if (cargandoPagina || filtrado || !pacienteAdapter.hayMas()) return;
+
+        final int generacion = generacionLista;
+        cargandoPagina = true;
+        pacienteController.obtenerPaginaPacientesAsync(idUsuarioActual, pacienteAdapter.getUltimo(), TAMANO_PAGINA,
+                pagina -> {
+                    if (generacion != generacionLista) return;
+                    cargandoPagina = false;
+                    if (isFinishing() || filtrado) return;
+                    pacienteAdapter.agregarPagina(pagina, pagina.size() == TAMANO_PAGINA);
+                });
+    }
+
+    /** El resumen solo trae ID y nombre: la ficha completa se carga al abrirla */
+    private void seleccionarPaciente(PacienteResumen paciente) {
+        String nombrePac = paciente.getNombreCompleto();
+        Toast.makeText(this, "Seleccionaste: " + nombrePac, Toast.LENGTH_SHORT).show();
+        nomSelPaciente.setText(nombrePac);
+        pacienteSeleccionadoId = paciente.getID();
+
+        // Tras elegir un resultado de búsqueda se restaura la lista sin filtrar
+        if (filtrado) actualizarListaPacientes();
+
+        cargarDetallesPaciente(pacienteSeleccionadoId);
+        detallesScrollView.setVisibility(View.VISIBLE);
+        verLista.setVisibility(View.GONE);
+        pacienteScrollView.setVisibility(View.GONE);
     }
 
     // ========================
@@ -410,12 +432,14 @@ public class VentanaPacienteActivity extends AppCompatActivity {
 
         btnIniciarTratamiento.setOnClickListener(v -> {
             if (DNI_otroDisp != null && !DNI_otroDisp.isEmpty()) {
-                Paciente pac = pacienteController.obtenerPacientePorId(pacienteSeleccionadoId, optionDis);
-                if (pac != null && DNI_otroDisp.equals(pac.getDNI())) {
-                    mostrarDialogoMismoPaciente();
-                } else {
-                    cerrarYEnviarInfo();
-                }
+                pacienteController.obtenerPacientePorIdAsync(pacienteSeleccionadoId, optionDis, pac -> {
+                    if (isFinishing()) return;
+                    if (pac != null && DNI_otroDisp.equals(pac.getDNI())) {
+                        mostrarDialogoMismoPaciente();
+                    } else {
+                        cerrarYEnviarInfo();
+                    }
+                });
             } else {
                 cerrarYEnviarInfo();
             }
@@ -423,76 +447,87 @@ public class VentanaPacienteActivity extends AppCompatActivity {
 
         btnEditar.setOnClickListener(v -> {
             if (pacienteSeleccionadoId != -1) {
-                Paciente pac = pacienteController.obtenerPacientePorId(pacienteSeleccionadoId, optionDis);
-                if (pac == null) return;
-
-                detallesScrollView.setVisibility(View.GONE);
-                verLista.setVisibility(View.GONE);
-                pacienteScrollView.setVisibility(View.VISIBLE);
-
-                editando = true;
-                idEditando = pac.getID();
-
-                editDNI.setText(pac.getDNI());
-                editNombre.setText(pac.getNombre());
-                editApellido1.setText(pac.getAp1());
-                if (pac.getAp2() != null) editApellido2.setText(pac.getAp2());
-                // La edad es opcional; 0 se considera "sin especificar" y deja el campo vacío.
-                if (pac.getEdad() > 0) editEdad.setText(String.valueOf(pac.getEdad()));
-                if (pac.getPatologia() != null) editPatologia.setText(pac.getPatologia());
-                if (pac.getGenero() != null) {
-                    if (pac.getGenero() == Paciente.Genero.MASCULINO) {
-                        radioMasculino.setChecked(true);
-                    } else {
-                        radioFemenino.setChecked(true);
-                    }
-                } else {
-                    radioGroupGenero.clearCheck(); // ninguno marcado
-                }
-                if (pac.getMedicacion() != null) editMedicacion.setText(pac.getMedicacion());
-                if (pac.getCIC() != null) editCIC.setText(pac.getCIC());
-                if (pac.getIntensidad() >= 0) editIntensidad.setText(String.valueOf(pac.getIntensidad()));
-                if (pac.getTiempoM() >= 0) editTiempo.setText(String.valueOf(pac.getTiempoM()));
-
-                if (optionDis == 3) {
-                    editIntensidad2.setText(String.valueOf(pac.getIntensidad2()));
-                    editTiempo2.setText(String.valueOf(pac.getTiempoM2()));
-                }
-                configurarVisibilidadDisp2Editable();
+                pacienteController.obtenerPacientePorIdAsync(pacienteSeleccionadoId, optionDis,
+                        this::rellenarFormularioEdicion);
             }
         });
 
         btnVerHistorico.setOnClickListener(v -> {
             if (pacienteSeleccionadoId != -1) {
-                Paciente paciente = pacienteController.obtenerPacientePorId(pacienteSeleccionadoId, optionDis);
-                if (paciente != null) {
+                final int idPaciente = pacienteSeleccionadoId;
+                pacienteController.obtenerPacientePorIdAsync(idPaciente, optionDis, paciente -> {
+                    if (isFinishing() || paciente == null) return;
                     Intent intent = new Intent(this, HistorialSesionesActivity.class);
-                    intent.putExtra("PACIENTE_ID", pacienteSeleccionadoId);
+                    intent.putExtra("PACIENTE_ID", idPaciente);
                     intent.putExtra("NOMBRE_PACIENTE", paciente.getNombreCompleto());
                     startActivity(intent);
-                }
+                });
             } else {
                 Toast.makeText(this, "Seleccione un paciente primero", Toast.LENGTH_SHORT).show();
             }
         });
 
         btnBorrar.setOnClickListener(v -> {
-            PacienteController.Resultado resultado = pacienteController.eliminarPaciente(pacienteSeleccionadoId);
-            Toast.makeText(this, resultado.mensaje, Toast.LENGTH_SHORT).show();
-
-            if (resultado.exito) {
-                actualizarListaPacientes();
-                nomSelPaciente.setText("");
-                detallesScrollView.setVisibility(View.GONE);
-                verLista.setVisibility(View.VISIBLE);
-                pacienteScrollView.setVisibility(View.GONE);
-            }
+            pacienteController.eliminarPacienteAsync(pacienteSeleccionadoId, resultado -> {
+                if (isFinishing()) return;
+                Toast.makeText(this, resultado.mensaje, Toast.LENGTH_SHORT).show();
+
+                if (resultado.exito) {
+                    actualizarListaPacientes();
+                    nomSelPaciente.setText("");
+                    detallesScrollView.setVisibility(View.GONE);
+                    verLista.setVisibility(View.VISIBLE);
+                    pacienteScrollView.setVisibility(View.GONE);
+                }
+            });
         });
     }
 
+    private void rellenarFormularioEdicion(Paciente pac) {
+        if (isFinishing() || pac == null) return;
+
+        detallesScrollView.setVisibility(View.GONE);
+        verLista.setVisibility(View.GONE);
+        pacienteScrollView.setVisibility(View.VISIBLE);
+
+        editando = true;
+        idEditando = pac.getID();
+
+        editDNI.setText(pac.getDNI());
+        editNombre.setText(pac.getNombre());
+        editApellido1.setText(pac.getAp1());
+        if (pac.getAp2() != null) editApellido2.setText(pac.getAp2());
+        // La edad es opcional; 0 se considera "sin especificar" y deja el campo vacío.
+        if (pac.getEdad() > 0) editEdad.setText(String.valueOf(pac.getEdad()));
+        if (pac.getPatologia() != null) editPatologia.setText(pac.getPatologia());
+        if (pac.getGenero() != null) {
+            if (pac.getGenero() == Paciente.Genero.MASCULINO) {
+                radioMasculino.setChecked(true);
+            } else {
+                radioFemenino.setChecked(true);
+            }
+        } else {
+            radioGroupGenero.clearCheck(); // ninguno marcado
+        }
+        if (pac.getMedicacion() != null) editMedicacion.setText(pac.getMedicacion());
+        if (pac.getCIC() != null) editCIC.setText(pac.getCIC());
+        if (pac.getIntensidad() >= 0) editIntensidad.setText(String.valueOf(pac.getIntensidad()));
+        if (pac.getTiempoM() >= 0) editTiempo.setText(String.valueOf(pac.getTiempoM()));
+
+        if (optionDis == 3) {
+            editIntensidad2.setText(String.valueOf(pac.getIntensidad2()));
+            editTiempo2.setText(String.valueOf(pac.getTiempoM2()));
+        }
+        configurarVisibilidadDisp2Editable();
+    }
+
     private void cargarDetallesPaciente(int pacienteId) {
-        Paciente paciente = pacienteController.obtenerPacientePorId(pacienteId, optionDis);
-        if (paciente == null) return;
+        pacienteController.obtenerPacientePorIdAsync(pacienteId, optionDis,
+                paciente -> mostrarDetallesPaciente(pacienteId, paciente));
+    }
+
+    private void mostrarDetallesPaciente(int pacienteId, Paciente paciente) {
+        if (isFinishing() || paciente == null) return;
 
         tvDNI.setText("DNI: " + paciente.getDNI());
         tvCIC.setText("CIC: " + paciente.getCIC());
@@ -516,16 +551,18 @@ public class VentanaPacienteActivity extends AppCompatActivity {
 
         // Mostrar info del creador solo si el usuario es admin
         if (usuarioController.esAdmin()) {
-            String infoCreador = pacienteController.obtenerInfoCreador(pacienteId);
-            if (infoCreador != null) {
-                tvCreadoPor.setText("📝 Creado por: " + infoCreador);
-                tvCreadoPor.setVisibility(View.VISIBLE);
-                dividerCreador.setVisibility(View.VISIBLE);
-            } else {
-                tvCreadoPor.setText("📝 Creador: Sin registro");
-                tvCreadoPor.setVisibility(View.VISIBLE);
-                dividerCreador.setVisibility(View.VISIBLE);
-            }
+            pacienteController.obtenerInfoCreadorAsync(pacienteId, infoCreador -> {
+                if (isFinishing()) return;
+                if (infoCreador != null) {
+                    tvCreadoPor.setText("📝 Creado por: " + infoCreador);
+                    tvCreadoPor.setVisibility(View.VISIBLE);
+                    dividerCreador.setVisibility(View.VISIBLE);
+                } else {
+                    tvCreadoPor.setText("📝 Creador: Sin registro");
+                    tvCreadoPor.setVisibility(View.VISIBLE);
+                    dividerCreador.setVisibility(View.VISIBLE);
+                }
+            });
         } else {
             tvCreadoPor.setVisibility(View.GONE);
             dividerCreador.setVisibility(View.GONE);
@@ -563,15 +600,25 @@ public class VentanaPacienteActivity extends AppCompatActivity {
                     String filtro = editText.getText().toString().toLowerCase().trim();
                     String campo = spinner.getSelectedItem().toString();
 
-                    List<String> resultados = pacienteController.filtrarPacientes(filtro, campo);
-                    vieLista.setAdapter(new ArrayAdapter<>(this,
-                            android.R.layout.simple_list_item_1, resultados));
-                    filtrado = true;
+                    // Se filtra sobre los pacientes visibles para el usuario actual
+                    if (filtro.isEmpty()) {
+                        actualizarListaPacientes();
+                        Toast.makeText(this, "Mostrando todos los elementos", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
 
-                    Toast.makeText(this,
-                            filtro.isEmpty() ? "Mostrando todos los elementos"
-                                    : "Se encontraron " + resultados.size() + " resultados",
-                            Toast.LENGTH_SHORT).show();
+                    final int generacion = ++generacionLista;
+                    pacienteController.buscarPacientesAsync(filtro, campo, idUsuarioActual, resultados -> {
+                        if (generacion != generacionLista) return;
+                        cargandoPagina = false;
+                        if (isFinishing()) return;
+                        filtrado = true;
+                        pacienteAdapter.setMensaje("Sin resultados");
+                        pacienteAdapter.reemplazar(resultados, false);
+
+                        Toast.makeText(this, "Se encontraron " + resultados.size() + " resultados",
+                                Toast.LENGTH_SHORT).show();
+                    });
                 })
                 .setNegativeButton("Cancelar", (dialog, which) -> dialog.dismiss())
                 .create().show();
@@ -597,23 +644,17 @@ public class VentanaPacienteActivity extends AppCompatActivity {
 
         if (nomPacienteDado != null && !nomPacienteDado.isEmpty()
                 && DNIpacienteDado != null && !DNIpacienteDado.isEmpty()) {
-            int posicionDado = -1;
-            for (int i = 0; i < pacientesNombres.length; i++) {
-                if (pacientesNombres[i].contains(nomPacienteDado)
-                        && pacientesNombres[i].contains(DNIpacienteDado)) {
-                    posicionDado = i;
-                }
-            }
-            if (posicionDado >= 0) {
-                String nombrePacDado = pacientesNombres[posicionDado];
-                nombrePacDado = nombrePacDado.substring(nombrePacDado.indexOf("-") + 1);
-                nomSelPaciente.setText(nombrePacDado);
-                pacienteSeleccionadoId = pacientesIds[posicionDado];
+            // El paciente recibido se localiza por DNI (consulta puntual), sin
+            // depender de que la lista completa esté cargada
+            pacienteController.obtenerPacientePorDNIAsync(DNIpacienteDado, pac -> {
+                if (isFinishing() || pac == null) return;
+                nomSelPaciente.setText(pac.getNombreCompleto());
+                pacienteSeleccionadoId = pac.getID();
                 cargarDetallesPaciente(pacienteSeleccionadoId);
                 detallesScrollView.setVisibility(View.VISIBLE);
                 verLista.setVisibility(View.GONE);
                 pacienteScrollView.setVisibility(View.GONE);
-            }
+            });
         } else {
             detallesScrollView.setVisibility(View.GONE);
             verLista.setVisibility(View.GONE);
@@ -658,8 +699,12 @@ public class VentanaPacienteActivity extends AppCompatActivity {
     private void cerrarYEnviarInfo() {
         if (pacienteSeleccionadoId == -1) return;
 
-        Paciente paciente = pacienteController.obtenerPacientePorId(pacienteSeleccionadoId, optionDis);
-        if (paciente == null) return;
+        pacienteController.obtenerPacientePorIdAsync(pacienteSeleccionadoId, optionDis,
+                this::enviarInfoPaciente);
+    }
+
+    private void enviarInfoPaciente(Paciente paciente) {
+        if (isFinishing() || paciente == null) return;
 
         Intent resultIntent = new Intent(this, MainActivity.class);
         resultIntent.putExtra("INTENSIDAD", paciente.getIntensidad());
@@ -683,10 +728,4 @@ public class VentanaPacienteActivity extends AppCompatActivity {
             tilTiempo2.setVisibility(View.GONE);
         }
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (dataManager != null) dataManager.close();
-    }
 }
\ No newline at end of file
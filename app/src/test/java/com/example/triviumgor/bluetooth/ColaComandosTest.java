@@ -0,0 +1,349 @@
+package com.example.triviumgor.bluetooth;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ColaComandosTest {
+
+    private static final long ESPERA_S = 5;
+
+    private final ByteArrayOutputStream salida = new ByteArrayOutputStream();
+    private ColaComandos cola;
+
+    @After
+    public void cerrar() {
+        if (cola != null) cola.cerrar();
+    }
+
+    /** Escribe los bytes de uno en uno, cediendo el hilo entre bytes */
+    private static ColaComandos.Escritura trama(final byte... bytes) {
+        return os -> {
+            for (byte b : bytes) {
+                os.write(b);
+                Thread.yield();
+            }
+        };
+    }
+
+    /** Comando que se queda escribiendo hasta que se abra la barrera */
+    private static ColaComandos.Escritura bloqueado(final CountDownLatch dentro, final CountDownLatch barrera) {
+        return os -> {
+            dentro.countDown();
+            try {
+                barrera.await();
+            } catch (InterruptedException e) {
+                throw new IOException("interrumpido", e);
+            }
+        };
+    }
+
+    /** Espera a que el hilo escritor termine todo lo encolado hasta ahora */
+    private static void vaciar(ColaComandos cola) throws Exception {
+        cola.encolar("marca", os -> { }, null, ESPERA_S * 1000).get(ESPERA_S, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void escribeEnElOrdenDeEncolado() throws Exception {
+        cola = new ColaComandos("test", salida, 128);
+        for (int i = 0; i < 100; i++) {
+            cola.encolar("c" + i, trama((byte) i), null);
+        }
+        vaciar(cola);
+
+        byte[] escrito = salida.toByteArray();
+        assertEquals(100, escrito.length);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, escrito[i]);
+        }
+    }
+
+    @Test
+    public void variosHilosNoMezclanBytesDeTramas() throws Exception {
+        final int hilos = 8;
+        final int porHilo = 50;
+        final int longitud = 10;
+        cola = new ColaComandos("test", salida, 16);
+        final CountDownLatch salida = new CountDownLatch(1);
+        final AtomicReference<Throwable> fallo = new AtomicReference<>();
+        List<Thread> productores = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            final byte id = (byte) h;
+            Thread t = new Thread(() -> {
+                try {
+                    salida.await();
+                    for (int n = 0; n < porHilo; n++) {
+                        byte[] bytes = new byte[longitud];
+                        bytes[0] = id;
+                        for (int i = 1; i < longitud; i++) bytes[i] = (byte) n;
+                        // Con espera: 8 productores llenan una cola de 16
+                        cola.encolar("h" + id, trama(bytes), null, ESPERA_S * 1000);
+                    }
+                } catch (Throwable e) {
+                    fallo.set(e);
+                }
+            });
+            productores.add(t);
+            t.start();
+        }
+        salida.countDown();
+        for (Thread t : productores) t.join();
+        assertNull(fallo.get());
+        vaciar(cola);
+
+        byte[] escrito = this.salida.toByteArray();
+        assertEquals(hilos * porHilo * longitud, escrito.length);
+        int[] siguiente = new int[hilos];
+        for (int i = 0; i < escrito.length; i += longitud) {
+            int id = escrito[i];
+            // Cada trama sale entera, y las de un mismo hilo en su orden
+            for (int j = 1; j < longitud; j++) {
+                assertEquals("trama mezclada en el byte " + (i + j), siguiente[id], escrito[i + j]);
+            }
+            siguiente[id]++;
+        }
+        for (int h = 0; h < hilos; h++) {
+            assertEquals(porHilo, siguiente[h]);
+        }
+        assertEquals(0, cola.getRechazados());
+    }
+
+    @Test
+    public void llenaRechazaSinBloquear() throws Exception {
+        cola = new ColaComandos("test", salida, 2);
+        CountDownLatch dentro = new CountDownLatch(1);
+        CountDownLatch barrera = new CountDownLatch(1);
+        cola.encolar("bloqueado", bloqueado(dentro, barrera), null);
+        assertTrue(dentro.await(ESPERA_S, TimeUnit.SECONDS));
+        cola.encolar("a", trama((byte) 1), null);
+        cola.encolar("b", trama((byte) 2), null);
+        assertEquals(2, cola.getPendientes());
+
+        try {
+            cola.encolar("c", trama((byte) 3), null);
+            fail("La cola llena debería rechazar");
+        } catch (RejectedExecutionException e) {
+            assertTrue(e.getMessage().contains("llena"));
+        }
+        assertEquals(1, cola.getRechazados());
+
+        barrera.countDown();
+        vaciar(cola);
+        assertArrayEquals(new byte[]{1, 2}, salida.toByteArray());
+    }
+
+    @Test
+    public void esperaConLimiteAntesDeRechazar() throws Exception {
+        cola = new ColaComandos("test", salida, 1);
+        CountDownLatch dentro = new CountDownLatch(1);
+        final CountDownLatch barrera = new CountDownLatch(1);
+        cola.encolar("bloqueado", bloqueado(dentro, barrera), null);
+        assertTrue(dentro.await(ESPERA_S, TimeUnit.SECONDS));
+        cola.encolar("a", trama((byte) 1), null);
+
+        long t0 = System.nanoTime();
+        try {
+            cola.encolar("b", trama((byte) 2), null, 50);
+            fail("Sigue llena tras la espera");
+        } catch (RejectedExecutionException e) {
+            assertTrue(System.nanoTime() - t0 >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+
+        // Si se libera hueco durante la espera, entra
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            barrera.countDown();
+        }).start();
+        cola.encolar("c", trama((byte) 3), null, ESPERA_S * 1000);
+        vaciar(cola);
+        assertArrayEquals(new byte[]{1, 3}, salida.toByteArray());
+        assertEquals(1, cola.getRechazados());
+    }
+
+    @Test
+    public void cerradaRechaza() throws Exception {
+        cola = new ColaComandos("test", salida);
+        cola.cerrar();
+        assertTrue(cola.isCerrada());
+        try {
+            cola.encolar("a", trama((byte) 1), null);
+            fail("La cola cerrada debería rechazar");
+        } catch (RejectedExecutionException e) {
+            assertTrue(e.getMessage().contains("cerrada"));
+        }
+        try {
+            cola.encolar("b", trama((byte) 2), null, 100);
+            fail("La cola cerrada debería rechazar sin esperar");
+        } catch (RejectedExecutionException e) {
+            assertTrue(e.getMessage().contains("cerrada"));
+        }
+        assertEquals(2, cola.getRechazados());
+    }
+
+    @Test
+    public void cerrarConEsperaEscribeLosPendientes() throws Exception {
+        cola = new ColaComandos("test", salida);
+        List<Future<Void>> futuros = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final byte b = (byte) i;
+            futuros.add(cola.encolar("c" + i, os -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                os.write(b);
+            }, null));
+        }
+        cola.cerrar(ESPERA_S * 1000);
+
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4}, salida.toByteArray());
+        for (Future<Void> f : futuros) {
+            assertTrue(f.isDone());
+            assertFalse(f.isCancelled());
+        }
+        assertEquals(5, cola.getEnviados());
+    }
+
+    @Test
+    public void cerrarSinEsperaCancelaLosPendientes() throws Exception {
+        cola = new ColaComandos("test", salida);
+        CountDownLatch dentro = new CountDownLatch(1);
+        CountDownLatch barrera = new CountDownLatch(1);
+        final List<Throwable> errores = new ArrayList<>();
+        ColaComandos.OnCompletado anotar = error -> {
+            synchronized (errores) {
+                errores.add(error);
+            }
+        };
+        Future<Void> enCurso = cola.encolar("bloqueado", bloqueado(dentro, barrera), anotar);
+        assertTrue(dentro.await(ESPERA_S, TimeUnit.SECONDS));
+        Future<Void> a = cola.encolar("a", trama((byte) 1), anotar);
+        Future<Void> b = cola.encolar("b", trama((byte) 2), anotar);
+
+        cola.cerrar();
+
+        assertTrue(a.isCancelled());
+        assertTrue(b.isCancelled());
+        // El que se estaba escribiendo se interrumpe y termina con su error
+        try {
+            enCurso.get(ESPERA_S, TimeUnit.SECONDS);
+            fail("El comando en curso debería fallar al interrumpirlo");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(0, salida.size());
+        synchronized (errores) {
+            assertEquals(3, errores.size());
+            int canceladas = 0;
+            for (Throwable error : errores) {
+                if (error instanceof CancellationException) canceladas++;
+            }
+            assertEquals(2, canceladas);
+        }
+    }
+
+    @Test
+    public void cerrarConEsperaCortaCancelaLoQueNoSale() throws Exception {
+        cola = new ColaComandos("test", salida);
+        List<Future<Void>> futuros = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final byte b = (byte) i;
+            futuros.add(cola.encolar("c" + i, os -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                os.write(b);
+            }, null));
+        }
+        cola.cerrar(150);
+
+        assertTrue(futuros.get(0).isDone());
+        assertFalse(futuros.get(0).isCancelled());
+        assertTrue(futuros.get(4).isCancelled());
+        // Lo escrito es un prefijo de lo encolado
+        byte[] escrito = salida.toByteArray();
+        assertTrue(escrito.length >= 1 && escrito.length < 5);
+        for (int i = 0; i < escrito.length; i++) {
+            assertEquals(i, escrito[i]);
+        }
+    }
+
+    @Test
+    public void contadoresDeEnviadosFallidosYLatencia() throws Exception {
+        cola = new ColaComandos("test", salida);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Future<Void> lento = cola.encolar("lento", os -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, null);
+        Future<Void> roto = cola.encolar("roto", os -> {
+            throw new IOException("Broken pipe");
+        }, error::set);
+        cola.encolar("ok", trama((byte) 1), null);
+        // Los contadores se actualizan tras completar el Future: se espera al
+        // hilo escritor entero
+        cola.cerrar(ESPERA_S * 1000);
+
+        lento.get();
+        try {
+            roto.get();
+            fail("El comando roto debería fallar");
+        } catch (ExecutionException e) {
+            assertEquals("Broken pipe", e.getCause().getMessage());
+        }
+        assertEquals("Broken pipe", error.get().getMessage());
+
+        assertEquals(2, cola.getEnviados());
+        assertEquals(1, cola.getFallidos());
+        assertTrue(cola.getLatenciaMaxUs() >= 20000);
+        assertTrue(cola.getLatenciaMediaUs() > 0);
+        assertTrue(cola.getLatenciaMediaUs() <= cola.getLatenciaMaxUs());
+
+        cola.reiniciarEstadisticas();
+        assertEquals(0, cola.getEnviados());
+        assertEquals(0, cola.getFallidos());
+        assertEquals(0, cola.getLatenciaMediaUs());
+        assertEquals(0, cola.getLatenciaMaxUs());
+    }
+
+    @Test
+    public void unErrorNoParaLaCola() throws Exception {
+        cola = new ColaComandos("test", new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                if (b == 0) throw new IOException("byte 0");
+                salida.write(b);
+            }
+        });
+        cola.encolar("a", trama((byte) 1), null);
+        cola.encolar("roto", trama((byte) 0), null);
+        cola.encolar("b", trama((byte) 2), null);
+        vaciar(cola);
+
+        assertArrayEquals(new byte[]{1, 2}, salida.toByteArray());
+        assertEquals(1, cola.getFallidos());
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.triviumgor.bluetooth;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LatidoTest {
+
+    private static final long ESPERA_MS = 5000;
+
+    private final ByteArrayOutputStream salida = new ByteArrayOutputStream();
+    private final List<String> motivos = new ArrayList<>();
+    private final Latido.OnEnlacePerdido anotar = (latido, motivo) -> {
+        synchronized (motivos) {
+            motivos.add(motivo);
+        }
+    };
+    private ColaComandos cola;
+    private SimuladorFirmware sim;
+    private LectorDispositivo lector;
+
+    @After
+    public void cerrar() {
+        if (cola != null) cola.cerrar();
+        if (sim != null) sim.cerrar();
+        if (lector != null) lector.cerrar();
+    }
+
+    private int contarMuertes() {
+        synchronized (motivos) {
+            return motivos.size();
+        }
+    }
+
+    private void vaciar() throws Exception {
+        cola.encolar("marca", os -> { }, null, ESPERA_MS).get(ESPERA_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void sinRespuestaCuentaPerdidosHastaElMaximo() throws Exception {
+        cola = new ColaComandos("test", salida);
+        Latido latido = new Latido("test", cola, 3, anotar);
+
+        assertTrue(latido.latir());
+        assertTrue(latido.isPendiente());
+        assertEquals(0, latido.getPerdidos());
+        assertTrue(latido.latir());
+        assertTrue(latido.latir());
+        assertEquals(2, latido.getPerdidos());
+        assertFalse(latido.isMuerto());
+
+        // El tercero seguido sin respuesta lo mata, y ya no se pide otro
+        assertFalse(latido.latir());
+        assertTrue(latido.isMuerto());
+        assertEquals(3, latido.getPerdidos());
+        assertEquals(3, latido.getLatidos());
+        assertEquals(1, contarMuertes());
+        assertEquals("3 latidos sin respuesta", motivos.get(0));
+
+        assertFalse(latido.latir());
+        assertEquals(3, latido.getLatidos());
+        assertEquals(1, contarMuertes());
+
+        vaciar();
+        assertArrayEquals(new byte[]{TramaCodec.CMD_BATERIA, TramaCodec.CMD_BATERIA, TramaCodec.CMD_BATERIA},
+                salida.toByteArray());
+    }
+
+    @Test
+    public void unaRespuestaReiniciaLosPerdidosSeguidos() throws Exception {
+        cola = new ColaComandos("test", salida);
+        Latido latido = new Latido("test", cola, 3, anotar);
+
+        // Alternando dos perdidos y una respuesta nunca se llega a tres seguidos
+        for (int n = 0; n < 10; n++) {
+            assertTrue(latido.latir());
+            assertTrue(latido.latir());
+            assertTrue(latido.latir());
+            latido.onMensaje(ParserMensajes.TIPO_BATERIA, 700);
+            assertFalse(latido.isPendiente());
+            assertEquals(1, latido.getRespuestasSeguidas());
+        }
+        assertFalse(latido.isMuerto());
+        assertEquals(20, latido.getPerdidos());
+        assertEquals(10, latido.getRespuestas());
+
+        latido.onMensaje(ParserMensajes.TIPO_BATERIA, 700);
+        assertEquals(2, latido.getRespuestasSeguidas());
+        assertTrue(latido.latir());
+        assertTrue(latido.latir());
+        assertEquals(0, latido.getRespuestasSeguidas());
+        assertEquals(0, contarMuertes());
+    }
+
+    @Test
+    public void escrituraFallidaLoDaPorMuertoUnaSolaVez() throws Exception {
+        cola = new ColaComandos("test", new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        });
+        Latido latido = new Latido("test", cola, 100, anotar);
+
+        assertTrue(latido.latir());
+        assertTrue(latido.latir());
+        assertTrue(latido.latir());
+        // Las tres escrituras fallan; los avisos se cuentan tras el hilo escritor
+        cola.cerrar(ESPERA_MS);
+
+        assertTrue(latido.isMuerto());
+        assertEquals(1, contarMuertes());
+        assertEquals("escritura fallida: Broken pipe", motivos.get(0));
+        assertFalse(latido.latir());
+    }
+
+    @Test
+    public void variosHilosLatiendoAvisanUnaSolaVez() throws Exception {
+        cola = new ColaComandos("test", salida, 1024);
+        final Latido latido = new Latido("test", cola, 1, anotar);
+        latido.latir();
+
+        final CountDownLatch salidaHilos = new CountDownLatch(1);
+        final AtomicReference<Throwable> fallo = new AtomicReference<>();
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 8; h++) {
+            Thread t = new Thread(() -> {
+                try {
+                    salidaHilos.await();
+                    for (int n = 0; n < 100; n++) latido.latir();
+                } catch (Throwable e) {
+                    fallo.set(e);
+                }
+            });
+            hilos.add(t);
+            t.start();
+        }
+        salidaHilos.countDown();
+        for (Thread t : hilos) t.join();
+
+        assertNull(fallo.get());
+        assertTrue(latido.isMuerto());
+        assertEquals(1, contarMuertes());
+    }
+
+    @Test
+    public void sinDatosElPercentilEsMenosUno() {
+        cola = new ColaComandos("test", salida);
+        Latido latido = new Latido("test", cola, 3, anotar);
+        assertEquals(-1, latido.getRttPercentilUs(50));
+
+        // Una respuesta sin latido pendiente no tiene RTT
+        latido.onMensaje(ParserMensajes.TIPO_BATERIA, 700);
+        assertEquals(1, latido.getRespuestas());
+        assertEquals(-1, latido.getRttPercentilUs(50));
+    }
+
+    @Test
+    public void rttContraElFirmwareSimulado() throws Exception {
+        sim = new SimuladorFirmware("00:11:22:33:44:55", 1L);
+        cola = new ColaComandos("sim", sim.getSalida());
+        lector = new LectorDispositivo("sim", sim.getEntrada(), Runnable::run);
+        Latido latido = new Latido("sim", cola, 3, anotar);
+
+        final Semaphore respuesta = new Semaphore(0);
+        final AtomicInteger medidos = new AtomicInteger();
+        latido.setOnRtt(rttUs -> medidos.incrementAndGet());
+        lector.registrarDirecto(ParserMensajes.TIPO_BATERIA, latido);
+        lector.registrarDirecto(ParserMensajes.TIPO_BATERIA, (tipo, valor) -> respuesta.release());
+        lector.start();
+
+        // Latencias de 1 a 10 ms: la mediana cae en medio y el máximo arriba
+        for (int ms = 1; ms <= 10; ms++) {
+            sim.setLatencia(ms, 0);
+            assertTrue(latido.latir());
+            assertTrue(respuesta.tryAcquire(ESPERA_MS, TimeUnit.MILLISECONDS));
+            assertFalse(latido.isPendiente());
+        }
+
+        assertEquals(10, medidos.get());
+        assertEquals(10, latido.getRespuestas());
+        assertEquals(0, latido.getPerdidos());
+        assertEquals(10, latido.getRespuestasSeguidas());
+
+        long p0 = latido.getRttPercentilUs(0);
+        long p50 = latido.getRttPercentilUs(50);
+        long p100 = latido.getRttPercentilUs(100);
+        assertTrue(p0 >= 1000);
+        assertTrue(p50 >= 5000);
+        assertTrue(p100 >= 10000);
+        assertTrue(p0 <= p50 && p50 <= latido.getRttPercentilUs(90) && latido.getRttPercentilUs(90) <= p100);
+        // Fuera de rango se limita a la muestra menor o mayor
+        assertEquals(p0, latido.getRttPercentilUs(-5));
+        assertEquals(p100, latido.getRttPercentilUs(150));
+        assertEquals(0, contarMuertes());
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.triviumgor.bluetooth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParserMensajesTest {
+
+    /** Guarda los valores recibidos, en orden */
+    private static final class Recolector implements ParserMensajes.Receptor {
+        final List<Integer> valores = new ArrayList<>();
+
+        @Override
+        public void onMensaje(int tipo, int valor) {
+            assertEquals(ParserMensajes.TIPO_BATERIA, tipo);
+            valores.add(valor);
+        }
+    }
+
+    private static byte[] bateria(int valor) {
+        return new byte[]{(byte) (valor >> 8), (byte) valor, 0, 0};
+    }
+
+    private static byte[] concatenar(byte[]... partes) {
+        int total = 0;
+        for (byte[] p : partes) total += p.length;
+        byte[] r = new byte[total];
+        int i = 0;
+        for (byte[] p : partes) {
+            System.arraycopy(p, 0, r, i, p.length);
+            i += p.length;
+        }
+        return r;
+    }
+
+    /**
+     * Referencia sin buffer: recorre el flujo completo de una vez. Un byte 2 o
+     * 3 con al menos 4 bytes por delante es un mensaje; cualquier otro byte se
+     * descarta. Un mensaje incompleto al final no cuenta.
+     */
+    private static List<Integer> parsearReferencia(byte[] flujo, long[] descartados) {
+        List<Integer> valores = new ArrayList<>();
+        int i = 0;
+        while (i < flujo.length) {
+            int b = flujo[i] & 0xFF;
+            if (b == 2 || b == 3) {
+                if (flujo.length - i < 4) break;
+                valores.add(b * 256 + (flujo[i + 1] & 0xFF));
+                i += 4;
+            } else {
+                descartados[0]++;
+                i++;
+            }
+        }
+        return valores;
+    }
+
+    @Test
+    public void mensajeDeBateria() {
+        ParserMensajes parser = new ParserMensajes();
+        Recolector r = new Recolector();
+
+        assertEquals(1, parser.alimentar(bateria(1023), 0, 4, r));
+        assertEquals(1, parser.alimentar(bateria(512), 0, 4, r));
+
+        assertEquals(1023, (int) r.valores.get(0));
+        assertEquals(512, (int) r.valores.get(1));
+        assertEquals(2, parser.getMensajes(ParserMensajes.TIPO_BATERIA));
+        assertEquals(0, parser.getBytesDescartados());
+    }
+
+    @Test
+    public void mensajesPartidosEnCualquierByte() {
+        byte[] flujo = concatenar(bateria(700), bateria(801), bateria(1000));
+        for (int corte = 0; corte <= flujo.length; corte++) {
+            ParserMensajes parser = new ParserMensajes();
+            Recolector r = new Recolector();
+
+            int n = parser.alimentar(flujo, 0, corte, r);
+            n += parser.alimentar(flujo, corte, flujo.length - corte, r);
+
+            assertEquals("corte en " + corte, 3, n);
+            assertEquals(700, (int) r.valores.get(0));
+            assertEquals(801, (int) r.valores.get(1));
+            assertEquals(1000, (int) r.valores.get(2));
+            assertEquals(0, parser.getBytesDescartados());
+        }
+    }
+
+    @Test
+    public void byteAByte() {
+        byte[] flujo = concatenar(bateria(600), bateria(900));
+        ParserMensajes parser = new ParserMensajes();
+        Recolector r = new Recolector();
+        int n = 0;
+        for (int i = 0; i < flujo.length; i++) {
+            n += parser.alimentar(flujo, i, 1, r);
+            // Solo se entrega al completar cada mensaje
+            assertEquals((i + 1) / 4, r.valores.size());
+        }
+        assertEquals(2, n);
+    }
+
+    @Test
+    public void ruidoAntesDelMensaje() {
+        byte[] flujo = concatenar(new byte[]{0x55, (byte) 0xAA, 0, 1, (byte) 0xFF}, bateria(528));
+        ParserMensajes parser = new ParserMensajes();
+        Recolector r = new Recolector();
+
+        assertEquals(1, parser.alimentar(flujo, 0, flujo.length, r));
+        assertEquals(528, (int) r.valores.get(0));
+        assertEquals(5, parser.getBytesDescartados());
+    }
+
+    @Test
+    public void cabeceraDentroDelMensaje() {
+        // Bytes 2 y 3 como byte bajo y como relleno: no abren otro mensaje
+        byte[] flujo = {2, 3, 2, 3, 3, 2, 3, 3};
+        ParserMensajes parser = new ParserMensajes();
+        Recolector r = new Recolector();
+
+        assertEquals(2, parser.alimentar(flujo, 0, flujo.length, r));
+        assertEquals(2 * 256 + 3, (int) r.valores.get(0));
+        assertEquals(3 * 256 + 2, (int) r.valores.get(1));
+        assertEquals(0, parser.getBytesDescartados());
+    }
+
+    @Test
+    public void lecturaMayorQueElBuffer() {
+        // 100 mensajes = 400 bytes en un solo read(), más que CAPACIDAD (64)
+        byte[][] mensajes = new byte[100][];
+        for (int i = 0; i < mensajes.length; i++) {
+            mensajes[i] = bateria(512 + i);
+        }
+        byte[] flujo = concatenar(mensajes);
+        ParserMensajes parser = new ParserMensajes();
+        Recolector r = new Recolector();
+
+        assertEquals(100, parser.alimentar(flujo, 0, flujo.length, r));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(512 + i, (int) r.valores.get(i));
+        }
+    }
+
+    @Test
+    public void respetaOffsetYLongitud() {
+        byte[] datos = concatenar(new byte[]{9, 9, 9}, bateria(777), new byte[]{9, 9});
+        ParserMensajes parser = new ParserMensajes();
+        Recolector r = new Recolector();
+
+        assertEquals(1, parser.alimentar(datos, 3, 4, r));
+        assertEquals(777, (int) r.valores.get(0));
+        assertEquals(0, parser.getBytesDescartados());
+    }
+
+    @Test
+    public void reiniciarDescartaElMensajeAMedias() {
+        ParserMensajes parser = new ParserMensajes();
+        Recolector r = new Recolector();
+
+        parser.alimentar(bateria(900), 0, 2, r);
+        parser.reiniciar();
+        assertEquals(1, parser.alimentar(bateria(650), 0, 4, r));
+        assertEquals(650, (int) r.valores.get(0));
+        assertEquals(1, r.valores.size());
+    }
+
+    @Test
+    public void flujosAleatorios() {
+        Random random = new Random(20240501L);
+        for (int prueba = 0; prueba < 500; prueba++) {
+            // Mezcla de mensajes válidos y ruido, con cabeceras sueltas
+            byte[] flujo = new byte[random.nextInt(600)];
+            for (int i = 0; i < flujo.length; i++) {
+                int r = random.nextInt(10);
+                flujo[i] = (byte) (r < 3 ? 2 + r % 2 : random.nextInt(256));
+            }
+            long[] descartados = new long[1];
+            List<Integer> esperados = parsearReferencia(flujo, descartados);
+
+            ParserMensajes parser = new ParserMensajes();
+            Recolector r = new Recolector();
+            int n = 0;
+            int i = 0;
+            while (i < flujo.length) {
+                int trozo = Math.min(flujo.length - i, 1 + random.nextInt(150));
+                n += parser.alimentar(flujo, i, trozo, r);
+                i += trozo;
+            }
+
+            assertEquals("prueba " + prueba, esperados.size(), n);
+            assertEquals("prueba " + prueba, esperados, r.valores);
+            assertEquals("prueba " + prueba, descartados[0], parser.getBytesDescartados());
+        }
+    }
+
+    @Test
+    public void rendimiento() {
+        // 1 M mensajes (4 MB) en lecturas de 1 KB, como las del lector
+        final int mensajes = 1 << 20;
+        byte[] lectura = new byte[1024];
+        for (int i = 0; i < lectura.length; i += 4) {
+            System.arraycopy(bateria(512 + (i / 4) % 512), 0, lectura, i, 4);
+        }
+        final long[] suma = new long[1];
+        ParserMensajes.Receptor receptor = (tipo, valor) -> suma[0] += valor;
+
+        ParserMensajes parser = new ParserMensajes();
+        long t0 = System.nanoTime();
+        long total = 0;
+        for (int i = 0; i < mensajes / (lectura.length / 4); i++) {
+            total += parser.alimentar(lectura, 0, lectura.length, receptor);
+        }
+        long ms = (System.nanoTime() - t0) / 1000000;
+
+        assertEquals(mensajes, total);
+        assertTrue(suma[0] > 0);
+        // Un estimulador envía unos pocos mensajes por segundo: cualquier
+        // valor por encima de 1 MB/s sobra; el margen es para CI lentos.
+        assertTrue("4 MB en " + ms + " ms", ms < 4000);
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.triviumgor.bluetooth;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** El simulador visto como lo ve la app: solo a través de Transporte */
+public class SimuladorFirmwareTest {
+
+    private static byte[] trama(int intensidad, int duracionMin) {
+        byte[] trama = new byte[TramaCodec.LONGITUD_TRAMA_SESION];
+        TramaCodec.codificarSesion(trama, 0, intensidad, duracionMin);
+        return trama;
+    }
+
+    private static SimuladorFirmware simulador() {
+        SimuladorFirmware sim = new SimuladorFirmware("00:11:22:33:44:55", 1L);
+        sim.setLatencia(0, 0);
+        return sim;
+    }
+
+    /** Lee hasta tener n valores de batería (bloquea como el LectorDispositivo) */
+    private static List<Integer> leerBateria(Transporte transporte, int n) throws IOException {
+        final List<Integer> valores = new ArrayList<>();
+        ParserMensajes parser = new ParserMensajes();
+        InputStream entrada = transporte.getEntrada();
+        byte[] buffer = new byte[64];
+        while (valores.size() < n) {
+            int leidos = entrada.read(buffer, 0, buffer.length);
+            assertTrue("Entrada cerrada", leidos > 0);
+            parser.alimentar(buffer, 0, leidos, (tipo, valor) -> valores.add(valor));
+        }
+        return valores;
+    }
+
+    @Test
+    public void tramaDeSesionArrancaYParadaDetiene() throws IOException {
+        SimuladorFirmware sim = simulador();
+        Transporte transporte = sim;
+        OutputStream salida = transporte.getSalida();
+
+        salida.write(trama(12, 20));
+        assertTrue(sim.isSesionActiva());
+        assertEquals(12, sim.getIntensidad());
+        assertEquals(20, sim.getDuracionMin());
+
+        // Actualizar intensidad y duración sin parar
+        salida.write(trama(15, 30));
+        assertEquals(15, sim.getIntensidad());
+        assertEquals(30, sim.getDuracionMin());
+        assertEquals(2, sim.getTramasValidas());
+
+        salida.write(TramaCodec.CMD_PARADA);
+        assertFalse(sim.isSesionActiva());
+        assertEquals(1, sim.getParadas());
+        assertEquals(0, sim.getTramasInvalidas());
+    }
+
+    @Test
+    public void tramaPartidaEnVariasEscrituras() throws IOException {
+        SimuladorFirmware sim = simulador();
+        OutputStream salida = ((Transporte) sim).getSalida();
+        byte[] t = trama(9, 45);
+
+        salida.write(t, 0, 5);
+        assertFalse(sim.isSesionActiva());
+        salida.write(t, 5, t.length - 5);
+        assertTrue(sim.isSesionActiva());
+        assertEquals(9, sim.getIntensidad());
+        assertEquals(45, sim.getDuracionMin());
+    }
+
+    @Test
+    public void tramaMalFormadaSeDescarta() throws IOException {
+        SimuladorFirmware sim = simulador();
+        OutputStream salida = ((Transporte) sim).getSalida();
+
+        // Sin el byte de fin: el siguiente 'A' invalida la trama y abre otra
+        byte[] t = trama(10, 20);
+        salida.write(t, 0, t.length - 1);
+        salida.write(trama(11, 25));
+        assertEquals(1, sim.getTramasInvalidas());
+        assertEquals(1, sim.getTramasValidas());
+        assertEquals(11, sim.getIntensidad());
+
+        // Intensidades distintas en los dos canales: no se aplica
+        byte[] distintas = trama(11, 25);
+        distintas[18] = '9';
+        salida.write(distintas);
+        assertEquals(2, sim.getTramasInvalidas());
+        assertEquals(11, sim.getIntensidad());
+    }
+
+    @Test(timeout = 5000)
+    public void peticionDeBateriaRecibeRespuesta() throws IOException {
+        SimuladorFirmware sim = simulador();
+        sim.setCarga(777);
+        Transporte transporte = sim;
+
+        transporte.getSalida().write(TramaCodec.CMD_BATERIA);
+        transporte.getSalida().write(TramaCodec.CMD_BATERIA);
+
+        List<Integer> valores = leerBateria(transporte, 2);
+        assertEquals(777, (int) valores.get(0));
+        assertEquals(777, (int) valores.get(1));
+        assertEquals(2, sim.getPeticionesBateria());
+    }
+
+    @Test(timeout = 5000)
+    public void respuestaLlegaTrasLaLatencia() throws IOException {
+        SimuladorFirmware sim = simulador();
+        sim.setLatencia(100, 0);
+        Transporte transporte = sim;
+
+        long t0 = System.nanoTime();
+        transporte.getSalida().write(TramaCodec.CMD_BATERIA);
+        assertEquals(0, transporte.getEntrada().available());
+        leerBateria(transporte, 1);
+        long ms = (System.nanoTime() - t0) / 1000000;
+
+        assertTrue("Respuesta en " + ms + " ms", ms >= 100);
+    }
+
+    @Test
+    public void perdidaTotal() throws IOException {
+        SimuladorFirmware sim = simulador();
+        sim.setProbabilidadPerdida(1);
+        byte[] t = trama(10, 20);
+
+        ((Transporte) sim).getSalida().write(t);
+
+        assertFalse(sim.isSesionActiva());
+        assertEquals(t.length, sim.getPerdidos());
+        assertEquals(0, sim.getTramasValidas());
+    }
+
+    @Test
+    public void perdidaRepetibleConLaMismaSemilla() throws IOException {
+        long[] perdidos = new long[2];
+        for (int i = 0; i < 2; i++) {
+            SimuladorFirmware sim = new SimuladorFirmware("sim", 42L);
+            sim.setProbabilidadPerdida(0.3);
+            OutputStream salida = ((Transporte) sim).getSalida();
+            for (int n = 0; n < 50; n++) {
+                salida.write(trama(10, 20));
+            }
+            perdidos[i] = sim.getPerdidos();
+        }
+        assertTrue(perdidos[0] > 0);
+        assertEquals(perdidos[0], perdidos[1]);
+    }
+
+    @Test(timeout = 5000)
+    public void cerrarDesbloqueaLecturaYRechazaEscrituras() throws Exception {
+        final SimuladorFirmware sim = simulador();
+        final Transporte transporte = sim;
+        final int[] resultado = {0};
+        Thread lector = new Thread(() -> {
+            try {
+                resultado[0] = transporte.getEntrada().read(new byte[4], 0, 4);
+            } catch (IOException e) {
+                resultado[0] = -2;
+            }
+        });
+        lector.start();
+        Thread.sleep(50);
+        assertTrue(lector.isAlive());
+
+        transporte.cerrar();
+        lector.join();
+        assertEquals(-1, resultado[0]);
+
+        try {
+            transporte.getSalida().write(TramaCodec.CMD_PARADA);
+            fail("Escribir tras cerrar debería fallar");
+        } catch (IOException e) {
+            assertEquals(0, sim.getParadas());
+        }
+    }
+
+    @Test
+    public void direccion() {
+        assertEquals("00:11:22:33:44:55", ((Transporte) simulador()).getDireccion());
+    }
+}
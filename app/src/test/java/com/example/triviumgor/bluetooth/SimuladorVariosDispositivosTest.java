@@ -0,0 +1,227 @@
+package com.example.triviumgor.bluetooth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Banco de N dispositivos simulados a la vez, cada uno con su ColaComandos y
+ * su LectorDispositivo reales (y por tanto ParserMensajes), como los abre
+ * DispositivoState. Cada dispositivo repite rondas de trama de sesión + 'F' y
+ * espera la batería antes de la siguiente ronda; la latencia se mide desde que
+ * el hilo escritor saca la 'F' hasta que el lector entrega la respuesta. El
+ * informe de tramas, respuestas y percentiles sale por consola.
+ */
+public class SimuladorVariosDispositivosTest {
+
+    private static final int DISPOSITIVOS = 16;
+    private static final int RONDAS = 25;
+    private static final long LATENCIA_MS = 2;
+    private static final long JITTER_MS = 8;
+    // Muy por encima de LATENCIA_MS + JITTER_MS: una respuesta que no llega
+    // en este tiempo se ha perdido y no puede confundirse con la siguiente
+    private static final long ESPERA_RESPUESTA_MS = 250;
+    private static final long ESPERA_MS = 10000;
+
+    /** Un dispositivo del banco: simulador, cola y lector */
+    private static final class Banco {
+        final SimuladorFirmware sim;
+        final ColaComandos cola;
+        final LectorDispositivo lector;
+        final TramaCodec codec = new TramaCodec();
+        final int carga;
+
+        final Semaphore respuesta = new Semaphore(0);
+        final AtomicLong enviadaNs = new AtomicLong();
+        final List<Long> latenciasUs;
+        int peticiones;
+        int respuestas;
+        int sinRespuesta;
+        int cargasAjenas;
+
+        Banco(int n, double perdida, List<Long> latenciasUs) {
+            this.latenciasUs = latenciasUs;
+            this.carga = 600 + n;
+            sim = new SimuladorFirmware(String.format("00:00:00:00:00:%02X", n), n);
+            sim.setLatencia(LATENCIA_MS, JITTER_MS);
+            sim.setProbabilidadPerdida(perdida);
+            sim.setCarga(carga);
+            cola = new ColaComandos("sim" + n, sim.getSalida());
+            lector = new LectorDispositivo("sim" + n, sim.getEntrada(), Runnable::run);
+            lector.registrarDirecto(ParserMensajes.TIPO_BATERIA, (tipo, valor) -> {
+                long us = (System.nanoTime() - enviadaNs.get()) / 1000;
+                if (valor != carga) cargasAjenas++;
+                synchronized (Banco.this.latenciasUs) {
+                    Banco.this.latenciasUs.add(us);
+                }
+                respuesta.release();
+            });
+            lector.start();
+        }
+
+        void ronda(final int r) throws Exception {
+            cola.encolar("sesion", os -> {
+                int longitud = codec.codificarSesion(10 + r % 90, 20);
+                os.write(codec.getBuffer(), 0, longitud);
+                os.flush();
+            }, null);
+            cola.encolar("bateria", os -> {
+                enviadaNs.set(System.nanoTime());
+                os.write(TramaCodec.CMD_BATERIA);
+                os.flush();
+            }, null).get(ESPERA_MS, TimeUnit.MILLISECONDS);
+            peticiones++;
+            if (respuesta.tryAcquire(ESPERA_RESPUESTA_MS, TimeUnit.MILLISECONDS)) {
+                respuestas++;
+            } else {
+                sinRespuesta++;
+            }
+        }
+
+        void cerrar() throws InterruptedException {
+            cola.cerrar(ColaComandos.ESPERA_VACIADO_MS);
+            sim.cerrar();
+            lector.cerrar();
+            lector.join(ESPERA_MS);
+        }
+    }
+
+    /** Totales de una pasada del banco */
+    private static final class Informe {
+        long tramas;
+        long tramasValidas;
+        long tramasInvalidas;
+        long peticiones;
+        long peticionesRecibidas;
+        long respuestas;
+        long sinRespuesta;
+        long perdidos;
+        long cargasAjenas;
+        long enviadosCola;
+        long fallidosCola;
+        long msTotal;
+        final List<Long> latenciasUs = new ArrayList<>();
+
+        long percentilUs(int p) {
+            if (latenciasUs.isEmpty()) return 0;
+            int i = (int) Math.ceil(p / 100.0 * latenciasUs.size()) - 1;
+            return latenciasUs.get(Math.max(0, i));
+        }
+
+        @Override
+        public String toString() {
+            return DISPOSITIVOS + " dispositivos x " + RONDAS + " rondas en " + msTotal + " ms" +
+                    " | tramas: " + tramas + " (válidas " + tramasValidas + ", inválidas " + tramasInvalidas + ")" +
+                    " | 'F': " + peticiones + " (recibidas " + peticionesRecibidas + ")" +
+                    " | respuestas: " + respuestas + " | sin respuesta: " + sinRespuesta +
+                    " | perdidos: " + perdidos +
+                    " | latencia p50/p95/p99/máx: " + percentilUs(50) / 1000 + "/" +
+                    percentilUs(95) / 1000 + "/" + percentilUs(99) / 1000 + "/" +
+                    percentilUs(100) / 1000 + " ms";
+        }
+    }
+
+    private static Informe ejecutar(double perdida) throws Exception {
+        final Informe informe = new Informe();
+        final List<Banco> bancos = new ArrayList<>();
+        for (int n = 0; n < DISPOSITIVOS; n++) {
+            bancos.add(new Banco(n, perdida, informe.latenciasUs));
+        }
+
+        final CountDownLatch salida = new CountDownLatch(1);
+        final AtomicReference<Throwable> fallo = new AtomicReference<>();
+        List<Thread> hilos = new ArrayList<>();
+        for (final Banco banco : bancos) {
+            Thread t = new Thread(() -> {
+                try {
+                    salida.await();
+                    for (int r = 0; r < RONDAS; r++) {
+                        banco.ronda(r);
+                    }
+                } catch (Throwable e) {
+                    fallo.set(e);
+                }
+            });
+            hilos.add(t);
+            t.start();
+        }
+        long inicio = System.nanoTime();
+        salida.countDown();
+        for (Thread t : hilos) t.join();
+        informe.msTotal = (System.nanoTime() - inicio) / 1000000;
+        for (Banco banco : bancos) banco.cerrar();
+        assertNull(fallo.get());
+
+        for (Banco banco : bancos) {
+            informe.tramas += RONDAS;
+            informe.tramasValidas += banco.sim.getTramasValidas();
+            informe.tramasInvalidas += banco.sim.getTramasInvalidas();
+            informe.peticiones += banco.peticiones;
+            informe.peticionesRecibidas += banco.sim.getPeticionesBateria();
+            informe.respuestas += banco.respuestas;
+            informe.sinRespuesta += banco.sinRespuesta;
+            informe.perdidos += banco.sim.getPerdidos();
+            informe.cargasAjenas += banco.cargasAjenas;
+            informe.enviadosCola += banco.cola.getEnviados();
+            informe.fallidosCola += banco.cola.getFallidos();
+        }
+        Collections.sort(informe.latenciasUs);
+        return informe;
+    }
+
+    /** Lo que se cumple con o sin pérdidas */
+    private static void comprobarCuentas(Informe informe) {
+        long total = (long) DISPOSITIVOS * RONDAS;
+        assertEquals(total, informe.tramas);
+        assertEquals(total, informe.peticiones);
+        // Tramas y 'F' salen todas por la cola, sin errores
+        assertEquals(2 * total, informe.enviadosCola);
+        assertEquals(0, informe.fallidosCola);
+        // Cada respuesta es de su dispositivo y de una 'F' que llegó
+        assertEquals(0, informe.cargasAjenas);
+        assertEquals(informe.peticiones, informe.respuestas + informe.sinRespuesta);
+        assertEquals(informe.respuestas, informe.latenciasUs.size());
+        assertTrue(informe.respuestas <= informe.peticionesRecibidas);
+        assertTrue(informe.peticionesRecibidas <= informe.peticiones);
+        assertTrue(informe.tramasValidas + informe.tramasInvalidas <= informe.tramas);
+        // La respuesta nunca llega antes de la latencia mínima del simulador
+        if (!informe.latenciasUs.isEmpty()) {
+            assertTrue(informe.percentilUs(0) >= LATENCIA_MS * 1000);
+        }
+    }
+
+    @Test
+    public void enlacesSinPerdidas() throws Exception {
+        Informe informe = ejecutar(0);
+        System.out.println("Banco sin pérdidas | " + informe);
+
+        comprobarCuentas(informe);
+        assertEquals(informe.tramas, informe.tramasValidas);
+        assertEquals(0, informe.tramasInvalidas);
+        assertEquals(informe.peticiones, informe.peticionesRecibidas);
+        assertEquals(informe.peticiones, informe.respuestas);
+        assertEquals(0, informe.perdidos);
+    }
+
+    @Test
+    public void enlacesConPerdidasYJitter() throws Exception {
+        Informe informe = ejecutar(0.02);
+        System.out.println("Banco con 2% de pérdidas | " + informe);
+
+        comprobarCuentas(informe);
+        assertTrue(informe.perdidos > 0);
+        assertTrue(informe.sinRespuesta > 0);
+        // Con un 2% por byte la mayoría de rondas sale entera
+        assertTrue(informe.respuestas > informe.peticiones / 2);
+        assertTrue(informe.tramasValidas > informe.tramas / 2);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.triviumgor.bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SondeoBateriaTest {
+
+    private static final long HORA_MS = 3600000L;
+    private static final int UMBRAL_BAJA = 840;
+
+    @Test
+    public void peticionesPorHoraCuentanSondeoYLatido() {
+        SondeoBateria sondeo = new SondeoBateria("sim", UMBRAL_BAJA, 1000);
+        for (int i = 0; i < 120; i++) sondeo.contarSondeo();
+        // Media hora de sesión con latido estable a 1 s
+        for (int i = 0; i < 1800; i++) sondeo.contarLatido();
+
+        assertEquals(120, sondeo.getSondeos());
+        assertEquals(1800, sondeo.getLatidos());
+        assertEquals(1920, sondeo.getPeticionesPorHora(1000 + HORA_MS), 1e-9);
+        assertEquals(3840, sondeo.getPeticionesPorHora(1000 + HORA_MS / 2), 1e-9);
+        assertEquals(0, sondeo.getPeticionesPorHora(1000), 0);
+    }
+
+    @Test
+    public void enReposoConLecturaEstableElIntervaloCrece() {
+        SondeoBateria sondeo = new SondeoBateria("sim", UMBRAL_BAJA, 0);
+        long ahora = 0;
+        long anterior = sondeo.getIntervaloMs(false);
+        sondeo.registrarLectura(950, false, ahora);
+        for (int i = 0; i < 10; i++) {
+            ahora += sondeo.getIntervaloMs(false);
+            sondeo.registrarLectura(950 + i % 2, false, ahora);
+            long intervalo = sondeo.getIntervaloMs(false);
+            assertTrue(intervalo >= anterior);
+            anterior = intervalo;
+        }
+        assertEquals(SondeoBateria.INTERVALO_MAX_MS, anterior);
+        // Con sesión no pasa de INTERVALO_SESION_MS
+        assertEquals(SondeoBateria.INTERVALO_SESION_MS, sondeo.getIntervaloMs(true));
+    }
+
+    @Test
+    public void cercaDelUmbralSeSondeaAlMinimo() {
+        SondeoBateria sondeo = new SondeoBateria("sim", UMBRAL_BAJA, 0);
+        sondeo.registrarLectura(UMBRAL_BAJA + SondeoBateria.MARGEN_BAJA - 1, false, 0);
+
+        assertEquals(SondeoBateria.INTERVALO_MIN_MS, sondeo.getIntervaloMs(false));
+        assertEquals(SondeoBateria.INTERVALO_MIN_MS, sondeo.getIntervaloMs(true));
+    }
+
+    @Test
+    public void lecturasMuySeguidasNoCambianLaEstimacion() {
+        SondeoBateria sondeo = new SondeoBateria("sim", UMBRAL_BAJA, 0);
+        sondeo.registrarLectura(950, true, 0);
+        // Respuestas del latido cada segundo con una caída brusca: se ignoran
+        for (int i = 1; i < SondeoBateria.INTERVALO_MIN_MS / 2000; i++) {
+            sondeo.registrarLectura(900, true, i * 1000L);
+        }
+        assertEquals(0, sondeo.getDescargaPorHora(), 0);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.triviumgor.bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TramaCodecTest {
+
+    /**
+     * Copia literal de TratamientoController.construirTrama() antes de
+     * TramaCodec: es la referencia de los bytes que espera el firmware.
+     */
+    private static byte[] construirTramaOriginal(int intensidad, int duracionMin) {
+        int index = 0;
+        int[] trama = new int[28];
+        trama[index++] = 0x41; // 'A'
+        index = escribirValor4Digitos(trama, index, 4);
+        index = escribirValor4Digitos(trama, index, 4);
+        index = escribirValor4Digitos(trama, index, 100);
+        index = escribirValor4Digitos(trama, index, 100);
+        index = escribirValor2Digitos(trama, index, intensidad);
+        index = escribirValor2Digitos(trama, index, intensidad);
+        index = escribirValor2Digitos(trama, index, duracionMin);
+        trama[index++] = 0x42; // 'B'
+
+        byte[] resultado = new byte[index];
+        for (int i = 0; i < index; i++) {
+            resultado[i] = (byte) trama[i];
+        }
+        return resultado;
+    }
+
+    private static int escribirValor4Digitos(int[] trama, int index, int valor) {
+        int aux1, aux2;
+        aux1 = valor / 1000;
+        aux2 = valor % 1000;
+        trama[index++] = aux1 + 0x30;
+        aux1 = aux2 / 100;
+        aux2 = aux2 % 100;
+        trama[index++] = aux1 + 0x30;
+        aux1 = aux2 / 10;
+        aux2 = aux2 % 10;
+        trama[index++] = aux1 + 0x30;
+        trama[index++] = aux2 + 0x30;
+        return index;
+    }
+
+    private static int escribirValor2Digitos(int[] trama, int index, int valor) {
+        int aux1 = valor / 10;
+        int aux2 = valor % 10;
+        trama[index++] = aux1 + 0x30;
+        trama[index++] = aux2 + 0x30;
+        return index;
+    }
+
+    @Test
+    public void mismosBytesQueLaTramaOriginal() {
+        TramaCodec codec = new TramaCodec();
+        for (int intensidad = 0; intensidad <= 99; intensidad++) {
+            for (int duracion = 0; duracion <= 99; duracion++) {
+                byte[] esperada = construirTramaOriginal(intensidad, duracion);
+                int n = codec.codificarSesion(intensidad, duracion);
+                assertEquals(TramaCodec.LONGITUD_TRAMA_SESION, n);
+                assertEquals(esperada.length, n);
+                for (int i = 0; i < n; i++) {
+                    assertEquals("intensidad " + intensidad + ", duración " + duracion + ", byte " + i,
+                            esperada[i], codec.getBuffer()[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tramaConocida() {
+        TramaCodec codec = new TramaCodec();
+        codec.codificarSesion(7, 30);
+        assertEquals("A0004000401000100070730B",
+                new String(codec.getBuffer(), 0, TramaCodec.LONGITUD_TRAMA_SESION));
+    }
+
+    @Test
+    public void codificaEnUnOffset() {
+        byte[] destino = new byte[40];
+        int n = TramaCodec.codificarSesion(destino, 10, 55, 20);
+        assertEquals(TramaCodec.LONGITUD_TRAMA_SESION, n);
+        assertEquals(0, destino[9]);
+        assertEquals(TramaCodec.CMD_INICIO, destino[10]);
+        assertEquals(TramaCodec.CMD_FIN, destino[10 + n - 1]);
+        assertEquals(0, destino[10 + n]);
+    }
+
+    @Test
+    public void valoresFueraDeRango() {
+        int[][] casos = {{-1, 10}, {100, 10}, {10, -1}, {10, 100}};
+        TramaCodec codec = new TramaCodec();
+        for (int[] caso : casos) {
+            try {
+                codec.codificarSesion(caso[0], caso[1]);
+                fail("Aceptó " + caso[0] + "/" + caso[1]);
+            } catch (IllegalArgumentException esperado) {
+                // ok
+            }
+            try {
+                TramaCodec.validarSesion(caso[0], caso[1]);
+                fail("validarSesion aceptó " + caso[0] + "/" + caso[1]);
+            } catch (IllegalArgumentException esperado) {
+                // ok
+            }
+        }
+        TramaCodec.validarSesion(0, 0);
+        TramaCodec.validarSesion(99, 99);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferPequeno() {
+        TramaCodec.codificarSesion(new byte[30], 10, 10, 10);
+    }
+}
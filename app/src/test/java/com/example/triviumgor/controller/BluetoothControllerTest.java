@@ -0,0 +1,329 @@
+package com.example.triviumgor.controller;
+
+import com.example.triviumgor.bluetooth.SimuladorFirmware;
+import com.example.triviumgor.bluetooth.Transporte;
+import com.example.triviumgor.model.DispositivoState;
+import com.example.triviumgor.model.RegistroDispositivos;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Intentos de conexión (timeout, cancelación y estadísticas) y reconexión
+ * automática, sobre el firmware simulado
+ */
+public class BluetoothControllerTest {
+
+    private static final long ESPERA_MS = 5000;
+
+    private final HiloPrincipalFalso principal = new HiloPrincipalFalso();
+    private final BluetoothController controller = new BluetoothController(null, null, principal);
+    private final DispositivoState dispositivo = new RegistroDispositivos().crear(1);
+    private final SimuladorFirmware sim = new SimuladorFirmware("00:11:22:33:44:55", 1L);
+    // Solo se tocan en el hilo del test (el "principal")
+    private final List<String> resultados = new ArrayList<>();
+
+    private final CountDownLatch dentro = new CountDownLatch(1);
+    private final CountDownLatch cerrado = new CountDownLatch(1);
+
+    /** El simulador, anotando cuándo lo cierra el intento */
+    private final Transporte transporte = new Transporte() {
+        @Override
+        public String getDireccion() {
+            return sim.getDireccion();
+        }
+
+        @Override
+        public InputStream getEntrada() {
+            return sim.getEntrada();
+        }
+
+        @Override
+        public OutputStream getSalida() {
+            return sim.getSalida();
+        }
+
+        @Override
+        public void cerrar() {
+            cerrado.countDown();
+            sim.cerrar();
+        }
+    };
+
+    /** Como socket.connect() con el estimulador apagado: solo sale al cerrar el socket */
+    private final Callable<Void> bloqueado = () -> {
+        dentro.countDown();
+        cerrado.await();
+        throw new IOException("socket closed");
+    };
+
+    @After
+    public void limpiar() {
+        controller.cancelarConexiones();
+        dispositivo.resetConexion();
+    }
+
+    private Future<Void> conectar(Callable<Void> conectar) {
+        return controller.realizarConexion(transporte, conectar, null, dispositivo,
+                () -> resultados.add("ok"), resultados::add);
+    }
+
+    @Test
+    public void conectaYCuentaLaLatencia() throws Exception {
+        assertNotNull(conectar(() -> {
+            Thread.sleep(20);
+            return null;
+        }));
+        principal.ejecutarSiguiente(ESPERA_MS);
+
+        assertEquals("ok", resultados.get(0));
+        assertTrue(dispositivo.isConnected());
+        assertSame(transporte, dispositivo.getTransporte());
+        assertEquals(1, controller.getConexionesOk());
+        assertEquals(0, controller.getConexionesFallidas());
+        assertTrue(controller.getLatenciaMediaConexionMs() >= 20);
+        assertEquals(controller.getLatenciaMediaConexionMs(), controller.getLatenciaMaxConexionMs());
+        assertEquals(1, cerrado.getCount());
+    }
+
+    @Test
+    public void elTimeoutCierraElTransporte() throws Exception {
+        controller.setTimeoutConexionMs(50);
+        long t0 = System.nanoTime();
+        conectar(bloqueado);
+        principal.ejecutarSiguiente(ESPERA_MS);
+
+        assertTrue(System.nanoTime() - t0 >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals("Fallo al conectarse: Tiempo de conexión agotado (50 ms)", resultados.get(0));
+        assertEquals(0, cerrado.getCount());
+        assertFalse(dispositivo.isConnected());
+        assertEquals(1, controller.getConexionesTimeout());
+        assertEquals(0, controller.getConexionesFallidas());
+        assertEquals(0, controller.getConexionesOk());
+        assertEquals(0, controller.getLatenciaMaxConexionMs());
+
+        // El intento terminado deja libre el dispositivo
+        assertNotNull(conectar(() -> {
+            throw new IOException("Connection refused");
+        }));
+        principal.ejecutarSiguiente(ESPERA_MS);
+        assertEquals("Fallo al conectarse: Connection refused", resultados.get(1));
+    }
+
+    @Test
+    public void cancelarCierraElTransporteYAvisa() throws Exception {
+        Future<Void> intento = conectar(bloqueado);
+        assertTrue(dentro.await(ESPERA_MS, TimeUnit.MILLISECONDS));
+
+        controller.cancelarConexiones();
+
+        assertTrue(intento.isCancelled());
+        assertEquals(0, cerrado.getCount());
+        principal.ejecutarSiguiente(ESPERA_MS);
+        assertEquals("Fallo al conectarse: Conexión cancelada", resultados.get(0));
+        assertEquals(1, controller.getConexionesCanceladas());
+        assertEquals(0, controller.getConexionesTimeout());
+        assertFalse(dispositivo.isConnected());
+    }
+
+    @Test
+    public void unErrorDeConexionCierraElTransporte() throws Exception {
+        conectar(() -> {
+            throw new IOException("Connection refused");
+        });
+        principal.ejecutarSiguiente(ESPERA_MS);
+
+        assertEquals("Fallo al conectarse: Connection refused", resultados.get(0));
+        assertEquals(0, cerrado.getCount());
+        assertEquals(1, controller.getConexionesFallidas());
+        assertEquals(0, controller.getConexionesTimeout());
+        assertFalse(dispositivo.isConnected());
+    }
+
+    @Test
+    public void unSoloIntentoPorDispositivo() throws Exception {
+        conectar(bloqueado);
+        assertTrue(dentro.await(ESPERA_MS, TimeUnit.MILLISECONDS));
+
+        // El segundo se rechaza en el acto, sin pasar por el hilo principal
+        assertNull(conectar(() -> null));
+        assertEquals("Ya hay una conexión en curso", resultados.get(0));
+        assertEquals(0, principal.getPendientes());
+    }
+
+    // ========================
+    // RECONEXIÓN
+    // ========================
+
+    /** Tope de la espera del intento n: base * 2^n limitado al máximo */
+    private static long tope(int intento) {
+        return Math.min(BluetoothController.RECONEXION_ESPERA_BASE_MS << Math.min(intento, 16),
+                BluetoothController.RECONEXION_ESPERA_MAX_MS);
+    }
+
+    /** Random que siempre devuelve el mismo nextDouble() */
+    private static Random fijo(final double valor) {
+        return new Random() {
+            @Override
+            public double nextDouble() {
+                return valor;
+            }
+        };
+    }
+
+    @Test
+    public void calcularEsperaVaDeLaMitadAlTope() {
+        assertEquals(500, BluetoothController.calcularEspera(0, fijo(0)));
+        assertEquals(999, BluetoothController.calcularEspera(0, fijo(0.999)));
+        assertEquals(4000, BluetoothController.calcularEspera(3, fijo(0)));
+        // 2^5 s ya pasa del máximo
+        assertEquals(BluetoothController.RECONEXION_ESPERA_MAX_MS / 2, BluetoothController.calcularEspera(5, fijo(0)));
+        // Sin desbordar el desplazamiento con intentos muy altos
+        assertEquals(BluetoothController.RECONEXION_ESPERA_MAX_MS / 2, BluetoothController.calcularEspera(1000, fijo(0)));
+        assertTrue(BluetoothController.calcularEspera(1000, fijo(0.999999)) <= BluetoothController.RECONEXION_ESPERA_MAX_MS);
+
+        Random random = new Random(1L);
+        for (int intento = 0; intento < 40; intento++) {
+            for (int n = 0; n < 200; n++) {
+                long espera = BluetoothController.calcularEspera(intento, random);
+                assertTrue(espera >= tope(intento) / 2);
+                assertTrue(espera <= tope(intento));
+            }
+        }
+    }
+
+    @Test
+    public void calcularEsperaReparteLosReintentos() {
+        // Dos dispositivos que pierden el enlace a la vez no reintentan a la vez
+        Random a = new Random(1L);
+        Random b = new Random(2L);
+        int iguales = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int n = 0; n < 1000; n++) {
+            long ea = BluetoothController.calcularEspera(3, a);
+            long eb = BluetoothController.calcularEspera(3, b);
+            if (ea == eb) iguales++;
+            min = Math.min(min, ea);
+            max = Math.max(max, ea);
+        }
+        assertTrue(iguales < 10);
+        // Cubre casi todo el intervalo [tope / 2, tope]
+        assertTrue(min < tope(3) / 2 + tope(3) / 20);
+        assertTrue(max > tope(3) - tope(3) / 20);
+    }
+
+    /**
+     * Controlador con "Bluetooth" cuya reconexión usa un simulador nuevo en
+     * cada intento; los fallosAntes primeros intentos fallan.
+     */
+    private BluetoothController conReconexion(final int fallosAntes) {
+        return new BluetoothController(null, null, principal) {
+            private int intentos = 0;
+
+            @Override
+            boolean isBluetoothDisponible() {
+                return true;
+            }
+
+            @Override
+            Future<Void> conectarMac(String mac, DispositivoState d,
+                                     BluetoothController.OnConnectedCallback onSuccess,
+                                     BluetoothController.OnErrorCallback onError) {
+                final boolean falla = ++intentos <= fallosAntes;
+                return realizarConexion(new SimuladorFirmware(mac, intentos), () -> {
+                    if (falla) throw new IOException("Connection refused");
+                    return null;
+                }, null, d, onSuccess, onError);
+            }
+        };
+    }
+
+    /** Anota el resultado de la reconexión */
+    private final BluetoothController.OnReconexion anotarReconexion = new BluetoothController.OnReconexion() {
+        @Override
+        public void onReconectado(DispositivoState d, long recuperacionMs, int intentos) {
+            resultados.add("reconectado " + intentos);
+        }
+
+        @Override
+        public void onReconexionFallida(DispositivoState d, String mensaje) {
+            resultados.add(mensaje);
+        }
+    };
+
+    /** Ejecuta en el hilo principal hasta que la reconexión termina */
+    private void reconectarHastaTerminar(BluetoothController c) throws Exception {
+        c.reconectar(dispositivo, sim.getDireccion(), anotarReconexion);
+        while (resultados.isEmpty()) {
+            principal.ejecutarSiguiente(ESPERA_MS);
+        }
+    }
+
+    @Test
+    public void laReconexionSeRindeTrasElMaximoDeIntentos() throws Exception {
+        BluetoothController c = conReconexion(Integer.MAX_VALUE);
+        c.setMaxIntentosReconexion(3);
+        reconectarHastaTerminar(c);
+
+        assertEquals("No se pudo reconectar tras 3 intentos: Fallo al conectarse: Connection refused",
+                resultados.get(0));
+        assertEquals(1, resultados.size());
+        assertFalse(c.isReconectando(dispositivo));
+        assertFalse(dispositivo.isConnected());
+        assertEquals(0, principal.getPendientes());
+        assertEquals(3, c.getConexionesFallidas());
+        assertEquals(0, c.getTasaExitoReconexion());
+
+        // Una espera por intento, creciendo dentro de los límites de calcularEspera
+        List<Long> retrasos = principal.getRetrasos();
+        assertEquals(3, retrasos.size());
+        for (int n = 0; n < retrasos.size(); n++) {
+            assertTrue(retrasos.get(n) >= tope(n) / 2);
+            assertTrue(retrasos.get(n) <= tope(n));
+        }
+    }
+
+    @Test
+    public void laReconexionSigueHastaConectar() throws Exception {
+        BluetoothController c = conReconexion(2);
+        c.setMaxIntentosReconexion(3);
+        reconectarHastaTerminar(c);
+
+        assertEquals("reconectado 3", resultados.get(0));
+        assertFalse(c.isReconectando(dispositivo));
+        assertTrue(dispositivo.isConnected());
+        assertEquals(100, c.getTasaExitoReconexion());
+        assertEquals(2, c.getConexionesFallidas());
+        assertEquals(1, c.getConexionesOk());
+        assertEquals(3, principal.getRetrasos().size());
+    }
+
+    @Test
+    public void cancelarLaReconexionNoAvisa() throws Exception {
+        BluetoothController c = conReconexion(Integer.MAX_VALUE);
+        c.reconectar(dispositivo, sim.getDireccion(), anotarReconexion);
+        assertTrue(c.isReconectando(dispositivo));
+        assertEquals(1, principal.getPendientes());
+
+        c.cancelarReconexion(dispositivo);
+
+        assertFalse(c.isReconectando(dispositivo));
+        // El reintento programado se quita del hilo principal
+        assertEquals(0, principal.getPendientes());
+        assertTrue(resultados.isEmpty());
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.triviumgor.controller;
+
+import com.example.triviumgor.bluetooth.ColaComandos;
+import com.example.triviumgor.bluetooth.TramaCodec;
+
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark en la JVM del camino de una trama de sesión: codificarSesion y
+ * enviarTrama dentro de un comando de ColaComandos, como encolarSesion, con
+ * un stream en memoria en lugar del socket. Se compara la pausa 0 (una sola
+ * escritura) con PAUSA_ENTRE_BYTES_LEGACY_MS (byte a byte con sleep). Los
+ * tiempos salen por consola.
+ */
+public class EnvioTramaBenchmarkTest {
+
+    private static final int CODIFICACIONES = 1000000;
+
+    /** Socket en memoria: cuenta bytes y llamadas a write */
+    private static final class Bucle extends OutputStream {
+        volatile long bytes;
+        volatile long escrituras;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            escrituras++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            escrituras++;
+        }
+    }
+
+    /** Resultado de una pasada por la cola */
+    private static final class Medida {
+        int tramas;
+        long totalMs;
+        long latenciaMediaUs;
+        long latenciaMaxUs;
+        long escrituras;
+
+        @Override
+        public String toString() {
+            return tramas + " tramas en " + totalMs + " ms" +
+                    " | media: " + latenciaMediaUs + " us" +
+                    " | máx: " + latenciaMaxUs + " us" +
+                    " | write(): " + escrituras;
+        }
+    }
+
+    /**
+     * Envía las tramas una tras otra, esperando cada una antes de encolar la
+     * siguiente: la latencia es la de la trama, sin espera en cola.
+     */
+    private static Medida enviar(int tramas, final int pausaMs) throws Exception {
+        Bucle bucle = new Bucle();
+        ColaComandos cola = new ColaComandos("bench", bucle);
+        final TramaCodec codec = new TramaCodec();
+        long inicio = System.nanoTime();
+        try {
+            for (int n = 0; n < tramas; n++) {
+                final int intensidad = n % 100;
+                Future<Void> enviada = cola.encolar("sesion", os -> {
+                    int longitud = codec.codificarSesion(intensidad, 20);
+                    TratamientoController.enviarTrama(os, codec.getBuffer(), longitud, pausaMs);
+                }, null);
+                enviada.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            cola.cerrar(ColaComandos.ESPERA_VACIADO_MS);
+        }
+
+        Medida m = new Medida();
+        m.tramas = tramas;
+        m.totalMs = (System.nanoTime() - inicio) / 1000000;
+        m.latenciaMediaUs = cola.getLatenciaMediaUs();
+        m.latenciaMaxUs = cola.getLatenciaMaxUs();
+        m.escrituras = bucle.escrituras;
+        assertEquals(tramas, cola.getEnviados());
+        assertEquals(0, cola.getFallidos());
+        assertEquals((long) tramas * TramaCodec.LONGITUD_TRAMA_SESION, bucle.bytes);
+        return m;
+    }
+
+    @Test
+    public void codificarSesionReutilizaElBuffer() {
+        TramaCodec codec = new TramaCodec();
+        byte[] buffer = codec.getBuffer();
+        long suma = 0;
+        // Calentamiento del JIT
+        for (int n = 0; n < CODIFICACIONES / 10; n++) {
+            suma += codec.codificarSesion(n % 100, n % 60);
+        }
+        long t0 = System.nanoTime();
+        for (int n = 0; n < CODIFICACIONES; n++) {
+            suma += codec.codificarSesion(n % 100, n % 60);
+        }
+        long ns = System.nanoTime() - t0;
+        System.out.println("codificarSesion | " + CODIFICACIONES + " tramas | "
+                + ns / CODIFICACIONES + " ns/trama");
+
+        assertEquals((long) (CODIFICACIONES + CODIFICACIONES / 10) * TramaCodec.LONGITUD_TRAMA_SESION, suma);
+        assertSame(buffer, codec.getBuffer());
+    }
+
+    @Test
+    public void pausaCeroFrenteALegacy() throws Exception {
+        enviar(200, 0); // calentamiento
+        Medida directa = enviar(2000, 0);
+        Medida legacy = enviar(20, TramaCodec.PAUSA_ENTRE_BYTES_LEGACY_MS);
+
+        System.out.println("enviarTrama pausa 0      | " + directa);
+        System.out.println("enviarTrama pausa legacy | " + legacy);
+
+        // Sin pausa, una sola escritura por trama; con pausa, una por byte
+        assertEquals(directa.tramas, directa.escrituras);
+        assertEquals((long) legacy.tramas * TramaCodec.LONGITUD_TRAMA_SESION, legacy.escrituras);
+        // Cada trama legacy duerme al menos la pausa después de cada byte
+        long minimoUs = TramaCodec.LONGITUD_TRAMA_SESION * TramaCodec.PAUSA_ENTRE_BYTES_LEGACY_MS * 1000L;
+        assertTrue(legacy.latenciaMediaUs >= minimoUs);
+        assertTrue(directa.latenciaMediaUs < legacy.latenciaMediaUs);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.triviumgor.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Hilo principal para los tests de BluetoothController: lo publicado se
+ * guarda en orden y el hilo del test lo ejecuta con ejecutarSiguiente(). Los
+ * retrasos de postDelayed no se esperan, solo se anotan.
+ */
+final class HiloPrincipalFalso implements BluetoothController.HiloPrincipal {
+
+    private final LinkedBlockingQueue<Runnable> pendientes = new LinkedBlockingQueue<>();
+    private final List<Long> retrasos = new ArrayList<>();
+
+    @Override
+    public void post(Runnable accion) {
+        pendientes.add(accion);
+    }
+
+    @Override
+    public void postDelayed(Runnable accion, long retrasoMs) {
+        synchronized (retrasos) {
+            retrasos.add(retrasoMs);
+        }
+        pendientes.add(accion);
+    }
+
+    @Override
+    public void quitar(Runnable accion) {
+        pendientes.removeAll(Collections.singleton(accion));
+    }
+
+    /** Espera a que se publique algo y lo ejecuta en el hilo del test */
+    void ejecutarSiguiente(long esperaMs) throws InterruptedException {
+        Runnable accion = pendientes.poll(esperaMs, TimeUnit.MILLISECONDS);
+        assertNotNull("No se publicó nada en el hilo principal", accion);
+        accion.run();
+    }
+
+    int getPendientes() {
+        return pendientes.size();
+    }
+
+    /** Retrasos pedidos a postDelayed, en orden */
+    List<Long> getRetrasos() {
+        synchronized (retrasos) {
+            return new ArrayList<>(retrasos);
+        }
+    }
+}
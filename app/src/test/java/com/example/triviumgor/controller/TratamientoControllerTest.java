@@ -0,0 +1,222 @@
+package com.example.triviumgor.controller;
+
+import com.example.triviumgor.bluetooth.ColaComandos;
+import com.example.triviumgor.bluetooth.SimuladorFirmware;
+import com.example.triviumgor.model.DispositivoState;
+import com.example.triviumgor.model.RegistroDispositivos;
+import com.example.triviumgor.util.CuentaAtras;
+import com.example.triviumgor.util.RelojFalso;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Envío de tramas de sesión a través de la cola real, contra el firmware
+ * simulado, y reanudación de la sesión tras un corte del enlace
+ */
+public class TratamientoControllerTest {
+
+    private static final long ESPERA_MS = 5000;
+
+    /** Apunta los avisos del controlador */
+    static final class ListenerFalso implements TratamientoController.TratamientoListener {
+        final List<String> eventos = new ArrayList<>();
+
+        private synchronized void anotar(String evento) {
+            eventos.add(evento);
+        }
+
+        synchronized int contar(String prefijo) {
+            int n = 0;
+            for (String e : eventos) {
+                if (e.startsWith(prefijo)) n++;
+            }
+            return n;
+        }
+
+        @Override public void onTiempoRestanteActualizado(int id, int minutos) { anotar("restante " + minutos); }
+        @Override public void onSegundosRestantesActualizados(int id, int segundos) { }
+        @Override public void onSesionFinalizada(int id) { anotar("finalizada"); }
+        @Override public void onBateriaActualizada(int id, int carga, int nivel, String texto) { }
+        @Override public void onError(int id, String mensaje) { anotar("error " + mensaje); }
+        @Override public void onSesionIniciada(int id) { anotar("iniciada"); }
+        @Override public void onIntensidadActualizada(int id, int intensidad) { anotar("intensidad " + intensidad); }
+        @Override public void onEnlacePerdido(int id, String motivo) { anotar("perdido " + motivo); }
+    }
+
+    private final ListenerFalso listener = new ListenerFalso();
+    private final DispositivoState dispositivo = new RegistroDispositivos().crear(1);
+    private final RelojFalso reloj = new RelojFalso(1000);
+    private TratamientoController controller;
+    private SimuladorFirmware sim;
+    private CountDownLatch barrera;
+
+    @Before
+    public void conectar() throws IOException {
+        controller = new TratamientoController(listener, reloj);
+        controller.setLatido(0, 0, 0);
+        sim = new SimuladorFirmware("00:11:22:33:44:55", 1L);
+        sim.setLatencia(0, 0);
+        dispositivo.abrirConexion(sim, Runnable::run);
+    }
+
+    @After
+    public void desconectar() {
+        if (barrera != null) barrera.countDown();
+        controller.destroy();
+        dispositivo.resetConexion();
+    }
+
+    /** Espera a que el hilo escritor termine todo lo encolado hasta ahora */
+    private void vaciar() throws Exception {
+        dispositivo.getColaComandos().encolar("marca", os -> { }, null, ESPERA_MS)
+                .get(ESPERA_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Deja el hilo escritor parado en un comando hasta abrir la barrera */
+    private void bloquearEscritor() throws Exception {
+        final CountDownLatch dentro = new CountDownLatch(1);
+        barrera = new CountDownLatch(1);
+        final CountDownLatch b = barrera;
+        dispositivo.getColaComandos().encolar("bloqueado", os -> {
+            dentro.countDown();
+            try {
+                b.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, null);
+        assertTrue(dentro.await(ESPERA_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private void iniciar(int intensidad) throws Exception {
+        assertTrue(controller.iniciarOActualizarSesion(dispositivo, intensidad, 20));
+        vaciar();
+        assertEquals(1, sim.getTramasValidas());
+        assertEquals(intensidad, sim.getIntensidad());
+    }
+
+    @Test
+    public void cambiosConElEscritorBloqueadoSalenEnUnaSolaTrama() throws Exception {
+        iniciar(10);
+        bloquearEscritor();
+
+        final int cambios = 10;
+        for (int n = 1; n <= cambios; n++) {
+            assertFalse(controller.iniciarOActualizarSesion(dispositivo, 10 + n, 20 + n));
+        }
+        // La primera se encola; las demás solo sustituyen sus parámetros
+        assertEquals(cambios - 1, controller.getTramasSustituidas(dispositivo));
+        assertEquals(1, sim.getTramasValidas());
+
+        barrera.countDown();
+        vaciar();
+
+        assertEquals(2, sim.getTramasValidas());
+        assertEquals(10 + cambios, sim.getIntensidad());
+        assertEquals(20 + cambios, sim.getDuracionMin());
+        assertEquals(cambios, listener.contar("intensidad "));
+        assertEquals(0, listener.contar("error "));
+    }
+
+    @Test
+    public void sinAgruparCadaCambioEsUnaTrama() throws Exception {
+        controller.setAgruparCambiosIntensidad(false);
+        iniciar(10);
+        bloquearEscritor();
+
+        for (int n = 1; n <= 5; n++) {
+            controller.iniciarOActualizarSesion(dispositivo, 10 + n, 20);
+        }
+        barrera.countDown();
+        vaciar();
+
+        assertEquals(6, sim.getTramasValidas());
+        assertEquals(15, sim.getIntensidad());
+        assertEquals(0, controller.getTramasSustituidas(dispositivo));
+    }
+
+    @Test
+    public void trasUnRechazoElSiguienteCambioSeEncola() throws Exception {
+        iniciar(10);
+        bloquearEscritor();
+
+        // Se llena la cola para que la trama de sesión se rechace
+        ColaComandos cola = dispositivo.getColaComandos();
+        try {
+            while (true) cola.encolar("relleno", os -> { }, null);
+        } catch (RejectedExecutionException esperado) {
+            // llena
+        }
+        assertFalse(controller.iniciarOActualizarSesion(dispositivo, 30, 20));
+        assertEquals(1, listener.contar("error "));
+
+        barrera.countDown();
+        vaciar();
+        assertEquals(1, sim.getTramasValidas());
+
+        // Sin descartar() el pendiente seguiría marcado como encolado y este
+        // cambio se quedaría esperando a un comando que no existe
+        assertFalse(controller.iniciarOActualizarSesion(dispositivo, 31, 20));
+        vaciar();
+        assertEquals(2, sim.getTramasValidas());
+        assertEquals(31, sim.getIntensidad());
+        assertEquals(0, controller.getTramasSustituidas(dispositivo));
+    }
+
+    /** Corta el enlace con la sesión en marcha y reconecta con otro simulador tras corteMs */
+    private SimuladorFirmware cortarYReconectar(long corteMs) throws IOException {
+        assertTrue(controller.suspenderSesion(dispositivo));
+        dispositivo.resetConexion();
+        reloj.avanzar(corteMs);
+        SimuladorFirmware nuevo = new SimuladorFirmware("00:11:22:33:44:55", 2L);
+        nuevo.setLatencia(0, 0);
+        dispositivo.abrirConexion(nuevo, Runnable::run);
+        return nuevo;
+    }
+
+    @Test
+    public void elCorteCuentaComoTiempoTranscurrido() throws Exception {
+        iniciar(10);
+        reloj.avanzar(5 * CuentaAtras.MINUTO_MS);
+
+        // El estimulador sigue durante los 3 min sin enlace: quedan 12, no 15
+        SimuladorFirmware reconectado = cortarYReconectar(3 * CuentaAtras.MINUTO_MS);
+        assertTrue(controller.reanudarSesion(dispositivo));
+        vaciar();
+
+        assertEquals(1, reconectado.getTramasValidas());
+        assertEquals(12, reconectado.getDuracionMin());
+        assertEquals(10, reconectado.getIntensidad());
+        assertTrue(dispositivo.isSesionActiva());
+        assertEquals(1, listener.contar("restante 12"));
+        assertEquals(0, listener.contar("finalizada"));
+    }
+
+    @Test
+    public void siElCorteAgotaLaSesionSeEnviaLaParada() throws Exception {
+        iniciar(10);
+        reloj.avanzar(5 * CuentaAtras.MINUTO_MS);
+
+        SimuladorFirmware reconectado = cortarYReconectar(15 * CuentaAtras.MINUTO_MS);
+        assertFalse(controller.reanudarSesion(dispositivo));
+        vaciar();
+
+        assertEquals(0, reconectado.getTramasValidas());
+        assertEquals(1, reconectado.getParadas());
+        assertFalse(dispositivo.isSesionActiva());
+        assertEquals(1, listener.contar("finalizada"));
+        // La sesión suspendida ya no existe
+        assertFalse(controller.reanudarSesion(dispositivo));
+    }
+}
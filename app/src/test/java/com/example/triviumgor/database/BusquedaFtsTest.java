@@ -0,0 +1,109 @@
+package com.example.triviumgor.database;
+
+import org.junit.Test;
+
+import java.text.Normalizer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BusquedaFtsTest {
+
+    /** Letras de Latin-1 con diacrítico: U+00C0..U+00FF sin × ni ÷, más Ÿ */
+    private static Set<Character> letrasLatin1() {
+        Set<Character> letras = new HashSet<>();
+        for (char c = 'À'; c <= 'ÿ'; c++) {
+            if (c != '×' && c != '÷') letras.add(c);
+        }
+        letras.add('Ÿ');
+        return letras;
+    }
+
+    @Test
+    public void tablaCubreTodasLasLetrasLatin1() {
+        Set<Character> enTabla = new HashSet<>();
+        for (String[] par : BusquedaFts.EQUIVALENCIAS) {
+            assertEquals(1, par[0].length());
+            assertTrue(par[1] + " no es ASCII en minúscula", par[1].matches("[a-z]+"));
+            assertTrue("Repetida: " + par[0], enTabla.add(par[0].charAt(0)));
+        }
+        assertEquals(letrasLatin1(), enTabla);
+    }
+
+    @Test
+    public void cadaLetraSeQuedaSinDiacritico() {
+        for (char c : letrasLatin1()) {
+            String normalizada = BusquedaFts.normalizar("x" + c + "x");
+            assertTrue(c + " → " + normalizada, normalizada.matches("x[a-z]+x"));
+            // Mayúscula y minúscula acaban igual
+            String minuscula = String.valueOf(c).toLowerCase();
+            if (minuscula.length() == 1) {
+                assertEquals(String.valueOf(c), normalizada,
+                        BusquedaFts.normalizar("x" + minuscula + "x"));
+            }
+        }
+    }
+
+    @Test
+    public void coincideConQuitarLasMarcasNfd() {
+        // Para las letras que Unicode descompone, la tabla da la letra base
+        for (char c : letrasLatin1()) {
+            String base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}", "").toLowerCase();
+            if (base.length() == 1 && base.charAt(0) < 0x80) {
+                assertEquals(String.valueOf(c), base, BusquedaFts.normalizar(String.valueOf(c)));
+            }
+        }
+    }
+
+    @Test
+    public void tildeCombinadaSeJuntaConSuLetra() {
+        assertEquals("gonzalez", BusquedaFts.normalizar("González"));
+        assertEquals("goncalves", BusquedaFts.normalizar("Gonçalves"));
+    }
+
+    @Test
+    public void soloMinusculasAscii() {
+        assertEquals("muller-ludenscheidt", BusquedaFts.normalizar("MÜLLER-Lüdenscheidt"));
+        // Fuera de la tabla no se toca nada, igual que en el trigger
+        assertEquals("čech łodź", BusquedaFts.normalizar("čech łódź"));
+        assertEquals("Čech", BusquedaFts.normalizar("Čech"));
+    }
+
+    @Test
+    public void construirMatch() {
+        assertEquals("garcia* lopez*", BusquedaFts.construirMatch("García  López", null));
+        assertEquals("nombre:francoise*", BusquedaFts.construirMatch("Françoise", "nombre"));
+        assertEquals("dni:12* dni:345* dni:678* dni:z*",
+                BusquedaFts.construirMatch("12.345.678-Z", BusquedaFts.COL_DNI));
+        assertNull(BusquedaFts.construirMatch(" -- ", null));
+        assertNull(BusquedaFts.construirMatch(null, null));
+        // Las letras fuera de la tabla siguen dentro de la palabra, como en el tokenizer
+        assertEquals("čech*", BusquedaFts.construirMatch("čech", null));
+        // Los operadores de FTS no pasan
+        assertEquals("a* or* b*", BusquedaFts.construirMatch("a\" OR:(b", null));
+    }
+
+    @Test
+    public void sqlNormalizarAplicaLaMismaTablaPorPasadas() {
+        assertTrue(BusquedaFts.sqlNormalizar("new.nombre", 0).startsWith(
+                repetir("replace(", BusquedaFts.EQUIVALENCIAS_POR_PASADA) + "lower(coalesce(new.nombre, ''))"));
+        StringBuilder todas = new StringBuilder();
+        for (int pasada = 0; pasada < BusquedaFts.PASADAS; pasada++) {
+            String sql = BusquedaFts.sqlNormalizar("nombre", pasada);
+            // SQLite no admite más de ~30 llamadas anidadas en una expresión
+            assertTrue(sql.split("replace\\(", -1).length - 1 <= BusquedaFts.EQUIVALENCIAS_POR_PASADA);
+            todas.append(sql);
+        }
+        for (String[] par : BusquedaFts.EQUIVALENCIAS) {
+            assertTrue(par[0], todas.indexOf("'" + par[0] + "', '" + par[1] + "'") >= 0);
+        }
+    }
+
+    private static String repetir(String s, int veces) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < veces; i++) sb.append(s);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.triviumgor.database;
+
+import android.database.Cursor;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cursor en memoria para tests en la JVM: filas fijas y un contador de
+ * llamadas por método. Cursor es una interfaz, así que basta con un Proxy;
+ * cualquier método no soportado falla con UnsupportedOperationException.
+ */
+final class CursorFalso {
+
+    private final List<String> columnas;
+    private final Object[][] filas;
+    private final Map<String, Integer> llamadas = new HashMap<>();
+    private int posicion = -1;
+    private boolean cerrado = false;
+
+    CursorFalso(String[] columnas, Object[]... filas) {
+        this.columnas = Arrays.asList(columnas);
+        this.filas = filas;
+    }
+
+    Cursor cursor() {
+        return (Cursor) Proxy.newProxyInstance(Cursor.class.getClassLoader(),
+                new Class<?>[]{Cursor.class}, (proxy, metodo, args) -> {
+                    String nombre = metodo.getName();
+                    Integer n = llamadas.get(nombre);
+                    llamadas.put(nombre, n == null ? 1 : n + 1);
+                    switch (nombre) {
+                        case "getColumnIndex":
+                            return columnas.indexOf((String) args[0]);
+                        case "getColumnIndexOrThrow": {
+                            int i = columnas.indexOf((String) args[0]);
+                            if (i < 0) throw new IllegalArgumentException("column '" + args[0] + "' does not exist");
+                            return i;
+                        }
+                        case "getCount":
+                            return filas.length;
+                        case "moveToFirst":
+                            posicion = 0;
+                            return filas.length > 0;
+                        case "moveToNext":
+                            if (posicion < filas.length) posicion++;
+                            return posicion < filas.length;
+                        case "getString":
+                            return celda(args[0]) == null ? null : String.valueOf(celda(args[0]));
+                        case "getInt":
+                            return celda(args[0]) == null ? 0 : ((Number) celda(args[0])).intValue();
+                        case "getLong":
+                            return celda(args[0]) == null ? 0L : ((Number) celda(args[0])).longValue();
+                        case "close":
+                            cerrado = true;
+                            return null;
+                        case "isClosed":
+                            return cerrado;
+                        default:
+                            throw new UnsupportedOperationException(nombre);
+                    }
+                });
+    }
+
+    private Object celda(Object indice) {
+        return filas[posicion][(Integer) indice];
+    }
+
+    int llamadas(String metodo) {
+        Integer n = llamadas.get(metodo);
+        return n == null ? 0 : n;
+    }
+
+    boolean isCerrado() {
+        return cerrado;
+    }
+}
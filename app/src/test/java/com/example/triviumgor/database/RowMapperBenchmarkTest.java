@@ -0,0 +1,101 @@
+package com.example.triviumgor.database;
+
+import android.database.Cursor;
+
+import com.example.triviumgor.model.Sesion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark en la JVM: 100.000 sesiones por CursorFalso, leyendo como antes
+ * (getColumnIndex en cada celda) y con RowMappers.SESION (índices resueltos
+ * una vez). El coste del Proxy pesa igual en los dos; la diferencia es la
+ * búsqueda de la columna por nombre. Los tiempos salen por consola; lo que
+ * se comprueba es el número de búsquedas y que las dos listas coinciden.
+ */
+public class RowMapperBenchmarkTest {
+
+    private static final int FILAS = 100000;
+    private static final int RONDAS = 5;
+
+    private static final String[] COLUMNAS_SESION = {
+            PacienteDBHelper.COLUMN_SESION_ID, PacienteDBHelper.COLUMN_PACIENTE_ID,
+            PacienteDBHelper.COLUMN_DISPOSITIVO, PacienteDBHelper.COLUMN_FECHA,
+            PacienteDBHelper.COLUMN_INTENSIDAD_SESION, PacienteDBHelper.COLUMN_TIEMPO_SESION
+    };
+
+    private static final Object[][] SESIONES = new Object[FILAS][];
+
+    static {
+        for (int i = 0; i < FILAS; i++) {
+            SESIONES[i] = new Object[]{i + 1, 1 + i % 200, "1", 1700000000000L + i * 60000L, 10 + i % 5, 20};
+        }
+    }
+
+    /** Lectura de antes del RowMapper: busca la columna por nombre en cada celda */
+    private static List<Sesion> porCelda(Cursor cursor) {
+        List<Sesion> lista = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                lista.add(new Sesion(
+                        cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_SESION_ID)),
+                        cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_PACIENTE_ID)),
+                        cursor.getString(cursor.getColumnIndex(PacienteDBHelper.COLUMN_DISPOSITIVO)),
+                        cursor.getLong(cursor.getColumnIndex(PacienteDBHelper.COLUMN_FECHA)),
+                        cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_INTENSIDAD_SESION)),
+                        cursor.getInt(cursor.getColumnIndex(PacienteDBHelper.COLUMN_TIEMPO_SESION))));
+            }
+        } finally {
+            cursor.close();
+        }
+        return lista;
+    }
+
+    @Test
+    public void porCeldaFrenteAIndicesPrecalculados() {
+        long mejorPorCeldaNs = Long.MAX_VALUE;
+        long mejorMapperNs = Long.MAX_VALUE;
+        CursorFalso ultimoPorCelda = null;
+        CursorFalso ultimoMapper = null;
+        List<Sesion> antes = null;
+        List<Sesion> ahora = null;
+
+        // La primera ronda calienta el JIT; se queda el mejor tiempo de cada modo
+        for (int ronda = 0; ronda < RONDAS; ronda++) {
+            ultimoPorCelda = new CursorFalso(COLUMNAS_SESION, SESIONES);
+            long t0 = System.nanoTime();
+            antes = porCelda(ultimoPorCelda.cursor());
+            mejorPorCeldaNs = Math.min(mejorPorCeldaNs, System.nanoTime() - t0);
+
+            ultimoMapper = new CursorFalso(COLUMNAS_SESION, SESIONES);
+            t0 = System.nanoTime();
+            ahora = RowMapper.lista(ultimoMapper.cursor(), RowMappers.SESION);
+            mejorMapperNs = Math.min(mejorMapperNs, System.nanoTime() - t0);
+        }
+
+        System.out.println("RowMapper | " + FILAS + " filas" +
+                " | getColumnIndex por celda: " + mejorPorCeldaNs / 1000000 + " ms" +
+                " | índices precalculados: " + mejorMapperNs / 1000000 + " ms");
+
+        assertEquals(FILAS * COLUMNAS_SESION.length, ultimoPorCelda.llamadas("getColumnIndex"));
+        assertEquals(COLUMNAS_SESION.length, ultimoMapper.llamadas("getColumnIndexOrThrow"));
+        assertEquals(0, ultimoMapper.llamadas("getColumnIndex"));
+
+        assertEquals(FILAS, ahora.size());
+        for (int i = 0; i < FILAS; i += FILAS / 100) {
+            Sesion a = antes.get(i);
+            Sesion b = ahora.get(i);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.getIdPaciente(), b.getIdPaciente());
+            assertEquals(a.getDispositivo(), b.getDispositivo());
+            assertEquals(a.getFecha(), b.getFecha());
+            assertEquals(a.getIntensidad(), b.getIntensidad());
+            assertEquals(a.getTiempo(), b.getTiempo());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.triviumgor.database;
+
+import com.example.triviumgor.model.AgregadoTelemetria;
+import com.example.triviumgor.model.PacienteResumen;
+import com.example.triviumgor.model.Sesion;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RowMapperTest {
+
+    private static final String[] COLUMNAS_SESION = {
+            PacienteDBHelper.COLUMN_SESION_ID, PacienteDBHelper.COLUMN_PACIENTE_ID,
+            PacienteDBHelper.COLUMN_DISPOSITIVO, PacienteDBHelper.COLUMN_FECHA,
+            PacienteDBHelper.COLUMN_INTENSIDAD_SESION, PacienteDBHelper.COLUMN_TIEMPO_SESION
+    };
+
+    private static Object[][] sesiones(int n) {
+        Object[][] filas = new Object[n][];
+        for (int i = 0; i < n; i++) {
+            filas[i] = new Object[]{i + 1, 7, "1", 1700000000000L + i * 60000L, 10 + i % 5, 20};
+        }
+        return filas;
+    }
+
+    @Test
+    public void listaResuelveCadaColumnaUnaSolaVez() {
+        CursorFalso falso = new CursorFalso(COLUMNAS_SESION, sesiones(1000));
+
+        List<Sesion> lista = RowMapper.lista(falso.cursor(), RowMappers.SESION);
+
+        assertEquals(1000, lista.size());
+        // Un índice por columna al crear el mapper, no uno por fila
+        assertEquals(COLUMNAS_SESION.length, falso.llamadas("getColumnIndexOrThrow"));
+        assertEquals(0, falso.llamadas("getColumnIndex"));
+        assertTrue(falso.isCerrado());
+    }
+
+    @Test
+    public void listaMapeaLasFilasEnOrden() {
+        CursorFalso falso = new CursorFalso(COLUMNAS_SESION, sesiones(3));
+
+        List<Sesion> lista = RowMapper.lista(falso.cursor(), RowMappers.SESION);
+
+        for (int i = 0; i < 3; i++) {
+            Sesion s = lista.get(i);
+            assertEquals(i + 1, s.getId());
+            assertEquals(7, s.getIdPaciente());
+            assertEquals("1", s.getDispositivo());
+            assertEquals(1700000000000L + i * 60000L, s.getFecha());
+            assertEquals(10 + i, s.getIntensidad());
+            assertEquals(20, s.getTiempo());
+        }
+    }
+
+    @Test
+    public void elOrdenDeColumnasDelCursorNoImporta() {
+        // Misma proyección que COLUMNAS_RESUMEN pero en otro orden
+        String[] columnas = {
+                PacienteDBHelper.COLUMN_APELLIDO2, PacienteDBHelper.COLUMN_NOMBRE,
+                PacienteDBHelper.COLUMN_ID, PacienteDBHelper.COLUMN_APELLIDO1, PacienteDBHelper.COLUMN_DNI
+        };
+        CursorFalso falso = new CursorFalso(columnas, new Object[]{"Ruiz", "Ana", 42, "García", "12345678Z"});
+
+        PacienteResumen p = RowMapper.primero(falso.cursor(), RowMappers.PACIENTE_RESUMEN);
+
+        assertEquals(42, p.getID());
+        assertEquals("12345678Z", p.getDNI());
+        assertEquals("Ana", p.getNombre());
+        assertEquals("García", p.getAp1());
+        assertEquals("Ruiz", p.getAp2());
+        assertTrue(falso.isCerrado());
+    }
+
+    @Test
+    public void primeroDeCursorVacioDevuelveNull() {
+        CursorFalso falso = new CursorFalso(COLUMNAS_SESION);
+
+        assertNull(RowMapper.primero(falso.cursor(), RowMappers.SESION));
+        assertTrue(falso.isCerrado());
+    }
+
+    @Test
+    public void cursorNull() {
+        assertTrue(RowMapper.lista(null, RowMappers.SESION).isEmpty());
+        assertNull(RowMapper.primero(null, RowMappers.SESION));
+    }
+
+    @Test
+    public void columnaObligatoriaAusenteFallaYCierraElCursor() {
+        String[] sinFecha = {
+                PacienteDBHelper.COLUMN_SESION_ID, PacienteDBHelper.COLUMN_PACIENTE_ID,
+                PacienteDBHelper.COLUMN_DISPOSITIVO,
+                PacienteDBHelper.COLUMN_INTENSIDAD_SESION, PacienteDBHelper.COLUMN_TIEMPO_SESION
+        };
+        CursorFalso falso = new CursorFalso(sinFecha, new Object[]{1, 7, "1", 10, 20});
+
+        try {
+            RowMapper.lista(falso.cursor(), RowMappers.SESION);
+            fail("Debería fallar al crear el mapper");
+        } catch (IllegalArgumentException e) {
+            assertTrue(falso.isCerrado());
+            assertEquals(0, falso.llamadas("moveToNext"));
+        }
+    }
+
+    @Test
+    public void telemetriaConValoresLargos() {
+        String[] columnas = {
+                PacienteDBHelper.COLUMN_TEL_MAC, PacienteDBHelper.COLUMN_TEL_TIPO,
+                PacienteDBHelper.COLUMN_TEL_INICIO, PacienteDBHelper.COLUMN_TEL_MUESTRAS,
+                PacienteDBHelper.COLUMN_TEL_SUMA, PacienteDBHelper.COLUMN_TEL_MINIMO,
+                PacienteDBHelper.COLUMN_TEL_MAXIMO
+        };
+        CursorFalso falso = new CursorFalso(columnas,
+                new Object[]{"00:11:22:33:44:55", 1, 1700000040000L, 60L, 5000000000L, 800L, 900L});
+
+        AgregadoTelemetria a = RowMapper.primero(falso.cursor(), RowMappers.TELEMETRIA);
+
+        assertEquals("00:11:22:33:44:55", a.getMac());
+        assertEquals(1700000040000L, a.getInicio());
+        assertEquals(5000000000L, a.getSuma());
+        assertEquals(5000000000L / 60.0, a.getMedia(), 1e-9);
+    }
+}
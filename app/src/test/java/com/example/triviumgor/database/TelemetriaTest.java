@@ -0,0 +1,147 @@
+package com.example.triviumgor.database;
+
+import com.example.triviumgor.model.AgregadoTelemetria;
+import com.example.triviumgor.util.Planificador;
+import com.example.triviumgor.util.RelojFalso;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/** Agrupación en memoria y volcado por lotes de Telemetria, sin base de datos */
+public class TelemetriaTest {
+
+    private static final long MINUTO_MS = 60000;
+    private static final long ESPERA_MS = 5000;
+    private static final String MAC = "00:11:22:33:44:55";
+
+    // Inicio de un minuto, para que las muestras caigan donde se espera
+    private final RelojFalso reloj = new RelojFalso(1700000000000L - 1700000000000L % MINUTO_MS);
+    private final LinkedBlockingQueue<List<AgregadoTelemetria>> lotes = new LinkedBlockingQueue<>();
+    private final Telemetria telemetria = new Telemetria(null, reloj) {
+        @Override
+        void escribir(List<AgregadoTelemetria> lote) {
+            if (!lote.isEmpty()) lotes.add(lote);
+        }
+    };
+    private Planificador planificador;
+
+    @After
+    public void detener() {
+        if (planificador != null) planificador.detener();
+    }
+
+    @Test
+    public void lasMuestrasDeUnMinutoSonUnSoloResumen() {
+        for (int i = 0; i < 100; i++) {
+            telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 600 + i);
+            reloj.avanzar(100);
+        }
+        assertTrue(lotes.isEmpty());
+
+        telemetria.volcar();
+        List<AgregadoTelemetria> lote = lotes.poll();
+        assertEquals(1, lote.size());
+        AgregadoTelemetria a = lote.get(0);
+        assertEquals(MAC, a.getMac());
+        assertEquals(Telemetria.TIPO_BATERIA, a.getTipo());
+        assertEquals(reloj.ahora() - 100 * 100, a.getInicio());
+        assertEquals(100, a.getMuestras());
+        assertEquals(600, a.getMinimo());
+        assertEquals(699, a.getMaximo());
+        assertEquals(100 * 600 + 99 * 100 / 2, a.getSuma());
+        assertEquals(100, telemetria.getMuestras());
+    }
+
+    @Test
+    public void cadaDispositivoYTipoTieneSuResumen() {
+        telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 700);
+        telemetria.registrar(MAC, Telemetria.TIPO_RTT_US, 15000);
+        telemetria.registrar("AA:BB:CC:DD:EE:FF", Telemetria.TIPO_BATERIA, 800);
+        telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 710);
+        // Sin MAC no se guarda
+        telemetria.registrar(null, Telemetria.TIPO_BATERIA, 1);
+        telemetria.registrar("", Telemetria.TIPO_BATERIA, 1);
+
+        telemetria.volcar();
+        assertEquals(3, lotes.poll().size());
+        assertEquals(4, telemetria.getMuestras());
+    }
+
+    @Test
+    public void unaMuestraTrasElPeriodoVuelcaLosMinutosCerrados() {
+        telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 700);
+        reloj.avanzar(Telemetria.VOLCADO_MS);
+        telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 710);
+
+        // Sale el minuto anterior; el actual sigue abierto
+        List<AgregadoTelemetria> lote = lotes.poll();
+        assertEquals(1, lote.size());
+        assertEquals(700, lote.get(0).getMaximo());
+        assertTrue(lotes.isEmpty());
+
+        telemetria.volcar();
+        assertEquals(710, lotes.poll().get(0).getMaximo());
+    }
+
+    @Test
+    public void volcarCerradosDejaAbiertoElMinutoEnCurso() {
+        telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 700);
+        telemetria.volcarCerrados();
+        assertTrue(lotes.isEmpty());
+
+        reloj.avanzar(MINUTO_MS);
+        telemetria.volcarCerrados();
+        assertEquals(1, lotes.poll().size());
+        telemetria.volcarCerrados();
+        assertTrue(lotes.isEmpty());
+    }
+
+    @Test
+    public void elPlanificadorVuelcaSinMuestrasNuevas() throws Exception {
+        // Reloj propio del Planificador, como en la app (monótono frente a epoch)
+        RelojFalso monotono = new RelojFalso(0);
+        planificador = new Planificador(monotono);
+        telemetria.programarVolcado(planificador);
+
+        telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 700);
+        // Se para la monitorización: no llega ninguna muestra más
+        reloj.avanzar(Telemetria.VOLCADO_MS);
+        // Más allá del periodo y de su holgura
+        monotono.avanzar(Telemetria.VOLCADO_MS + MINUTO_MS);
+        planificador.despertar();
+
+        List<AgregadoTelemetria> lote = lotes.poll(ESPERA_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("El minuto cerrado no se volcó", lote);
+        assertEquals(1, lote.size());
+        assertEquals(700, lote.get(0).getMaximo());
+    }
+
+    @Test
+    public void conDemasiadosResumenesAbiertosSeVuelcaTodo() {
+        for (int i = 0; i < 256; i++) {
+            telemetria.registrar(String.format("00:00:00:00:%02X:%02X", i / 256, i % 256),
+                    Telemetria.TIPO_BATERIA, 700);
+        }
+        assertEquals(256, lotes.poll().size());
+        assertTrue(lotes.isEmpty());
+    }
+
+    @Test
+    public void cerrarVuelcaYNoAdmiteMasMuestras() {
+        telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 700);
+
+        telemetria.cerrar();
+        assertEquals(1, lotes.poll().size());
+
+        telemetria.registrar(MAC, Telemetria.TIPO_BATERIA, 710);
+        telemetria.volcar();
+        assertTrue(lotes.isEmpty());
+        assertEquals(1, telemetria.getMuestras());
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.triviumgor.model;
+
+import com.example.triviumgor.bluetooth.ColaComandos;
+import com.example.triviumgor.bluetooth.SimuladorFirmware;
+import com.example.triviumgor.bluetooth.TramaCodec;
+import com.example.triviumgor.bluetooth.Transporte;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Máquina de estados y recursos de conexión, sobre el firmware simulado */
+public class DispositivoStateTest {
+
+    private final DispositivoState dispositivo = new DispositivoState(1);
+
+    @After
+    public void desconectar() {
+        dispositivo.resetConexion();
+    }
+
+    private static SimuladorFirmware simulador(String mac) {
+        SimuladorFirmware sim = new SimuladorFirmware(mac, 1L);
+        sim.setLatencia(0, 0);
+        return sim;
+    }
+
+    @Test
+    public void abrirConexionPublicaLosRecursos() throws IOException {
+        SimuladorFirmware sim = simulador("00:11:22:33:44:55");
+        assertNull(dispositivo.getColaComandos());
+        assertEquals("", dispositivo.getAddress());
+
+        dispositivo.abrirConexion(sim, Runnable::run);
+
+        assertEquals(DispositivoState.Estado.CONECTADO, dispositivo.getEstado());
+        assertTrue(dispositivo.isBattMon());
+        assertSame(sim, dispositivo.getTransporte());
+        assertNotNull(dispositivo.getColaComandos());
+        assertNotNull(dispositivo.getLector());
+        assertEquals("00:11:22:33:44:55", dispositivo.getAddress());
+    }
+
+    @Test
+    public void abrirConexionYaConectadoFallaSinTocarLaAnterior() throws IOException {
+        SimuladorFirmware primero = simulador("primero");
+        dispositivo.abrirConexion(primero, Runnable::run);
+        assertTrue(dispositivo.iniciarSesion());
+        ColaComandos cola = dispositivo.getColaComandos();
+
+        try {
+            dispositivo.abrirConexion(simulador("segundo"), Runnable::run);
+            fail("No debería abrir una segunda conexión");
+        } catch (IOException e) {
+            assertEquals(DispositivoState.Estado.EN_SESION, dispositivo.getEstado());
+            assertSame(primero, dispositivo.getTransporte());
+            assertSame(cola, dispositivo.getColaComandos());
+            assertFalse(cola.isCerrada());
+            assertEquals("primero", dispositivo.getAddress());
+        }
+    }
+
+    @Test
+    public void resetConexionDesconectaAntesDeCerrar() throws IOException {
+        SimuladorFirmware sim = simulador("sim");
+        dispositivo.abrirConexion(sim, Runnable::run);
+        final ColaComandos cola = dispositivo.getColaComandos();
+        final List<String> vistos = new ArrayList<>();
+        dispositivo.addObservador((d, anterior, actual) -> {
+            // Al avisar ya no se ve la cola, pero aún no está cerrada
+            vistos.add(actual.getEstado() + " cola=" + d.getColaComandos()
+                    + " cerrada=" + cola.isCerrada());
+        });
+
+        dispositivo.resetConexion();
+        dispositivo.resetConexion();
+
+        assertEquals(1, vistos.size());
+        assertEquals("DESCONECTADO cola=null cerrada=false", vistos.get(0));
+        assertTrue(cola.isCerrada());
+        assertNull(dispositivo.getTransporte());
+        assertNull(dispositivo.getLector());
+        assertEquals("", dispositivo.getAddress());
+        assertFalse(dispositivo.isBattMon());
+        try {
+            ((Transporte) sim).getSalida().write(TramaCodec.CMD_PARADA);
+            fail("El transporte debería estar cerrado");
+        } catch (IOException esperado) {
+            // cerrado por resetConexion
+        }
+    }
+
+    @Test
+    public void reconectarTrasReset() throws IOException {
+        dispositivo.abrirConexion(simulador("uno"), Runnable::run);
+        dispositivo.resetConexion();
+
+        dispositivo.abrirConexion(simulador("dos"), Runnable::run);
+        assertEquals(DispositivoState.Estado.CONECTADO, dispositivo.getEstado());
+        assertEquals("dos", dispositivo.getAddress());
+    }
+
+    @Test
+    public void sesionSoloDesdeConectado() throws IOException {
+        assertFalse(dispositivo.iniciarSesion());
+
+        dispositivo.abrirConexion(simulador("sim"), Runnable::run);
+        assertTrue(dispositivo.iniciarSesion());
+        assertFalse(dispositivo.iniciarSesion());
+        assertTrue(dispositivo.isSesionActiva());
+        // La conexión sigue siendo la misma tras las transiciones de sesión
+        assertEquals("sim", dispositivo.getAddress());
+
+        assertTrue(dispositivo.detenerSesion());
+        assertFalse(dispositivo.detenerSesion());
+        assertTrue(dispositivo.isConnected());
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.triviumgor.util;
+
+import org.junit.Test;
+
+import static com.example.triviumgor.util.CuentaAtras.MINUTO_MS;
+import static com.example.triviumgor.util.CuentaAtras.SEGUNDO_MS;
+import static org.junit.Assert.*;
+
+public class CuentaAtrasTest {
+
+    @Test
+    public void sesionDeUnaHora() {
+        RelojFalso reloj = new RelojFalso(5000000L);
+        CuentaAtras cuenta = new CuentaAtras(reloj);
+
+        assertEquals(60, cuenta.getMinutosRestantes(60));
+        assertEquals(3600, cuenta.getSegundosRestantes(60));
+        assertFalse(cuenta.isAgotada(60));
+
+        // Cada minuto termina exactamente en inicio + n * 60 s
+        for (int n = 1; n <= 60; n++) {
+            reloj.avanzar(MINUTO_MS - 1);
+            assertEquals(n - 1, cuenta.getMinutosTranscurridos());
+            assertFalse("minuto " + n, cuenta.isAgotada(60));
+            reloj.avanzar(1);
+            assertEquals(n, cuenta.getMinutosTranscurridos());
+            assertEquals(60 - n, cuenta.getMinutosRestantes(60));
+        }
+
+        assertEquals(60 * MINUTO_MS, cuenta.getTranscurridoMs());
+        assertTrue(cuenta.isAgotada(60));
+        assertEquals(0, cuenta.getSegundosRestantes(60));
+
+        reloj.avanzar(10 * MINUTO_MS);
+        assertTrue(cuenta.isAgotada(60));
+        assertEquals(0, cuenta.getMinutosRestantes(60));
+        assertEquals(0, cuenta.getSegundosRestantes(60));
+    }
+
+    @Test
+    public void segundosRestantesRedondeanHaciaArriba() {
+        RelojFalso reloj = new RelojFalso(0);
+        CuentaAtras cuenta = new CuentaAtras(reloj);
+
+        reloj.avanzar(1);
+        assertEquals(60, cuenta.getSegundosRestantes(1));
+        reloj.avanzar(SEGUNDO_MS - 1);
+        assertEquals(59, cuenta.getSegundosRestantes(1));
+        reloj.avanzar(58 * SEGUNDO_MS + 1);
+        // Queda menos de un segundo: se muestra 1, no 0
+        assertEquals(1, cuenta.getSegundosRestantes(1));
+        assertEquals(1, cuenta.getMinutosRestantes(1));
+        assertFalse(cuenta.isAgotada(1));
+    }
+
+    @Test
+    public void msHastaSiguienteMinuto() {
+        RelojFalso reloj = new RelojFalso(123456L);
+        CuentaAtras cuenta = new CuentaAtras(reloj);
+
+        assertEquals(MINUTO_MS, cuenta.msHastaSiguiente(MINUTO_MS));
+        reloj.avanzar(59 * SEGUNDO_MS);
+        assertEquals(SEGUNDO_MS, cuenta.msHastaSiguiente(MINUTO_MS));
+        reloj.avanzar(SEGUNDO_MS);
+        // Justo en el límite el siguiente es el minuto de después
+        assertEquals(MINUTO_MS, cuenta.msHastaSiguiente(MINUTO_MS));
+        reloj.avanzar(MINUTO_MS + 250);
+        assertEquals(MINUTO_MS - 250, cuenta.msHastaSiguiente(MINUTO_MS));
+        assertEquals(SEGUNDO_MS - 250, cuenta.msHastaSiguiente(SEGUNDO_MS));
+    }
+
+    @Test
+    public void pausaYReanudacion() {
+        RelojFalso reloj = new RelojFalso(0);
+        CuentaAtras cuenta = new CuentaAtras(reloj);
+        reloj.avanzar(25 * MINUTO_MS + 30 * SEGUNDO_MS);
+        long transcurrido = cuenta.getTranscurridoMs();
+
+        // Diez minutos desconectado: no cuentan
+        reloj.avanzar(10 * MINUTO_MS);
+        CuentaAtras reanudada = new CuentaAtras(reloj, transcurrido);
+
+        assertEquals(transcurrido, reanudada.getTranscurridoMs());
+        assertEquals(25, reanudada.getMinutosTranscurridos());
+        assertEquals(35, reanudada.getMinutosRestantes(60));
+        assertEquals(34 * 60 + 30, reanudada.getSegundosRestantes(60));
+        // Los minutos siguen alineados con el inicio original
+        assertEquals(30 * SEGUNDO_MS, reanudada.msHastaSiguiente(MINUTO_MS));
+
+        reloj.avanzar(34 * MINUTO_MS + 30 * SEGUNDO_MS - 1);
+        assertFalse(reanudada.isAgotada(60));
+        reloj.avanzar(1);
+        assertTrue(reanudada.isAgotada(60));
+    }
+
+    @Test
+    public void cambioDeDuracionDuranteLaSesion() {
+        RelojFalso reloj = new RelojFalso(0);
+        CuentaAtras cuenta = new CuentaAtras(reloj);
+        reloj.avanzar(40 * MINUTO_MS);
+
+        assertFalse(cuenta.isAgotada(60));
+        assertTrue(cuenta.isAgotada(30));
+        assertEquals(0, cuenta.getMinutosRestantes(30));
+        assertEquals(0, cuenta.getSegundosRestantes(30));
+    }
+
+    @Test
+    public void duracionCeroNoSeAgota() {
+        RelojFalso reloj = new RelojFalso(0);
+        CuentaAtras cuenta = new CuentaAtras(reloj);
+        reloj.avanzar(MINUTO_MS);
+
+        assertFalse(cuenta.isAgotada(0));
+        assertEquals(0, cuenta.getSegundosRestantes(0));
+    }
+
+    @Test
+    public void relojHaciaAtrasNoDaTiempoNegativo() {
+        RelojFalso reloj = new RelojFalso(MINUTO_MS);
+        CuentaAtras cuenta = new CuentaAtras(reloj);
+        reloj.avanzar(-SEGUNDO_MS);
+
+        assertEquals(0, cuenta.getTranscurridoMs());
+        assertEquals(10, cuenta.getMinutosRestantes(10));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.triviumgor.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Conversión entre epoch ms y hora local. Se fija Europe/Madrid para que los
+ * cambios de hora caigan en fechas conocidas (31/03/2024 y 27/10/2024).
+ */
+public class FechasTest {
+
+    private static final long HORA_MS = 60L * 60 * 1000;
+
+    // Instantes en Europe/Madrid
+    private static final long MARZO_15_1030 = 1710495000000L;  // 2024-03-15 10:30:00 (UTC+1)
+    private static final long MARZO_31_0000 = 1711839600000L;  // cambio a horario de verano
+    private static final long MARZO_31_1200 = 1711879200000L;
+    private static final long ABRIL_01_0000 = 1711922400000L;
+    private static final long OCTUBRE_27_0000 = 1729980000000L; // vuelta al horario de invierno
+    private static final long OCTUBRE_28_0000 = 1730070000000L;
+
+    private TimeZone zonaOriginal;
+    private Locale localeOriginal;
+
+    @Before
+    public void fijarZona() {
+        zonaOriginal = TimeZone.getDefault();
+        localeOriginal = Locale.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Madrid"));
+        Locale.setDefault(new Locale("es", "ES"));
+    }
+
+    @After
+    public void restaurarZona() {
+        TimeZone.setDefault(zonaOriginal);
+        Locale.setDefault(localeOriginal);
+    }
+
+    @Test
+    public void parsearAntiguoUsaLaHoraLocal() throws ParseException {
+        assertEquals(MARZO_15_1030, Fechas.parsearAntiguo("2024-03-15 10:30:00"));
+        assertEquals(MARZO_31_0000, Fechas.parsearAntiguo("2024-03-31 00:00:00"));
+    }
+
+    @Test
+    public void parsearYFormatearSonInversos() throws ParseException {
+        long epoch = Fechas.parsearAntiguo("2024-10-27 02:30:00");
+        assertEquals("27/10/2024 02:30:00", Fechas.formatearFechaHora(epoch));
+        assertEquals("15/03/2024", Fechas.formatearFecha(MARZO_15_1030));
+        assertEquals("10:30:00", Fechas.formatearHora(MARZO_15_1030));
+    }
+
+    @Test
+    public void parsearAntiguoAceptaDigitosNoLatinos() throws ParseException {
+        // Lo que guardaba SimpleDateFormat con un Locale árabe o persa: strftime
+        // de SQLite no lo entiende y la migración v9 lo repara con este método
+        String arabigos = "\u0662\u0660\u0662\u0664-\u0660\u0663-\u0661\u0665 \u0661\u0660:\u0663\u0660:\u0660\u0660";
+        String persas = "\u06f2\u06f0\u06f2\u06f4-\u06f0\u06f3-\u06f1\u06f5 \u06f1\u06f0:\u06f3\u06f0:\u06f0\u06f0";
+        assertEquals(MARZO_15_1030, Fechas.parsearAntiguo(arabigos));
+        assertEquals(MARZO_15_1030, Fechas.parsearAntiguo(persas));
+
+        Locale.setDefault(new Locale("ar", "EG"));
+        assertEquals(MARZO_15_1030, Fechas.parsearAntiguo(arabigos));
+        assertEquals(MARZO_15_1030, Fechas.parsearAntiguo("2024-03-15 10:30:00"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void textoQueNoEsFechaFalla() throws ParseException {
+        Fechas.parsearAntiguo("15/03/2024");
+    }
+
+    @Test
+    public void inicioDelDia() {
+        assertEquals(MARZO_31_0000, Fechas.inicioDelDia(MARZO_31_1200));
+        assertEquals(MARZO_31_0000, Fechas.inicioDelDia(MARZO_31_0000));
+        assertEquals(MARZO_31_0000, Fechas.inicioDelDia(ABRIL_01_0000 - 1));
+        assertEquals(ABRIL_01_0000, Fechas.inicioDelDia(ABRIL_01_0000));
+    }
+
+    @Test
+    public void diasConCambioDeHora() {
+        // El día del cambio a verano dura 23 h y el de vuelta a invierno 25 h
+        assertEquals(ABRIL_01_0000, Fechas.inicioDelDiaSiguiente(MARZO_31_1200));
+        assertEquals(23 * HORA_MS, ABRIL_01_0000 - MARZO_31_0000);
+        assertEquals(OCTUBRE_28_0000, Fechas.inicioDelDiaSiguiente(OCTUBRE_27_0000 + 20 * HORA_MS));
+        assertEquals(25 * HORA_MS, OCTUBRE_28_0000 - OCTUBRE_27_0000);
+    }
+
+    @Test
+    public void inicioDelDiaDependeDeLaZona() {
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        // 2024-03-15 10:30 Madrid = 09:30 UTC; el día UTC empieza una hora después que en Madrid
+        assertEquals(MARZO_15_1030 - 9 * HORA_MS - 30 * 60 * 1000L, Fechas.inicioDelDia(MARZO_15_1030));
+    }
+
+    @Test
+    public void ahoraEsElRelojDelSistema() {
+        long antes = System.currentTimeMillis();
+        long ahora = Fechas.ahora();
+        assertTrue(ahora >= antes && ahora <= System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.triviumgor.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.triviumgor.util.CuentaAtras.MINUTO_MS;
+import static org.junit.Assert.*;
+
+/**
+ * Planificador con un reloj falso: los plazos se cumplen al adelantar el reloj
+ * y llamar a despertar(), sin esperar el tiempo real.
+ */
+public class PlanificadorTest {
+
+    private static final long ESPERA_MAX_S = 5;
+
+    private RelojFalso reloj;
+    private Planificador planificador;
+
+    @Before
+    public void crear() {
+        reloj = new RelojFalso(1000000L);
+        planificador = new Planificador(reloj);
+    }
+
+    @After
+    public void detener() {
+        planificador.detener();
+    }
+
+    private void adelantar(long ms) {
+        reloj.avanzar(ms);
+        planificador.despertar();
+    }
+
+    /**
+     * Espera a que el hilo termine la vuelta en curso. Una tarea periódica se
+     * vuelve a encolar después de ejecutarse; si el reloj se adelanta antes,
+     * ese periodo cuenta como perdido.
+     */
+    private void terminarVuelta() throws InterruptedException {
+        Semaphore marca = new Semaphore(0);
+        planificador.programar(marca::release, 0, 0);
+        assertTrue(marca.tryAcquire(ESPERA_MAX_S, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void tareaUnicaSeEjecutaAlCumplirseElPlazo() throws InterruptedException {
+        final Semaphore ejecutada = new Semaphore(0);
+        planificador.programar(ejecutada::release, MINUTO_MS, 0);
+
+        adelantar(MINUTO_MS - 1);
+        assertFalse(ejecutada.tryAcquire(100, TimeUnit.MILLISECONDS));
+
+        adelantar(1);
+        assertTrue(ejecutada.tryAcquire(ESPERA_MAX_S, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sesionDeUnaHoraConTareaPorMinuto() throws InterruptedException {
+        final Semaphore minuto = new Semaphore(0);
+        planificador.programarPeriodica(minuto::release, MINUTO_MS, MINUTO_MS, 0);
+
+        for (int n = 1; n <= 60; n++) {
+            adelantar(MINUTO_MS);
+            assertTrue("minuto " + n, minuto.tryAcquire(ESPERA_MAX_S, TimeUnit.SECONDS));
+            terminarVuelta();
+        }
+        assertEquals(0, minuto.availablePermits());
+    }
+
+    @Test
+    public void periodosPerdidosNoSeAcumulan() throws InterruptedException {
+        final Semaphore ejecutada = new Semaphore(0);
+        final AtomicInteger veces = new AtomicInteger();
+        planificador.programarPeriodica(() -> {
+            veces.incrementAndGet();
+            ejecutada.release();
+        }, MINUTO_MS, MINUTO_MS, 0);
+
+        // Tres periodos de golpe: una sola ejecución y el plazo salta al siguiente
+        adelantar(3 * MINUTO_MS);
+        assertTrue(ejecutada.tryAcquire(ESPERA_MAX_S, TimeUnit.SECONDS));
+        terminarVuelta();
+        assertFalse(ejecutada.tryAcquire(100, TimeUnit.MILLISECONDS));
+
+        adelantar(MINUTO_MS);
+        assertTrue(ejecutada.tryAcquire(ESPERA_MAX_S, TimeUnit.SECONDS));
+        assertEquals(2, veces.get());
+    }
+
+    @Test
+    public void holguraAgrupaTareasCercanas() throws InterruptedException {
+        final Semaphore ejecutadas = new Semaphore(0);
+        planificador.programar(ejecutadas::release, 1000, 500);
+        planificador.programar(ejecutadas::release, 1400, 500);
+
+        // La primera aún tiene holgura: no despierta hasta 1500
+        adelantar(1400);
+        assertFalse(ejecutadas.tryAcquire(100, TimeUnit.MILLISECONDS));
+
+        adelantar(100);
+        assertTrue(ejecutadas.tryAcquire(2, ESPERA_MAX_S, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void tareaCanceladaNoSeEjecuta() throws InterruptedException {
+        final Semaphore ejecutadas = new Semaphore(0);
+        Planificador.Tarea cancelada = planificador.programar(ejecutadas::release, 1000, 0);
+        planificador.programar(ejecutadas::release, 2000, 0);
+        cancelada.cancelar();
+
+        adelantar(2000);
+        assertTrue(ejecutadas.tryAcquire(ESPERA_MAX_S, TimeUnit.SECONDS));
+        assertFalse(ejecutadas.tryAcquire(100, TimeUnit.MILLISECONDS));
+        assertTrue(cancelada.isCancelada());
+    }
+
+    @Test
+    public void trasDetenerNoSeProgramaNada() {
+        planificador.detener();
+        Planificador.Tarea t = planificador.programar(() -> fail("No debería ejecutarse"), 0, 0);
+        assertTrue(t.isCancelada());
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.triviumgor.util;
+
+/** Reloj que solo avanza cuando se le pide */
+public final class RelojFalso implements Reloj {
+
+    private volatile long ahora;
+
+    public RelojFalso(long inicio) {
+        this.ahora = inicio;
+    }
+
+    @Override
+    public long ahora() {
+        return ahora;
+    }
+
+    public void avanzar(long ms) {
+        ahora += ms;
+    }
+}